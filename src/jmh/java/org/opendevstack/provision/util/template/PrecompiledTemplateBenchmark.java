@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.template;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares rendering a Confluence permission set with a {@link PrecompiledTemplate} against the
+ * {@link String#replace(CharSequence, CharSequence)} chain it replaced. Run with {@code ./gradlew
+ * jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PrecompiledTemplateBenchmark {
+
+  private static final String PERMISSIONSET =
+      "[[\"EDITSPACE\", \"VIEWSPACE\", \"COMMENT\", \"SETSPACEPERMISSIONS\", \"EXPORTSPACE\","
+          + " \"SETPAGEPERMISSIONS\", \"CREATEATTACHMENT\", \"REMOVEATTACHMENT\",\"REMOVEPAGE\","
+          + "\"REMOVECOMMENT\"], \"SPACE_GROUP\",\"SPACE_NAME\"]";
+
+  private PrecompiledTemplate template;
+  private Map<String, String> values;
+
+  @Setup
+  public void setUp() {
+    template = PrecompiledTemplate.compile(PERMISSIONSET, "SPACE_NAME", "SPACE_GROUP");
+    values = Map.of("SPACE_NAME", "TESTP", "SPACE_GROUP", "testp-admins");
+  }
+
+  @Benchmark
+  public String stringReplace() {
+    return PERMISSIONSET
+        .replace("SPACE_NAME", values.get("SPACE_NAME"))
+        .replace("SPACE_GROUP", values.get("SPACE_GROUP"));
+  }
+
+  @Benchmark
+  public String precompiledTemplate() {
+    return template.render(values);
+  }
+}
@@ -17,6 +17,7 @@ package org.opendevstack.provision.adapter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.opendevstack.provision.model.OpenProjectData;
 
 /** Service interface for a bugtracker */
@@ -57,6 +58,16 @@ public interface IBugtrackerAdapter extends IServiceAdapter {
    */
   public String buildProjectKey(String proposedProjectKey);
 
+  /**
+   * List the keys of all projects, to keep the local project key index up to date. Called from a
+   * background thread, hence implementations that need the credentials of a logged in user only
+   * return the keys they know so far.
+   *
+   * @return the keys of the projects, upper case
+   * @throws IOException in case the projects cannot be listed
+   */
+  Set<String> listProjectKeys() throws IOException;
+
   /**
    * In case templates are used return template(s) based on {@link OpenProjectData#projectType}
    *
@@ -72,7 +83,7 @@ public interface IBugtrackerAdapter extends IServiceAdapter {
    * @param data the project containing only the new repositories and quickstarters {@link
    *     OpenProjectData#quickstarters} and {@link OpenProjectData#repositories}
    * @param exclusions list of components to not create
-   * @return the name and descriptions of the components created
+   * @return the name and descriptions of the components created or already existing
    */
   public Map<String, String> createComponentsForProjectRepositories(
       OpenProjectData data, List<String> exclusions);
@@ -16,6 +16,7 @@ package org.opendevstack.provision.adapter;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.Set;
 import org.opendevstack.provision.model.OpenProjectData;
 
 /** Interface for SCM adapters */
@@ -76,4 +77,25 @@ public interface ISCMAdapter extends IServiceAdapter {
    * @return
    */
   public String createRepoNameFromComponentName(String projectKey, String componentName);
+
+  /**
+   * List the keys of all projects, to keep the local project key index up to date. Called from a
+   * background thread, hence implementations that need the credentials of a logged in user only
+   * return the keys they know so far.
+   *
+   * @return the keys of the projects, upper case
+   * @throws IOException in case the projects cannot be listed
+   */
+  Set<String> listProjectKeys() throws IOException;
+
+  /**
+   * Rewrites the clone urls stored on the project from the previous to the current technical user,
+   * e.g. after the technical user changed. Clone urls are otherwise rewritten once, when the
+   * repository is created, and returned as stored.
+   *
+   * @param project the stored project, changed in place
+   * @param previousTechnicalUser the technical user the clone urls were built with
+   * @return true if at least one clone url changed, so that the project needs to be stored
+   */
+  boolean rewriteCloneUrls(OpenProjectData project, String previousTechnicalUser);
 }
@@ -33,6 +33,7 @@ public interface IServiceAdapter {
   enum CLEANUP_LEFTOVER_COMPONENTS {
     COLLABORATION_SPACE,
     BUGTRACKER_PROJECT,
+    BUGTRACKER_COMPONENT,
     SCM_PROJECT,
     SCM_REPO,
     QUICKSTARTER,
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import org.opendevstack.provision.util.concurrent.ContextPropagatingTaskDecorator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Thread pool used to run provisioning steps in parallel. The pool does not queue: if all threads
+ * are busy the submitting thread runs the task itself, so nested fan-outs never dead lock.
+ *
+ * <p>The projects of a bulk provisioning run on a pool of their own, which queues and then rejects
+ * instead, so that no project is provisioned in the request thread.
+ */
+@Configuration
+public class ProvisioningExecutorConfig {
+
+  public static final String PROVISIONING_TASK_EXECUTOR = "provisioningTaskExecutor";
+
+  public static final String BULK_PROVISIONING_TASK_EXECUTOR = "bulkProvisioningTaskExecutor";
+
+  @Value("${provision.executor.core-pool-size:4}")
+  private int corePoolSize;
+
+  @Value("${provision.executor.max-pool-size:64}")
+  private int maxPoolSize;
+
+  @Value("${provision.executor.keep-alive-seconds:60}")
+  private int keepAliveSeconds;
+
+  @Value("${provision.bulk.executor.pool-size:16}")
+  private int bulkPoolSize;
+
+  @Value("${provision.bulk.executor.queue-capacity:64}")
+  private int bulkQueueCapacity;
+
+  @Bean(name = PROVISIONING_TASK_EXECUTOR)
+  public ThreadPoolTaskExecutor provisioningTaskExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setThreadNamePrefix("provision-");
+    executor.setCorePoolSize(corePoolSize);
+    executor.setMaxPoolSize(Math.max(corePoolSize, maxPoolSize));
+    executor.setKeepAliveSeconds(keepAliveSeconds);
+    executor.setQueueCapacity(0);
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+    return executor;
+  }
+
+  @Bean(name = BULK_PROVISIONING_TASK_EXECUTOR)
+  public ThreadPoolTaskExecutor bulkProvisioningTaskExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setThreadNamePrefix("provision-bulk-");
+    executor.setCorePoolSize(bulkPoolSize);
+    executor.setMaxPoolSize(bulkPoolSize);
+    executor.setQueueCapacity(bulkQueueCapacity);
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+    return executor;
+  }
+}
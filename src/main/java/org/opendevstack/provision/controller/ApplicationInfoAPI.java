@@ -21,9 +21,41 @@ public interface ApplicationInfoAPI extends API {
 
   String ENDPOINT_HISTORY = "history";
 
+  String ENDPOINT_HISTORY_TIMINGS = ENDPOINT_HISTORY + "/timings";
+
+  String ENDPOINT_TRACES = "traces";
+
+  String ENDPOINT_TRACES_WATERFALL = ENDPOINT_TRACES + "/waterfall";
+
+  String ENDPOINT_CACHES = "caches";
+
+  String ENDPOINT_CACHES_JIRA_DIRECTORY = ENDPOINT_CACHES + "/jira-directory";
+
+  String ENDPOINT_JIRA_PROJECTS = "jira-projects";
+
+  String ENDPOINT_JIRA_PROJECTS_DRIFT = ENDPOINT_JIRA_PROJECTS + "/drift";
+
+  String ENDPOINT_JIRA_PROJECTS_SYNC = ENDPOINT_JIRA_PROJECTS + "/sync";
+
+  String ENDPOINT_BITBUCKET_PROJECTS = "bitbucket-projects";
+
+  String ENDPOINT_BITBUCKET_PROJECTS_SYNC = ENDPOINT_BITBUCKET_PROJECTS + "/sync";
+
+  String ENDPOINT_BITBUCKET_CLONE_URLS = "bitbucket-clone-urls";
+
+  String ENDPOINT_BITBUCKET_CLONE_URLS_REWRITE = ENDPOINT_BITBUCKET_CLONE_URLS + "/rewrite";
+
+  String ENDPOINT_BITBUCKET_WEBHOOKS = "bitbucket-webhooks";
+
+  String ENDPOINT_BITBUCKET_WEBHOOKS_ROTATION = ENDPOINT_BITBUCKET_WEBHOOKS + "/rotation";
+
   String APP_INFO_API_V2 = API_ROOT_V2 + "/" + ENDPOINT_APPINFO;
 
   String ABOUT_APP_INFO_API_V2 = APP_INFO_API_V2 + "/" + ENDPOINT_ABOUT;
 
   String HISTORY_APP_INFO_API_V2 = APP_INFO_API_V2 + "/" + ENDPOINT_HISTORY;
+
+  String TRACES_APP_INFO_API_V2 = APP_INFO_API_V2 + "/" + ENDPOINT_TRACES;
+
+  String CACHES_APP_INFO_API_V2 = APP_INFO_API_V2 + "/" + ENDPOINT_CACHES;
 }
@@ -13,23 +13,47 @@
  */
 package org.opendevstack.provision.controller;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import org.opendevstack.provision.adapter.IBugtrackerAdapter;
 import org.opendevstack.provision.adapter.ICollaborationAdapter;
 import org.opendevstack.provision.adapter.IODSAuthnzAdapter;
 import org.opendevstack.provision.adapter.ISCMAdapter;
 import org.opendevstack.provision.authentication.PreAuthorizeAllRoles;
+import org.opendevstack.provision.authentication.PreAuthorizeOnlyAdministrator;
 import org.opendevstack.provision.authentication.UserRolesHolder;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.services.StorageAdapter;
+import org.opendevstack.provision.services.bitbucket.BitbucketInventory;
+import org.opendevstack.provision.services.bitbucket.BitbucketWebhookRotation;
+import org.opendevstack.provision.services.bitbucket.WebhookRotationStatus;
+import org.opendevstack.provision.services.jira.JiraDirectoryCache;
+import org.opendevstack.provision.services.jira.JiraProjectMirror;
+import org.opendevstack.provision.storage.IStorage;
+import org.opendevstack.provision.util.concurrent.ProjectLockManager;
+import org.opendevstack.provision.util.concurrent.ProjectLockManager.ProjectLock;
+import org.opendevstack.provision.util.tracing.ProvisioningTracer;
+import org.opendevstack.provision.util.tracing.Trace;
+import org.opendevstack.provision.util.tracing.TraceWaterfall;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -62,6 +86,20 @@ public class ApplicationInfoAPIController {
   @Autowired(required = false)
   private ICollaborationAdapter confluenceAdapter;
 
+  @Autowired private ProvisioningTracer provisioningTracer;
+
+  @Autowired private JiraDirectoryCache jiraDirectoryCache;
+
+  @Autowired private JiraProjectMirror jiraProjectMirror;
+
+  @Autowired private BitbucketWebhookRotation webhookRotation;
+
+  @Autowired private BitbucketInventory bitbucketInventory;
+
+  @Autowired private IStorage directStorage;
+
+  @Autowired private ProjectLockManager projectLockManager;
+
   @PreAuthorizeAllRoles
   @GetMapping(ApplicationInfoAPI.ENDPOINT_ABOUT)
   public @ResponseBody ResponseEntity<Map<String, Object>> about() {
@@ -107,4 +145,248 @@ public class ApplicationInfoAPIController {
 
     return ResponseEntity.ok(history);
   }
+
+  /**
+   * Aggregates the timing records stored with the projects, to track the performance of the
+   * adapters over time
+   *
+   * @param operation the operation to aggregate ({@code create} or {@code update}), all if not set
+   * @param days only aggregate provisionings of the last days, all if not set
+   * @return p50 / p95 / max of time, http calls, retries and bytes transferred per step
+   */
+  @PreAuthorizeAllRoles
+  @GetMapping(ApplicationInfoAPI.ENDPOINT_HISTORY_TIMINGS)
+  public ResponseEntity<ProvisioningTimingStatistics> historyTimings(
+      @RequestParam(value = "operation", required = false) String operation,
+      @RequestParam(value = "days", required = false) Integer days) {
+
+    long since =
+        days == null ? 0 : System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Math.max(0, days));
+
+    return ResponseEntity.ok(
+        ProvisioningTimingStatistics.of(
+            storageAdapter.listProjectHistory().values(), operation, since));
+  }
+
+  /**
+   * Debug endpoint to find out where the time of the last provisionings went
+   *
+   * @param limit the maximum number of traces, newest first
+   * @return the traces of the running and last finished provisionings, including all spans
+   */
+  @PreAuthorizeOnlyAdministrator
+  @GetMapping(ApplicationInfoAPI.ENDPOINT_TRACES)
+  public ResponseEntity<List<Trace>> traces(
+      @RequestParam(value = "limit", defaultValue = "10") int limit) {
+    return ResponseEntity.ok(provisioningTracer.getTraces(limit));
+  }
+
+  /**
+   * @param limit the maximum number of traces, newest first
+   * @param width the width of the timeline in characters
+   * @return the traces of the running and last finished provisionings as plain text waterfall
+   */
+  @PreAuthorizeOnlyAdministrator
+  @GetMapping(
+      value = ApplicationInfoAPI.ENDPOINT_TRACES_WATERFALL,
+      produces = MediaType.TEXT_PLAIN_VALUE)
+  public ResponseEntity<String> tracesWaterfall(
+      @RequestParam(value = "limit", defaultValue = "10") int limit,
+      @RequestParam(value = "width", defaultValue = "80") int width) {
+    return ResponseEntity.ok(TraceWaterfall.render(provisioningTracer.getTraces(limit), width));
+  }
+
+  /**
+   * @return size and hit ratio of the cache of jira groups, users, roles and permission schemes
+   */
+  @PreAuthorizeOnlyAdministrator
+  @GetMapping(ApplicationInfoAPI.ENDPOINT_CACHES_JIRA_DIRECTORY)
+  public ResponseEntity<Map<String, Object>> jiraDirectoryCache() {
+    Map<String, Object> cache = new HashMap<>();
+    cache.put("size", jiraDirectoryCache.size());
+    cache.put("hitRatio", jiraDirectoryCache.getHitRatio());
+    return ResponseEntity.ok(cache);
+  }
+
+  /**
+   * Empties the cache of jira groups, users, roles and permission schemes, e.g. after a group was
+   * deleted in jira
+   *
+   * @return no content
+   */
+  @PreAuthorizeOnlyAdministrator
+  @DeleteMapping(ApplicationInfoAPI.ENDPOINT_CACHES_JIRA_DIRECTORY)
+  public ResponseEntity<Void> invalidateJiraDirectoryCache() {
+    jiraDirectoryCache.invalidateAll();
+    return ResponseEntity.noContent().build();
+  }
+
+  /**
+   * Compares the stored projects with the local mirror of the jira projects
+   *
+   * @return freshness of the mirror and the differences to the stored projects
+   */
+  @PreAuthorizeOnlyAdministrator
+  @GetMapping(ApplicationInfoAPI.ENDPOINT_JIRA_PROJECTS_DRIFT)
+  public ResponseEntity<Map<String, Object>> jiraProjectDrift() {
+    Map<String, Object> drift = jiraProjectMirrorStatus();
+    drift.put("drift", jiraProjectMirror.drift(storageAdapter.listProjectHistory().values()));
+    return ResponseEntity.ok(drift);
+  }
+
+  /**
+   * Syncs the local mirror of the jira projects now, with the credentials of the logged in
+   * administrator if jira is not accessed with a technical user
+   *
+   * @return freshness of the mirror and the number of changed projects
+   */
+  @PreAuthorizeOnlyAdministrator
+  @PostMapping(ApplicationInfoAPI.ENDPOINT_JIRA_PROJECTS_SYNC)
+  public ResponseEntity<Map<String, Object>> syncJiraProjects() throws IOException {
+    int changes = jiraProjectMirror.sync();
+    Map<String, Object> status = jiraProjectMirrorStatus();
+    status.put("changes", changes);
+    return ResponseEntity.ok(status);
+  }
+
+  /**
+   * Starts to update the jenkins webhooks of all repositories of all stored projects to the current
+   * webhook proxy url and trigger secret, in the background. A previous rotation to the same
+   * webhooks that did not finish is resumed.
+   *
+   * @param parallelism the number of repositories updated at the same time, defaults to {@code
+   *     bitbucket.webhook-rotation.parallelism}
+   * @param restart true to update all repositories, ignoring the progress of a previous rotation
+   * @return the status of the started rotation, or conflict if a rotation is running already
+   */
+  @PreAuthorizeOnlyAdministrator
+  @PostMapping(ApplicationInfoAPI.ENDPOINT_BITBUCKET_WEBHOOKS_ROTATION)
+  public ResponseEntity<WebhookRotationStatus> rotateBitbucketWebhooks(
+      @RequestParam(value = "parallelism", required = false) Integer parallelism,
+      @RequestParam(value = "restart", defaultValue = "false") boolean restart)
+      throws IOException {
+    if (webhookRotation.isRunning()) {
+      return ResponseEntity.status(HttpStatus.CONFLICT).body(webhookRotation.getStatus());
+    }
+    return ResponseEntity.accepted().body(webhookRotation.start(parallelism, restart));
+  }
+
+  /** @return the progress of the running or last webhook rotation */
+  @PreAuthorizeOnlyAdministrator
+  @GetMapping(ApplicationInfoAPI.ENDPOINT_BITBUCKET_WEBHOOKS_ROTATION)
+  public ResponseEntity<WebhookRotationStatus> bitbucketWebhookRotation() {
+    WebhookRotationStatus status = webhookRotation.getStatus();
+    return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+  }
+
+  /**
+   * Cancels the running webhook rotation after the repositories in flight, it is resumed by the
+   * next start
+   *
+   * @return the status of the rotation
+   */
+  @PreAuthorizeOnlyAdministrator
+  @DeleteMapping(ApplicationInfoAPI.ENDPOINT_BITBUCKET_WEBHOOKS_ROTATION)
+  public ResponseEntity<WebhookRotationStatus> cancelBitbucketWebhookRotation() {
+    webhookRotation.cancel();
+    WebhookRotationStatus status = webhookRotation.getStatus();
+    return status == null
+        ? ResponseEntity.notFound().build()
+        : ResponseEntity.accepted().body(status);
+  }
+
+  /**
+   * Lists the projects of the local bitbucket inventory, with their repositories and clone urls
+   *
+   * @param filter part of the project key or name, case insensitive. All projects if not given.
+   * @return freshness of the inventory and the matching projects
+   */
+  @PreAuthorizeOnlyAdministrator
+  @GetMapping(ApplicationInfoAPI.ENDPOINT_BITBUCKET_PROJECTS)
+  public ResponseEntity<Map<String, Object>> bitbucketProjects(
+      @RequestParam(value = "filter", required = false) String filter) {
+    Map<String, Object> projects = bitbucketInventoryStatus();
+    projects.put("inventory", bitbucketInventory.find(filter));
+    return ResponseEntity.ok(projects);
+  }
+
+  /**
+   * Syncs the local bitbucket inventory now, with the credentials of the logged in administrator
+   * if bitbucket is not accessed with a technical user
+   *
+   * @return freshness of the inventory and the number of changed projects
+   */
+  @PreAuthorizeOnlyAdministrator
+  @PostMapping(ApplicationInfoAPI.ENDPOINT_BITBUCKET_PROJECTS_SYNC)
+  public ResponseEntity<Map<String, Object>> syncBitbucketProjects() throws IOException {
+    int changes = bitbucketInventory.sync();
+    Map<String, Object> status = bitbucketInventoryStatus();
+    status.put("changes", changes);
+    return ResponseEntity.ok(status);
+  }
+
+  /**
+   * Rewrites the clone urls stored on all projects from the previous to the current technical
+   * user, after {@code bitbucket.technical.user} changed. Each project is rewritten under its
+   * project lock and only stored if a clone url changed.
+   *
+   * @param previousTechnicalUser the technical user the stored clone urls were built with
+   * @return the number of projects, the keys of the rewritten projects and the failures by key
+   */
+  @PreAuthorizeOnlyAdministrator
+  @PostMapping(ApplicationInfoAPI.ENDPOINT_BITBUCKET_CLONE_URLS_REWRITE)
+  public ResponseEntity<Map<String, Object>> rewriteBitbucketCloneUrls(
+      @RequestParam(value = "previousTechnicalUser") String previousTechnicalUser) {
+    List<String> rewritten = new ArrayList<>();
+    Map<String, String> failures = new TreeMap<>();
+    // the history is keyed by the stored file, not by the project key
+    Set<String> projectKeys = new TreeSet<>();
+    for (OpenProjectData stored : directStorage.listProjectHistory().values()) {
+      if (stored != null && stored.getProjectKey() != null) {
+        projectKeys.add(stored.getProjectKey());
+      }
+    }
+    for (String projectKey : projectKeys) {
+      try (ProjectLock projectLock = projectLockManager.lock(projectKey)) {
+        // read again under the lock, the project may have changed meanwhile
+        OpenProjectData project = directStorage.getProject(projectKey);
+        if (project != null && bitbucketAdapter.rewriteCloneUrls(project, previousTechnicalUser)) {
+          if (!directStorage.updateStoredProject(project)) {
+            throw new IOException("Stored project could not be updated");
+          }
+          rewritten.add(projectKey);
+        }
+      } catch (Exception e) {
+        logger.warn("Could not rewrite clone urls of project {}: {}", projectKey, e.getMessage());
+        failures.put(projectKey, e.getMessage());
+      }
+    }
+    logger.info(
+        "Rewrote clone urls of {} of {} projects from technical user {}",
+        rewritten.size(),
+        projectKeys.size(),
+        previousTechnicalUser);
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("projects", projectKeys.size());
+    result.put("rewritten", rewritten);
+    result.put("failures", failures);
+    return ResponseEntity.ok(result);
+  }
+
+  private Map<String, Object> bitbucketInventoryStatus() {
+    Map<String, Object> status = new HashMap<>();
+    status.put("fresh", bitbucketInventory.isFresh());
+    status.put("lastSync", bitbucketInventory.getLastSync());
+    status.put("projects", bitbucketInventory.size());
+    return status;
+  }
+
+  private Map<String, Object> jiraProjectMirrorStatus() {
+    Map<String, Object> status = new HashMap<>();
+    status.put("fresh", jiraProjectMirror.isFresh());
+    status.put("lastSync", jiraProjectMirror.getLastSync());
+    status.put("projects", jiraProjectMirror.size());
+    return status;
+  }
 }
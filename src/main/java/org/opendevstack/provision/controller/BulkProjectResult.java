@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.opendevstack.provision.model.OpenProjectData;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/** Result of a single project of a bulk provisioning, streamed back as one line of json */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkProjectResult {
+
+  private String projectKey;
+  private int status;
+  private boolean successful;
+  private OpenProjectData project;
+  private String error;
+  private long durationInMillis;
+
+  public BulkProjectResult() {}
+
+  public BulkProjectResult(String projectKey, int status, String error) {
+    this.projectKey = projectKey;
+    this.status = status;
+    this.successful = false;
+    this.error = error;
+  }
+
+  /**
+   * Creates the result from the response the single project provisioning returned
+   *
+   * @param projectKey the key of the project
+   * @param response the response of the single project provisioning
+   * @return the result of the project
+   */
+  public static BulkProjectResult of(String projectKey, ResponseEntity<Object> response) {
+    BulkProjectResult result = new BulkProjectResult();
+    result.setProjectKey(projectKey);
+    result.setStatus(response.getStatusCodeValue());
+    result.setSuccessful(response.getStatusCode().is2xxSuccessful());
+    if (response.getBody() instanceof OpenProjectData) {
+      result.setProject((OpenProjectData) response.getBody());
+    } else if (!result.isSuccessful()) {
+      result.setError(
+          response.getBody() == null
+              ? response.getStatusCode().getReasonPhrase()
+              : response.getBody().toString());
+    }
+    return result;
+  }
+
+  public static BulkProjectResult failed(String projectKey, Exception error) {
+    return new BulkProjectResult(
+        projectKey, HttpStatus.INTERNAL_SERVER_ERROR.value(), error.getMessage());
+  }
+
+  /**
+   * @param projectKey the key of the project
+   * @return the result of a project that was not provisioned, because too many bulk provisionings
+   *     are in progress
+   */
+  public static BulkProjectResult rejected(String projectKey) {
+    return new BulkProjectResult(
+        projectKey,
+        HttpStatus.SERVICE_UNAVAILABLE.value(),
+        "Too many bulk provisionings in progress, try again later");
+  }
+
+  public String getProjectKey() {
+    return projectKey;
+  }
+
+  public void setProjectKey(String projectKey) {
+    this.projectKey = projectKey;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public void setStatus(int status) {
+    this.status = status;
+  }
+
+  public boolean isSuccessful() {
+    return successful;
+  }
+
+  public void setSuccessful(boolean successful) {
+    this.successful = successful;
+  }
+
+  public OpenProjectData getProject() {
+    return project;
+  }
+
+  public void setProject(OpenProjectData project) {
+    this.project = project;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  public long getDurationInMillis() {
+    return durationInMillis;
+  }
+
+  public void setDurationInMillis(long durationInMillis) {
+    this.durationInMillis = durationInMillis;
+  }
+}
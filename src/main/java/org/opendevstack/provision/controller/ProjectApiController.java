@@ -19,9 +19,15 @@ import static org.opendevstack.provision.controller.CheckPreconditionsResponse.J
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.base.Preconditions;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import javax.annotation.PostConstruct;
 import org.opendevstack.provision.adapter.*;
@@ -34,17 +40,30 @@ import org.opendevstack.provision.adapter.exception.IdMgmtException;
 import org.opendevstack.provision.authentication.MissingCredentialsInfoException;
 import org.opendevstack.provision.authentication.PreAuthorizeAllRoles;
 import org.opendevstack.provision.authentication.PreAuthorizeOnlyAdministrator;
+import org.opendevstack.provision.config.ProvisioningExecutorConfig;
 import org.opendevstack.provision.controller.CheckPreconditionsResponse.JobStage;
 import org.opendevstack.provision.model.ExecutionJob;
 import org.opendevstack.provision.model.ExecutionsData;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.model.OpenProjectDataValidator;
+import org.opendevstack.provision.model.ProvisioningTiming;
 import org.opendevstack.provision.model.jenkins.Job;
+import org.opendevstack.provision.services.BaseServiceAdapter;
 import org.opendevstack.provision.services.MailAdapter;
+import org.opendevstack.provision.services.ProjectKeyGenerator;
 import org.opendevstack.provision.services.StorageAdapter;
 import org.opendevstack.provision.services.openshift.OpenshiftService;
 import org.opendevstack.provision.storage.IStorage;
+import org.opendevstack.provision.util.concurrent.BatchLookupContext;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.ProjectLockManager;
+import org.opendevstack.provision.util.concurrent.ProjectLockManager.ProjectLock;
+import org.opendevstack.provision.util.concurrent.TaskResult;
 import org.opendevstack.provision.util.exception.ProjectAlreadyExistsException;
+import org.opendevstack.provision.util.exception.ProjectLockException;
+import org.opendevstack.provision.util.tracing.ProvisioningTracer;
+import org.opendevstack.provision.util.tracing.Span;
+import org.opendevstack.provision.util.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -56,6 +75,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 /** Rest Controller to handle the process of project creation */
 @RestController
@@ -78,6 +98,11 @@ public class ProjectApiController {
 
   private static final String EMPTY_PROJECT_DESCRIPTION = "";
 
+  private static final ObjectWriter BULK_RESULT_WRITER = new ObjectMapper().writer();
+
+  private static final MediaType MEDIA_TYPE_TEXT_PLAIN_UTF8 =
+      new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
   private @Autowired IBugtrackerAdapter jiraAdapter;
 
   @Autowired(required = false)
@@ -101,6 +126,17 @@ public class ProjectApiController {
 
   @Autowired private IODSAuthnzAdapter manager;
 
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  /** Runs the projects of a bulk provisioning, never in the request thread */
+  private ParallelTaskRunner bulkTaskRunner;
+
+  @Autowired private ProjectLockManager projectLockManager;
+
+  @Autowired private ProvisioningTracer provisioningTracer;
+
+  @Autowired private ProjectKeyGenerator projectKeyGenerator;
+
   @Value("${openshift.project.upgrade}")
   private boolean ocUpgradeAllowed;
 
@@ -119,6 +155,27 @@ public class ProjectApiController {
   @Value("${services.openshift.enabled:true}")
   private boolean openshiftServiceEnable;
 
+  @Value("${provision.timing.max-records-per-project:50}")
+  private int maxTimingRecordsPerProject;
+
+  @Value("${provision.components.parallelism:4}")
+  private int componentsParallelism;
+
+  @Value("${provision.bulk.parallelism:4}")
+  private int bulkParallelism;
+
+  @Value("${provision.bulk.max-parallelism:16}")
+  private int bulkMaxParallelism;
+
+  @Value("${provision.bulk.timeout-in-seconds:3600}")
+  private long bulkTimeoutInSeconds;
+
+  @Autowired
+  public void setBulkTaskExecutor(
+      @Qualifier(ProvisioningExecutorConfig.BULK_PROVISIONING_TASK_EXECUTOR) Executor executor) {
+    this.bulkTaskRunner = new ParallelTaskRunner(executor, false);
+  }
+
   @PostConstruct
   public void postConstruct() {
     logger.info(
@@ -144,6 +201,165 @@ public class ProjectApiController {
           Optional<Boolean> onlyCheckPreconditions,
       @RequestHeader(value = "Content-Type", required = false) String contentType) {
 
+    return provisionProject(
+        newProject, onlyCheckPreconditions.orElse(Boolean.FALSE), contentType);
+  }
+
+  /**
+   * Create a batch of new projects. The projects are provisioned in parallel and share the lookups
+   * of their precondition checks, e.g. the listing of existing bugtracker and platform projects or
+   * the existence of groups and users. The result of every project is streamed back as one line
+   * of json as soon as its provisioning is done.
+   *
+   * <p>The provisioning goes on after the request is answered, when the credentials of the logged
+   * in user are gone. Bulk provisioning therefore needs a technical user for every adapter, else
+   * it is refused with {@link HttpStatus#PRECONDITION_FAILED}. If too many bulk provisionings are
+   * in progress, the projects are answered with {@link HttpStatus#SERVICE_UNAVAILABLE}.
+   *
+   * @param newProjects the {@link OpenProjectData} of all projects to create
+   * @param parallelism the number of projects provisioned at the same time, defaults to {@code
+   *     provision.bulk.parallelism}
+   * @return a stream of {@link BulkProjectResult}, one per project
+   */
+  @PreAuthorizeOnlyAdministrator
+  @PostMapping(value = "/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<ResponseBodyEmitter> addProjects(
+      @RequestBody List<OpenProjectData> newProjects,
+      @RequestParam(value = "parallelism", required = false) Integer parallelism,
+      @RequestParam(ADD_PROJECT_PARAM_NAME_ONLY_CHECK_PRECONDITIONS)
+          Optional<Boolean> onlyCheckPreconditions,
+      @RequestHeader(value = "Content-Type", required = false) String contentType) {
+
+    if (newProjects == null || newProjects.isEmpty()) {
+      return ResponseEntity.badRequest().build();
+    }
+    List<String> withoutTechnicalUser = adaptersWithoutTechnicalUser();
+    if (!withoutTechnicalUser.isEmpty()) {
+      logger.warn(
+          "Refused bulk provisioning, no technical user configured for {}", withoutTechnicalUser);
+      return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+    }
+
+    int effectiveParallelism =
+        Math.min(
+            bulkMaxParallelism, Math.max(1, parallelism == null ? bulkParallelism : parallelism));
+    boolean checkOnly = onlyCheckPreconditions.orElse(Boolean.FALSE);
+
+    Map<Integer, Callable<BulkProjectResult>> tasks = new LinkedHashMap<>();
+    Set<String> projectKeys = new HashSet<>();
+    for (int i = 0; i < newProjects.size(); i++) {
+      OpenProjectData newProject = newProjects.get(i);
+      String projectKey =
+          newProject == null || newProject.getProjectKey() == null
+              ? null
+              : newProject.getProjectKey().toUpperCase();
+
+      if (projectKey != null && !projectKeys.add(projectKey)) {
+        tasks.put(
+            i,
+            () ->
+                new BulkProjectResult(
+                    projectKey,
+                    HttpStatus.BAD_REQUEST.value(),
+                    format("Project with key %s is contained more than once", projectKey)));
+      } else {
+        tasks.put(
+            i,
+            () ->
+                BulkProjectResult.of(
+                    projectKey, provisionProject(newProject, checkOnly, contentType)));
+      }
+    }
+
+    logger.info(
+        "Start bulk provisioning of {} projects [parallelism={}, onlyCheckPreconditions={}]",
+        tasks.size(),
+        effectiveParallelism,
+        checkOnly);
+
+    ResponseBodyEmitter emitter =
+        new ResponseBodyEmitter(TimeUnit.SECONDS.toMillis(bulkTimeoutInSeconds));
+
+    BatchLookupContext lookupContext = new BatchLookupContext();
+    BatchLookupContext.setCurrent(lookupContext);
+    try {
+      bulkTaskRunner
+          .submitAll(
+              tasks,
+              effectiveParallelism,
+              (index, taskResult) -> {
+                String projectKey =
+                    newProjects.get(index) == null ? null : newProjects.get(index).getProjectKey();
+                BulkProjectResult result;
+                if (taskResult.isSuccessful()) {
+                  result = taskResult.getValue();
+                } else if (taskResult.getError() instanceof RejectedExecutionException) {
+                  result = BulkProjectResult.rejected(projectKey);
+                } else {
+                  result = BulkProjectResult.failed(projectKey, taskResult.getError());
+                }
+                result.setDurationInMillis(taskResult.getDurationInMillis());
+                sendBulkProjectResult(emitter, result);
+              })
+          .whenComplete(
+              (results, error) -> {
+                logger.info(
+                    "Done with bulk provisioning of {} projects [lookupHits={}, lookupMisses={}]",
+                    tasks.size(),
+                    lookupContext.getHits(),
+                    lookupContext.getMisses());
+                emitter.complete();
+              });
+    } finally {
+      BatchLookupContext.setCurrent(null);
+    }
+
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+  }
+
+  /** @return the names of the adapters that call their service with the logged in user */
+  private List<String> adaptersWithoutTechnicalUser() {
+    List<Object> adapters = new ArrayList<>();
+    adapters.add(jiraAdapter);
+    adapters.add(bitbucketAdapter);
+    adapters.add(jenkinsPipelineAdapter);
+    if (isConfluenceAdapterEnable()) {
+      adapters.add(confluenceAdapter);
+    }
+    List<String> names = new ArrayList<>();
+    for (Object adapter : adapters) {
+      if (adapter instanceof BaseServiceAdapter
+          && !((BaseServiceAdapter) adapter).isUseTechnicalUser()) {
+        names.add(adapter.getClass().getSimpleName());
+      }
+    }
+    return names;
+  }
+
+  private void sendBulkProjectResult(ResponseBodyEmitter emitter, BulkProjectResult result) {
+    try {
+      emitter.send(
+          BULK_RESULT_WRITER.writeValueAsString(result) + "\n", MEDIA_TYPE_TEXT_PLAIN_UTF8);
+    } catch (IOException | IllegalStateException e) {
+      // the client went away, the provisioning of the remaining projects goes on anyway
+      logger.warn(
+          "Could not send bulk provisioning result of project {}: {}",
+          result.getProjectKey(),
+          e.getMessage());
+    }
+  }
+
+  /**
+   * Create a single project, used by {@link #addProject} and {@link #addProjects}
+   *
+   * @param newProject the {@link OpenProjectData} containing the request information
+   * @param onlyCheckPreconditions if true only the preconditions are checked
+   * @param contentType the content type of the request, used to format errors
+   * @return the created project or the error
+   */
+  private ResponseEntity<Object> provisionProject(
+      OpenProjectData newProject, boolean onlyCheckPreconditions, String contentType) {
+
     if (newProject == null
         || newProject.getProjectKey() == null
         || newProject.getProjectKey().trim().length() == 0
@@ -166,6 +382,20 @@ public class ProjectApiController {
 
     newProject.setProjectKey(newProject.getProjectKey().toUpperCase());
     MDC.put(STR_LOGFILE_KEY, newProject.getProjectKey());
+    Span rootSpan =
+        provisioningTracer.startTrace(
+            onlyCheckPreconditions ? "checkPreconditions" : "addProject",
+            newProject.getProjectKey());
+
+    ProjectLock projectLock;
+    try {
+      final String projectKey = newProject.getProjectKey();
+      projectLock = Tracing.inSpan("projectLock", () -> projectLockManager.lock(projectKey));
+    } catch (ProjectLockException e) {
+      rootSpan.setError(e).close();
+      MDC.remove(STR_LOGFILE_KEY);
+      return projectLocked(e);
+    }
 
     try {
       logger.debug(
@@ -173,8 +403,12 @@ public class ProjectApiController {
           new ObjectMapper().writer().withDefaultPrettyPrinter().writeValueAsString(newProject));
 
       // verify the project does NOT exist
-      if (directStorage.getProject(newProject.getProjectKey()) != null
-          || directStorage.getProjectByName(newProject.getProjectName()) != null) {
+      final OpenProjectData projectToCheck = newProject;
+      if (Tracing.inSpan(
+          "storage.projectExists",
+          () ->
+              directStorage.getProject(projectToCheck.getProjectKey()) != null
+                  || directStorage.getProjectByName(projectToCheck.getProjectName()) != null)) {
         {
           throw new ProjectAlreadyExistsException(
               format(
@@ -192,7 +426,7 @@ public class ProjectApiController {
               "Do not validate special bugtracker permission set, "
                   + "because special permission sets are disabled in configuration");
         } else {
-          try {
+          try (Span span = Tracing.startSpan("idm.validateIdSettingsOfProject")) {
             projectIdentityMgmtAdapter.validateIdSettingsOfProject(newProject);
           } catch (IdMgmtException e) {
             preconditionsFailures.add(
@@ -202,7 +436,8 @@ public class ProjectApiController {
       }
 
       // If preconditions check fails an exception is thrown and cough below in try/catch block
-      preconditionsFailures.addAll(checkPreconditions(newProject));
+      preconditionsFailures.addAll(
+          Tracing.inSpan("checkPreconditions", () -> checkPreconditions(projectToCheck)));
 
       // if list is not empty the precondition check failed
       if (!preconditionsFailures.isEmpty()) {
@@ -216,7 +451,7 @@ public class ProjectApiController {
             .body(body);
       }
 
-      if (onlyCheckPreconditions.orElse(Boolean.FALSE)) {
+      if (onlyCheckPreconditions) {
 
         return ResponseEntity.ok(
             CheckPreconditionsResponse.successful(contentType, CHECK_PRECONDITIONS));
@@ -227,7 +462,11 @@ public class ProjectApiController {
 
       if (newProject.isBugtrackerSpace()) {
         // create the bugtracker project
-        newProject = jiraAdapter.createBugtrackerProjectForODSProject(newProject);
+        final OpenProjectData bugtrackerProject = newProject;
+        newProject =
+            Tracing.inSpan(
+                "jira.createBugtrackerProject",
+                () -> jiraAdapter.createBugtrackerProjectForODSProject(bugtrackerProject));
 
         Preconditions.checkNotNull(
             newProject.getBugtrackerUrl(),
@@ -235,8 +474,13 @@ public class ProjectApiController {
 
         // create confluence space
         if (isConfluenceAdapterEnable()) {
+          final OpenProjectData collaborationProject = newProject;
           newProject.setCollaborationSpaceUrl(
-              confluenceAdapter.createCollaborationSpaceForODSProject(newProject));
+              Tracing.inSpan(
+                  "confluence.createCollaborationSpace",
+                  () ->
+                      confluenceAdapter.createCollaborationSpaceForODSProject(
+                          collaborationProject)));
 
           Preconditions.checkNotNull(
               newProject.getCollaborationSpaceUrl(),
@@ -249,26 +493,39 @@ public class ProjectApiController {
       }
 
       // create the delivery chain, including scm repos, and platform project
-      newProject = createDeliveryChain(newProject);
-
-      // store the project data
-      String filePath = directStorage.storeProject(newProject);
+      final OpenProjectData deliveryChainProject = newProject;
+      newProject =
+          Tracing.inSpan("createDeliveryChain", () -> createDeliveryChain(deliveryChainProject));
+
+      // store the project data, including the timing of the provisioning
+      newProject.addProvisioningTiming(
+          provisioningTracer.timingOf(rootSpan, ProvisioningTiming.OPERATION_CREATE),
+          maxTimingRecordsPerProject);
+      final OpenProjectData storedProject = newProject;
+      String filePath =
+          Tracing.inSpan("storage.storeProject", () -> directStorage.storeProject(storedProject));
       if (filePath != null) {
         logger.debug("Project {} successfully stored: {}", newProject.getProjectKey(), filePath);
       }
+      projectKeyGenerator.taken(newProject.getProjectKey());
 
       // notify user via mail of project creation with embedding links
-      mailAdapter.notifyUsersAboutProject(newProject);
+      try (Span span = Tracing.startSpan("mail.notifyUsersAboutProject")) {
+        mailAdapter.notifyUsersAboutProject(newProject);
+      }
 
       return ResponseEntity.ok().body(newProject);
     } catch (ProjectAlreadyExistsException exAlreadyExists) {
+      rootSpan.setError(exAlreadyExists);
       return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
           .body(exAlreadyExists.getMessage());
     } catch (CreateProjectPreconditionException cppe) {
+      rootSpan.setError(cppe);
       return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
           .header(RETRY_AFTER_HEADER, RETRY_AFTER_INTERVAL_IN_SECONDS)
           .body(formatError(contentType, CHECK_PRECONDITIONS, cppe.getMessage()));
     } catch (Exception exProvisionNew) {
+      rootSpan.setError(exProvisionNew);
       Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> cleanupResults =
           cleanup(LIFECYCLE_STAGE.INITIAL_CREATION, newProject);
 
@@ -286,6 +543,8 @@ public class ProjectApiController {
       logger.error(error, exProvisionNew);
       return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
     } finally {
+      projectLock.close();
+      rootSpan.close();
       MDC.remove(STR_LOGFILE_KEY);
     }
   }
@@ -324,23 +583,32 @@ public class ProjectApiController {
 
     if (newProject.isBugtrackerSpace()) {
 
-      List<IServiceAdapter> adapters = new ArrayList<>();
-      adapters.add(jiraAdapter);
+      Map<String, IServiceAdapter> adapters = new LinkedHashMap<>();
+      adapters.put("jira", jiraAdapter);
 
       if (isConfluenceAdapterEnable()) {
-        adapters.add(confluenceAdapter);
+        adapters.put("confluence", confluenceAdapter);
       }
 
-      for (IServiceAdapter adapter : adapters) {
-        results.addAll(adapter.checkCreateProjectPreconditions(newProject));
+      for (Map.Entry<String, IServiceAdapter> adapter : adapters.entrySet()) {
+        results.addAll(
+            Tracing.inSpan(
+                adapter.getKey() + ".checkCreateProjectPreconditions",
+                () -> adapter.getValue().checkCreateProjectPreconditions(newProject)));
       }
     }
 
     if (newProject.isPlatformRuntime()) {
-      results.addAll(bitbucketAdapter.checkCreateProjectPreconditions(newProject));
+      results.addAll(
+          Tracing.inSpan(
+              "bitbucket.checkCreateProjectPreconditions",
+              () -> bitbucketAdapter.checkCreateProjectPreconditions(newProject)));
 
       if (isOpenshiftServiceEnable() && null != openshiftService) {
-        results.addAll(openshiftService.checkCreateProjectPreconditions(newProject));
+        results.addAll(
+            Tracing.inSpan(
+                "openshift.checkCreateProjectPreconditions",
+                () -> openshiftService.checkCreateProjectPreconditions(newProject)));
       }
     }
 
@@ -376,6 +644,17 @@ public class ProjectApiController {
       return ResponseEntity.badRequest().body("Project key is mandatory to call update project!");
     }
     MDC.put(STR_LOGFILE_KEY, updatedProject.getProjectKey());
+    Span rootSpan = provisioningTracer.startTrace("updateProject", updatedProject.getProjectKey());
+
+    ProjectLock projectLock;
+    try {
+      final String projectKey = updatedProject.getProjectKey();
+      projectLock = Tracing.inSpan("projectLock", () -> projectLockManager.lock(projectKey));
+    } catch (ProjectLockException e) {
+      rootSpan.setError(e).close();
+      MDC.remove(STR_LOGFILE_KEY);
+      return projectLocked(e);
+    }
 
     logger.debug("Update project {}", updatedProject.getProjectKey());
     try {
@@ -386,8 +665,9 @@ public class ProjectApiController {
               .withDefaultPrettyPrinter()
               .writeValueAsString(updatedProject));
 
+      final String projectKey = updatedProject.getProjectKey();
       OpenProjectData storedExistingProject =
-          directStorage.getProject(updatedProject.getProjectKey());
+          Tracing.inSpan("storage.getProject", () -> directStorage.getProject(projectKey));
 
       if (storedExistingProject == null) {
         return ResponseEntity.notFound().build();
@@ -434,7 +714,9 @@ public class ProjectApiController {
         updatedProject.setProjectReadonlyGroup(storedExistingProject.getProjectReadonlyGroup());
       }
 
-      updatedProject = createDeliveryChain(updatedProject);
+      final OpenProjectData deliveryChainProject = updatedProject;
+      updatedProject =
+          Tracing.inSpan("createDeliveryChain", () -> createDeliveryChain(deliveryChainProject));
 
       /*
        * add the already existing data /provisioned/ + we have to add the scm url here, in case we
@@ -459,20 +741,30 @@ public class ProjectApiController {
       // add the new executions - so people can track what's going on
       storedExistingProject.setLastExecutionJobs(updatedProject.getLastExecutionJobs());
 
-      // store the updated project
-      if (directStorage.updateStoredProject(storedExistingProject)) {
+      // store the updated project, including the timing of the update
+      storedExistingProject.addProvisioningTiming(
+          provisioningTracer.timingOf(rootSpan, ProvisioningTiming.OPERATION_UPDATE),
+          maxTimingRecordsPerProject);
+      final OpenProjectData projectToStore = storedExistingProject;
+      if (Tracing.inSpan(
+          "storage.updateStoredProject", () -> directStorage.updateStoredProject(projectToStore))) {
         logger.debug("project {} successfully updated", updatedProject.getProjectKey());
       }
 
       // notify user via mail of project updates with embedding links
-      mailAdapter.notifyUsersAboutProject(storedExistingProject);
+      try (Span span = Tracing.startSpan("mail.notifyUsersAboutProject")) {
+        mailAdapter.notifyUsersAboutProject(storedExistingProject);
+      }
 
       return ResponseEntity.ok().body(storedExistingProject);
     } catch (IllegalArgumentException iae) {
+      rootSpan.setError(iae);
       return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(iae.getMessage());
     } catch (MissingCredentialsInfoException ex) {
+      rootSpan.setError(ex);
       return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
     } catch (Exception exProvision) {
+      rootSpan.setError(exProvision);
       Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> cleanupResults =
           cleanup(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION, updatedProject);
 
@@ -490,6 +782,8 @@ public class ProjectApiController {
       logger.error(error);
       return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
     } finally {
+      projectLock.close();
+      rootSpan.close();
       MDC.remove(STR_LOGFILE_KEY);
     }
   }
@@ -534,17 +828,27 @@ public class ProjectApiController {
 
     if (project.getScmvcsUrl() == null) {
       // create the bugtracker project
-      project.setScmvcsUrl(bitbucketAdapter.createSCMProjectForODSProject(project));
+      final OpenProjectData scmProject = project;
+      project.setScmvcsUrl(
+          Tracing.inSpan(
+              "bitbucket.createSCMProject",
+              () -> bitbucketAdapter.createSCMProjectForODSProject(scmProject)));
 
       Preconditions.checkNotNull(
           project.getScmvcsUrl(), bitbucketAdapter.getClass() + " did not return scmvcs url");
 
       project.setRepositories(
-          bitbucketAdapter.createAuxiliaryRepositoriesForODSProject(
-              project, auxiliaryRepositories));
+          Tracing.inSpan(
+              "bitbucket.createAuxiliaryRepositories",
+              () ->
+                  bitbucketAdapter.createAuxiliaryRepositoriesForODSProject(
+                      scmProject, auxiliaryRepositories)));
 
       // provision platform projects
-      project = jenkinsPipelineAdapter.createPlatformProjects(project);
+      project =
+          Tracing.inSpan(
+              "jenkins.createPlatformProjects",
+              () -> jenkinsPipelineAdapter.createPlatformProjects(scmProject));
     }
 
     int newQuickstarters =
@@ -553,15 +857,22 @@ public class ProjectApiController {
     int existingComponentRepos =
         (project.getRepositories() == null ? 0 : project.getRepositories().size());
 
-    // create repositories dependent of the chosen quickstarters
-    Map<String, Map<URL_TYPE, String>> newComponentRepos =
-        bitbucketAdapter.createComponentRepositoriesForODSProject(project);
-    if (newComponentRepos != null) {
-      if (project.getRepositories() != null) {
-        project.getRepositories().putAll(newComponentRepos);
-      } else {
-        project.setRepositories(newComponentRepos);
-      }
+    List<String> auxiliariesToExclude = new ArrayList<>();
+    final String projectKey = project.getProjectKey();
+    Arrays.asList(auxiliaryRepositories)
+        .forEach(
+            repoName ->
+                auxiliariesToExclude.add(
+                    bitbucketAdapter.createRepoNameFromComponentName(projectKey, repoName)));
+
+    if (project.getLastExecutionJobs() == null) {
+      project.setLastExecutionJobs(new ArrayList<>());
+    }
+
+    if (newQuickstarters > 1 && componentsParallelism > 1) {
+      provisionComponentsInParallel(project, auxiliariesToExclude);
+    } else {
+      provisionComponents(project, auxiliariesToExclude);
     }
 
     logger.debug(
@@ -577,21 +888,43 @@ public class ProjectApiController {
                 + "for new quickstarters, existing repos: %s",
             bitbucketAdapter.getClass(), newQuickstarters, existingComponentRepos));
 
+    return project;
+  }
+
+  /**
+   * Runs the component pipeline (repository incl. webhooks and permissions, bugtracker component,
+   * quickstarter job) for all quickstarters of the project
+   *
+   * @param project the project, amended with the created repositories and job executions
+   * @param auxiliariesToExclude repositories no bugtracker component is created for
+   * @return the amended project
+   * @throws IOException in case a step failed
+   */
+  private OpenProjectData provisionComponents(
+      OpenProjectData project, List<String> auxiliariesToExclude) throws IOException {
+
+    // create repositories dependent of the chosen quickstarters
+    Map<String, Map<URL_TYPE, String>> newComponentRepos =
+        Tracing.inSpan(
+            "bitbucket.createComponentRepositories",
+            () -> bitbucketAdapter.createComponentRepositoriesForODSProject(project));
+    if (newComponentRepos != null) {
+      if (project.getRepositories() != null) {
+        project.getRepositories().putAll(newComponentRepos);
+      } else {
+        project.setRepositories(newComponentRepos);
+      }
+    }
+
     // based on the (changed) repository names, update the
     // quickstarters
     addRepositoryUrlsToQuickstarters(project);
 
-    List<String> auxiliariesToExclude = new ArrayList<>();
-    final String projectKey = project.getProjectKey();
-    Arrays.asList(auxiliaryRepositories)
-        .forEach(
-            repoName ->
-                auxiliariesToExclude.add(
-                    bitbucketAdapter.createRepoNameFromComponentName(projectKey, repoName)));
-
     // create jira components from newly created repos
     if (project.isBugtrackerSpace()) {
-      jiraAdapter.createComponentsForProjectRepositories(project, auxiliariesToExclude);
+      Tracing.inSpan(
+          "jira.createComponents",
+          () -> jiraAdapter.createComponentsForProjectRepositories(project, auxiliariesToExclude));
     } else {
       logger.info(
           "Do not create bugtracker components for {}, since it has no bugtragger space configured!",
@@ -600,11 +933,10 @@ public class ProjectApiController {
 
     // add the long running execution links from the
     // IJobExecutionAdapter, so the consumer can track them
-    if (project.getLastExecutionJobs() == null) {
-      project.setLastExecutionJobs(new ArrayList<>());
-    }
     List<ExecutionsData> jobs =
-        jenkinsPipelineAdapter.provisionComponentsBasedOnQuickstarters(project);
+        Tracing.inSpan(
+            "jenkins.provisionComponents",
+            () -> jenkinsPipelineAdapter.provisionComponentsBasedOnQuickstarters(project));
     logger.debug("New quickstarter job executions: {}", jobs.size());
 
     for (ExecutionsData singleJob : jobs) {
@@ -616,6 +948,109 @@ public class ProjectApiController {
     return project;
   }
 
+  /**
+   * Runs the component pipeline of every quickstarter concurrently, with at most {@code
+   * provision.components.parallelism} components at the same time. The steps of one component
+   * still run in order. Repositories and job executions of all components, including the failed
+   * ones, are added to the project before an error is thrown, so that the cleanup removes
+   * everything that was created - and keeps the repositories that were only reconciled.
+   *
+   * @param project the project, amended with the created repositories and job executions
+   * @param auxiliariesToExclude repositories no bugtracker component is created for
+   * @throws IOException in case the pipeline of at least one component failed
+   */
+  private void provisionComponentsInParallel(
+      OpenProjectData project, List<String> auxiliariesToExclude) throws IOException {
+
+    Map<Integer, OpenProjectData> components = new LinkedHashMap<>();
+    Map<Integer, Callable<OpenProjectData>> tasks = new LinkedHashMap<>();
+    for (Map<String, String> quickstarter : project.getQuickstarters()) {
+      OpenProjectData component = createComponentProject(project, quickstarter);
+      int index = components.size();
+      components.put(index, component);
+      tasks.put(
+          index,
+          () ->
+              Tracing.inSpan(
+                  "component " + quickstarter.get(OpenProjectData.COMPONENT_ID_KEY),
+                  () -> provisionComponents(component, auxiliariesToExclude)));
+    }
+
+    logger.debug(
+        "Provision {} components of project {} in parallel [parallelism={}]",
+        tasks.size(),
+        project.getProjectKey(),
+        componentsParallelism);
+
+    Map<Integer, TaskResult<OpenProjectData>> results =
+        parallelTaskRunner.invokeAll(tasks, componentsParallelism);
+
+    if (project.getRepositories() == null) {
+      project.setRepositories(new HashMap<>());
+    }
+
+    List<String> failures = new ArrayList<>();
+    for (Map.Entry<Integer, OpenProjectData> entry : components.entrySet()) {
+      OpenProjectData component = entry.getValue();
+      if (component.getRepositories() != null) {
+        project.getRepositories().putAll(component.getRepositories());
+      }
+      // repositories that existed before the run must be known to the cleanup
+      project.getReconciledRepositories().addAll(component.getReconciledRepositories());
+      project.getCreatedBugtrackerComponents().addAll(component.getCreatedBugtrackerComponents());
+      project.getLastExecutionJobs().addAll(component.getLastExecutionJobs());
+
+      TaskResult<OpenProjectData> result = results.get(entry.getKey());
+      if (!result.isSuccessful()) {
+        String componentId =
+            component.getQuickstarters().get(0).get(OpenProjectData.COMPONENT_ID_KEY);
+        logger.error(
+            "Provisioning of component {} of project {} failed!",
+            componentId,
+            project.getProjectKey(),
+            result.getError());
+        failures.add(format("%s: %s", componentId, result.getError().getMessage()));
+      }
+    }
+
+    if (!failures.isEmpty()) {
+      throw new IOException(
+          format(
+              "Provisioning of %s of %s components failed %s",
+              failures.size(), components.size(), failures));
+    }
+  }
+
+  /**
+   * @param project the project the component belongs to
+   * @param quickstarter the quickstarter of the component
+   * @return a copy of the project that only contains the given quickstarter and no repositories
+   */
+  private static OpenProjectData createComponentProject(
+      OpenProjectData project, Map<String, String> quickstarter) {
+    OpenProjectData component = new OpenProjectData();
+    component.setProjectKey(project.getProjectKey());
+    component.setProjectName(project.getProjectName());
+    component.setDescription(project.getDescription());
+    component.setProjectType(project.getProjectType());
+    component.setWebhookProxySecret(project.getWebhookProxySecret());
+    component.setCdUser(project.getCdUser());
+    component.setBugtrackerSpace(project.isBugtrackerSpace());
+    component.setPlatformRuntime(project.isPlatformRuntime());
+    component.setBugtrackerUrl(project.getBugtrackerUrl());
+    component.setScmvcsUrl(project.getScmvcsUrl());
+    component.setSpecialPermissionSet(project.isSpecialPermissionSet());
+    component.setSpecialPermissionSchemeId(project.getSpecialPermissionSchemeId());
+    component.setProjectAdminUser(project.getProjectAdminUser());
+    component.setProjectAdminGroup(project.getProjectAdminGroup());
+    component.setProjectUserGroup(project.getProjectUserGroup());
+    component.setProjectReadonlyGroup(project.getProjectReadonlyGroup());
+    // the quickstarter map is shared, so that the project sees the options added by the adapters
+    component.setQuickstarters(new ArrayList<>(List.of(quickstarter)));
+    component.setLastExecutionJobs(new ArrayList<>());
+    return component;
+  }
+
   /**
    * Get a list with all projects in the ODS prov system. In this case the quickstarters {@link
    * OpenProjectData#getQuickstarters} contain also the description of the quickstarter that was
@@ -800,7 +1235,8 @@ public class ProjectApiController {
   }
 
   /**
-   * Generate the Key on server side
+   * Generate the Key on server side. The first key that is free according to the {@link
+   * ProjectKeyGenerator} is returned.
    *
    * @param name the project name to generate the key from
    * @return the generated key
@@ -810,10 +1246,32 @@ public class ProjectApiController {
   public ResponseEntity<Map<String, String>> generateKey(
       @RequestParam(value = "name") String name) {
     Map<String, String> proj = new HashMap<>();
-    proj.put("projectKey", jiraAdapter.buildProjectKey(name));
+    List<String> suggestions = projectKeyGenerator.suggest(name, 1);
+    proj.put(
+        "projectKey",
+        suggestions.isEmpty() ? jiraAdapter.buildProjectKey(name) : suggestions.get(0));
     return ResponseEntity.ok(proj);
   }
 
+  /**
+   * Propose several free keys for a project name in one call. The keys are checked against a local
+   * index of the existing projects, so the key must still be validated before the provisioning.
+   *
+   * @param name the project name to derive the keys from
+   * @param count the number of keys to propose
+   * @return the proposed keys and whether the index is up to date
+   */
+  @PreAuthorizeAllRoles
+  @RequestMapping(method = RequestMethod.GET, value = "/key/suggest")
+  public ResponseEntity<Map<String, Object>> suggestKeys(
+      @RequestParam(value = "name") String name,
+      @RequestParam(value = "count", defaultValue = "5") int count) {
+    Map<String, Object> result = new HashMap<>();
+    result.put("projectKeys", projectKeyGenerator.suggest(name, count));
+    result.put("indexFresh", projectKeyGenerator.isFresh());
+    return ResponseEntity.ok(result);
+  }
+
   /**
    * @param project
    * @return empty String if parameter is null!
@@ -854,35 +1312,40 @@ public class ProjectApiController {
         return;
       }
 
-      option.put("git_url_ssh", repoUrls.get(URL_TYPE.URL_CLONE_SSH));
-      option.put("git_url_http", repoUrls.get(URL_TYPE.URL_CLONE_HTTP));
+      option.put(OpenProjectData.COMPONENT_GIT_URL_SSH_KEY, repoUrls.get(URL_TYPE.URL_CLONE_SSH));
+      option.put(
+          OpenProjectData.COMPONENT_GIT_URL_HTTP_KEY, repoUrls.get(URL_TYPE.URL_CLONE_HTTP));
     }
   }
 
   @PreAuthorizeOnlyAdministrator
   @RequestMapping(method = RequestMethod.DELETE, value = "/{id}")
   public ResponseEntity<Object> deleteProject(@PathVariable String id) throws IOException {
-    OpenProjectData project = filteredStorage.getFilteredSingleProject(id);
-
     if (!isCleanupAllowed()) {
       throw new IOException("Cleanup of projects is NOT allowed");
     }
 
-    if (project == null) {
-      return ResponseEntity.notFound().build();
-    }
+    try (ProjectLock projectLock = projectLockManager.lock(id)) {
+      OpenProjectData project = filteredStorage.getFilteredSingleProject(id);
 
-    Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> leftovers =
-        cleanup(LIFECYCLE_STAGE.INITIAL_CREATION, project);
+      if (project == null) {
+        return ResponseEntity.notFound().build();
+      }
 
-    if (!leftovers.isEmpty()) {
-      String error =
-          format(
-              "Could not delete all components of project %s - leftovers %s",
-              project.getProjectKey(), leftovers);
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
-    } else {
-      return ResponseEntity.ok().build();
+      Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> leftovers =
+          cleanup(LIFECYCLE_STAGE.INITIAL_CREATION, project);
+
+      if (!leftovers.isEmpty()) {
+        String error =
+            format(
+                "Could not delete all components of project %s - leftovers %s",
+                project.getProjectKey(), leftovers);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+      } else {
+        return ResponseEntity.ok().build();
+      }
+    } catch (ProjectLockException e) {
+      return projectLocked(e);
     }
   }
 
@@ -898,33 +1361,53 @@ public class ProjectApiController {
     Preconditions.checkNotNull(
         deletableComponents.getQuickstarters(), "No quickstarters to delete are passed");
 
-    OpenProjectData project =
-        filteredStorage.getFilteredSingleProject(deletableComponents.getProjectKey());
+    Preconditions.checkNotNull(
+        deletableComponents.getProjectKey(), "No project key of components to delete is passed");
 
-    if (project == null) {
-      return ResponseEntity.notFound().build();
-    }
+    // the stored project is read and written back under the lock, so that concurrent updates of
+    // the same project do not get lost
+    try (ProjectLock projectLock = projectLockManager.lock(deletableComponents.getProjectKey())) {
+      OpenProjectData project =
+          filteredStorage.getFilteredSingleProject(deletableComponents.getProjectKey());
 
-    // Quick fix to pass the webhook proxy secret from project
-    deletableComponents.setWebhookProxySecret(project.getWebhookProxySecret());
+      if (project == null) {
+        return ResponseEntity.notFound().build();
+      }
 
-    Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> leftovers =
-        cleanup(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION, deletableComponents);
+      // Quick fix to pass the webhook proxy secret from project
+      deletableComponents.setWebhookProxySecret(project.getWebhookProxySecret());
 
-    if (!leftovers.isEmpty()) {
-      String error =
-          format(
-              "Could not delete all components of project " + " %s - leftovers %s",
-              project.getProjectKey(), leftovers);
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
-    } else {
-      project.removeQuickstartersFromProject(deletableComponents.getQuickstarters());
-      project.setLastExecutionJobs(deletableComponents.getLastExecutionJobs());
-      this.directStorage.updateStoredProject(project);
-      return ResponseEntity.ok(project);
+      Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> leftovers =
+          cleanup(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION, deletableComponents);
+
+      if (!leftovers.isEmpty()) {
+        String error =
+            format(
+                "Could not delete all components of project " + " %s - leftovers %s",
+                project.getProjectKey(), leftovers);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+      } else {
+        project.removeQuickstartersFromProject(deletableComponents.getQuickstarters());
+        project.setLastExecutionJobs(deletableComponents.getLastExecutionJobs());
+        this.directStorage.updateStoredProject(project);
+        return ResponseEntity.ok(project);
+      }
+    } catch (ProjectLockException e) {
+      return projectLocked(e);
     }
   }
 
+  /**
+   * @param e the exception raised while waiting for the lock of a project
+   * @return a conflict response, telling the client to retry later
+   */
+  private static ResponseEntity<Object> projectLocked(ProjectLockException e) {
+    logger.info(e.getMessage());
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+        .header(RETRY_AFTER_HEADER, RETRY_AFTER_INTERVAL_IN_SECONDS)
+        .body(e.getMessage());
+  }
+
   /**
    * In case something breaks during provisioniong, this method is called
    *
@@ -940,25 +1423,39 @@ public class ProjectApiController {
 
     logger.error("Starting cleanup of project {} in phase {}", project.getProjectKey(), stage);
 
-    Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> notCleanedUpComponents = new HashMap<>();
+    Span cleanupSpan =
+        provisioningTracer
+            .startTrace("cleanup", project.getProjectKey())
+            .setAttribute("lifecycle.stage", stage);
+    try {
+      Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> notCleanedUpComponents = new HashMap<>();
 
-    notCleanedUpComponents.putAll(jenkinsPipelineAdapter.cleanup(stage, project));
+      notCleanedUpComponents.putAll(
+          Tracing.inSpan("jenkins.cleanup", () -> jenkinsPipelineAdapter.cleanup(stage, project)));
 
-    notCleanedUpComponents.putAll(bitbucketAdapter.cleanup(stage, project));
+      notCleanedUpComponents.putAll(
+          Tracing.inSpan("bitbucket.cleanup", () -> bitbucketAdapter.cleanup(stage, project)));
 
-    if (isConfluenceAdapterEnable()) {
-      notCleanedUpComponents.putAll(confluenceAdapter.cleanup(stage, project));
-    }
+      if (isConfluenceAdapterEnable()) {
+        notCleanedUpComponents.putAll(
+            Tracing.inSpan("confluence.cleanup", () -> confluenceAdapter.cleanup(stage, project)));
+      }
 
-    notCleanedUpComponents.putAll(jiraAdapter.cleanup(stage, project));
+      notCleanedUpComponents.putAll(
+          Tracing.inSpan("jira.cleanup", () -> jiraAdapter.cleanup(stage, project)));
 
-    notCleanedUpComponents.putAll(filteredStorage.cleanup(stage, project));
+      notCleanedUpComponents.putAll(
+          Tracing.inSpan("storage.cleanup", () -> filteredStorage.cleanup(stage, project)));
 
-    logger.debug(
-        "Overall cleanup status of project: {} components left",
-        notCleanedUpComponents.size() == 0 ? 0 : notCleanedUpComponents);
+      logger.debug(
+          "Overall cleanup status of project: {} components left",
+          notCleanedUpComponents.size() == 0 ? 0 : notCleanedUpComponents);
 
-    return notCleanedUpComponents;
+      cleanupSpan.setAttribute("cleanup.leftovers", notCleanedUpComponents);
+      return notCleanedUpComponents;
+    } finally {
+      cleanupSpan.close();
+    }
   }
 
   public void setCleanupAllowed(boolean cleanupAllowed) {
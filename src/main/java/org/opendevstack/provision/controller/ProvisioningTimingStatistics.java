@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+import java.util.stream.LongStream;
+import org.opendevstack.provision.model.OpenProjectData;
+import org.opendevstack.provision.model.ProvisioningTiming;
+import org.opendevstack.provision.model.ProvisioningTiming.StepTiming;
+
+/**
+ * Percentiles of the timing records stored with the projects, per step (adapter). The overall
+ * duration of the provisionings is reported as step {@value #STEP_TOTAL}.
+ */
+public class ProvisioningTimingStatistics {
+
+  public static final String STEP_TOTAL = "total";
+
+  private String operation;
+  private long since;
+  private int provisionings;
+  private Map<String, StepStatistics> steps = new TreeMap<>();
+
+  /**
+   * @param projects the projects with their timing records
+   * @param operation the operation to aggregate, or null for all operations
+   * @param since only aggregate provisionings started at or after this time, in millis since epoch
+   * @return the statistics
+   */
+  public static ProvisioningTimingStatistics of(
+      Collection<OpenProjectData> projects, String operation, long since) {
+    List<ProvisioningTiming> timings = new ArrayList<>();
+    for (OpenProjectData project : projects) {
+      if (project == null || project.getProvisioningTimings() == null) {
+        continue;
+      }
+      for (ProvisioningTiming timing : project.getProvisioningTimings()) {
+        if ((operation == null || operation.equalsIgnoreCase(timing.getOperation()))
+            && timing.getStartedAt() >= since) {
+          timings.add(timing);
+        }
+      }
+    }
+
+    ProvisioningTimingStatistics statistics = new ProvisioningTimingStatistics();
+    statistics.operation = operation;
+    statistics.since = since;
+    statistics.provisionings = timings.size();
+
+    if (timings.isEmpty()) {
+      return statistics;
+    }
+
+    StepStatistics total = new StepStatistics();
+    total.count = timings.size();
+    total.wallTimeInMillis =
+        Percentiles.of(timings.stream().mapToLong(ProvisioningTiming::getDurationInMillis));
+    statistics.steps.put(STEP_TOTAL, total);
+
+    Map<String, List<StepTiming>> byStep = new TreeMap<>();
+    for (ProvisioningTiming timing : timings) {
+      timing
+          .getSteps()
+          .forEach(
+              (step, stepTiming) ->
+                  byStep.computeIfAbsent(step, key -> new ArrayList<>()).add(stepTiming));
+    }
+    byStep.forEach(
+        (step, stepTimings) -> statistics.steps.put(step, StepStatistics.of(stepTimings)));
+
+    return statistics;
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  public long getSince() {
+    return since;
+  }
+
+  /** @return the number of aggregated provisionings */
+  public int getProvisionings() {
+    return provisionings;
+  }
+
+  public Map<String, StepStatistics> getSteps() {
+    return steps;
+  }
+
+  /** Percentiles of one step, over all provisionings the step was part of */
+  public static class StepStatistics {
+
+    private int count;
+    private Percentiles wallTimeInMillis;
+    private Percentiles httpCalls;
+    private Percentiles retries;
+    private Percentiles bytesSent;
+    private Percentiles bytesReceived;
+
+    static StepStatistics of(List<StepTiming> timings) {
+      StepStatistics statistics = new StepStatistics();
+      statistics.count = timings.size();
+      statistics.wallTimeInMillis = Percentiles.of(timings, StepTiming::getWallTimeInMillis);
+      statistics.httpCalls = Percentiles.of(timings, StepTiming::getHttpCalls);
+      statistics.retries = Percentiles.of(timings, StepTiming::getRetries);
+      statistics.bytesSent = Percentiles.of(timings, StepTiming::getBytesSent);
+      statistics.bytesReceived = Percentiles.of(timings, StepTiming::getBytesReceived);
+      return statistics;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public Percentiles getWallTimeInMillis() {
+      return wallTimeInMillis;
+    }
+
+    public Percentiles getHttpCalls() {
+      return httpCalls;
+    }
+
+    public Percentiles getRetries() {
+      return retries;
+    }
+
+    public Percentiles getBytesSent() {
+      return bytesSent;
+    }
+
+    public Percentiles getBytesReceived() {
+      return bytesReceived;
+    }
+  }
+
+  /** Nearest rank percentiles of a series of values */
+  public static class Percentiles {
+
+    private final long p50;
+    private final long p95;
+    private final long max;
+
+    Percentiles(long p50, long p95, long max) {
+      this.p50 = p50;
+      this.p95 = p95;
+      this.max = max;
+    }
+
+    static Percentiles of(List<StepTiming> timings, ToLongFunction<StepTiming> value) {
+      return of(timings.stream().mapToLong(value));
+    }
+
+    static Percentiles of(LongStream values) {
+      long[] sorted = values.sorted().toArray();
+      if (sorted.length == 0) {
+        return new Percentiles(0, 0, 0);
+      }
+      return new Percentiles(
+          percentile(sorted, 50), percentile(sorted, 95), sorted[sorted.length - 1]);
+    }
+
+    static long percentile(long[] sorted, int percentile) {
+      int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+      return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    public long getP50() {
+      return p50;
+    }
+
+    public long getP95() {
+      return p95;
+    }
+
+    public long getMax() {
+      return max;
+    }
+  }
+}
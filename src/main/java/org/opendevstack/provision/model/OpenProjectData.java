@@ -13,6 +13,7 @@
  */
 package org.opendevstack.provision.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.util.*;
 import org.opendevstack.provision.adapter.IBugtrackerAdapter;
@@ -29,6 +30,10 @@ public class OpenProjectData {
   public static final String COMPONENT_TYPE_KEY = "component_type";
   /** The quickstarters type as description */
   public static final String COMPONENT_DESC_KEY = "component_description";
+  /** The key to get the ssh clone url of the quickstarter's repository */
+  public static final String COMPONENT_GIT_URL_SSH_KEY = "git_url_ssh";
+  /** The key to get the http clone url of the quickstarter's repository */
+  public static final String COMPONENT_GIT_URL_HTTP_KEY = "git_url_http";
   /** The unique name of the project, must not be null */
   private String projectName = null;
   /** Description of the project, can be null */
@@ -103,6 +108,21 @@ public class OpenProjectData {
   private String projectRoleForUserGroup;
   private String projectRoleForReadonlyGroup;
 
+  /** Timing records of the creation and the updates of the project, oldest first */
+  private List<ProvisioningTiming> provisioningTimings = null;
+
+  /**
+   * Names of the repositories that existed already and were only reconciled by this provisioning.
+   * They are never deleted by the cleanup of a failed provisioning. Not stored.
+   */
+  @JsonIgnore private Set<String> reconciledRepositories = new HashSet<>();
+
+  /**
+   * Names of the bugtracker components created by this provisioning. Only they are deleted by the
+   * cleanup of a failed provisioning. Not stored.
+   */
+  @JsonIgnore private Set<String> createdBugtrackerComponents = new HashSet<>();
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -417,4 +437,51 @@ public class OpenProjectData {
   public void setPhysicalLocation(String physicalLocation) {
     this.physicalLocation = physicalLocation;
   }
+
+  @JsonIgnore
+  public Set<String> getReconciledRepositories() {
+    return reconciledRepositories;
+  }
+
+  @JsonIgnore
+  public void setReconciledRepositories(Set<String> reconciledRepositories) {
+    this.reconciledRepositories = reconciledRepositories;
+  }
+
+  @JsonIgnore
+  public Set<String> getCreatedBugtrackerComponents() {
+    return createdBugtrackerComponents;
+  }
+
+  @JsonIgnore
+  public void setCreatedBugtrackerComponents(Set<String> createdBugtrackerComponents) {
+    this.createdBugtrackerComponents = createdBugtrackerComponents;
+  }
+
+  public List<ProvisioningTiming> getProvisioningTimings() {
+    return provisioningTimings;
+  }
+
+  public void setProvisioningTimings(List<ProvisioningTiming> provisioningTimings) {
+    this.provisioningTimings = provisioningTimings;
+  }
+
+  /**
+   * Adds the timing record of a provisioning, dropping the oldest records beyond the given maximum
+   *
+   * @param timing the timing record to add
+   * @param maxRecords the maximum number of records kept
+   */
+  public void addProvisioningTiming(ProvisioningTiming timing, int maxRecords) {
+    if (timing == null) {
+      return;
+    }
+    if (provisioningTimings == null) {
+      provisioningTimings = new ArrayList<>();
+    }
+    provisioningTimings.add(timing);
+    while (provisioningTimings.size() > Math.max(1, maxRecords)) {
+      provisioningTimings.remove(0);
+    }
+  }
 }
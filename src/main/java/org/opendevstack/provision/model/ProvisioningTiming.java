@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact timing record of one provisioning (creation or update) of a project, stored with the
+ * project. The steps are keyed by adapter, e.g. {@code jira}, {@code bitbucket} or {@code
+ * confluence}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProvisioningTiming {
+
+  public static final String OPERATION_CREATE = "create";
+  public static final String OPERATION_UPDATE = "update";
+
+  private String operation;
+  private long startedAt;
+  private long durationInMillis;
+  private String traceId;
+  private Map<String, StepTiming> steps = new LinkedHashMap<>();
+
+  public ProvisioningTiming() {}
+
+  public ProvisioningTiming(String operation, long startedAt, long durationInMillis) {
+    this.operation = operation;
+    this.startedAt = startedAt;
+    this.durationInMillis = durationInMillis;
+  }
+
+  /**
+   * @param step the name of the step, e.g. the adapter
+   * @return the timing of the step, created if not yet there
+   */
+  public StepTiming step(String step) {
+    return steps.computeIfAbsent(step, key -> new StepTiming());
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  public void setOperation(String operation) {
+    this.operation = operation;
+  }
+
+  /** @return the start of the provisioning, in millis since epoch */
+  public long getStartedAt() {
+    return startedAt;
+  }
+
+  public void setStartedAt(long startedAt) {
+    this.startedAt = startedAt;
+  }
+
+  public long getDurationInMillis() {
+    return durationInMillis;
+  }
+
+  public void setDurationInMillis(long durationInMillis) {
+    this.durationInMillis = durationInMillis;
+  }
+
+  public String getTraceId() {
+    return traceId;
+  }
+
+  public void setTraceId(String traceId) {
+    this.traceId = traceId;
+  }
+
+  public Map<String, StepTiming> getSteps() {
+    return steps;
+  }
+
+  public void setSteps(Map<String, StepTiming> steps) {
+    this.steps = steps == null ? new LinkedHashMap<>() : steps;
+  }
+
+  /** Time and traffic spent in one step (adapter) of a provisioning */
+  public static class StepTiming {
+
+    /** Time spent in the step, parallel calls are summed up */
+    private long wallTimeInMillis;
+
+    private int httpCalls;
+    private int retries;
+    private long bytesSent;
+    private long bytesReceived;
+
+    public long getWallTimeInMillis() {
+      return wallTimeInMillis;
+    }
+
+    public void setWallTimeInMillis(long wallTimeInMillis) {
+      this.wallTimeInMillis = wallTimeInMillis;
+    }
+
+    public int getHttpCalls() {
+      return httpCalls;
+    }
+
+    public void setHttpCalls(int httpCalls) {
+      this.httpCalls = httpCalls;
+    }
+
+    public int getRetries() {
+      return retries;
+    }
+
+    public void setRetries(int retries) {
+      this.retries = retries;
+    }
+
+    public long getBytesSent() {
+      return bytesSent;
+    }
+
+    public void setBytesSent(long bytesSent) {
+      this.bytesSent = bytesSent;
+    }
+
+    public long getBytesReceived() {
+      return bytesReceived;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+      this.bytesReceived = bytesReceived;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.model.bitbucket;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Compact view of a bitbucket project and its repositories, as kept by the bitbucket inventory */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BitbucketProjectSnapshot {
+
+  private String key;
+  private String name;
+  private String id;
+  private boolean publicAccess;
+
+  private List<BitbucketRepositorySnapshot> repositories = new ArrayList<>();
+
+  /** Project permission by lower case group name */
+  private Map<String, String> groupPermissions = new HashMap<>();
+
+  /** Number of users with a project permission of their own */
+  private int userPermissionCount;
+
+  /** Time (epoch millis) repositories and permissions were read from bitbucket, 0 if never */
+  private long detailsSyncedAt;
+
+  public BitbucketProjectSnapshot() {}
+
+  public BitbucketProjectSnapshot(String key, String name, String id, boolean publicAccess) {
+    this.key = key;
+    this.name = name;
+    this.id = id;
+    this.publicAccess = publicAccess;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public void setKey(String key) {
+    this.key = key;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public boolean isPublicAccess() {
+    return publicAccess;
+  }
+
+  public void setPublicAccess(boolean publicAccess) {
+    this.publicAccess = publicAccess;
+  }
+
+  public List<BitbucketRepositorySnapshot> getRepositories() {
+    return repositories;
+  }
+
+  public void setRepositories(List<BitbucketRepositorySnapshot> repositories) {
+    this.repositories = repositories;
+  }
+
+  public Map<String, String> getGroupPermissions() {
+    return groupPermissions;
+  }
+
+  public void setGroupPermissions(Map<String, String> groupPermissions) {
+    this.groupPermissions = groupPermissions;
+  }
+
+  public int getUserPermissionCount() {
+    return userPermissionCount;
+  }
+
+  public void setUserPermissionCount(int userPermissionCount) {
+    this.userPermissionCount = userPermissionCount;
+  }
+
+  public long getDetailsSyncedAt() {
+    return detailsSyncedAt;
+  }
+
+  public void setDetailsSyncedAt(long detailsSyncedAt) {
+    this.detailsSyncedAt = detailsSyncedAt;
+  }
+
+  @Override
+  public String toString() {
+    return "BitbucketProjectSnapshot{"
+        + "key='"
+        + key
+        + '\''
+        + ", name='"
+        + name
+        + '\''
+        + ", id='"
+        + id
+        + '\''
+        + ", repositories="
+        + repositories.size()
+        + '}';
+  }
+}
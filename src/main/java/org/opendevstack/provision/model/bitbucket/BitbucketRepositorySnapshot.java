@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.model.bitbucket;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/** Compact view of a bitbucket repository, as kept by the bitbucket inventory */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BitbucketRepositorySnapshot {
+
+  private String slug;
+  private String name;
+  private String httpCloneUrl;
+  private String sshCloneUrl;
+
+  public BitbucketRepositorySnapshot() {}
+
+  public BitbucketRepositorySnapshot(
+      String slug, String name, String httpCloneUrl, String sshCloneUrl) {
+    this.slug = slug;
+    this.name = name;
+    this.httpCloneUrl = httpCloneUrl;
+    this.sshCloneUrl = sshCloneUrl;
+  }
+
+  public String getSlug() {
+    return slug;
+  }
+
+  public void setSlug(String slug) {
+    this.slug = slug;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getHttpCloneUrl() {
+    return httpCloneUrl;
+  }
+
+  public void setHttpCloneUrl(String httpCloneUrl) {
+    this.httpCloneUrl = httpCloneUrl;
+  }
+
+  public String getSshCloneUrl() {
+    return sshCloneUrl;
+  }
+
+  public void setSshCloneUrl(String sshCloneUrl) {
+    this.sshCloneUrl = sshCloneUrl;
+  }
+
+  @Override
+  public String toString() {
+    return "BitbucketRepositorySnapshot{"
+        + "slug='"
+        + slug
+        + '\''
+        + ", httpCloneUrl='"
+        + httpCloneUrl
+        + '\''
+        + ", sshCloneUrl='"
+        + sshCloneUrl
+        + '\''
+        + '}';
+  }
+}
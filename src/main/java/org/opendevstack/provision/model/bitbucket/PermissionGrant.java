@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.model.bitbucket;
+
+import java.util.Objects;
+
+/**
+ * A single permission of a group or user on a bitbucket project or repository, e.g. {@code
+ * PROJECT_WRITE} for group {@code testp-user} on project {@code TESTP}
+ */
+public class PermissionGrant {
+
+  private final String projectKey;
+  private final String repository;
+  private final String principalType;
+  private final String name;
+  private final String permission;
+
+  /**
+   * @param projectKey the key of the project
+   * @param repository the slug of the repository, null for a permission on the project
+   * @param principalType {@code groups} or {@code users}
+   * @param name the name of the group or user
+   * @param permission the permission, e.g. {@code PROJECT_READ} or {@code REPO_READ}
+   */
+  public PermissionGrant(
+      String projectKey, String repository, String principalType, String name, String permission) {
+    this.projectKey = projectKey;
+    this.repository = repository;
+    this.principalType = principalType;
+    this.name = name;
+    this.permission = permission;
+  }
+
+  public static PermissionGrant onProject(
+      String projectKey, String principalType, String name, String permission) {
+    return new PermissionGrant(projectKey, null, principalType, name, permission);
+  }
+
+  public static PermissionGrant onRepository(
+      String projectKey, String repository, String principalType, String name, String permission) {
+    return new PermissionGrant(projectKey, repository, principalType, name, permission);
+  }
+
+  /** @return the path of the permissions of the principal type, relative to the projects api */
+  public String getPath() {
+    return repository == null
+        ? String.format("%s/permissions/%s", projectKey, principalType)
+        : String.format("%s/repos/%s/permissions/%s", projectKey, repository, principalType);
+  }
+
+  /** @return a grant of the same principal with another permission */
+  public PermissionGrant withPermission(String permission) {
+    return new PermissionGrant(projectKey, repository, principalType, name, permission);
+  }
+
+  /** @return whether both grants are about the same principal on the same project or repository */
+  public boolean isSamePrincipal(PermissionGrant other) {
+    return getPath().equals(other.getPath()) && name.equalsIgnoreCase(other.name);
+  }
+
+  public boolean isRepositoryGrant() {
+    return repository != null;
+  }
+
+  public String getProjectKey() {
+    return projectKey;
+  }
+
+  public String getRepository() {
+    return repository;
+  }
+
+  public String getPrincipalType() {
+    return principalType;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getPermission() {
+    return permission;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    PermissionGrant that = (PermissionGrant) o;
+    return Objects.equals(projectKey, that.projectKey)
+        && Objects.equals(repository, that.repository)
+        && Objects.equals(principalType, that.principalType)
+        && Objects.equals(name, that.name)
+        && Objects.equals(permission, that.permission);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(projectKey, repository, principalType, name, permission);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %s=%s", getPath(), name, permission);
+  }
+}
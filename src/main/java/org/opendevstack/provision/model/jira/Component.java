@@ -31,6 +31,7 @@ import javax.annotation.Generated;
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonPropertyOrder({
+  "id",
   "name",
   "description",
   "leadUserName",
@@ -42,6 +43,9 @@ import javax.annotation.Generated;
 @Generated(value = {"JSON-to-Pojo-Generator"})
 public class Component {
 
+  @JsonProperty("id")
+  private String id;
+
   @JsonProperty("name")
   private String name;
 
@@ -65,6 +69,16 @@ public class Component {
 
   @JsonIgnore private Map<String, Object> additionalProperties = new HashMap<String, Object>();
 
+  @JsonProperty("id")
+  public String getId() {
+    return id;
+  }
+
+  @JsonProperty("id")
+  public void setId(String id) {
+    this.id = id;
+  }
+
   @JsonProperty("name")
   public String getName() {
     return name;
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.model.jira;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/** A difference between a project stored by the provisioning app and its jira project */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JiraProjectDrift {
+
+  public enum Type {
+    /** stored with a bugtracker space, but there is no jira project with the key */
+    MISSING_IN_JIRA,
+    /** stored without bugtracker space, but there is a jira project with the key */
+    UNEXPECTED_IN_JIRA,
+    /** the jira project has another name than the stored project */
+    NAME,
+    /** the jira project uses another permission scheme than the one stored */
+    PERMISSION_SCHEME
+  }
+
+  private String projectKey;
+  private Type type;
+  private String stored;
+  private String jira;
+
+  public JiraProjectDrift() {}
+
+  public JiraProjectDrift(String projectKey, Type type, String stored, String jira) {
+    this.projectKey = projectKey;
+    this.type = type;
+    this.stored = stored;
+    this.jira = jira;
+  }
+
+  public String getProjectKey() {
+    return projectKey;
+  }
+
+  public void setProjectKey(String projectKey) {
+    this.projectKey = projectKey;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public void setType(Type type) {
+    this.type = type;
+  }
+
+  /** @return the value stored by the provisioning app */
+  public String getStored() {
+    return stored;
+  }
+
+  public void setStored(String stored) {
+    this.stored = stored;
+  }
+
+  /** @return the value of the jira project */
+  public String getJira() {
+    return jira;
+  }
+
+  public void setJira(String jira) {
+    this.jira = jira;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %s [stored=%s, jira=%s]", projectKey, type, stored, jira);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.model.jira;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/** Compact view of a jira project, as mirrored by the project snapshot sync */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JiraProjectSnapshot {
+
+  private String key;
+  private String name;
+  private String id;
+  private String lead;
+  private String permissionSchemeId;
+
+  /** Time (epoch millis) the permission scheme id was read from jira, 0 if never */
+  private long permissionSchemeSyncedAt;
+
+  public JiraProjectSnapshot() {}
+
+  public JiraProjectSnapshot(String key, String name, String id, String lead) {
+    this.key = key;
+    this.name = name;
+    this.id = id;
+    this.lead = lead;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public void setKey(String key) {
+    this.key = key;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getLead() {
+    return lead;
+  }
+
+  public void setLead(String lead) {
+    this.lead = lead;
+  }
+
+  public String getPermissionSchemeId() {
+    return permissionSchemeId;
+  }
+
+  public void setPermissionSchemeId(String permissionSchemeId) {
+    this.permissionSchemeId = permissionSchemeId;
+  }
+
+  public long getPermissionSchemeSyncedAt() {
+    return permissionSchemeSyncedAt;
+  }
+
+  public void setPermissionSchemeSyncedAt(long permissionSchemeSyncedAt) {
+    this.permissionSchemeSyncedAt = permissionSchemeSyncedAt;
+  }
+
+  @Override
+  public String toString() {
+    return "JiraProjectSnapshot{"
+        + "key='"
+        + key
+        + '\''
+        + ", name='"
+        + name
+        + '\''
+        + ", id='"
+        + id
+        + '\''
+        + ", lead='"
+        + lead
+        + '\''
+        + ", permissionSchemeId='"
+        + permissionSchemeId
+        + '\''
+        + '}';
+  }
+}
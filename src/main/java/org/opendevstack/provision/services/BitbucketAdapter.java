@@ -20,32 +20,54 @@ import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
-import org.apache.commons.lang3.NotImplementedException;
 import org.opendevstack.provision.adapter.IODSAuthnzAdapter;
 import org.opendevstack.provision.adapter.ISCMAdapter;
 import org.opendevstack.provision.adapter.exception.AdapterException;
 import org.opendevstack.provision.adapter.exception.CreateProjectPreconditionException;
 import org.opendevstack.provision.config.JenkinsPipelineProperties;
+import org.opendevstack.provision.config.ProvisioningExecutorConfig;
 import org.opendevstack.provision.controller.CheckPreconditionFailure;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.model.bitbucket.BitbucketProject;
 import org.opendevstack.provision.model.bitbucket.BitbucketProjectData;
+import org.opendevstack.provision.model.bitbucket.BitbucketProjectSnapshot;
+import org.opendevstack.provision.model.bitbucket.PermissionGrant;
 import org.opendevstack.provision.model.bitbucket.Repository;
 import org.opendevstack.provision.model.bitbucket.RepositoryData;
 import org.opendevstack.provision.model.bitbucket.Webhook;
 import org.opendevstack.provision.properties.ScmGlobalProperties;
+import org.opendevstack.provision.services.bitbucket.BitbucketInventory;
+import org.opendevstack.provision.services.bitbucket.BitbucketPageIterator;
+import org.opendevstack.provision.services.bitbucket.BitbucketProjectCleaner;
+import org.opendevstack.provision.services.bitbucket.BitbucketWebhookManager;
+import org.opendevstack.provision.services.bitbucket.BitbucketWebhookRotation;
+import org.opendevstack.provision.services.bitbucket.ReadableRepoGrantIndex;
+import org.opendevstack.provision.storage.IStorage;
 import org.opendevstack.provision.util.GitUrlWrangler;
+import org.opendevstack.provision.util.concurrent.BatchLookupContext;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.RetryPolicy;
+import org.opendevstack.provision.util.concurrent.TaskResult;
 import org.opendevstack.provision.util.exception.HttpException;
 import org.opendevstack.provision.util.rest.RestClientCall;
+import org.opendevstack.provision.util.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -63,6 +85,11 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
 
   public static final String FILTER_PARAM = "filter";
 
+  private static final int PAGE_LIMIT = BitbucketPageIterator.DEFAULT_LIMIT;
+
+  /** Existence checks filter by name, so the match is expected on a small first page */
+  private static final int EXISTENCE_CHECK_PAGE_LIMIT = 25;
+
   private static final Logger logger = LoggerFactory.getLogger(BitbucketAdapter.class);
 
   @Value("${bitbucket.api.path}")
@@ -107,6 +134,54 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
 
   @Autowired private JenkinsPipelineProperties jenkinsPipelineProperties;
 
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  @Autowired private BitbucketProjectCleaner projectCleaner;
+
+  @Autowired private BitbucketWebhookManager webhookManager;
+
+  @Autowired private BitbucketWebhookRotation webhookRotation;
+
+  @Autowired private IStorage storage;
+
+  @Autowired private ReadableRepoGrantIndex readableRepoGrantIndex;
+
+  @Autowired private BitbucketInventory inventory;
+
+  /** Rewrites clone urls to the technical user, built once per technical user */
+  private volatile GitUrlWrangler cloneUrlWrangler;
+
+  @Value("${bitbucket.inventory.background-sync.enabled:true}")
+  private boolean inventoryBackgroundSync = true;
+
+  @Value("${bitbucket.webhook-repair.background.enabled:false}")
+  private boolean webhookRepairBackground;
+
+  /** Webhook templates by upper case project key, rebuilt when the trigger secret changes */
+  private final Map<String, WebhookTemplate> webhookTemplates = new ConcurrentHashMap<>();
+
+  @Autowired
+  @Qualifier(ProvisioningExecutorConfig.PROVISIONING_TASK_EXECUTOR)
+  private Executor pageExecutor;
+
+  @Value("${bitbucket.reconcile.enabled:true}")
+  private boolean reconcileEnabled = true;
+
+  @Value("${bitbucket.repositories.parallelism:4}")
+  private int repositoryParallelism = 4;
+
+  @Value("${bitbucket.permissions.parallelism:4}")
+  private int permissionParallelism = 4;
+
+  @Value("${bitbucket.permission.retry.max-attempts:3}")
+  private int permissionRetryMaxAttempts = 3;
+
+  @Value("${bitbucket.permission.retry.initial-backoff-millis:500}")
+  private long permissionRetryInitialBackoffInMillis = 500;
+
+  @Value("${bitbucket.permission.retry.max-backoff-millis:5000}")
+  private long permissionRetryMaxBackoffInMillis = 5000;
+
   private Set<String> noWebhookComponents;
 
   public static final String BITBUCKET_API_PROJECTS = "projects";
@@ -138,6 +213,12 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
     REPO_READ
   }
 
+  /** What happened to a single permission grant */
+  public enum GrantOutcome {
+    GRANTED,
+    PRESENT
+  }
+
   public BitbucketAdapter() {
     super(ADAPTER_CONFIGURATION_PREFIX);
   }
@@ -152,10 +233,20 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
             .collect(Collectors.toSet());
     logger.info("noWebhookComponents={}", noWebhookComponents);
     logger.info("readablerepos={}", scmGlobalProperties.getReadableRepos());
+    webhookRotation.setBitbucketAdapter(this);
+    inventory.setRestService(this);
+    // without technical user bitbucket can only be asked with the credentials of a logged in user
+    if (webhookRepairBackground && isUseTechnicalUser()) {
+      webhookManager.startPeriodicRepair(this);
+    }
+    if (inventoryBackgroundSync && isUseTechnicalUser()) {
+      inventory.startPeriodicSync();
+    }
   }
 
   public String createSCMProjectForODSProject(OpenProjectData project) throws IOException {
     BitbucketProjectData data = callCreateProjectApi(project);
+    inventory.added(project.getProjectKey(), project.getProjectName());
 
     project.setScmvcsUrl(data.getLinks().get("self").get(0).getHref());
     return project.getScmvcsUrl();
@@ -221,6 +312,10 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
   }
 
   private boolean existsProject(String projectKey) throws IOException {
+    if (inventory.isFresh() && inventory.get(projectKey) != null) {
+      logger.debug("project '{}' found in {} inventory", projectKey, ADAPTER_NAME);
+      return true;
+    }
 
     JsonNode projectAsJson;
     try {
@@ -312,19 +407,18 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
 
   /** https://127.0.0.1/rest/api/1.0/admin/users?filter={{user}} */
   private boolean checkUserExists(String username) {
+    return BatchLookupContext.lookup("bitbucket.user", username, () -> fetchUserExists(username));
+  }
 
-    Map<String, String> params = new HashMap<>();
-    params.put(FILTER_PARAM, username);
+  private boolean fetchUserExists(String username) {
 
     String url = String.format(BITBUCKET_API_ADMIN_USERS_PATTERN, bitbucketUri, bitbucketApiPath);
     try {
-
-      String response = null;
       try {
-        response =
-            getRestClient()
-                .execute(httpGet().url(url).queryParams(params).returnType(String.class));
-        Assert.notNull(response, "Response is null for '" + username + "'");
+        return BitbucketPageIterator.of(this, url)
+            .filter(username)
+            .limit(EXISTENCE_CHECK_PAGE_LIMIT)
+            .anyMatch(user -> hasName(user, username));
       } catch (HttpException e) {
         if (HttpStatus.NOT_FOUND.value() == e.getResponseCode()) {
           logger.debug("User '{}' was not found in {}!", username, ADAPTER_NAME, e);
@@ -334,11 +428,6 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
           throw e;
         }
       }
-
-      JsonNode json = new ObjectMapper().readTree(response);
-
-      return containsUser(json, username);
-
     } catch (IOException e) {
       throw new AdapterException(e);
     }
@@ -352,17 +441,19 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
    * @throws IOException
    */
   private boolean checkGroupExists(String groupName) throws IOException {
+    return BatchLookupContext.lookupChecked(
+        "bitbucket.group", groupName, () -> fetchGroupExists(groupName));
+  }
 
-    Map<String, String> params = new HashMap<>();
-    params.put(FILTER_PARAM, groupName);
+  private boolean fetchGroupExists(String groupName) throws IOException {
 
     String url = String.format(BITBUCKET_API_GROUPS_PATTERN, bitbucketUri, bitbucketApiPath);
 
-    String response = null;
     try {
-      response =
-          getRestClient().execute(httpGet().url(url).queryParams(params).returnType(String.class));
-      Assert.notNull(response, "Response is null for '" + groupName + "'");
+      return BitbucketPageIterator.of(this, url)
+          .filter(groupName)
+          .limit(EXISTENCE_CHECK_PAGE_LIMIT)
+          .anyMatch(group -> hasName(group, groupName));
     } catch (HttpException e) {
       if (HttpStatus.NOT_FOUND.value() == e.getResponseCode()) {
         logger.debug("Group '{}' was not found in {}!", groupName, ADAPTER_NAME, e);
@@ -372,10 +463,6 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
         throw e;
       }
     }
-
-    JsonNode json = new ObjectMapper().readTree(response);
-
-    return containsGroup(json, groupName);
   }
 
   public Function<List<CheckPreconditionFailure>, List<CheckPreconditionFailure>>
@@ -384,18 +471,15 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
       try {
         logger.info("checking user '{}' have project create global permission", username);
 
-        Map<String, String> params = new HashMap<>();
-        params.put(FILTER_PARAM, username);
-        params.put("permission", GLOBAL_PERMISSION_PROJECT_CREATE);
-
         String url = String.format(BITBUCKET_API_USERS_PATTERN, bitbucketUri, bitbucketApiPath);
-        String response =
-            getRestClient()
-                .execute(httpGet().url(url).queryParams(params).returnType(String.class));
-        Assert.notNull(response, "Response is null for '" + username + "'");
-        JsonNode json = new ObjectMapper().readTree(response);
-
-        if (!containsUser(json, username)) {
+        boolean permitted =
+            BitbucketPageIterator.of(this, url)
+                .filter(username)
+                .param("permission", GLOBAL_PERMISSION_PROJECT_CREATE)
+                .limit(EXISTENCE_CHECK_PAGE_LIMIT)
+                .anyMatch(user -> hasName(user, username));
+
+        if (!permitted) {
           preconditionFailures.add(
               CheckPreconditionFailure.getGlobalCreateProjectBitBucketPermissionMissingInstance(
                   String.format(
@@ -439,117 +523,212 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
       return false;
     }
 
-    return group.equalsIgnoreCase(json.get("values").get(0).asText());
+    for (JsonNode value : values) {
+      if (hasName(value, group)) {
+        return true;
+      }
+    }
+    return false;
   }
 
-  @SuppressWarnings("squid:S3776")
+  /**
+   * @param value a value of a bitbucket list, either a plain name (e.g. of {@code groups}) or an
+   *     object with a name (e.g. of {@code admin/users})
+   * @param name the name to look for
+   * @return true if the value has the given name, ignoring case
+   */
+  static boolean hasName(JsonNode value, String name) {
+    String valueName = value.isTextual() ? value.asText() : value.path("name").asText(null);
+    return name.equalsIgnoreCase(valueName);
+  }
+
+  /**
+   * Creates the repositories of all quickstarters in parallel, see {@link
+   * #provisionRepositories(String, Map)}. If the repository of at least one quickstarter could not
+   * be created, the repositories that were created are added to the project before the error is
+   * thrown, so that the cleanup removes them. Repositories that exist already are reconciled, see
+   * {@link #reconcileRepository(OpenProjectData, Repository, RepositoryData, String)}, and recorded
+   * in {@link OpenProjectData#getReconciledRepositories()}, so that the cleanup keeps them.
+   */
   @Override
   public Map<String, Map<URL_TYPE, String>> createComponentRepositoriesForODSProject(
       OpenProjectData project) throws IOException {
     Map<String, Map<URL_TYPE, String>> createdRepositories = new HashMap<>();
 
-    if (project.getQuickstarters() != null) {
+    if (project.getQuickstarters() == null) {
+      return createdRepositories;
+    }
 
+    logger.debug(
+        "Project {} - new quickstarters: {}",
+        project.getProjectKey(),
+        project.getQuickstarters().size());
+
+    // read in the calling thread, it may hold the logged in user
+    String userName = manager.getUserName();
+
+    Map<String, RepositoryData> existing = listExistingRepositories(project.getProjectKey());
+    Set<String> reconciled = ConcurrentHashMap.newKeySet();
+    Map<String, String> componentIds = new HashMap<>();
+    Map<String, Callable<Map<URL_TYPE, String>>> pipelines = new LinkedHashMap<>();
+    for (Map<String, String> option : project.getQuickstarters()) {
+      String componentId = option.get(OpenProjectData.COMPONENT_ID_KEY);
       logger.debug(
-          "Project {} - new quickstarters: {}",
-          project.getProjectKey(),
-          project.getQuickstarters().size());
-
-      for (Map<String, String> option : project.getQuickstarters()) {
-        logger.debug(
-            "Creating repo for quickstarters: {}  in {}",
-            option.get(OpenProjectData.COMPONENT_ID_KEY),
-            project.getProjectKey());
-
-        String repoName =
-            createRepoNameFromComponentName(
-                project.getProjectKey(), option.get(OpenProjectData.COMPONENT_ID_KEY));
+          "Creating repo for quickstarters: {}  in {}", componentId, project.getProjectKey());
 
-        Repository repo = new Repository();
-        repo.setName(repoName);
+      String repoName = createRepoNameFromComponentName(project.getProjectKey(), componentId);
+      Repository repo = createRepository(project, repoName);
 
-        String repoDescription = option.get(OpenProjectData.COMPONENT_DESC_KEY);
-        if (repoDescription != null) {
-          repo.setDescription(repoDescription);
-        }
-
-        if (project.isSpecialPermissionSet()) {
-          repo.setAdminGroup(project.getProjectAdminGroup());
-          repo.setUserGroup(project.getProjectUserGroup());
-        } else {
-          repo.setAdminGroup(defaultAdminGroup);
-          repo.setUserGroup(defaultUserGroup);
-        }
-
-        Map<URL_TYPE, String> componentRepository = null;
-
-        try {
-          RepositoryData result =
-              callCreateRepoApi(project.getProjectKey(), project.isSpecialPermissionSet(), repo);
-          createWebHooksForRepository(
-              result, project, option.get(OpenProjectData.COMPONENT_TYPE_KEY));
-
-          componentRepository = result.convertRepoToOpenDataProjectRepo();
-
-          GitUrlWrangler gitUrlWrangler = new GitUrlWrangler();
-
-          String gitSSHUrl = componentRepository.get(URL_TYPE.URL_CLONE_SSH);
-
-          if (gitSSHUrl != null) {
-            gitSSHUrl = gitUrlWrangler.buildGitUrl(manager.getUserName(), technicalUser, gitSSHUrl);
+      String repoDescription = option.get(OpenProjectData.COMPONENT_DESC_KEY);
+      if (repoDescription != null) {
+        repo.setDescription(repoDescription);
+      }
 
-            componentRepository.put(URL_TYPE.URL_CLONE_SSH, gitSSHUrl);
-          }
+      componentIds.put(repoName, componentId);
+      pipelines.put(
+          repoName,
+          () -> {
+            String componentType = option.get(OpenProjectData.COMPONENT_TYPE_KEY);
+            RepositoryData result = existing.get(repoName);
+            if (result == null) {
+              result =
+                  callCreateRepoApi(
+                      project.getProjectKey(), project.isSpecialPermissionSet(), repo);
+              createWebHooksForRepository(result, project, componentType);
+            } else {
+              reconciled.add(repoName);
+              reconcileRepository(project, repo, result, componentType);
+            }
+
+            Map<URL_TYPE, String> componentRepository = result.convertRepoToOpenDataProjectRepo();
+
+            String gitSSHUrl = componentRepository.get(URL_TYPE.URL_CLONE_SSH);
+            if (gitSSHUrl != null) {
+              // stored with the project, the urls are not rewritten again when read
+              gitSSHUrl = cloneUrlWrangler().rewrite(userName, gitSSHUrl);
+              componentRepository.put(URL_TYPE.URL_CLONE_SSH, gitSSHUrl);
+            }
+            return componentRepository;
+          });
+    }
 
-          String gitHttpUrl = componentRepository.get(URL_TYPE.URL_CLONE_HTTP);
-
-          componentRepository.put(URL_TYPE.URL_CLONE_HTTP, gitHttpUrl);
-        } catch (IOException ex) {
-          logger.error(
-              "Error in creating repo: " + option.get(OpenProjectData.COMPONENT_ID_KEY), ex);
-          throw new IOException(
-              "Error in creating repo: "
-                  + option.get(OpenProjectData.COMPONENT_ID_KEY)
-                  + "\n"
-                  + "details: "
-                  + ex.getMessage());
-        }
-        createdRepositories.put(repoName, componentRepository);
+    List<String> failures = new ArrayList<>();
+    provisionRepositories(project.getProjectKey(), pipelines)
+        .forEach(
+            (repoName, result) -> {
+              if (result.isSuccessful()) {
+                createdRepositories.put(repoName, result.getValue());
+              } else {
+                logger.error(
+                    "Error in creating repo: " + componentIds.get(repoName), result.getError());
+                failures.add(
+                    "Error in creating repo: "
+                        + componentIds.get(repoName)
+                        + "\n"
+                        + "details: "
+                        + result.getError().getMessage());
+              }
+            });
+    project.getReconciledRepositories().addAll(reconciled);
+
+    if (!failures.isEmpty()) {
+      if (project.getRepositories() == null) {
+        project.setRepositories(new HashMap<>());
       }
+      project.getRepositories().putAll(createdRepositories);
+      throw new IOException(String.join("\n", failures));
     }
-
     return createdRepositories;
   }
 
+  /**
+   * Creates the auxiliary repositories in parallel, see {@link #provisionRepositories(String,
+   * Map)}. Repositories that could not be created are logged and left out, repositories that
+   * exist already are reconciled and recorded in {@link
+   * OpenProjectData#getReconciledRepositories()}.
+   */
   @Override
   public Map<String, Map<URL_TYPE, String>> createAuxiliaryRepositoriesForODSProject(
       OpenProjectData project, String[] auxiliaryRepos) {
-    Map<String, Map<URL_TYPE, String>> repositories = new HashMap<>();
+    Map<String, RepositoryData> existing = listExistingRepositories(project.getProjectKey());
+    Set<String> reconciled = ConcurrentHashMap.newKeySet();
+    Map<String, Callable<Map<URL_TYPE, String>>> pipelines = new LinkedHashMap<>();
     for (String name : auxiliaryRepos) {
-      Repository repo = new Repository();
       String repoName = createRepoNameFromComponentName(project.getProjectKey(), name);
-      repo.setName(repoName);
+      Repository repo = createRepository(project, repoName);
       repo.setDescription("ODS generated repo: " + name);
 
-      if (project.isSpecialPermissionSet()) {
-        repo.setAdminGroup(project.getProjectAdminGroup());
-        repo.setUserGroup(project.getProjectUserGroup());
-      } else {
-        repo.setAdminGroup(defaultAdminGroup);
-        repo.setUserGroup(defaultUserGroup);
-      }
-
-      try {
-        RepositoryData result =
-            callCreateRepoApi(project.getProjectKey(), project.isSpecialPermissionSet(), repo);
-        repositories.put(result.getName(), result.convertRepoToOpenDataProjectRepo());
-      } catch (IOException ex) {
-        logger.error("Error in creating auxiliary repo", ex);
-      }
+      pipelines.put(
+          repoName,
+          () -> {
+            RepositoryData result = existing.get(repoName);
+            if (result == null) {
+              result =
+                  callCreateRepoApi(
+                      project.getProjectKey(), project.isSpecialPermissionSet(), repo);
+            } else {
+              reconciled.add(repoName);
+              reconcileRepository(project, repo, result, null);
+            }
+            return result.convertRepoToOpenDataProjectRepo();
+          });
     }
+
+    Map<String, Map<URL_TYPE, String>> repositories = new HashMap<>();
+    provisionRepositories(project.getProjectKey(), pipelines)
+        .forEach(
+            (repoName, result) -> {
+              if (result.isSuccessful()) {
+                repositories.put(repoName, result.getValue());
+              } else {
+                logger.error("Error in creating auxiliary repo", result.getError());
+              }
+            });
+    project.getReconciledRepositories().addAll(reconciled);
     return repositories;
   }
 
+  /**
+   * Runs the pipelines of several repositories with at most {@code
+   * bitbucket.repositories.parallelism} repositories at the same time. The steps of one repository
+   * (creation, permissions, webhook, clone urls) run in order within its pipeline.
+   *
+   * @param projectKey the key of the project the repositories belong to
+   * @param pipelines the pipeline of every repository, by repository name
+   * @return the result of every repository, in the order of the given pipelines
+   */
+  protected Map<String, TaskResult<Map<URL_TYPE, String>>> provisionRepositories(
+      String projectKey, Map<String, Callable<Map<URL_TYPE, String>>> pipelines) {
+    logger.debug(
+        "Create {} repositories of project {} [parallelism={}]",
+        pipelines.size(),
+        projectKey,
+        repositoryParallelism);
+
+    Map<String, Callable<Map<URL_TYPE, String>>> traced = new LinkedHashMap<>();
+    pipelines.forEach(
+        (repoName, pipeline) ->
+            traced.put(repoName, () -> Tracing.inSpan("repository " + repoName, pipeline::call)));
+    Map<String, TaskResult<Map<URL_TYPE, String>>> results =
+        parallelTaskRunner.invokeAll(traced, repositoryParallelism);
+    inventory.repositoriesChanged(projectKey);
+    return results;
+  }
+
+  private Repository createRepository(OpenProjectData project, String repoName) {
+    Repository repo = new Repository();
+    repo.setName(repoName);
+
+    if (project.isSpecialPermissionSet()) {
+      repo.setAdminGroup(project.getProjectAdminGroup());
+      repo.setUserGroup(project.getProjectUserGroup());
+    } else {
+      repo.setAdminGroup(defaultAdminGroup);
+      repo.setUserGroup(defaultUserGroup);
+    }
+    return repo;
+  }
+
   protected void createWebHooksForRepository(
       RepositoryData repo, OpenProjectData project, String componentType) {
 
@@ -562,33 +741,219 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
       return;
     }
 
+    String url =
+        String.format(
+            "%s/%s/repos/%s", getAdapterApiUri(), project.getProjectKey(), repo.getSlug());
+    try {
+      webhookManager.create(this, url, webhookTemplate(project));
+    } catch (IOException ex) {
+      logger.error("Could not create webhook of repository {}", repo.getSlug(), ex);
+      throw new AdapterException(ex);
+    }
+  }
+
+  /**
+   * The webhook every repository of the project gets. Built once per project and shared, it must
+   * not be modified.
+   *
+   * @param project the project
+   * @return the webhook calling the jenkins webhook proxy of the project
+   */
+  public Webhook webhookTemplate(OpenProjectData project) {
+    String key = project.getProjectKey().toUpperCase();
+    String secret = triggerSecretOf(project);
+    WebhookTemplate template = webhookTemplates.get(key);
+    if (template == null || !template.secret.equals(secret)) {
+      Webhook webhook = new Webhook();
+      webhook.setName("Jenkins");
+      webhook.setActive(true);
+      webhook.setUrl(createWebhookProxyUrl(project));
+      webhook.setEvents(List.copyOf(webhookEvents));
+      template = new WebhookTemplate(secret, webhook);
+      webhookTemplates.put(key, template);
+    }
+    return template.webhook;
+  }
+
+  /**
+   * Repairs the webhooks of the component repositories of all stored projects
+   *
+   * @return the number of created or updated webhooks
+   */
+  public int repairWebhooks() {
+    int repaired = 0;
+    int failed = 0;
+    for (OpenProjectData project : storage.listProjectHistory().values()) {
+      for (TaskResult<BitbucketWebhookManager.Outcome> result :
+          repairWebhooks(project).values()) {
+        if (!result.isSuccessful()) {
+          failed++;
+        } else if (result.getValue() != BitbucketWebhookManager.Outcome.PRESENT) {
+          repaired++;
+        }
+      }
+    }
+    logger.info("Repaired {} webhooks, {} could not be repaired", repaired, failed);
+    return repaired;
+  }
+
+  /**
+   * Creates missing and updates outdated webhooks of the component repositories of a project
+   *
+   * @param project the stored project
+   * @return the result of every repository with a webhook, by slug
+   */
+  public Map<String, TaskResult<BitbucketWebhookManager.Outcome>> repairWebhooks(
+      OpenProjectData project) {
+    if (project.getQuickstarters() == null || project.getRepositories() == null) {
+      return Map.of();
+    }
+    Set<String> slugs = new LinkedHashSet<>();
+    for (Map<String, String> option : project.getQuickstarters()) {
+      String componentId = option.get(OpenProjectData.COMPONENT_ID_KEY);
+      String componentType = option.get(OpenProjectData.COMPONENT_TYPE_KEY);
+      String slug = createRepoNameFromComponentName(project.getProjectKey(), componentId);
+      if (!noWebhookComponents.contains(componentType)
+          && project.getRepositories().containsKey(slug)) {
+        slugs.add(slug);
+      }
+    }
+    String projectUrl = String.format("%s/%s", getAdapterApiUri(), project.getProjectKey());
+    Map<String, TaskResult<BitbucketWebhookManager.Outcome>> results =
+        webhookManager.ensureAll(this, projectUrl, slugs, webhookTemplate(project));
+    results.forEach(
+        (slug, result) -> {
+          if (!result.isSuccessful()) {
+            logger.warn(
+                "Could not repair webhook of repository {}: {}",
+                slug,
+                result.getError().getMessage());
+          } else if (result.getValue() != BitbucketWebhookManager.Outcome.PRESENT) {
+            logger.info("Repaired webhook of repository {} ({})", slug, result.getValue());
+          }
+        });
+    return results;
+  }
+
+  private String createWebhookProxyUrl(OpenProjectData project) {
     String webhookProxyHost =
         String.format(
             projectOpenshiftJenkinsWebhookProxyNamePattern,
             project.getProjectKey().toLowerCase(),
             projectOpenshiftBaseDomain);
-    String triggerSecret =
-        project.getWebhookProxySecret() != null
-            ? project.getWebhookProxySecret()
-            : projectOpenshiftJenkinsTriggerSecret;
-    String webhookProxyUrl = "https://" + webhookProxyHost + "?trigger_secret=" + triggerSecret;
-    Webhook webhook = new Webhook();
-    webhook.setName("Jenkins");
-    webhook.setActive(true);
-    webhook.setUrl(webhookProxyUrl);
-    webhook.setEvents(webhookEvents);
+    return "https://" + webhookProxyHost + "?trigger_secret=" + triggerSecretOf(project);
+  }
 
-    String url =
-        String.format(
-            "%s/%s/repos/%s/webhooks", getAdapterApiUri(), project.getProjectKey(), repo.getSlug());
+  private String triggerSecretOf(OpenProjectData project) {
+    return project.getWebhookProxySecret() != null
+        ? project.getWebhookProxySecret()
+        : projectOpenshiftJenkinsTriggerSecret;
+  }
 
+  /**
+   * Lists the repositories of the project, so that provisioning can be repeated without failing on
+   * repositories that already exist. Returns nothing if {@code bitbucket.reconcile.enabled} is
+   * false.
+   *
+   * @param projectKey the key of the project
+   * @return the existing repositories, by slug. Empty if they could not be read.
+   */
+  protected Map<String, RepositoryData> listExistingRepositories(String projectKey) {
+    Map<String, RepositoryData> repositories = new HashMap<>();
+    if (!reconcileEnabled) {
+      return repositories;
+    }
+    String url = String.format("%s/%s/repos", getAdapterApiUri(), projectKey);
     try {
-      RestClientCall call = httpPost().url(url).body(webhook).returnType(Webhook.class);
-      getRestClient().execute(call);
-      logger.info("created hook: {}", webhook.getUrl());
-    } catch (IOException ex) {
-      logger.error("Error in webhook call", ex);
+      ObjectMapper mapper = new ObjectMapper();
+      pages(url)
+          .forEachValue(
+              value -> {
+                RepositoryData repository = mapper.treeToValue(value, RepositoryData.class);
+                if (repository.getSlug() != null) {
+                  repositories.put(repository.getSlug().toLowerCase(), repository);
+                }
+              });
+    } catch (HttpException e) {
+      if (e.getResponseCode() != HttpStatus.NOT_FOUND.value()) {
+        logger.warn("Could not list repositories of project {}: {}", projectKey, e.getMessage());
+      }
+    } catch (IOException e) {
+      logger.warn("Could not list repositories of project {}: {}", projectKey, e.getMessage());
     }
+    return repositories;
+  }
+
+  /**
+   * Brings an existing repository to the state a new one would have: missing permissions are
+   * granted and the webhook is created if the repository has none with the same url.
+   *
+   * @param project the project the repository belongs to
+   * @param repo the desired repository
+   * @param data the existing repository
+   * @param componentType the type of the component the repository belongs to, null for a
+   *     repository without webhook
+   * @throws IOException if a permission or the webhooks could not be read or set
+   */
+  protected void reconcileRepository(
+      OpenProjectData project, Repository repo, RepositoryData data, String componentType)
+      throws IOException {
+    logger.info(
+        "Repository {} of project {} exists already, reconciling it",
+        data.getSlug(),
+        project.getProjectKey());
+
+    List<PermissionGrant> grants = new ArrayList<>();
+    if (!project.isSpecialPermissionSet()
+        && repo.getAdminGroup() != null
+        && !repo.getAdminGroup().isEmpty()) {
+      grants.add(
+          PermissionGrant.onRepository(
+              project.getProjectKey(),
+              data.getSlug(),
+              ID_GROUPS,
+              repo.getAdminGroup(),
+              REPOSITORY_PERMISSIONS.REPO_ADMIN.toString()));
+    }
+    grants.add(
+        PermissionGrant.onRepository(
+            project.getProjectKey(),
+            data.getSlug(),
+            ID_USERS,
+            technicalUser,
+            REPOSITORY_PERMISSIONS.REPO_WRITE.toString()));
+    for (TaskResult<GrantOutcome> result : grantPermissions(null, grants).values()) {
+      if (!result.isSuccessful()) {
+        Exception e = result.getError();
+        throw e instanceof IOException ? (IOException) e : new IOException(e);
+      }
+    }
+
+    if (componentType == null) {
+      return;
+    }
+    String url =
+        String.format(
+            "%s/%s/repos/%s", getAdapterApiUri(), project.getProjectKey(), data.getSlug());
+    BitbucketWebhookManager.Outcome outcome =
+        webhookManager.updateExisting(this, url, webhookTemplate(project));
+    if (outcome != null) {
+      logger.debug("Webhook of repository {} is {}", data.getSlug(), outcome);
+      return;
+    }
+    createWebHooksForRepository(data, project, componentType);
+  }
+
+  /**
+   * @param url the url of a paged bitbucket resource, e.g. the repositories of a project
+   * @return an iterator over all values, an empty response counts as no values
+   */
+  private BitbucketPageIterator pages(String url) {
+    return BitbucketPageIterator.of(this, url)
+        .limit(PAGE_LIMIT)
+        .prefetch(pageExecutor)
+        .suppressErrorLogging()
+        .emptyIfMissing();
   }
 
   protected BitbucketProjectData callCreateProjectApi(OpenProjectData project) throws IOException {
@@ -597,26 +962,59 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
     RestClientCall call =
         httpPost().url(getAdapterApiUri()).body(bbProject).returnType(BitbucketProjectData.class);
     BitbucketProjectData projectData = getRestClient().execute(call);
+
+    Map<PermissionGrant, TaskResult<GrantOutcome>> results =
+        grantPermissions(projectData, planProjectPermissions(project, projectData));
+
+    // the permissions on the project are required, the ones on the global repos are best effort
+    for (Map.Entry<PermissionGrant, TaskResult<GrantOutcome>> result : results.entrySet()) {
+      if (result.getValue().isSuccessful()) {
+        continue;
+      }
+      Exception e = result.getValue().getError();
+      if (result.getKey().isRepositoryGrant()) {
+        logger.error("Unable to set global read permission for cd user: {}", result.getKey(), e);
+      } else if (e instanceof IOException) {
+        throw (IOException) e;
+      } else {
+        throw new IOException("Could not grant " + result.getKey(), e);
+      }
+    }
+
+    return projectData;
+  }
+
+  /**
+   * Computes all permissions of a new project. Several permissions of the same group or user are
+   * merged into the highest one, as they would have overwritten each other when set one after the
+   * other.
+   *
+   * @param project the project to create
+   * @param projectData the project as created in bitbucket
+   * @return the permissions to grant
+   */
+  protected List<PermissionGrant> planProjectPermissions(
+      OpenProjectData project, BitbucketProjectData projectData) {
+    String key = projectData.getKey();
+    List<PermissionGrant> grants = new ArrayList<>();
     if (project.isSpecialPermissionSet()) {
-      setProjectPermissions(
-          projectData,
-          ID_GROUPS,
-          project.getProjectReadonlyGroup(),
-          PROJECT_PERMISSIONS.PROJECT_READ);
-      setProjectPermissions(
-          projectData, ID_GROUPS, project.getProjectUserGroup(), PROJECT_PERMISSIONS.PROJECT_WRITE);
-      setProjectPermissions(
-          projectData, ID_GROUPS, globalKeyuserRoleName, PROJECT_PERMISSIONS.PROJECT_ADMIN);
-      setProjectPermissions(
-          projectData,
-          ID_GROUPS,
-          project.getProjectAdminGroup(),
-          PROJECT_PERMISSIONS.PROJECT_ADMIN);
+      grants.add(
+          projectGrant(
+              key, ID_GROUPS, project.getProjectReadonlyGroup(), PROJECT_PERMISSIONS.PROJECT_READ));
+      grants.add(
+          projectGrant(
+              key, ID_GROUPS, project.getProjectUserGroup(), PROJECT_PERMISSIONS.PROJECT_WRITE));
+      grants.add(
+          projectGrant(key, ID_GROUPS, globalKeyuserRoleName, PROJECT_PERMISSIONS.PROJECT_ADMIN));
+      grants.add(
+          projectGrant(
+              key, ID_GROUPS, project.getProjectAdminGroup(), PROJECT_PERMISSIONS.PROJECT_ADMIN));
     } else {
-      setProjectPermissions(
-          projectData, ID_GROUPS, openDevStackUsersGroupName, PROJECT_PERMISSIONS.PROJECT_READ);
-      setProjectPermissions(
-          projectData, ID_GROUPS, defaultUserGroup, PROJECT_PERMISSIONS.PROJECT_WRITE);
+      grants.add(
+          projectGrant(
+              key, ID_GROUPS, openDevStackUsersGroupName, PROJECT_PERMISSIONS.PROJECT_READ));
+      grants.add(
+          projectGrant(key, ID_GROUPS, defaultUserGroup, PROJECT_PERMISSIONS.PROJECT_WRITE));
     }
 
     String projectCdUser = technicalUser;
@@ -625,32 +1023,197 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
     if (project.getCdUser() != null && !project.getCdUser().trim().isEmpty()) {
       projectCdUser = project.getCdUser();
 
-      String finalCdUser = projectCdUser;
-
-      scmGlobalProperties
-          .getReadableRepos()
-          .forEach(
-              (k, v) -> {
-                logger.debug("Set permissions for repos in project {}", k);
-                for (String repo : v) {
-                  try {
-                    logger.debug(
-                        "Set permission for repo {} in project {} for user {} ",
-                        repo,
-                        k,
-                        finalCdUser);
-                    setRepositoryPermissions(
-                        repo, k, ID_USERS, finalCdUser, REPOSITORY_PERMISSIONS.REPO_READ);
-                  } catch (IOException e) {
-                    logger.error("Unable to set global read permission for cd user", e);
-                  }
-                }
-              });
+      for (Map.Entry<String, List<String>> readableRepos :
+          scmGlobalProperties.getReadableRepos().entrySet()) {
+        for (String repo : readableRepos.getValue()) {
+          grants.add(
+              PermissionGrant.onRepository(
+                  readableRepos.getKey(),
+                  repo,
+                  ID_USERS,
+                  projectCdUser,
+                  REPOSITORY_PERMISSIONS.REPO_READ.toString()));
+        }
+      }
     }
     // set the technical user in any case
-    setProjectPermissions(projectData, ID_USERS, projectCdUser, PROJECT_PERMISSIONS.PROJECT_WRITE);
+    grants.add(projectGrant(key, ID_USERS, projectCdUser, PROJECT_PERMISSIONS.PROJECT_WRITE));
 
-    return projectData;
+    List<PermissionGrant> merged = new ArrayList<>();
+    for (PermissionGrant grant : grants) {
+      if (grant.getName() == null || grant.getName().trim().isEmpty()) {
+        logger.warn("Skipping permission {} without group or user", grant);
+        continue;
+      }
+      int same = -1;
+      for (int i = 0; i < merged.size() && same < 0; i++) {
+        if (merged.get(i).isSamePrincipal(grant)) {
+          same = i;
+        }
+      }
+      if (same < 0) {
+        merged.add(grant);
+      } else if (rankOf(grant.getPermission()) > rankOf(merged.get(same).getPermission())) {
+        merged.set(same, grant);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Grants the given permissions with at most {@code bitbucket.permissions.parallelism} calls in
+   * flight. The existing permissions of every project or repository are read once, permissions
+   * already present are not set again. The permissions of the cd user on the globally readable
+   * repositories are checked against the {@link ReadableRepoGrantIndex} instead, and a read
+   * permission counts as present if the user has at least read access. Failed calls are retried on
+   * transient errors.
+   *
+   * @param projectData the project the permissions belong to
+   * @param grants the permissions to grant
+   * @return the result of every grant, in the order of the given grants. Failed grants hold the
+   *     error, e.g. a {@link HttpException}.
+   */
+  protected Map<PermissionGrant, TaskResult<GrantOutcome>> grantPermissions(
+      BitbucketProjectData projectData, List<PermissionGrant> grants) {
+    Set<String> indexedPaths = new LinkedHashSet<>();
+    Map<String, Callable<Map<String, String>>> reads = new LinkedHashMap<>();
+    for (PermissionGrant grant : grants) {
+      if (isReadableRepoGrant(grant)) {
+        indexedPaths.add(grant.getPath());
+      } else {
+        reads.putIfAbsent(
+            grant.getPath(),
+            () -> readPermissions(grant.getPath(), grant.getPrincipalType()));
+      }
+    }
+    if (!indexedPaths.isEmpty()) {
+      readableRepoGrantIndex.refreshIfStale(
+          readableRepoPermissionPaths(), path -> readPermissions(path, ID_USERS));
+    }
+    Map<String, TaskResult<Map<String, String>>> existing =
+        parallelTaskRunner.invokeAll(reads, permissionParallelism);
+
+    RetryPolicy retryPolicy =
+        new RetryPolicy(
+            permissionRetryMaxAttempts,
+            permissionRetryInitialBackoffInMillis,
+            permissionRetryMaxBackoffInMillis);
+
+    Map<PermissionGrant, Callable<GrantOutcome>> tasks = new LinkedHashMap<>();
+    for (PermissionGrant grant : grants) {
+      if (indexedPaths.contains(grant.getPath())) {
+        String current = readableRepoGrantIndex.permissionOf(grant.getPath(), grant.getName());
+        if (current != null && rankOf(current) >= rankOf(grant.getPermission())) {
+          logger.debug("Permission {} is already present ({})", grant, current);
+          tasks.put(grant, () -> GrantOutcome.PRESENT);
+          continue;
+        }
+      }
+      TaskResult<Map<String, String>> present = existing.get(grant.getPath());
+      if (present != null
+          && present.isSuccessful()
+          && grant
+              .getPermission()
+              .equals(present.getValue().get(grant.getName().toLowerCase()))) {
+        logger.debug("Permission {} is already present", grant);
+        tasks.put(grant, () -> GrantOutcome.PRESENT);
+        continue;
+      }
+      tasks.put(
+          grant,
+          () ->
+              retryPolicy.call(
+                  "bitbucket.grantPermission",
+                  () -> {
+                    grantPermission(projectData, grant);
+                    if (indexedPaths.contains(grant.getPath())) {
+                      readableRepoGrantIndex.granted(
+                          grant.getPath(), grant.getName(), grant.getPermission());
+                    }
+                    return GrantOutcome.GRANTED;
+                  }));
+    }
+    return parallelTaskRunner.invokeAll(tasks, permissionParallelism);
+  }
+
+  private void grantPermission(BitbucketProjectData projectData, PermissionGrant grant)
+      throws IOException {
+    if (grant.isRepositoryGrant()) {
+      setRepositoryPermissions(
+          grant.getRepository(),
+          grant.getProjectKey(),
+          grant.getPrincipalType(),
+          grant.getName(),
+          REPOSITORY_PERMISSIONS.valueOf(grant.getPermission()));
+    } else {
+      setProjectPermissions(
+          projectData,
+          grant.getPrincipalType(),
+          grant.getName(),
+          PROJECT_PERMISSIONS.valueOf(grant.getPermission()));
+    }
+  }
+
+  /** @return true for a user permission on one of the globally readable repositories */
+  private boolean isReadableRepoGrant(PermissionGrant grant) {
+    if (!grant.isRepositoryGrant() || !ID_USERS.equals(grant.getPrincipalType())) {
+      return false;
+    }
+    List<String> repos = scmGlobalProperties.getReadableRepos().get(grant.getProjectKey());
+    return repos != null && repos.contains(grant.getRepository());
+  }
+
+  /** @return the user permission paths of all globally readable repositories */
+  private List<String> readableRepoPermissionPaths() {
+    List<String> paths = new ArrayList<>();
+    for (Map.Entry<String, List<String>> readableRepos :
+        scmGlobalProperties.getReadableRepos().entrySet()) {
+      for (String repo : readableRepos.getValue()) {
+        PermissionGrant grant =
+            PermissionGrant.onRepository(
+                readableRepos.getKey(),
+                repo,
+                ID_USERS,
+                technicalUser,
+                REPOSITORY_PERMISSIONS.REPO_READ.toString());
+        paths.add(grant.getPath());
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * @param path the permission path, see {@link PermissionGrant#getPath()}
+   * @param principalType groups or users
+   * @return the permissions of all groups or users of the project or repository, by lower case name
+   */
+  private Map<String, String> readPermissions(String path, String principalType)
+      throws IOException {
+    String url = String.format("%s/%s", getAdapterApiUri(), path);
+    String principal = ID_GROUPS.equals(principalType) ? "group" : "user";
+
+    Map<String, String> permissions = new HashMap<>();
+    pages(url)
+        .forEachValue(
+            value -> {
+              String name = value.path(principal).path("name").asText(null);
+              if (name != null) {
+                permissions.put(name.toLowerCase(), value.path("permission").asText());
+              }
+            });
+    return permissions;
+  }
+
+  private static PermissionGrant projectGrant(
+      String key, String principalType, String name, PROJECT_PERMISSIONS permission) {
+    return PermissionGrant.onProject(key, principalType, name, permission.toString());
+  }
+
+  private static int rankOf(String permission) {
+    if (permission.endsWith("_ADMIN")) {
+      return 3;
+    }
+    return permission.endsWith("_WRITE") ? 2 : 1;
   }
 
   protected RepositoryData callCreateRepoApi(
@@ -754,9 +1317,84 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
     return String.format("%s%s", bitbucketUri, bitbucketApiPath);
   }
 
+  @Override
+  public Set<String> listProjectKeys() throws IOException {
+    if (!isUseTechnicalUser()) {
+      logger.debug("Cannot list {} projects without technical user", ADAPTER_NAME);
+      return new HashSet<>();
+    }
+
+    String url = String.format(BITBUCKET_API_PROJECTS_PATTERN, bitbucketUri, bitbucketApiPath);
+    Set<String> keys = new HashSet<>();
+    BitbucketPageIterator.of(this, url)
+        .limit(PAGE_LIMIT)
+        .prefetch(pageExecutor)
+        .forEachValue(project -> keys.add(project.path("key").asText().toUpperCase()));
+    return keys;
+  }
+
+  @Override
+  public boolean rewriteCloneUrls(OpenProjectData project, String previousTechnicalUser) {
+    Assert.notNull(project, "Parameter 'project' is null!");
+    if (previousTechnicalUser == null || previousTechnicalUser.equals(technicalUser)) {
+      return false;
+    }
+
+    GitUrlWrangler wrangler = cloneUrlWrangler();
+    boolean changed = false;
+    if (project.getRepositories() != null) {
+      for (Map<URL_TYPE, String> urls : project.getRepositories().values()) {
+        changed |= replaceUser(wrangler, previousTechnicalUser, urls, URL_TYPE.URL_CLONE_HTTP);
+        changed |= replaceUser(wrangler, previousTechnicalUser, urls, URL_TYPE.URL_CLONE_SSH);
+      }
+    }
+    if (project.getQuickstarters() != null) {
+      String httpKey = OpenProjectData.COMPONENT_GIT_URL_HTTP_KEY;
+      String sshKey = OpenProjectData.COMPONENT_GIT_URL_SSH_KEY;
+      for (Map<String, String> option : project.getQuickstarters()) {
+        changed |= replaceUser(wrangler, previousTechnicalUser, option, httpKey);
+        changed |= replaceUser(wrangler, previousTechnicalUser, option, sshKey);
+      }
+    }
+    return changed;
+  }
+
+  private static <K> boolean replaceUser(
+      GitUrlWrangler wrangler, String previousUser, Map<K, String> urls, K key) {
+    String url = urls.get(key);
+    String rewritten = wrangler.replaceUser(previousUser, url);
+    if (rewritten == null || rewritten.equals(url)) {
+      return false;
+    }
+    urls.put(key, rewritten);
+    return true;
+  }
+
+  private GitUrlWrangler cloneUrlWrangler() {
+    GitUrlWrangler wrangler = cloneUrlWrangler;
+    if (wrangler == null || !Objects.equals(wrangler.getTechnicalUser(), technicalUser)) {
+      wrangler = new GitUrlWrangler(technicalUser);
+      cloneUrlWrangler = wrangler;
+    }
+    return wrangler;
+  }
+
   @Override
   public Map<String, String> getProjects(String filter) {
-    throw new NotImplementedException("BitbucketAdapter#getProjects");
+    logger.debug("Getting bitbucket projects with filter {}", filter);
+    Map<String, String> keyMap = new HashMap<>();
+    if (!inventory.isFresh()) {
+      try {
+        inventory.syncProjects(this);
+      } catch (IOException e) {
+        logger.error("Could not retrieve bitbucket projects", e);
+        return keyMap;
+      }
+    }
+    for (BitbucketProjectSnapshot project : inventory.find(filter)) {
+      keyMap.put(project.getKey(), project.getName());
+    }
+    return keyMap;
   }
 
   @Override
@@ -781,27 +1419,34 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
       return leftovers;
     }
 
-    Set<String> repositoryNames = project.getRepositories().keySet();
+    String projectPath = String.format("%s/%s", getAdapterApiUri(), project.getProjectKey());
+    boolean projectCleanup = !stage.equals(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION);
+
+    // only the recorded repositories are deleted, a failed run records the ones it created
+    Set<String> repositoryNames = new LinkedHashSet<>(project.getRepositories().keySet());
+    // repositories that existed before the run were only reconciled, they are never deleted
+    Set<String> keptRepos = new LinkedHashSet<>(project.getReconciledRepositories());
+    keptRepos.retainAll(repositoryNames);
+    repositoryNames.removeAll(keptRepos);
+    if (!keptRepos.isEmpty()) {
+      logger.info("Scm repositories {} existed before and are kept", keptRepos);
+    }
 
     logger.debug("Cleanup of {} scm repositories", repositoryNames);
 
-    int failedRepoCleanup = 0;
-
-    for (String repoName : repositoryNames) {
-      try {
-        String repoPath =
-            String.format("%s/%s/repos/%s", getAdapterApiUri(), project.getProjectKey(), repoName);
-        getRestClient().execute(httpDelete().url(repoPath).returnType(null));
-        logger.debug("Removed scm repo {}", repoName);
-      } catch (Exception eCreateRepo) {
-        logger.debug("Could not remove repo {}, error {}", repoName, eCreateRepo.getMessage());
-        failedRepoCleanup++;
-      }
-    }
-    if (failedRepoCleanup > 0) {
-      leftovers.put(CLEANUP_LEFTOVER_COMPONENTS.SCM_REPO, failedRepoCleanup);
+    Map<String, TaskResult<BitbucketProjectCleaner.Outcome>> results =
+        projectCleaner.deleteRepositories(this, projectPath, repositoryNames);
+    inventory.repositoriesChanged(project.getProjectKey());
+    List<String> leftoverRepos =
+        results.entrySet().stream()
+            .filter(entry -> !entry.getValue().isSuccessful())
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    if (!leftoverRepos.isEmpty()) {
+      logger.warn("Scm repositories {} are left after cleanup", leftoverRepos);
+      leftovers.put(CLEANUP_LEFTOVER_COMPONENTS.SCM_REPO, leftoverRepos.size());
     }
-    if (stage.equals(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION)) {
+    if (!projectCleanup) {
       logger.debug(
           "Cleanup of repos done - status: {} " + "components are left ..",
           leftovers.size() == 0 ? 0 : leftovers);
@@ -809,18 +1454,17 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
       return leftovers;
     }
 
-    logger.debug("Starting scm project cleanup with url {}", project.getScmvcsUrl());
-
-    String projectPath = String.format("%s/%s", getAdapterApiUri(), project.getProjectKey());
-
-    try {
-      getRestClient().execute(httpDelete().url(projectPath).returnType(null));
-    } catch (Exception eProjectDelete) {
-      logger.debug(
-          "Could not remove project {}, error {}",
-          project.getProjectKey(),
-          eProjectDelete.getMessage());
+    if (!leftoverRepos.isEmpty() || !keptRepos.isEmpty()) {
+      // bitbucket refuses to delete a project with repositories
+      logger.warn("Scm project {} is kept, it still has repositories", project.getProjectKey());
       leftovers.put(CLEANUP_LEFTOVER_COMPONENTS.SCM_PROJECT, 1);
+    } else {
+      logger.debug("Starting scm project cleanup with url {}", project.getScmvcsUrl());
+      if (projectCleaner.deleteProject(this, projectPath)) {
+        inventory.removed(project.getProjectKey());
+      } else {
+        leftovers.put(CLEANUP_LEFTOVER_COMPONENTS.SCM_PROJECT, 1);
+      }
     }
 
     project.setScmvcsUrl(null);
@@ -834,4 +1478,15 @@ public class BitbucketAdapter extends BaseServiceAdapter implements ISCMAdapter
   public String getTechnicalUser() {
     return technicalUser;
   }
+
+  /** The webhook of a project and the trigger secret it was built with */
+  private static class WebhookTemplate {
+    private final String secret;
+    private final Webhook webhook;
+
+    private WebhookTemplate(String secret, Webhook webhook) {
+      this.secret = secret;
+      this.webhook = webhook;
+    }
+  }
 }
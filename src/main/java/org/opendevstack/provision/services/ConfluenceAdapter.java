@@ -23,8 +23,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.*;
-import java.util.function.BiConsumer;
 import java.util.function.Function;
+import javax.annotation.PostConstruct;
 import org.apache.commons.lang3.NotImplementedException;
 import org.opendevstack.provision.adapter.ICollaborationAdapter;
 import org.opendevstack.provision.adapter.IServiceAdapter;
@@ -33,7 +33,9 @@ import org.opendevstack.provision.adapter.exception.CreateProjectPreconditionExc
 import org.opendevstack.provision.controller.CheckPreconditionFailure;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.model.confluence.*;
+import org.opendevstack.provision.util.concurrent.BatchLookupContext;
 import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.template.PrecompiledTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -116,6 +118,8 @@ public class ConfluenceAdapter extends BaseServiceAdapter implements ICollaborat
 
   @Autowired private ConfigurableEnvironment environment;
 
+  private volatile List<PermissionTemplate> permissionTemplates;
+
   @Qualifier("projectTemplateKeyNames")
   @Autowired
   private List<String> projectTemplateKeyNames;
@@ -224,48 +228,74 @@ public class ConfluenceAdapter extends BaseServiceAdapter implements ICollaborat
   }
 
   public int updateSpacePermissions(OpenProjectData data) throws IOException {
-    PathMatchingResourcePatternResolver pmrl =
-        new PathMatchingResourcePatternResolver(Thread.currentThread().getContextClassLoader());
-
-    Resource[] permissionFiles = pmrl.getResources(confluencePermissionFilePattern);
+    List<PermissionTemplate> templates = getPermissionTemplates();
 
     int updatedPermissions = 0;
 
-    logger.debug("Found permission sets: {}", permissionFiles.length);
+    logger.debug("Found permission sets: {}", templates.size());
+
+    String path =
+        String.format(
+            CONFLUENCE_API_ADD_PERMISSIONS_TO_SPACE_PATTERN,
+            confluenceUri,
+            confluenceLegacyApiPath);
+
+    for (PermissionTemplate template : templates) {
+      Map<String, String> values = new HashMap<>();
+      values.put(SPACE_NAME_KEY, data.getProjectKey());
+      if (template.namesGroup()) {
+        values.put(SPACE_GROUP_KEY, template.groupOf(data, globalKeyuserRoleName));
+      } else {
+        values.put(SPACE_GROUP_KEY, SPACE_GROUP_KEY);
+      }
+      String permissionset = template.permissionset.render(values);
+
+      getRestClient().execute(httpPost().url(path).body(permissionset).returnType(String.class));
 
-    for (Resource permissionFile : permissionFiles) {
+      updatedPermissions++;
+    }
+    return updatedPermissions;
+  }
+
+  /**
+   * Reads and compiles the permission sets of {@code confluence.permission.filepattern} once, so
+   * that a space creation does not scan the classpath and parse the files again.
+   *
+   * @throws IOException if the permission files could not be read
+   */
+  @PostConstruct
+  public void loadPermissionTemplates() throws IOException {
+    permissionTemplates = readPermissionTemplates();
+  }
+
+  private List<PermissionTemplate> readPermissionTemplates() throws IOException {
+    PathMatchingResourcePatternResolver pmrl =
+        new PathMatchingResourcePatternResolver(Thread.currentThread().getContextClassLoader());
+
+    List<PermissionTemplate> templates = new ArrayList<>();
+    for (Resource permissionFile : pmrl.getResources(confluencePermissionFilePattern)) {
       String permissionFilename = permissionFile.getFilename();
 
       try (BufferedReader reader =
           new BufferedReader(new InputStreamReader(permissionFile.getInputStream()))) {
-        String permissionset;
-
         // we know it's a singular pseudo json line
-        permissionset = reader.readLine();
-        permissionset = permissionset.replace(SPACE_NAME_KEY, data.getProjectKey());
-
-        if (permissionFilename.contains(ADMIN_GROUP)) {
-          permissionset = permissionset.replace(SPACE_GROUP_KEY, data.getProjectAdminGroup());
-        } else if (permissionFilename.contains(USER_GROUP)) {
-          permissionset = permissionset.replace(SPACE_GROUP_KEY, data.getProjectUserGroup());
-        } else if (permissionFilename.contains(READONLY_GROUP)) {
-          permissionset = permissionset.replace(SPACE_GROUP_KEY, data.getProjectReadonlyGroup());
-        } else if (permissionFilename.contains(KEYUSER_GROUP)) {
-          permissionset = permissionset.replace(SPACE_GROUP_KEY, globalKeyuserRoleName);
-        }
-
-        String path =
-            String.format(
-                CONFLUENCE_API_ADD_PERMISSIONS_TO_SPACE_PATTERN,
-                confluenceUri,
-                confluenceLegacyApiPath);
+        String permissionset = reader.readLine();
+        templates.add(new PermissionTemplate(permissionFilename, permissionset));
+      }
+    }
 
-        getRestClient().execute(httpPost().url(path).body(permissionset).returnType(String.class));
+    logger.debug(
+        "Compiled {} confluence permission sets of {}",
+        templates.size(),
+        confluencePermissionFilePattern);
+    return Collections.unmodifiableList(templates);
+  }
 
-        updatedPermissions++;
-      }
+  private List<PermissionTemplate> getPermissionTemplates() throws IOException {
+    if (permissionTemplates == null) {
+      permissionTemplates = readPermissionTemplates();
     }
-    return updatedPermissions;
+    return permissionTemplates;
   }
 
   public String getAdapterApiUri() {
@@ -415,6 +445,11 @@ public class ConfluenceAdapter extends BaseServiceAdapter implements ICollaborat
   }
 
   private boolean checkGroupExists(String group) throws IOException {
+    return BatchLookupContext.lookupChecked(
+        "confluence.group", group, () -> fetchGroupExists(group));
+  }
+
+  private boolean fetchGroupExists(String group) throws IOException {
 
     logger.info("checking if group '{}' exists!", group);
 
@@ -448,33 +483,12 @@ public class ConfluenceAdapter extends BaseServiceAdapter implements ICollaborat
   }
 
   private Set<String> groupsRequired(OpenProjectData data) throws IOException {
-
-    PathMatchingResourcePatternResolver pmrl =
-        new PathMatchingResourcePatternResolver(Thread.currentThread().getContextClassLoader());
-
-    Resource[] permissionFiles = pmrl.getResources(confluencePermissionFilePattern);
-
     Set<String> groupsRequired = new HashSet<>();
 
-    BiConsumer<Set<String>, String> addIfNotEmpty =
-        (set, value) -> {
-          if (null != value && !value.isEmpty()) {
-            set.add(value);
-          }
-        };
-
-    for (Resource permissionFile : permissionFiles) {
-
-      String permissionFilename = permissionFile.getFilename();
-
-      if (permissionFilename.contains(ADMIN_GROUP)) {
-        addIfNotEmpty.accept(groupsRequired, data.getProjectAdminGroup());
-      } else if (permissionFilename.contains(USER_GROUP)) {
-        addIfNotEmpty.accept(groupsRequired, data.getProjectUserGroup());
-      } else if (permissionFilename.contains(READONLY_GROUP)) {
-        addIfNotEmpty.accept(groupsRequired, data.getProjectReadonlyGroup());
-      } else if (permissionFilename.contains(KEYUSER_GROUP)) {
-        addIfNotEmpty.accept(groupsRequired, globalKeyuserRoleName);
+    for (PermissionTemplate template : getPermissionTemplates()) {
+      String group = template.groupOf(data, globalKeyuserRoleName);
+      if (null != group && !group.isEmpty()) {
+        groupsRequired.add(group);
       }
     }
 
@@ -510,6 +524,10 @@ public class ConfluenceAdapter extends BaseServiceAdapter implements ICollaborat
   }
 
   private boolean checkUserExists(String username) {
+    return BatchLookupContext.lookup("confluence.user", username, () -> fetchUserExists(username));
+  }
+
+  private boolean fetchUserExists(String username) {
 
     Map<String, String> params = new HashMap<>();
     params.put(USERNAME_PARAM, username);
@@ -609,4 +627,39 @@ public class ConfluenceAdapter extends BaseServiceAdapter implements ICollaborat
   public List<String> getProjectTemplateKeyNames() {
     return projectTemplateKeyNames;
   }
+
+  /** A compiled permission set of {@code confluence.permission.filepattern} */
+  static class PermissionTemplate {
+
+    private final String filename;
+    private final PrecompiledTemplate permissionset;
+
+    PermissionTemplate(String filename, String permissionset) {
+      this.filename = filename;
+      this.permissionset =
+          PrecompiledTemplate.compile(permissionset, SPACE_NAME_KEY, SPACE_GROUP_KEY);
+    }
+
+    /** @return true if the file name tells which group the permission set is granted to */
+    boolean namesGroup() {
+      return filename.contains(ADMIN_GROUP)
+          || filename.contains(USER_GROUP)
+          || filename.contains(READONLY_GROUP)
+          || filename.contains(KEYUSER_GROUP);
+    }
+
+    /** @return the group the permission set is granted to, or null if the file names none */
+    String groupOf(OpenProjectData data, String keyuserGroup) {
+      if (filename.contains(ADMIN_GROUP)) {
+        return data.getProjectAdminGroup();
+      } else if (filename.contains(USER_GROUP)) {
+        return data.getProjectUserGroup();
+      } else if (filename.contains(READONLY_GROUP)) {
+        return data.getProjectReadonlyGroup();
+      } else if (filename.contains(KEYUSER_GROUP)) {
+        return keyuserGroup;
+      }
+      return null;
+    }
+  }
 }
@@ -21,6 +21,9 @@ import org.opendevstack.provision.adapter.IProjectIdentityMgmtAdapter;
 import org.opendevstack.provision.adapter.exception.IdMgmtException;
 import org.opendevstack.provision.controller.CheckPreconditionFailure;
 import org.opendevstack.provision.model.OpenProjectData;
+import org.opendevstack.provision.util.concurrent.BatchLookupContext;
+import org.opendevstack.provision.util.tracing.Span;
+import org.opendevstack.provision.util.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -68,7 +71,17 @@ public class CrowdProjectIdentityMgmtAdapter implements IProjectIdentityMgmtAdap
     }
     long startTime = System.currentTimeMillis();
     try {
-      boolean exists = manager.existsGroupWithName(groupName);
+      boolean exists =
+          BatchLookupContext.lookup(
+              "crowd.group",
+              groupName,
+              () -> {
+                try (Span span =
+                    Tracing.startSpan("crowd.existsGroupWithName")
+                        .setAttribute("crowd.group", groupName)) {
+                  return manager.existsGroupWithName(groupName);
+                }
+              });
       if (!exists) {
         logger.error("group {} does not exist!", groupName);
       }
@@ -86,7 +99,17 @@ public class CrowdProjectIdentityMgmtAdapter implements IProjectIdentityMgmtAdap
 
     long startTime = System.currentTimeMillis();
     try {
-      boolean exists = manager.existPrincipalWithName(userName);
+      boolean exists =
+          BatchLookupContext.lookup(
+              "crowd.user",
+              userName,
+              () -> {
+                try (Span span =
+                    Tracing.startSpan("crowd.existPrincipalWithName")
+                        .setAttribute("crowd.user", userName)) {
+                  return manager.existPrincipalWithName(userName);
+                }
+              });
       if (!exists) {
         logger.error("principal {} does not exist!", userName);
       }
@@ -115,11 +138,15 @@ public class CrowdProjectIdentityMgmtAdapter implements IProjectIdentityMgmtAdap
     if (groupName == null || groupName.trim().length() == 0)
       throw new IdMgmtException("Cannot create a null group!");
 
+    Span span = Tracing.startSpan("crowd.addGroup").setAttribute("crowd.group", groupName);
     try {
       return manager.addGroup(groupName);
     } catch (Exception eAddGroup) {
+      span.setError(eAddGroup);
       logger.error("Could not create group {}, error: {}", groupName, eAddGroup);
       throw new IdMgmtException(eAddGroup);
+    } finally {
+      span.close();
     }
   }
 
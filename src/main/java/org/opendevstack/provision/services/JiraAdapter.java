@@ -21,10 +21,11 @@ import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 import org.opendevstack.provision.adapter.IBugtrackerAdapter;
 import org.opendevstack.provision.adapter.IODSAuthnzAdapter;
 import org.opendevstack.provision.adapter.ISCMAdapter.URL_TYPE;
@@ -34,6 +35,9 @@ import org.opendevstack.provision.controller.CheckPreconditionFailure;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.model.jira.*;
 import org.opendevstack.provision.services.jira.*;
+import org.opendevstack.provision.services.jira.JiraProjectPropertyUpdater.WriteOutcome;
+import org.opendevstack.provision.util.concurrent.BatchLookupContext;
+import org.opendevstack.provision.util.concurrent.TaskResult;
 import org.opendevstack.provision.util.exception.HttpException;
 import org.opendevstack.provision.util.rest.RestClientCall;
 import org.slf4j.Logger;
@@ -54,11 +58,15 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
 
   private static final Logger logger = LoggerFactory.getLogger(JiraAdapter.class);
 
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
   public static final String ADAPTER_NAME = "jira";
 
   public static final String JIRA_TEMPLATE_KEY_PREFIX = "jira.project.template.key.";
   public static final String JIRA_TEMPLATE_TYPE_PREFIX = "jira.project.template.type.";
 
+  public static final String WEBHOOK_PROXY_URL_PROPERTY = "webhook-proxy-url";
+
   public static final String ADD_WEBHOOK_PROXY_URL_AS_PROJECT_PROPERTY =
       "jira.project.template.add-webhook-proxy-url-as-project-property.";
 
@@ -104,6 +112,8 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
 
   @Autowired private WebhookProxyJiraPropertyUpdater webhookProxyJiraPropertyUpdater;
 
+  @Autowired private JiraProjectPropertyUpdater jiraProjectPropertyUpdater;
+
   @Autowired private JiraProjectTypePropertyCalculator jiraProjectTypePropertyCalculator;
 
   @Autowired private FullJiraProjectFactory fullJiraProjectFactory;
@@ -112,10 +122,40 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
 
   @Autowired private JiraSpecialPermissioner jiraSpecialPermissioner;
 
+  @Autowired private JiraProjectKeyIndex projectKeyIndex;
+
+  @Autowired private JiraComponentCreator jiraComponentCreator;
+
+  @Autowired private JiraDirectoryCache directoryCache;
+
+  @Autowired private JiraProjectMirror projectMirror;
+
+  @Autowired private JiraPermissionSchemeIndex permissionSchemeIndex;
+
+  @Autowired private JiraProjectCleaner projectCleaner;
+
+  @Value("${jira.project-key-index.background-refresh.enabled:true}")
+  private boolean projectKeyIndexBackgroundRefresh;
+
+  @Value("${jira.project-mirror.background-sync.enabled:true}")
+  private boolean projectMirrorBackgroundSync;
+
   public JiraAdapter() {
     super(ADAPTER_NAME);
   }
 
+  @PostConstruct
+  public void initProjectIndexes() {
+    projectMirror.setJiraRestService(this);
+    // without technical user jira can only be asked with the credentials of a logged in user
+    if (projectKeyIndexBackgroundRefresh && isUseTechnicalUser()) {
+      projectKeyIndex.startPeriodicRefresh(this);
+    }
+    if (projectMirrorBackgroundSync && isUseTechnicalUser()) {
+      projectMirror.startPeriodicSync();
+    }
+  }
+
   private LeanJiraProject createProjectInJira(OpenProjectData project) throws IOException {
 
     FullJiraProject toBeCreated =
@@ -169,13 +209,32 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
   public boolean projectKeyExists(String key) {
     Preconditions.checkNotNull(key, "Key for keyExists cannot be null");
 
-    Collection<String> projectKeys = getProjectKeys();
-    return projectKeys.contains(key);
+    if (projectMirror.isFresh() && projectMirror.get(key) != null) {
+      return true;
+    }
+    try {
+      return projectKeyIndex.exists(this, key, true);
+    } catch (IOException e) {
+      logger.error("Error checking if jira project key {} exists: {}", key, e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public Set<String> listProjectKeys() throws IOException {
+    if (!isUseTechnicalUser()) {
+      // no credentials outside of a request, only the keys looked up so far are known
+      return projectKeyIndex.keys();
+    }
+    return listProjectKeysOrFail();
   }
 
   // refactor - to only look for the project by key that is to be created!
   public Map<String, String> getProjects(String filter) {
     logger.debug("Getting jira projects with filter {}", filter);
+    if (projectMirror.isFresh()) {
+      return getProjectsFromMirror(filter);
+    }
     String url =
         filter == null || filter.trim().length() == 0
             ? String.format(JiraRestApi.JIRA_API_PROJECT_PATTERN, jiraUri, jiraApiPath)
@@ -193,6 +252,19 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
     }
   }
 
+  private Map<String, String> getProjectsFromMirror(String filter) {
+    Map<String, String> keyMap = new HashMap<>();
+    if (filter == null || filter.trim().length() == 0) {
+      projectMirror.projects().forEach(project -> keyMap.put(project.getKey(), project.getName()));
+    } else {
+      JiraProjectSnapshot project = projectMirror.get(filter.trim());
+      if (project != null) {
+        keyMap.put(project.getKey(), project.getName());
+      }
+    }
+    return keyMap;
+  }
+
   private Map<String, String> convertJiraProjectToKeyMap(List<LeanJiraProject> projects) {
     Map<String, String> keyMap = new HashMap<>();
     if (projects == null || projects.size() == 0) {
@@ -224,13 +296,15 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
       // This create a project with permission scheme id if any was configured
       LeanJiraProject newJiraProject = createProjectInJira(project);
       logger.debug("Created project: {}", newJiraProject);
+      projectKeyIndex.added(project.getProjectKey());
+      projectMirror.added(
+          project.getProjectKey(), project.getProjectName(), project.getProjectAdminUser());
 
       project.setBugtrackerUrl(String.format("%s/browse/%s", jiraUri, newJiraProject.getKey()));
 
       addSpecialPermission(project);
 
-      addWebhookProxyUrlToJiraProject(
-          project.getProjectKey(), project.getProjectType(), project.getWebhookProxySecret());
+      addProjectProperties(project);
 
       return project;
     } catch (IOException eCreationException) {
@@ -259,9 +333,61 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
     }
   }
 
+  /**
+   * Sets the webhook proxy url and the properties configured for the project type concurrently.
+   * Properties that already have the value are not written again.
+   *
+   * @param project the project
+   * @return the outcome of every property, by name
+   * @throws IOException if a property could not be set
+   */
+  public Map<String, WriteOutcome> addProjectProperties(OpenProjectData project)
+      throws IOException {
+    String projectKey = project.getProjectKey();
+    String projectType = project.getProjectType();
+
+    Map<String, Callable<WriteOutcome>> writes = new LinkedHashMap<>();
+    if (isWebhookProxyUrlPropertyEnabled(projectKey, projectType)) {
+      writes.put(
+          WEBHOOK_PROXY_URL_PROPERTY,
+          () ->
+              webhookProxyJiraPropertyUpdater.addWebhookProxyProperty(
+                  this, projectKey, projectType, project.getWebhookProxySecret()));
+    }
+    writes.putAll(
+        jiraProjectPropertyUpdater.writeTasks(
+            this, jiraProjectPropertyUpdater.resolveConfiguredProperties(projectKey, projectType)));
+
+    Map<String, WriteOutcome> outcomes = new LinkedHashMap<>();
+    for (Entry<String, TaskResult<WriteOutcome>> result :
+        jiraProjectPropertyUpdater.writeProperties(writes).entrySet()) {
+      if (!result.getValue().isSuccessful()) {
+        Exception e = result.getValue().getError();
+        if (e instanceof IOException) {
+          throw (IOException) e;
+        }
+        throw new IOException(
+            String.format(
+                "Could not set jira project property %s of project %s: %s",
+                result.getKey(), projectKey, e.getMessage()),
+            e);
+      }
+      outcomes.put(result.getKey(), result.getValue().getValue());
+    }
+    logger.debug("Set jira project properties [projectKey={}, {}]", projectKey, outcomes);
+    return outcomes;
+  }
+
   public void addWebhookProxyUrlToJiraProject(
       String projectKey, String projectType, String webhookSecret) throws IOException {
+    if (!isWebhookProxyUrlPropertyEnabled(projectKey, projectType)) {
+      return;
+    }
+    webhookProxyJiraPropertyUpdater.addWebhookProxyProperty(
+        this, projectKey, projectType, webhookSecret);
+  }
 
+  private boolean isWebhookProxyUrlPropertyEnabled(String projectKey, String projectType) {
     String addProjectProperty =
         jiraProjectTypePropertyCalculator
             .readPropertyIfTemplateKeyExistsAndIsEnabledOrReturnDefault(
@@ -272,16 +398,14 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
           "Project type is not configured for the setup of webhook proxy url as jira project property [projectKey={}, projectType={}]",
           projectKey,
           projectType);
-      return;
+      return false;
     }
 
     logger.info(
-        "Project type is not configured for the setup of webhook proxy url as jira project property [projectKey={}, projectType={}]",
+        "Project type is configured for the setup of webhook proxy url as jira project property [projectKey={}, projectType={}]",
         projectKey,
         projectType);
-
-    webhookProxyJiraPropertyUpdater.addWebhookProxyProperty(
-        this, projectKey, projectType, webhookSecret);
+    return true;
   }
 
   public String resolveProjectAdminUser(OpenProjectData project) {
@@ -323,10 +447,7 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
     }
     Preconditions.checkNotNull(data, "data input cannot be null");
     Preconditions.checkNotNull(data.getProjectKey(), "project key cannot be null");
-    String path = String.format("%s%s/component", jiraUri, jiraApiPath);
-
-    Map<String, String> createdComponents = new HashMap<>();
-
+    Map<String, Component> components = new LinkedHashMap<>();
     Map<String, Map<URL_TYPE, String>> repositories = data.getRepositories();
     if (repositories != null) {
       for (Entry<String, Map<URL_TYPE, String>> repo : repositories.entrySet()) {
@@ -345,37 +466,33 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
         }
 
         Component component = new Component();
-        component.setName(
-            String.format(
-                "Technology%s",
-                repo.getKey().replaceFirst(data.getProjectKey().toLowerCase(), "")));
+        component.setName(componentNameOf(data.getProjectKey(), repo.getKey()));
         component.setProject(data.getProjectKey());
         component.setDescription(
             String.format("Technology component %s stored at %s", repo.getKey(), href));
-        try {
-          RestClientCall call = httpPost().url(path).body(component).returnType(null);
-          getRestClient().execute(call);
-          createdComponents.put(component.getName(), component.getDescription());
-        } catch (HttpException httpEx) {
-          String error =
-              String.format(
-                  "Could not create jira component for %s - error %s",
-                  component.getName(), httpEx.getMessage());
-          logger.error(error);
-
-          if (httpEx.getResponseCode() == 401) {
-            // if you get a 401 here - we can't reach the project, so stop
-            break;
-          }
-        } catch (IOException componentEx) {
-          String error =
-              String.format(
-                  "Could not create jira component for %s - error %s",
-                  component.getName(), componentEx.getMessage());
-          logger.error(error);
-        }
+        components.put(component.getName(), component);
       }
     }
+
+    Map<String, String> createdComponents = new HashMap<>();
+    if (components.isEmpty()) {
+      return createdComponents;
+    }
+
+    // existing components are kept, so a re-run only creates the missing ones
+    Map<String, TaskResult<JiraComponentCreator.Outcome>> results =
+        jiraComponentCreator.createComponents(
+            this, data.getProjectKey(), new ArrayList<>(components.values()));
+    results.forEach(
+        (name, result) -> {
+          if (result.isSuccessful()) {
+            createdComponents.put(name, components.get(name).getDescription());
+            // only components of this run are removed by the cleanup of a failed run
+            if (result.getValue() == JiraComponentCreator.Outcome.CREATED) {
+              data.getCreatedBugtrackerComponents().add(name);
+            }
+          }
+        });
     return createdComponents;
   }
 
@@ -386,11 +503,13 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
     Preconditions.checkNotNull(project);
 
     Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> leftovers = new HashMap<>();
-    if (stage.equals(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION)
-        || (!project.isBugtrackerSpace() && project.getBugtrackerUrl() == null)) {
+    if (!project.isBugtrackerSpace() && project.getBugtrackerUrl() == null) {
       logger.debug("Project {} not affected from cleanup", project.getProjectKey());
       return leftovers;
     }
+    if (stage.equals(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION)) {
+      return cleanupComponents(project);
+    }
     String jiraProjectPath =
         String.format(
             JiraRestApi.JIRA_API_PROJECT_FILTER_PATTERN,
@@ -403,26 +522,37 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
         project.getProjectKey(),
         project.getBugtrackerUrl());
 
-    try {
-      RestClientCall callJiraProjectDelete = httpDelete().url(jiraProjectPath).returnType(null);
-      getRestClient().execute(callJiraProjectDelete);
+    // the permission scheme is read before the project is gone
+    PermissionSchemeResponse permissionScheme = null;
+    if (project.isSpecialPermissionSet()) {
+      try {
+        RestClientCall callGetScheme =
+            httpGet()
+                .url(String.format("%s/permissionscheme", jiraProjectPath))
+                .returnType(PermissionSchemeResponse.class);
+        permissionScheme = getRestClient().execute(callGetScheme);
+      } catch (Exception cex) {
+        logger.error(
+            "Could not read jira project permission set {} error: {}",
+            project.getProjectKey(),
+            cex.getMessage());
+      }
+    }
+
+    boolean projectDeleted = projectCleaner.deleteProject(this, project.getProjectKey());
+    if (projectDeleted) {
+      projectKeyIndex.removed(project.getProjectKey());
+      projectMirror.removed(project.getProjectKey());
 
       project.setBugtrackerUrl(null);
-    } catch (Exception cex) {
-      logger.error(
-          "Could not clean up jira project {} error: {}",
-          project.getProjectKey(),
-          cex.getMessage());
+    } else {
+      logger.error("Could not clean up jira project {}", project.getProjectKey());
       leftovers.put(CLEANUP_LEFTOVER_COMPONENTS.BUGTRACKER_PROJECT, 1);
     }
 
     try {
-      if (project.isSpecialPermissionSet()) {
-        String permissionSchemeUrl = String.format("%s/permissionscheme", jiraProjectPath);
-
-        RestClientCall callGetScheme =
-            httpGet().url(permissionSchemeUrl).returnType(PermissionSchemeResponse.class);
-        PermissionSchemeResponse permissionScheme = getRestClient().execute(callGetScheme);
+      // a scheme still used by the project can not be deleted
+      if (permissionScheme != null && projectDeleted) {
         if (permissionScheme.getName().contains(project.getProjectKey())) {
           logger.debug(
               "Cleaning up permissionset {} {} - for project: {}",
@@ -437,13 +567,28 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
           return leftovers;
         }
 
+        // permission schemes with the same grants are shared, see JiraPermissionSchemeIndex.
+        // Jira moves the projects of a deleted scheme to the default scheme, so the index or
+        // jira itself is asked - the project mirror may be empty or partial
+        String schemeId = String.valueOf(permissionScheme.getId());
         String jiraPermissionSchemePath =
             String.format(
                 "%s%s/permissionscheme/%s", jiraUri, jiraApiPath, permissionScheme.getId());
 
         RestClientCall callPermissionSchemeDelete =
             httpDelete().url(jiraPermissionSchemePath).returnType(null);
-        getRestClient().execute(callPermissionSchemeDelete);
+        Set<String> otherUsers =
+            permissionSchemeIndex.deleteIfUnused(
+                this,
+                schemeId,
+                project.getProjectKey(),
+                () -> getRestClient().execute(callPermissionSchemeDelete));
+        if (!otherUsers.isEmpty()) {
+          logger.info(
+              "NOT Cleaning up permissionset {}, because it is still used by {}",
+              schemeId,
+              otherUsers);
+        }
       }
 
     } catch (Exception cex) {
@@ -460,19 +605,51 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
     return leftovers;
   }
 
-  private Collection<String> getProjectKeys() {
-    logger.debug("Getting all visible jira project keys");
-    String url = String.format("%s%s/project", jiraUri, jiraApiPath);
-    try {
+  /**
+   * Deletes the components that {@link #createComponentsForProjectRepositories} created in this
+   * run. Components of earlier runs or that existed already are kept.
+   */
+  private Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> cleanupComponents(OpenProjectData project) {
+    Map<CLEANUP_LEFTOVER_COMPONENTS, Integer> leftovers = new HashMap<>();
+    if (!createJiraComponents) {
+      return leftovers;
+    }
 
-      RestClientCall call =
-          httpGet().url(url).returnTypeReference(new TypeReference<List<JsonNode>>() {});
-      List<JsonNode> execute = getRestClient().execute(call);
-      return execute.stream().map(n -> n.path("key").textValue()).collect(Collectors.toList());
+    String projectKey = project.getProjectKey();
+    Set<String> names = new LinkedHashSet<>(project.getCreatedBugtrackerComponents());
+    if (names.isEmpty()) {
+      logger.debug("Project {} not affected from cleanup, no components", projectKey);
+      return leftovers;
+    }
+
+    logger.debug("Cleaning up jira components {} of project {}", names, projectKey);
+    int failed;
+    try {
+      failed =
+          (int)
+              projectCleaner.deleteComponents(this, projectKey, names).values().stream()
+                  .filter(result -> !result.isSuccessful())
+                  .count();
     } catch (IOException e) {
-      logger.error("Error in getProjectKeys: {}", e.getMessage());
-      return Collections.emptyList();
+      logger.error("Could not read jira components of {} error: {}", projectKey, e.getMessage());
+      failed = names.size();
     }
+    if (failed > 0) {
+      leftovers.put(CLEANUP_LEFTOVER_COMPONENTS.BUGTRACKER_COMPONENT, failed);
+    }
+    logger.debug(
+        "Cleanup of components done - status: {} components are left ..",
+        leftovers.size() == 0 ? 0 : leftovers);
+    return leftovers;
+  }
+
+  private static String componentNameOf(String projectKey, String repoName) {
+    return String.format("Technology%s", repoName.replaceFirst(projectKey.toLowerCase(), ""));
+  }
+
+  private Set<String> listProjectKeysOrFail() throws IOException {
+    logger.debug("Getting all visible jira project keys");
+    return projectKeyIndex.refresh(this);
   }
 
   @Override
@@ -585,6 +762,15 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
   }
 
   private boolean checkRoleExists(String role) {
+    return BatchLookupContext.lookup(
+        "jira.role",
+        role,
+        () ->
+            directoryCache.exists(
+                JiraDirectoryCache.TYPE_ROLE, role, () -> fetchRoleExists(role)));
+  }
+
+  private boolean fetchRoleExists(String role) {
 
     logger.info("Checking if role id '{}' exists!", role);
 
@@ -604,7 +790,7 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
         }
       }
 
-      JsonNode json = new ObjectMapper().readTree(response);
+      JsonNode json = MAPPER.readTree(response);
 
       JsonNode id = json.get("id");
 
@@ -643,6 +829,17 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
   }
 
   private boolean checkPermissionSchemeExists(String schemeId) {
+    return BatchLookupContext.lookup(
+        "jira.permission-scheme",
+        schemeId,
+        () ->
+            directoryCache.exists(
+                JiraDirectoryCache.TYPE_PERMISSION_SCHEME,
+                schemeId,
+                () -> fetchPermissionSchemeExists(schemeId)));
+  }
+
+  private boolean fetchPermissionSchemeExists(String schemeId) {
 
     logger.info("Checking if permission scheme id '{}' exists!", schemeId);
 
@@ -667,7 +864,7 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
         }
       }
 
-      JsonNode json = new ObjectMapper().readTree(response);
+      JsonNode json = MAPPER.readTree(response);
 
       JsonNode id = json.get("id");
 
@@ -708,6 +905,15 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
   }
 
   private boolean checkGroupExists(String group) {
+    return BatchLookupContext.lookup(
+        "jira.group",
+        group,
+        () ->
+            directoryCache.exists(
+                JiraDirectoryCache.TYPE_GROUP, group, () -> fetchGroupExists(group)));
+  }
+
+  private boolean fetchGroupExists(String group) {
 
     logger.info("checking if group '{}' exists!", group);
 
@@ -734,7 +940,7 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
         }
       }
 
-      JsonNode json = new ObjectMapper().readTree(response);
+      JsonNode json = MAPPER.readTree(response);
 
       JsonNode haveGroup = json.at("/groups").findPath("name");
 
@@ -755,13 +961,25 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
     return preconditionFailures -> {
       logger.info("Checking if projectKey '{}' exists in Jira!", projectKey);
       try {
-        String path =
-            String.format(
-                JiraRestApi.JIRA_API_PROJECT_FILTER_PATTERN, jiraUri, jiraApiPath, projectKey);
-        getRestClient().execute(httpGet().url(path), true);
-        String message =
-            String.format("ProjectKey '%s' already exists in '%s'!", projectKey, ADAPTER_NAME);
-        preconditionFailures.add(CheckPreconditionFailure.getProjectExistsInstance(message));
+        if (BatchLookupContext.isActive()) {
+          // within a batch one listing of all projects is cheaper than a lookup per project
+          Set<String> projectKeys =
+              BatchLookupContext.lookupChecked(
+                  "jira.project-keys", "all", this::listProjectKeysOrFail);
+          if (projectKeys.contains(projectKey.toUpperCase())) {
+            String message =
+                String.format("ProjectKey '%s' already exists in '%s'!", projectKey, ADAPTER_NAME);
+            preconditionFailures.add(CheckPreconditionFailure.getProjectExistsInstance(message));
+          }
+          return preconditionFailures;
+        }
+
+        // a cached "not found" is not good enough right before the creation
+        if (projectKeyIndex.exists(this, projectKey, false)) {
+          String message =
+              String.format("ProjectKey '%s' already exists in '%s'!", projectKey, ADAPTER_NAME);
+          preconditionFailures.add(CheckPreconditionFailure.getProjectExistsInstance(message));
+        }
       } catch (HttpException exception) {
         if (exception.getResponseCode() == 404) {
           logger.debug(String.format("Could not find JIRA project %s", projectKey));
@@ -806,7 +1024,7 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
         String response = getRestClient().execute(httpGet().url(url).returnType(String.class));
         Assert.notNull(response, "Response is null for '" + username + "'");
 
-        JsonNode json = new ObjectMapper().readTree(response);
+        JsonNode json = MAPPER.readTree(response);
 
         String failureMessage =
             String.format(
@@ -837,6 +1055,15 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
   }
 
   private boolean checkUserExists(String username) {
+    return BatchLookupContext.lookup(
+        "jira.user",
+        username,
+        () ->
+            directoryCache.exists(
+                JiraDirectoryCache.TYPE_USER, username, () -> fetchUserExists(username)));
+  }
+
+  private boolean fetchUserExists(String username) {
 
     Map<String, String> params = new HashMap<>();
     params.put(USERNAME_PARAM, username);
@@ -860,7 +1087,7 @@ public class JiraAdapter extends BaseServiceAdapter implements IBugtrackerAdapte
         }
       }
 
-      JsonNode json = new ObjectMapper().readTree(response);
+      JsonNode json = MAPPER.readTree(response);
 
       BiPredicate<String, String> findAndCompare = createFindPathAndCompare(json);
 
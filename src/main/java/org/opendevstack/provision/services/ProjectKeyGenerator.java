@@ -0,0 +1,302 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.opendevstack.provision.adapter.IBugtrackerAdapter;
+import org.opendevstack.provision.adapter.ISCMAdapter;
+import org.opendevstack.provision.services.openshift.OpenshiftService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+/**
+ * Proposes project keys that are free in Jira, Bitbucket and OpenShift. The candidates are checked
+ * against an in memory index of the Jira and Bitbucket project keys and the OpenShift namespace
+ * prefixes, which is refreshed in the background every {@code
+ * provision.project-key-generator.refresh-interval-seconds}. A suggestion therefore never lists
+ * projects remotely, but may miss a project created since the last refresh - the precondition
+ * checks of the provisioning still have the final word.
+ */
+@Service
+public class ProjectKeyGenerator {
+
+  private static final Logger logger = LoggerFactory.getLogger(ProjectKeyGenerator.class);
+
+  public static final String SOURCE_JIRA = "jira";
+  public static final String SOURCE_BITBUCKET = "bitbucket";
+  public static final String SOURCE_OPENSHIFT = "openshift";
+
+  private static final Pattern NON_KEY_CHARACTERS = Pattern.compile("[^A-Z0-9_]");
+
+  private static final int MIN_KEY_LENGTH = 2;
+
+  @Autowired private IBugtrackerAdapter jiraAdapter;
+
+  @Autowired private ISCMAdapter bitbucketAdapter;
+
+  @Autowired(required = false)
+  private OpenshiftService openshiftService;
+
+  @Value("${provision.project-key-generator.refresh-interval-seconds:300}")
+  private long refreshIntervalInSeconds = 300;
+
+  @Value("${provision.project-key-generator.max-key-length:10}")
+  private int maxKeyLength = 10;
+
+  @Value("${provision.project-key-generator.max-suggestions:20}")
+  private int maxSuggestions = 20;
+
+  private volatile Set<String> jiraKeys = Collections.emptySet();
+  private volatile Set<String> bitbucketKeys = Collections.emptySet();
+  private volatile Set<String> openshiftPrefixes = Collections.emptySet();
+
+  /** Keys of projects provisioned since the last refresh */
+  private final Set<String> takenKeys = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong lastRefresh = new AtomicLong();
+
+  private ScheduledExecutorService refresher;
+
+  @PostConstruct
+  public void startPeriodicRefresh() {
+    if (refreshIntervalInSeconds <= 0) {
+      return;
+    }
+    refresher =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "project-key-index");
+              thread.setDaemon(true);
+              return thread;
+            });
+    refresher.scheduleWithFixedDelay(
+        this::refresh, 0, refreshIntervalInSeconds, TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void stopPeriodicRefresh() {
+    if (refresher != null) {
+      refresher.shutdownNow();
+    }
+  }
+
+  /**
+   * Reloads the index from all sources. A source that fails keeps its previous keys.
+   *
+   * @return true if all sources could be loaded
+   */
+  public boolean refresh() {
+    long start = System.nanoTime();
+    boolean complete = true;
+    Set<String> taken = new LinkedHashSet<>(takenKeys);
+
+    try {
+      jiraKeys = upperCase(jiraAdapter.listProjectKeys());
+    } catch (Exception e) {
+      complete = false;
+      logger.warn("Could not load {} project keys: {}", SOURCE_JIRA, e.getMessage());
+    }
+    try {
+      bitbucketKeys = upperCase(bitbucketAdapter.listProjectKeys());
+    } catch (Exception e) {
+      complete = false;
+      logger.warn("Could not load {} project keys: {}", SOURCE_BITBUCKET, e.getMessage());
+    }
+    if (openshiftService != null) {
+      try {
+        openshiftPrefixes = upperCase(openshiftService.listProjectKeyPrefixes());
+      } catch (Exception e) {
+        complete = false;
+        logger.warn("Could not load {} projects: {}", SOURCE_OPENSHIFT, e.getMessage());
+      }
+    }
+
+    if (complete) {
+      takenKeys.removeAll(taken);
+      lastRefresh.set(System.currentTimeMillis());
+    }
+    logger.debug(
+        "Refreshed project key index [jira={}, bitbucket={}, openshift={}] in {} ms",
+        jiraKeys.size(),
+        bitbucketKeys.size(),
+        openshiftPrefixes.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return complete;
+  }
+
+  /**
+   * Proposes the first free project keys derived from the given project name
+   *
+   * @param projectName the name of the project
+   * @param count how many keys to propose, at most {@code
+   *     provision.project-key-generator.max-suggestions}
+   * @return the free keys, the best one first
+   */
+  public List<String> suggest(String projectName, int count) {
+    Assert.notNull(projectName, "Parameter 'projectName' is null!");
+    int wanted = Math.max(1, Math.min(count, maxSuggestions));
+
+    List<String> suggestions = new ArrayList<>(wanted);
+    for (String candidate : candidates(projectName)) {
+      if (isFree(candidate) && !suggestions.contains(candidate)) {
+        suggestions.add(candidate);
+        if (suggestions.size() == wanted) {
+          break;
+        }
+      }
+    }
+    return suggestions;
+  }
+
+  /**
+   * @param projectKey the key to check
+   * @return true if the key is neither known in Jira, Bitbucket nor used as OpenShift prefix
+   */
+  public boolean isFree(String projectKey) {
+    String key = projectKey.toUpperCase();
+    return !takenKeys.contains(key)
+        && !jiraKeys.contains(key)
+        && !bitbucketKeys.contains(key)
+        && !openshiftPrefixes.contains(key);
+  }
+
+  /**
+   * Marks the key as used until the next refresh, e.g. because a project was just provisioned
+   *
+   * @param projectKey the key of the project
+   */
+  public void taken(String projectKey) {
+    takenKeys.add(projectKey.toUpperCase());
+  }
+
+  /** @return the time (epoch millis) of the last complete refresh, 0 if there was none yet */
+  public long getLastRefresh() {
+    return lastRefresh.get();
+  }
+
+  /** @return true if the index was completely refreshed within the refresh interval */
+  public boolean isFresh() {
+    long last = lastRefresh.get();
+    return last != 0
+        && System.currentTimeMillis() - last
+            < TimeUnit.SECONDS.toMillis(Math.max(refreshIntervalInSeconds, 1) * 2);
+  }
+
+  /**
+   * Candidates in order of preference: the key the bugtracker derives from the name, the prefixes
+   * and the acronym of the name and finally the shortened name with a counter. The candidates are
+   * created lazily, as usually only the first few are needed.
+   */
+  Iterable<String> candidates(String projectName) {
+    String normalized = projectName.toUpperCase().trim().replace('-', '_');
+    String[] words = normalized.split("[\\s_]+");
+    String base = NON_KEY_CHARACTERS.matcher(normalized.replaceAll("\\s+", "")).replaceAll("");
+    if (base.isEmpty() || !Character.isLetter(base.charAt(0))) {
+      base = "P" + base;
+    }
+
+    Set<String> fixed = new LinkedHashSet<>();
+    String bugtrackerKey = jiraAdapter.buildProjectKey(projectName);
+    if (bugtrackerKey != null) {
+      fixed.add(bugtrackerKey.toUpperCase());
+    }
+    String compact = base.replace("_", "");
+    for (int length = 3; length <= Math.min(compact.length(), maxKeyLength); length++) {
+      fixed.add(compact.substring(0, length));
+    }
+    if (words.length > 1) {
+      StringBuilder acronym = new StringBuilder();
+      for (String word : words) {
+        String clean = NON_KEY_CHARACTERS.matcher(word).replaceAll("");
+        if (!clean.isEmpty()) {
+          acronym.append(clean.charAt(0));
+        }
+      }
+      fixed.add(acronym.toString());
+    }
+    fixed.removeIf(key -> !isValidKey(key));
+
+    String stem = compact.substring(0, Math.min(compact.length(), Math.max(1, maxKeyLength - 3)));
+    return () ->
+        new Iterator<String>() {
+          private final Iterator<String> fixedCandidates = fixed.iterator();
+          private int counter = 1;
+
+          @Override
+          public boolean hasNext() {
+            return fixedCandidates.hasNext() || counter < 1000;
+          }
+
+          @Override
+          public String next() {
+            if (fixedCandidates.hasNext()) {
+              return fixedCandidates.next();
+            }
+            if (counter >= 1000) {
+              throw new NoSuchElementException();
+            }
+            return stem + counter++;
+          }
+        };
+  }
+
+  private boolean isValidKey(String key) {
+    return key.length() >= MIN_KEY_LENGTH
+        && key.length() <= maxKeyLength
+        && Character.isLetter(key.charAt(0))
+        && !NON_KEY_CHARACTERS.matcher(key).find();
+  }
+
+  private static Set<String> upperCase(Set<String> keys) {
+    Set<String> result = ConcurrentHashMap.newKeySet();
+    if (keys != null) {
+      keys.forEach(key -> result.add(key.toUpperCase()));
+    }
+    return result;
+  }
+
+  public void setJiraAdapter(IBugtrackerAdapter jiraAdapter) {
+    this.jiraAdapter = jiraAdapter;
+  }
+
+  public void setBitbucketAdapter(ISCMAdapter bitbucketAdapter) {
+    this.bitbucketAdapter = bitbucketAdapter;
+  }
+
+  public void setOpenshiftService(OpenshiftService openshiftService) {
+    this.openshiftService = openshiftService;
+  }
+
+  public void setMaxKeyLength(int maxKeyLength) {
+    this.maxKeyLength = maxKeyLength;
+  }
+}
@@ -25,4 +25,6 @@ public interface RestService {
   RestClient getRestClient();
 
   RestClientCall httpPut();
+
+  RestClientCall httpDelete();
 }
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.opendevstack.provision.model.bitbucket.BitbucketProjectSnapshot;
+import org.opendevstack.provision.model.bitbucket.BitbucketRepositorySnapshot;
+import org.opendevstack.provision.services.BitbucketAdapter;
+import org.opendevstack.provision.services.RestService;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Local inventory of the bitbucket projects and their repositories (key, slug, clone urls and a
+ * summary of the project permissions), so that existence and listing queries do not have to ask
+ * bitbucket.
+ *
+ * <p>A sync pages through the project list and only updates what changed. Repositories and
+ * permissions need three calls per project, so per sync only the {@code
+ * bitbucket.inventory.details-refresh-per-sync} projects with the oldest (or no) details are
+ * asked, new projects first. The inventory is synced every {@code
+ * bitbucket.inventory.sync-interval-seconds} in the background if bitbucket is accessed with a
+ * technical user, and can be synced on demand otherwise.
+ */
+@Component
+public class BitbucketInventory {
+
+  private static final Logger logger = LoggerFactory.getLogger(BitbucketInventory.class);
+
+  @Value("${bitbucket.api.path}")
+  private String bitbucketApiPath;
+
+  @Value("${bitbucket.uri}")
+  private String bitbucketUri;
+
+  @Value("${bitbucket.inventory.sync-interval-seconds:300}")
+  private long syncIntervalInSeconds = 300;
+
+  @Value("${bitbucket.inventory.max-age-seconds:900}")
+  private long maxAgeInSeconds = 900;
+
+  @Value("${bitbucket.inventory.details-refresh-per-sync:100}")
+  private int detailsRefreshPerSync = 100;
+
+  @Value("${bitbucket.inventory.parallelism:4}")
+  private int parallelism = 4;
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  /** Snapshots by upper case project key */
+  private final Map<String, BitbucketProjectSnapshot> projects = new ConcurrentHashMap<>();
+
+  private volatile long lastSync;
+
+  private volatile RestService bitbucket;
+
+  private ScheduledExecutorService syncer;
+
+  /** @param bitbucket the bitbucket adapter used by {@link #sync()} */
+  public void setRestService(RestService bitbucket) {
+    this.bitbucket = bitbucket;
+  }
+
+  /**
+   * Syncs the inventory with the bitbucket adapter registered by {@link
+   * #setRestService(RestService)}
+   *
+   * @return the number of added, changed and removed projects
+   * @throws IOException if bitbucket could not be asked
+   */
+  public int sync() throws IOException {
+    Assert.state(bitbucket != null, "No bitbucket adapter registered to sync the inventory!");
+    return sync(bitbucket);
+  }
+
+  /**
+   * Reads the project list of bitbucket and updates the inventory, then reads repositories and
+   * permissions of the projects never or longest not asked
+   *
+   * @param bitbucket the bitbucket adapter used to list the projects
+   * @return the number of added, changed and removed projects
+   * @throws IOException if bitbucket could not be asked
+   */
+  public synchronized int sync(RestService bitbucket) throws IOException {
+    long start = System.currentTimeMillis();
+    int changes = syncProjects(bitbucket);
+    int details = syncDetails(bitbucket);
+
+    logger.debug(
+        "Synced bitbucket inventory in {} ms [projects={}, changes={}, details={}]",
+        System.currentTimeMillis() - start,
+        projects.size(),
+        changes,
+        details);
+    return changes;
+  }
+
+  /**
+   * Reads only the project list of bitbucket and updates the inventory, repositories and
+   * permissions are left to the next {@link #sync(RestService)}
+   *
+   * @param bitbucket the bitbucket adapter used to list the projects
+   * @return the number of added, changed and removed projects
+   * @throws IOException if bitbucket could not be asked
+   */
+  public synchronized int syncProjects(RestService bitbucket) throws IOException {
+    String url =
+        String.format(
+            BitbucketAdapter.BITBUCKET_API_PROJECTS_PATTERN, bitbucketUri, bitbucketApiPath);
+
+    int[] changes = {0};
+    Set<String> seen = new HashSet<>();
+    BitbucketPageIterator.of(bitbucket, url)
+        .forEachValue(
+            project -> {
+              String key = project.path("key").asText(null);
+              if (key == null) {
+                return;
+              }
+              key = key.toUpperCase();
+              seen.add(key);
+              String id = project.path("id").asText(null);
+              String name = project.path("name").asText(null);
+              boolean publicAccess = project.path("public").asBoolean(false);
+
+              BitbucketProjectSnapshot existing = projects.get(key);
+              if (existing == null || !Objects.equals(existing.getId(), id)) {
+                projects.put(key, new BitbucketProjectSnapshot(key, name, id, publicAccess));
+                changes[0]++;
+              } else if (!Objects.equals(existing.getName(), name)
+                  || existing.isPublicAccess() != publicAccess) {
+                existing.setName(name);
+                existing.setPublicAccess(publicAccess);
+                changes[0]++;
+              }
+            });
+
+    int before = projects.size();
+    projects.keySet().retainAll(seen);
+    changes[0] += before - projects.size();
+
+    lastSync = System.currentTimeMillis();
+    return changes[0];
+  }
+
+  private int syncDetails(RestService bitbucket) {
+    List<BitbucketProjectSnapshot> oldest =
+        projects.values().stream()
+            .sorted(Comparator.comparingLong(BitbucketProjectSnapshot::getDetailsSyncedAt))
+            .limit(Math.max(0, detailsRefreshPerSync))
+            .collect(Collectors.toList());
+
+    Map<BitbucketProjectSnapshot, Callable<BitbucketProjectSnapshot>> reads =
+        new LinkedHashMap<>();
+    for (BitbucketProjectSnapshot snapshot : oldest) {
+      reads.put(snapshot, () -> readDetails(bitbucket, snapshot.getKey()));
+    }
+
+    int read = 0;
+    for (Map.Entry<BitbucketProjectSnapshot, TaskResult<BitbucketProjectSnapshot>> result :
+        parallelTaskRunner.invokeAll(reads, parallelism).entrySet()) {
+      BitbucketProjectSnapshot snapshot = result.getKey();
+      if (result.getValue().isSuccessful()) {
+        BitbucketProjectSnapshot details = result.getValue().getValue();
+        snapshot.setRepositories(details.getRepositories());
+        snapshot.setGroupPermissions(details.getGroupPermissions());
+        snapshot.setUserPermissionCount(details.getUserPermissionCount());
+        snapshot.setDetailsSyncedAt(System.currentTimeMillis());
+        read++;
+      } else {
+        logger.debug(
+            "Could not read repositories and permissions of bitbucket project {}: {}",
+            snapshot.getKey(),
+            result.getValue().getError().getMessage());
+      }
+    }
+    return read;
+  }
+
+  private BitbucketProjectSnapshot readDetails(RestService bitbucket, String key)
+      throws IOException {
+    String projectUrl =
+        String.format(
+            BitbucketAdapter.BITBUCKET_API_PROJECT_PATTERN, bitbucketUri, bitbucketApiPath, key);
+    BitbucketProjectSnapshot details = new BitbucketProjectSnapshot();
+
+    List<BitbucketRepositorySnapshot> repositories = new ArrayList<>();
+    BitbucketPageIterator.of(bitbucket, projectUrl + "/repos")
+        .suppressErrorLogging()
+        .emptyIfMissing()
+        .forEachValue(repository -> repositories.add(toRepositorySnapshot(repository)));
+    details.setRepositories(repositories);
+
+    Map<String, String> groupPermissions = new HashMap<>();
+    BitbucketPageIterator.of(bitbucket, projectUrl + "/permissions/groups")
+        .suppressErrorLogging()
+        .emptyIfMissing()
+        .forEachValue(
+            value -> {
+              String group = value.path("group").path("name").asText(null);
+              if (group != null) {
+                groupPermissions.put(group.toLowerCase(), value.path("permission").asText());
+              }
+            });
+    details.setGroupPermissions(groupPermissions);
+
+    int[] users = {0};
+    BitbucketPageIterator.of(bitbucket, projectUrl + "/permissions/users")
+        .suppressErrorLogging()
+        .emptyIfMissing()
+        .forEachValue(value -> users[0]++);
+    details.setUserPermissionCount(users[0]);
+    return details;
+  }
+
+  static BitbucketRepositorySnapshot toRepositorySnapshot(JsonNode repository) {
+    String httpCloneUrl = null;
+    String sshCloneUrl = null;
+    for (JsonNode link : repository.path("links").path("clone")) {
+      String type = link.path("name").asText();
+      if ("http".equals(type) || "https".equals(type)) {
+        httpCloneUrl = link.path("href").asText(null);
+      } else if ("ssh".equals(type)) {
+        sshCloneUrl = link.path("href").asText(null);
+      }
+    }
+    return new BitbucketRepositorySnapshot(
+        repository.path("slug").asText(null),
+        repository.path("name").asText(null),
+        httpCloneUrl,
+        sshCloneUrl);
+  }
+
+  /**
+   * Syncs the inventory every {@code bitbucket.inventory.sync-interval-seconds} in the background.
+   * Only works if the registered adapter does not need the credentials of a logged in user.
+   */
+  public synchronized void startPeriodicSync() {
+    if (syncer != null || syncIntervalInSeconds <= 0) {
+      return;
+    }
+    syncer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "bitbucket-inventory");
+              thread.setDaemon(true);
+              return thread;
+            });
+    syncer.scheduleWithFixedDelay(
+        () -> {
+          try {
+            sync();
+          } catch (Exception e) {
+            logger.warn("Could not sync bitbucket inventory: {}", e.getMessage());
+          }
+        },
+        0,
+        syncIntervalInSeconds,
+        TimeUnit.SECONDS);
+    logger.info(
+        "Syncing bitbucket inventory every {} seconds in the background", syncIntervalInSeconds);
+  }
+
+  @PreDestroy
+  public synchronized void stopPeriodicSync() {
+    if (syncer != null) {
+      syncer.shutdownNow();
+      syncer = null;
+    }
+  }
+
+  /**
+   * @param projectKey the key of the project
+   * @return the snapshot of the project, or null if it is not in the inventory
+   */
+  public BitbucketProjectSnapshot get(String projectKey) {
+    Assert.notNull(projectKey, "Parameter 'projectKey' is null!");
+    return projects.get(projectKey.toUpperCase());
+  }
+
+  /** @return the snapshots of all projects in the inventory */
+  public Collection<BitbucketProjectSnapshot> projects() {
+    return new ArrayList<>(projects.values());
+  }
+
+  /**
+   * @param filter part of the key or name, case insensitive. All projects if null or empty.
+   * @return the matching projects
+   */
+  public List<BitbucketProjectSnapshot> find(String filter) {
+    if (filter == null || filter.trim().isEmpty()) {
+      return new ArrayList<>(projects.values());
+    }
+    String part = filter.trim().toLowerCase();
+    return projects.values().stream()
+        .filter(
+            snapshot ->
+                snapshot.getKey().toLowerCase().contains(part)
+                    || (snapshot.getName() != null
+                        && snapshot.getName().toLowerCase().contains(part)))
+        .collect(Collectors.toList());
+  }
+
+  /** Records a project that was just created, its id and details are read by the next sync */
+  public void added(String projectKey, String name) {
+    String key = projectKey.toUpperCase();
+    projects.putIfAbsent(key, new BitbucketProjectSnapshot(key, name, null, false));
+  }
+
+  /** @param projectKey the key of a project whose repositories were just created or deleted */
+  public void repositoriesChanged(String projectKey) {
+    BitbucketProjectSnapshot snapshot = projects.get(projectKey.toUpperCase());
+    if (snapshot != null) {
+      // read again by the next sync, before all others
+      snapshot.setDetailsSyncedAt(0);
+    }
+  }
+
+  /** @param projectKey the key of a project that was just deleted */
+  public void removed(String projectKey) {
+    projects.remove(projectKey.toUpperCase());
+  }
+
+  /** @return true if the inventory was synced within {@code bitbucket.inventory.max-age-seconds} */
+  public boolean isFresh() {
+    return lastSync != 0
+        && System.currentTimeMillis() - lastSync < TimeUnit.SECONDS.toMillis(maxAgeInSeconds);
+  }
+
+  /** @return the time (epoch millis) of the last sync, 0 if never synced */
+  public long getLastSync() {
+    return lastSync;
+  }
+
+  public int size() {
+    return projects.size();
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+
+  public void setDetailsRefreshPerSync(int detailsRefreshPerSync) {
+    this.detailsRefreshPerSync = detailsRefreshPerSync;
+  }
+
+  public void setBitbucketUri(String bitbucketUri) {
+    this.bitbucketUri = bitbucketUri;
+  }
+
+  public void setBitbucketApiPath(String bitbucketApiPath) {
+    this.bitbucketApiPath = bitbucketApiPath;
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import org.opendevstack.provision.services.RestService;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.springframework.util.Assert;
+
+/**
+ * Iterates over the values of a paged bitbucket resource ({@code start}, {@code limit}, {@code
+ * isLastPage}, {@code nextPageStart}). Pages are only requested when the values of the previous one
+ * are consumed, so a caller that stops at the first match reads no further pages. With an executor
+ * the next page is requested in the background while the current one is consumed.
+ *
+ * <pre>
+ * boolean exists =
+ *     BitbucketPageIterator.of(adapter, groupsUrl).filter(group).limit(25).anyMatch(matcher);
+ * </pre>
+ */
+public class BitbucketPageIterator implements Iterator<JsonNode>, AutoCloseable {
+
+  public static final int DEFAULT_LIMIT = 1000;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final RestService service;
+  private final String url;
+  private final Map<String, String> params = new HashMap<>();
+  private int limit = DEFAULT_LIMIT;
+  private Executor prefetchExecutor;
+  private boolean suppressErrorLogging;
+  private boolean emptyIfMissing;
+
+  private final Deque<JsonNode> values = new ArrayDeque<>();
+  private CompletableFuture<JsonNode> nextPage;
+  private RestClientCall nextCall;
+  private boolean lastPage;
+  private boolean started;
+  private int pagesRead;
+
+  private BitbucketPageIterator(RestService service, String url) {
+    this.service = service;
+    this.url = url;
+  }
+
+  /**
+   * @param service the adapter used for the calls
+   * @param url the url of the paged resource
+   * @return an iterator over all values of the resource
+   */
+  public static BitbucketPageIterator of(RestService service, String url) {
+    Assert.notNull(service, "Parameter 'service' is null!");
+    Assert.notNull(url, "Parameter 'url' is null!");
+    return new BitbucketPageIterator(service, url);
+  }
+
+  /** @param filter the {@code filter} query parameter, limits the values to matching names */
+  public BitbucketPageIterator filter(String filter) {
+    return param("filter", filter);
+  }
+
+  /** Adds a query parameter to every page request, e.g. {@code permission} */
+  public BitbucketPageIterator param(String name, String value) {
+    checkNotStarted();
+    params.put(name, value);
+    return this;
+  }
+
+  /** @param limit the number of values per page */
+  public BitbucketPageIterator limit(int limit) {
+    checkNotStarted();
+    this.limit = Math.max(1, limit);
+    return this;
+  }
+
+  /** @param executor executor the next page is requested on while the current one is consumed */
+  public BitbucketPageIterator prefetch(Executor executor) {
+    checkNotStarted();
+    this.prefetchExecutor = executor;
+    return this;
+  }
+
+  public BitbucketPageIterator suppressErrorLogging() {
+    checkNotStarted();
+    this.suppressErrorLogging = true;
+    return this;
+  }
+
+  /** Treats an empty response as the last page, instead of failing */
+  public BitbucketPageIterator emptyIfMissing() {
+    checkNotStarted();
+    this.emptyIfMissing = true;
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+    try {
+      while (values.isEmpty() && !lastPage) {
+        readPage();
+      }
+    } catch (IOException e) {
+      close();
+      throw new UncheckedIOException(e);
+    }
+    return !values.isEmpty();
+  }
+
+  @Override
+  public JsonNode next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return values.poll();
+  }
+
+  /**
+   * Reads pages until a value matches, no further pages are requested afterwards
+   *
+   * @param matcher the condition
+   * @return true if a value matches
+   * @throws IOException if a page could not be read
+   */
+  public boolean anyMatch(Predicate<JsonNode> matcher) throws IOException {
+    try (BitbucketPageIterator iterator = this) {
+      while (iterator.hasNext()) {
+        if (matcher.test(iterator.next())) {
+          return true;
+        }
+      }
+      return false;
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Passes every value to the consumer
+   *
+   * @param consumer the consumer
+   * @throws IOException if a page could not be read
+   */
+  public void forEachValue(ValueConsumer consumer) throws IOException {
+    try (BitbucketPageIterator iterator = this) {
+      while (iterator.hasNext()) {
+        consumer.accept(iterator.next());
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Cancels the request of a page that was prefetched but is not needed any more */
+  @Override
+  public void close() {
+    lastPage = true;
+    if (nextPage != null) {
+      nextPage.cancel(true);
+      nextPage = null;
+    }
+  }
+
+  /** @return the number of pages requested so far */
+  public int getPagesRead() {
+    return pagesRead;
+  }
+
+  private void readPage() throws IOException {
+    JsonNode page;
+    if (nextPage != null) {
+      try {
+        page = nextPage.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof UncheckedIOException) {
+          throw ((UncheckedIOException) e.getCause()).getCause();
+        }
+        throw e;
+      } finally {
+        nextPage = null;
+      }
+    } else {
+      page = fetch(nextCall != null ? nextCall : pageCall(0));
+      nextCall = null;
+    }
+    started = true;
+    pagesRead++;
+
+    if (page == null) {
+      lastPage = true;
+      return;
+    }
+    page.path("values").forEach(values::add);
+    if (page.path("isLastPage").asBoolean(true) || !page.has("nextPageStart")) {
+      lastPage = true;
+      return;
+    }
+
+    // the call is built in the consuming thread, it may carry the credentials of the user
+    RestClientCall call = pageCall(page.get("nextPageStart").asInt());
+    if (prefetchExecutor == null) {
+      nextCall = call;
+    } else {
+      nextPage =
+          CompletableFuture.supplyAsync(
+              () -> {
+                try {
+                  return fetch(call);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              },
+              prefetchExecutor);
+    }
+  }
+
+  private RestClientCall pageCall(int start) {
+    Map<String, String> query = new HashMap<>(params);
+    query.put("start", String.valueOf(start));
+    query.put("limit", String.valueOf(limit));
+    return service.httpGet().url(url).queryParams(query).returnType(String.class);
+  }
+
+  private JsonNode fetch(RestClientCall call) throws IOException {
+    String response =
+        suppressErrorLogging
+            ? service.getRestClient().execute(call, true)
+            : service.getRestClient().execute(call);
+    if (response == null && emptyIfMissing) {
+      return null;
+    }
+    Assert.notNull(response, "Response is null for '" + url + "'");
+    return MAPPER.readTree(response);
+  }
+
+  private void checkNotStarted() {
+    Assert.state(!started, "Iteration has started already");
+  }
+
+  /** Consumer of a value that may fail */
+  @FunctionalInterface
+  public interface ValueConsumer {
+    void accept(JsonNode value) throws IOException;
+  }
+}
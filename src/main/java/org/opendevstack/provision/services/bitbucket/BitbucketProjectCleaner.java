@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.opendevstack.provision.services.RestService;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Removes bitbucket repositories and projects during the cleanup of a failed provisioning.
+ *
+ * <p>Bitbucket accepts the delete of a repository right away and removes its data in the
+ * background, which takes long for big repositories. Repositories are therefore deleted in parallel
+ * with at most {@code bitbucket.cleanup.parallelism} calls in flight, and each delete is confirmed
+ * by asking for the repository with exponential backoff ({@code
+ * bitbucket.cleanup.poll.initial-backoff-millis} up to {@code
+ * bitbucket.cleanup.poll.max-backoff-millis}). A repository still existing after {@code
+ * bitbucket.cleanup.deadline-seconds} is reported as failed.
+ */
+@Component
+public class BitbucketProjectCleaner {
+
+  private static final Logger logger = LoggerFactory.getLogger(BitbucketProjectCleaner.class);
+
+  /** What happened to a single repository */
+  public enum Outcome {
+    DELETED,
+    ABSENT
+  }
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  @Value("${bitbucket.cleanup.parallelism:4}")
+  private int parallelism = 4;
+
+  @Value("${bitbucket.cleanup.deadline-seconds:120}")
+  private long deadlineInSeconds = 120;
+
+  @Value("${bitbucket.cleanup.poll.initial-backoff-millis:250}")
+  private long initialBackoffInMillis = 250;
+
+  @Value("${bitbucket.cleanup.poll.max-backoff-millis:8000}")
+  private long maxBackoffInMillis = 8000;
+
+  /**
+   * Deletes the repositories and waits until bitbucket does not know them any more
+   *
+   * @param bitbucket the bitbucket adapter used for the calls
+   * @param projectUrl the api url of the project, e.g. {@code .../rest/api/1.0/projects/KEY}
+   * @param slugs the slugs of the repositories to delete
+   * @return the result of every repository, in the order of the given slugs. Failed repositories
+   *     hold the error, e.g. a {@link HttpException} or a repository still existing at the
+   *     deadline.
+   */
+  public Map<String, TaskResult<Outcome>> deleteRepositories(
+      RestService bitbucket, String projectUrl, Collection<String> slugs) {
+    Assert.notNull(projectUrl, "Parameter 'projectUrl' is null!");
+    Assert.notNull(slugs, "Parameter 'slugs' is null!");
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(deadlineInSeconds);
+    Map<String, Callable<Outcome>> tasks = new LinkedHashMap<>();
+    for (String slug : slugs) {
+      String url = String.format("%s/repos/%s", projectUrl, slug);
+      tasks.put(slug, () -> deleteRepository(bitbucket, url, slug, deadline));
+    }
+
+    Map<String, TaskResult<Outcome>> results = parallelTaskRunner.invokeAll(tasks, parallelism);
+    results.forEach(
+        (slug, result) -> {
+          if (!result.isSuccessful()) {
+            logger.error(
+                "Could not delete scm repo {} - error {}", slug, result.getError().getMessage());
+          }
+        });
+    return results;
+  }
+
+  /**
+   * Deletes the project, bitbucket refuses this as long as the project has repositories
+   *
+   * @param bitbucket the bitbucket adapter used for the calls
+   * @param projectUrl the api url of the project
+   * @return true if the project is gone
+   */
+  public boolean deleteProject(RestService bitbucket, String projectUrl) {
+    Assert.notNull(projectUrl, "Parameter 'projectUrl' is null!");
+    try {
+      bitbucket.getRestClient().execute(bitbucket.httpDelete().url(projectUrl).returnType(null));
+      return true;
+    } catch (HttpException e) {
+      if (e.getResponseCode() == 404) {
+        return true;
+      }
+      logger.error("Could not delete scm project {}: {}", projectUrl, e.getMessage());
+      return false;
+    } catch (IOException e) {
+      logger.error("Could not delete scm project {}: {}", projectUrl, e.getMessage());
+      return !exists(bitbucket, projectUrl);
+    }
+  }
+
+  private Outcome deleteRepository(RestService bitbucket, String url, String slug, long deadline)
+      throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    try {
+      bitbucket.getRestClient().execute(bitbucket.httpDelete().url(url).returnType(null));
+    } catch (HttpException e) {
+      if (e.getResponseCode() == 404) {
+        return Outcome.ABSENT;
+      }
+      throw e;
+    }
+
+    long backoff = initialBackoffInMillis;
+    while (exists(bitbucket, url)) {
+      long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remaining <= 0) {
+        throw new IOException(
+            String.format(
+                "Repository %s still exists %d seconds after its delete was accepted",
+                slug, deadlineInSeconds));
+      }
+      Thread.sleep(Math.min(backoff, remaining));
+      backoff = Math.min(backoff * 2, maxBackoffInMillis);
+    }
+    logger.debug(
+        "Removed scm repo {} in {} ms",
+        slug,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return Outcome.DELETED;
+  }
+
+  /**
+   * @return false if bitbucket answered that the resource does not exist, or answered without a
+   *     body. An error counts as existing.
+   */
+  private boolean exists(RestService bitbucket, String url) {
+    try {
+      return bitbucket
+              .getRestClient()
+              .execute(bitbucket.httpGet().url(url).returnType(String.class), true)
+          != null;
+    } catch (HttpException e) {
+      return e.getResponseCode() != 404;
+    } catch (IOException e) {
+      logger.debug("Could not check {}: {}", url, e.getMessage());
+      return true;
+    }
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public void setDeadlineInSeconds(long deadlineInSeconds) {
+    this.deadlineInSeconds = deadlineInSeconds;
+  }
+
+  public void setInitialBackoffInMillis(long initialBackoffInMillis) {
+    this.initialBackoffInMillis = initialBackoffInMillis;
+  }
+
+  public void setMaxBackoffInMillis(long maxBackoffInMillis) {
+    this.maxBackoffInMillis = maxBackoffInMillis;
+  }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.opendevstack.provision.model.bitbucket.Webhook;
+import org.opendevstack.provision.services.BitbucketAdapter;
+import org.opendevstack.provision.services.RestService;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.RetryPolicy;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Creates, verifies and repairs the jenkins webhooks of bitbucket repositories.
+ *
+ * <p>A webhook counts as present if the repository has one with the url and the events of the
+ * template. A webhook to the same webhook proxy host with another url (e.g. another trigger
+ * secret) or other events is updated. Webhooks to other hosts are never touched, even if they are
+ * named like the template, since teams may have webhooks of their own. Every
+ * change is verified against the webhook bitbucket returns, failed attempts are retried with
+ * exponential backoff ({@code bitbucket.webhook.retry.*}). A retry first looks for the webhook
+ * again, so that a create that reached bitbucket is not repeated.
+ *
+ * <p>If {@code bitbucket.webhook-repair.background.enabled} is set, the webhooks of all stored
+ * projects are repaired every {@code bitbucket.webhook-repair.interval-seconds} in the background
+ * if bitbucket is accessed with a technical user.
+ */
+@Component
+public class BitbucketWebhookManager {
+
+  private static final Logger logger = LoggerFactory.getLogger(BitbucketWebhookManager.class);
+
+  /** What happened to the webhook of a single repository */
+  public enum Outcome {
+    CREATED,
+    UPDATED,
+    PRESENT
+  }
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  @Value("${bitbucket.webhooks.parallelism:4}")
+  private int parallelism = 4;
+
+  @Value("${bitbucket.webhook.retry.max-attempts:3}")
+  private int retryMaxAttempts = 3;
+
+  @Value("${bitbucket.webhook.retry.initial-backoff-millis:500}")
+  private long retryInitialBackoffInMillis = 500;
+
+  @Value("${bitbucket.webhook.retry.max-backoff-millis:5000}")
+  private long retryMaxBackoffInMillis = 5000;
+
+  @Value("${bitbucket.webhook-repair.interval-seconds:3600}")
+  private long repairIntervalInSeconds = 3600;
+
+  private ScheduledExecutorService repairer;
+
+  /**
+   * Creates the webhook of a repository that was just created, without looking for an existing
+   * one first
+   *
+   * @param bitbucket the bitbucket adapter used for the calls
+   * @param repositoryUrl the api url of the repository
+   * @param template the webhook to create, not modified
+   * @return the outcome, {@link Outcome#CREATED} unless a retry found the webhook
+   * @throws IOException if the webhook could not be created or verified
+   */
+  public Outcome create(RestService bitbucket, String repositoryUrl, Webhook template)
+      throws IOException {
+    AtomicInteger attempt = new AtomicInteger();
+    return withRetry(
+        "bitbucket.createWebhook",
+        () -> {
+          // a failed attempt may have created the webhook nevertheless
+          Outcome outcome =
+              attempt.getAndIncrement() > 0
+                  ? updateExisting(bitbucket, repositoryUrl, template)
+                  : null;
+          return outcome != null ? outcome : post(bitbucket, repositoryUrl, template);
+        });
+  }
+
+  /**
+   * Makes sure the repository has the webhook of the template, creating or updating it
+   *
+   * @param bitbucket the bitbucket adapter used for the calls
+   * @param repositoryUrl the api url of the repository
+   * @param template the expected webhook, not modified
+   * @return the outcome
+   * @throws IOException if the webhook could not be read, set or verified
+   */
+  public Outcome ensure(RestService bitbucket, String repositoryUrl, Webhook template)
+      throws IOException {
+    return withRetry(
+        "bitbucket.ensureWebhook",
+        () -> {
+          Outcome outcome = updateExisting(bitbucket, repositoryUrl, template);
+          return outcome != null ? outcome : post(bitbucket, repositoryUrl, template);
+        });
+  }
+
+  /**
+   * Updates the webhook of the repository to the template, but does not create one, e.g. after
+   * the trigger secret was rotated
+   *
+   * @param bitbucket the bitbucket adapter used for the calls
+   * @param repositoryUrl the api url of the repository
+   * @param template the expected webhook, not modified
+   * @return the outcome, or null if the repository has no webhook to the template's proxy host
+   * @throws IOException if the webhooks could not be read or the update failed
+   */
+  public Outcome update(RestService bitbucket, String repositoryUrl, Webhook template)
+      throws IOException {
+    return withRetry(
+        "bitbucket.updateWebhook", () -> updateExisting(bitbucket, repositoryUrl, template));
+  }
+
+  /**
+   * Makes sure the repositories of a project have the webhook of the template, with at most {@code
+   * bitbucket.webhooks.parallelism} repositories at the same time
+   *
+   * @param bitbucket the bitbucket adapter used for the calls
+   * @param projectUrl the api url of the project
+   * @param slugs the slugs of the repositories
+   * @param template the expected webhook, not modified
+   * @return the result of every repository, in the order of the given slugs
+   */
+  public Map<String, TaskResult<Outcome>> ensureAll(
+      RestService bitbucket, String projectUrl, Collection<String> slugs, Webhook template) {
+    Map<String, Callable<Outcome>> tasks = new LinkedHashMap<>();
+    for (String slug : slugs) {
+      String repositoryUrl = String.format("%s/repos/%s", projectUrl, slug);
+      tasks.put(slug, () -> ensure(bitbucket, repositoryUrl, template));
+    }
+    return parallelTaskRunner.invokeAll(tasks, parallelism);
+  }
+
+  /**
+   * Updates the webhook to the template's proxy host if it differs from the template
+   *
+   * @param bitbucket the bitbucket adapter used for the calls
+   * @param repositoryUrl the api url of the repository
+   * @param template the expected webhook, not modified
+   * @return the outcome, or null if the repository has no webhook to the template's proxy host
+   * @throws IOException if the webhooks could not be read or the update failed
+   */
+  public Outcome updateExisting(RestService bitbucket, String repositoryUrl, Webhook template)
+      throws IOException {
+    JsonNode existing = findExisting(bitbucket, repositoryUrl, template);
+    if (existing == null) {
+      return null;
+    }
+    if (matches(existing, template)) {
+      return Outcome.PRESENT;
+    }
+    String url = String.format("%s/webhooks/%s", repositoryUrl, existing.path("id").asText());
+    Webhook updated =
+        bitbucket
+            .getRestClient()
+            .execute(bitbucket.httpPut().url(url).body(template).returnType(Webhook.class));
+    verify(updated, template, repositoryUrl);
+    logger.info("Updated webhook {} of {}", template.getName(), repositoryUrl);
+    return Outcome.UPDATED;
+  }
+
+  private Outcome withRetry(String name, Callable<Outcome> attempt) throws IOException {
+    RetryPolicy retryPolicy =
+        new RetryPolicy(retryMaxAttempts, retryInitialBackoffInMillis, retryMaxBackoffInMillis);
+    try {
+      return retryPolicy.call(name, attempt);
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  private Outcome post(RestService bitbucket, String repositoryUrl, Webhook template)
+      throws IOException {
+    Webhook created =
+        bitbucket
+            .getRestClient()
+            .execute(
+                bitbucket
+                    .httpPost()
+                    .url(repositoryUrl + "/webhooks")
+                    .body(template)
+                    .returnType(Webhook.class));
+    verify(created, template, repositoryUrl);
+    logger.info("Created webhook {} of {}", template.getUrl(), repositoryUrl);
+    return Outcome.CREATED;
+  }
+
+  private JsonNode findExisting(RestService bitbucket, String repositoryUrl, Webhook template)
+      throws IOException {
+    String proxyHost = hostOf(template.getUrl());
+    List<JsonNode> candidates = new ArrayList<>();
+    BitbucketPageIterator.of(bitbucket, repositoryUrl + "/webhooks")
+        .suppressErrorLogging()
+        .emptyIfMissing()
+        .forEachValue(
+            webhook -> {
+              String url = webhook.path("url").asText();
+              if (template.getUrl().equals(url)
+                  || (proxyHost != null && proxyHost.equals(hostOf(url)))) {
+                candidates.add(webhook);
+              }
+            });
+    // prefer a webhook that is up to date already
+    return candidates.stream()
+        .filter(webhook -> matches(webhook, template))
+        .findFirst()
+        .orElse(candidates.isEmpty() ? null : candidates.get(0));
+  }
+
+  /** @return the lower case host of the url, null if it has none */
+  static String hostOf(String url) {
+    try {
+      String host = URI.create(url).getHost();
+      return host == null ? null : host.toLowerCase(Locale.ROOT);
+    } catch (IllegalArgumentException | NullPointerException e) {
+      return null;
+    }
+  }
+
+  /** @return true if the webhook has the url, the events and the active flag of the template */
+  static boolean matches(JsonNode webhook, Webhook template) {
+    if (!template.getUrl().equals(webhook.path("url").asText())
+        || webhook.path("active").asBoolean(true) != template.getActive()) {
+      return false;
+    }
+    Collection<String> events = new HashSet<>();
+    webhook.path("events").forEach(event -> events.add(event.asText()));
+    return events.equals(new HashSet<>(template.getEvents()));
+  }
+
+  /**
+   * Compares the webhook bitbucket returned with the template. Bitbucket always returns the
+   * webhook, a missing body can not be verified and is accepted.
+   */
+  private static void verify(Webhook actual, Webhook template, String repositoryUrl)
+      throws IOException {
+    if (actual == null) {
+      logger.debug("No webhook returned for {}, could not verify it", repositoryUrl);
+      return;
+    }
+    boolean sameEvents =
+        actual.getEvents() != null
+            && new HashSet<>(actual.getEvents()).equals(new HashSet<>(template.getEvents()));
+    if (!template.getUrl().equals(actual.getUrl()) || !sameEvents) {
+      throw new IOException(
+          String.format(
+              "Webhook of %s was not set as expected, url or events %s differ",
+              repositoryUrl, actual.getEvents()));
+    }
+  }
+
+  /**
+   * Repairs the webhooks of all stored projects every {@code
+   * bitbucket.webhook-repair.interval-seconds} in the background. Only works if the adapter does
+   * not need the credentials of a logged in user.
+   *
+   * @param adapter the bitbucket adapter that knows the repositories of a project
+   */
+  public synchronized void startPeriodicRepair(BitbucketAdapter adapter) {
+    Assert.notNull(adapter, "Parameter 'adapter' is null!");
+    if (repairer != null || repairIntervalInSeconds <= 0) {
+      return;
+    }
+    repairer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "bitbucket-webhook-repair");
+              thread.setDaemon(true);
+              return thread;
+            });
+    repairer.scheduleWithFixedDelay(
+        () -> {
+          try {
+            adapter.repairWebhooks();
+          } catch (Exception e) {
+            logger.warn("Could not repair bitbucket webhooks: {}", e.getMessage());
+          }
+        },
+        repairIntervalInSeconds,
+        repairIntervalInSeconds,
+        TimeUnit.SECONDS);
+    logger.info(
+        "Repairing bitbucket webhooks every {} seconds in the background", repairIntervalInSeconds);
+  }
+
+  @PreDestroy
+  public synchronized void stopPeriodicRepair() {
+    if (repairer != null) {
+      repairer.shutdownNow();
+      repairer = null;
+    }
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public void setRetryMaxAttempts(int retryMaxAttempts) {
+    this.retryMaxAttempts = retryMaxAttempts;
+  }
+
+  public void setRetryInitialBackoffInMillis(long retryInitialBackoffInMillis) {
+    this.retryInitialBackoffInMillis = retryInitialBackoffInMillis;
+  }
+
+  public void setRepairIntervalInSeconds(long repairIntervalInSeconds) {
+    this.repairIntervalInSeconds = repairIntervalInSeconds;
+  }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.opendevstack.provision.model.OpenProjectData;
+import org.opendevstack.provision.model.bitbucket.Webhook;
+import org.opendevstack.provision.services.BitbucketAdapter;
+import org.opendevstack.provision.services.bitbucket.BitbucketWebhookManager.Outcome;
+import org.opendevstack.provision.services.bitbucket.WebhookRotationStatus.State;
+import org.opendevstack.provision.storage.IStorage;
+import org.opendevstack.provision.util.concurrent.ContextPropagatingTaskDecorator;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Updates the jenkins webhooks of all repositories of all stored projects to the current webhook
+ * proxy url and trigger secret, e.g. after {@code openshift.jenkins.trigger.secret} changed.
+ * Repositories without a webhook to the webhook proxy host of their project are left as they are.
+ *
+ * <p>Repositories are updated in parallel, at most {@code bitbucket.webhook-rotation.parallelism}
+ * at the same time and {@code bitbucket.webhook-rotation.repositories-per-second} per second. The
+ * rotation has its own pool of at most {@code bitbucket.webhook-rotation.max-parallelism} threads,
+ * so it neither takes the threads of the provisioning nor runs on the thread that started it. Every
+ * repository done is written to a progress file in the storage directory. A rotation that was
+ * cancelled, failed for some repositories or was interrupted by a restart continues with the
+ * remaining repositories when it is started again, as long as the webhooks to set are the same.
+ */
+@Component
+public class BitbucketWebhookRotation {
+
+  private static final Logger logger = LoggerFactory.getLogger(BitbucketWebhookRotation.class);
+
+  static final String PROGRESS_FILE = "webhook-rotation.progress";
+
+  private static final String ROTATION_ID_PREFIX = "rotation=";
+
+  @Autowired private BitbucketWebhookManager webhookManager;
+
+  @Autowired private IStorage storage;
+
+  private ParallelTaskRunner parallelTaskRunner;
+
+  private ThreadPoolExecutor executor;
+
+  @Value("${bitbucket.webhook-rotation.parallelism:4}")
+  private int parallelism = 4;
+
+  @Value("${bitbucket.webhook-rotation.max-parallelism:8}")
+  private int maxParallelism = 8;
+
+  @Value("${bitbucket.webhook-rotation.repositories-per-second:20}")
+  private double repositoriesPerSecond = 20;
+
+  private volatile BitbucketAdapter bitbucketAdapter;
+
+  private volatile WebhookRotationStatus status;
+
+  private volatile boolean cancelled;
+
+  private BufferedWriter progress;
+
+  /**
+   * Starts the rotation in the background, resuming a previous run with the same webhooks
+   *
+   * @param requestedParallelism the number of repositories updated at the same time, null for
+   *     {@code bitbucket.webhook-rotation.parallelism}
+   * @param restart true to update all repositories again, ignoring the progress of a previous run
+   * @return the status of the started rotation
+   * @throws IllegalStateException if a rotation is running already
+   * @throws IOException if the progress file could not be read or written
+   */
+  public synchronized WebhookRotationStatus start(Integer requestedParallelism, boolean restart)
+      throws IOException {
+    Assert.state(bitbucketAdapter != null, "No bitbucket adapter registered for the rotation!");
+    if (isRunning()) {
+      throw new IllegalStateException("A webhook rotation is running already");
+    }
+
+    Map<String, OpenProjectData> repositories = new TreeMap<>();
+    Map<String, Webhook> templates = new TreeMap<>();
+    for (OpenProjectData project : storage.listProjectHistory().values()) {
+      if (project.getRepositories() == null || project.getRepositories().isEmpty()) {
+        continue;
+      }
+      String projectKey = project.getProjectKey().toUpperCase();
+      templates.put(projectKey, bitbucketAdapter.webhookTemplate(project));
+      for (String slug : project.getRepositories().keySet()) {
+        repositories.put(key(project, slug), project);
+      }
+    }
+
+    String rotationId = rotationId(templates);
+    Set<String> done = restart ? new HashSet<>() : readProgress(rotationId);
+    done.retainAll(repositories.keySet());
+    openProgress(rotationId, done);
+
+    WebhookRotationStatus started =
+        new WebhookRotationStatus(rotationId, repositories.size(), done.size());
+    status = started;
+    cancelled = false;
+
+    RateLimiter rateLimiter = RateLimiter.create(Math.max(0.1, repositoriesPerSecond));
+    Map<String, Callable<Outcome>> tasks = new LinkedHashMap<>();
+    repositories.forEach(
+        (key, project) -> {
+          if (done.contains(key)) {
+            return;
+          }
+          String slug = key.substring(key.indexOf('/') + 1);
+          String repositoryUrl =
+              String.format(
+                  "%s/%s/repos/%s",
+                  bitbucketAdapter.getAdapterApiUri(), project.getProjectKey(), slug);
+          Webhook template = templates.get(project.getProjectKey().toUpperCase());
+          tasks.put(
+              key,
+              () -> {
+                rateLimiter.acquire();
+                if (cancelled) {
+                  throw new CancellationException("Webhook rotation was cancelled");
+                }
+                return webhookManager.update(bitbucketAdapter, repositoryUrl, template);
+              });
+        });
+
+    int effectiveParallelism =
+        Math.min(
+            maxParallelism,
+            Math.max(1, requestedParallelism == null ? parallelism : requestedParallelism));
+    logger.info(
+        "Starting webhook rotation {} of {} repositories, {} done already, parallelism {}",
+        rotationId,
+        repositories.size(),
+        done.size(),
+        effectiveParallelism);
+
+    taskRunner()
+        .submitAll(tasks, effectiveParallelism, (key, result) -> record(started, key, result))
+        .whenComplete((results, error) -> finish(started));
+    return started;
+  }
+
+  /**
+   * The tasks of a rotation are queued in its own pool instead of the provisioning executor, which
+   * does not queue and runs tasks in the submitting thread when all its threads are busy.
+   */
+  private synchronized ParallelTaskRunner taskRunner() {
+    if (parallelTaskRunner == null) {
+      AtomicInteger threadNumber = new AtomicInteger();
+      ThreadPoolExecutor pool =
+          new ThreadPoolExecutor(
+              maxParallelism,
+              maxParallelism,
+              60,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> {
+                Thread thread =
+                    new Thread(runnable, "webhook-rotation-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              });
+      pool.allowCoreThreadTimeOut(true);
+      ContextPropagatingTaskDecorator decorator = new ContextPropagatingTaskDecorator();
+      executor = pool;
+      parallelTaskRunner = new ParallelTaskRunner(task -> pool.execute(decorator.decorate(task)));
+    }
+    return parallelTaskRunner;
+  }
+
+  @PreDestroy
+  public synchronized void stop() {
+    cancelled = true;
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+      parallelTaskRunner = null;
+    }
+  }
+
+  /** Lets the running rotation stop after the repositories in flight, it can be resumed later */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /** @return the status of the running or last rotation, null if there was none yet */
+  public WebhookRotationStatus getStatus() {
+    return status;
+  }
+
+  public boolean isRunning() {
+    WebhookRotationStatus current = status;
+    return current != null && current.getState() == State.RUNNING;
+  }
+
+  private void record(WebhookRotationStatus current, String key, TaskResult<Outcome> result) {
+    if (!result.isSuccessful()) {
+      if (!(result.getError() instanceof CancellationException)) {
+        logger.warn("Could not rotate webhook of {}: {}", key, result.getError().getMessage());
+        current.recordFailure(key, result.getError().getMessage());
+      }
+      return;
+    }
+    if (result.getValue() == null) {
+      current.recordWithoutWebhook();
+    } else if (result.getValue() == Outcome.PRESENT) {
+      current.recordUnchanged();
+    } else {
+      current.recordUpdated();
+    }
+    writeProgress(key);
+  }
+
+  private synchronized void finish(WebhookRotationStatus current) {
+    closeProgress();
+    if (cancelled) {
+      current.finish(State.CANCELLED);
+    } else if (!current.getFailures().isEmpty()) {
+      current.finish(State.FAILED);
+    } else {
+      current.finish(State.DONE);
+      // a later rotation with the same webhooks checks all repositories again
+      new File(storage.getStoragePath(), PROGRESS_FILE).delete();
+    }
+    logger.info(
+        "Webhook rotation {} {}: {} updated, {} unchanged, {} without webhook, {} failed",
+        current.getRotationId(),
+        current.getState(),
+        current.getUpdated(),
+        current.getUnchanged(),
+        current.getWithoutWebhook(),
+        current.getFailures().size());
+  }
+
+  /** Identifies the webhooks of a rotation, without revealing the trigger secrets */
+  static String rotationId(Map<String, Webhook> templates) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    templates.forEach(
+        (projectKey, template) ->
+            hasher
+                .putString(projectKey, StandardCharsets.UTF_8)
+                .putString(template.getUrl(), StandardCharsets.UTF_8)
+                .putString(String.join(",", template.getEvents()), StandardCharsets.UTF_8));
+    return hasher.hash().toString().substring(0, 16);
+  }
+
+  private static String key(OpenProjectData project, String slug) {
+    return project.getProjectKey().toUpperCase() + "/" + slug;
+  }
+
+  private Set<String> readProgress(String rotationId) throws IOException {
+    File file = new File(storage.getStoragePath(), PROGRESS_FILE);
+    Set<String> done = new HashSet<>();
+    if (!file.exists()) {
+      return done;
+    }
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    if (lines.isEmpty() || !lines.get(0).equals(ROTATION_ID_PREFIX + rotationId)) {
+      logger.info("Progress file belongs to another webhook rotation, starting from scratch");
+      return done;
+    }
+    done.addAll(lines.subList(1, lines.size()));
+    return done;
+  }
+
+  private void openProgress(String rotationId, Set<String> done) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add(ROTATION_ID_PREFIX + rotationId);
+    lines.addAll(done);
+    File file = new File(storage.getStoragePath(), PROGRESS_FILE);
+    Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    progress =
+        Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+  }
+
+  private synchronized void writeProgress(String key) {
+    if (progress == null) {
+      return;
+    }
+    try {
+      progress.write(key);
+      progress.newLine();
+      progress.flush();
+    } catch (IOException e) {
+      logger.warn("Could not write progress of webhook rotation: {}", e.getMessage());
+    }
+  }
+
+  private void closeProgress() {
+    if (progress == null) {
+      return;
+    }
+    try {
+      progress.close();
+    } catch (IOException e) {
+      logger.debug("Could not close progress file of webhook rotation: {}", e.getMessage());
+    }
+    progress = null;
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public void setMaxParallelism(int maxParallelism) {
+    this.maxParallelism = maxParallelism;
+  }
+
+  public void setRepositoriesPerSecond(double repositoriesPerSecond) {
+    this.repositoriesPerSecond = repositoriesPerSecond;
+  }
+
+  /** @param bitbucketAdapter the bitbucket adapter that builds the webhooks and does the calls */
+  public void setBitbucketAdapter(BitbucketAdapter bitbucketAdapter) {
+    this.bitbucketAdapter = bitbucketAdapter;
+  }
+
+  public void setWebhookManager(BitbucketWebhookManager webhookManager) {
+    this.webhookManager = webhookManager;
+  }
+
+  public void setStorage(IStorage storage) {
+    this.storage = storage;
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * In memory index of the user permissions on the globally readable repositories ({@code
+ * scm.global.readablerepos.*}), so that a project with its own cd user only grants the read
+ * permissions that are actually missing, without reading the permissions of every shared
+ * repository on every provisioning.
+ *
+ * <p>The index is refreshed in bulk, all repositories in parallel with paged permission listings,
+ * when it is older than {@code bitbucket.readable-repos-index.max-age-seconds} or does not know a
+ * repository yet. Permissions granted in between are added to the index. A permission revoked in
+ * bitbucket is noticed by the next refresh at the latest.
+ */
+@Component
+public class ReadableRepoGrantIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReadableRepoGrantIndex.class);
+
+  /** Reads the permissions of all users of a repository, by lower case user name */
+  @FunctionalInterface
+  public interface PermissionReader {
+    Map<String, String> read(String path) throws IOException;
+  }
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  @Value("${bitbucket.readable-repos-index.max-age-seconds:3600}")
+  private long maxAgeInSeconds = 3600;
+
+  @Value("${bitbucket.readable-repos-index.parallelism:8}")
+  private int parallelism = 8;
+
+  /** User permissions by permission path of the repository */
+  private final Map<String, Map<String, String>> permissions = new ConcurrentHashMap<>();
+
+  private volatile long lastRefresh;
+
+  /**
+   * Refreshes the index if it is too old or misses one of the given repositories
+   *
+   * @param paths the permission paths of the repositories, see {@link
+   *     org.opendevstack.provision.model.bitbucket.PermissionGrant#getPath()}
+   * @param reader reads the permissions of a repository
+   */
+  public synchronized void refreshIfStale(Collection<String> paths, PermissionReader reader) {
+    if (isFresh() && permissions.keySet().containsAll(paths)) {
+      return;
+    }
+    refresh(paths, reader);
+  }
+
+  /**
+   * Replaces the index by the current permissions of the given repositories. A repository whose
+   * permissions could not be read is left out, its grants are issued without check.
+   *
+   * @param paths the permission paths of the repositories
+   * @param reader reads the permissions of a repository
+   * @return the number of repositories in the index
+   */
+  public synchronized int refresh(Collection<String> paths, PermissionReader reader) {
+    Assert.notNull(paths, "Parameter 'paths' is null!");
+    long start = System.nanoTime();
+
+    Map<String, Callable<Map<String, String>>> reads = new LinkedHashMap<>();
+    paths.forEach(path -> reads.put(path, () -> reader.read(path)));
+    Map<String, TaskResult<Map<String, String>>> results =
+        parallelTaskRunner.invokeAll(reads, parallelism);
+
+    permissions.clear();
+    results.forEach(
+        (path, result) -> {
+          if (result.isSuccessful()) {
+            permissions.put(path, new ConcurrentHashMap<>(result.getValue()));
+          } else {
+            logger.warn(
+                "Could not read permissions of {}: {}", path, result.getError().getMessage());
+          }
+        });
+    lastRefresh = System.nanoTime();
+
+    logger.debug(
+        "Refreshed readable repos grant index with {} repositories in {} ms",
+        permissions.size(),
+        TimeUnit.NANOSECONDS.toMillis(lastRefresh - start));
+    return permissions.size();
+  }
+
+  /**
+   * @param path the permission path of the repository
+   * @param user the name of the user
+   * @return the permission of the user on the repository, or null if the user has none or the
+   *     repository is not in the index
+   */
+  public String permissionOf(String path, String user) {
+    Map<String, String> users = permissions.get(path);
+    return users == null ? null : users.get(user.toLowerCase());
+  }
+
+  /** @return true if the permissions of the repository are in the index */
+  public boolean contains(String path) {
+    return permissions.containsKey(path);
+  }
+
+  /**
+   * Adds a permission that was just granted
+   *
+   * @param path the permission path of the repository
+   * @param user the name of the user
+   * @param permission the granted permission
+   */
+  public void granted(String path, String user, String permission) {
+    Map<String, String> users = permissions.get(path);
+    if (users != null) {
+      users.put(user.toLowerCase(), permission);
+    }
+  }
+
+  /** @return true if the index was refreshed within {@code max-age-seconds} */
+  public boolean isFresh() {
+    return lastRefresh != 0
+        && System.nanoTime() - lastRefresh < TimeUnit.SECONDS.toNanos(maxAgeInSeconds);
+  }
+
+  public int size() {
+    return permissions.size();
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+
+  public void setMaxAgeInSeconds(long maxAgeInSeconds) {
+    this.maxAgeInSeconds = maxAgeInSeconds;
+  }
+}
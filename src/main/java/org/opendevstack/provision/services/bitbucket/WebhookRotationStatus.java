@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Progress of a rotation of the jenkins webhooks, see {@link BitbucketWebhookRotation} */
+public class WebhookRotationStatus {
+
+  public enum State {
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED
+  }
+
+  private final String rotationId;
+  private final int total;
+  private final int resumed;
+  private final long startedAt = System.currentTimeMillis();
+  private volatile long finishedAt;
+  private volatile State state = State.RUNNING;
+
+  private final AtomicInteger updated = new AtomicInteger();
+  private final AtomicInteger unchanged = new AtomicInteger();
+  private final AtomicInteger withoutWebhook = new AtomicInteger();
+  private final Map<String, String> failures = new ConcurrentHashMap<>();
+
+  /**
+   * @param rotationId identifies the webhooks the rotation sets, a rotation is only resumed with
+   *     the same id
+   * @param total the number of repositories of all projects
+   * @param resumed the number of repositories a previous run of the rotation did already
+   */
+  WebhookRotationStatus(String rotationId, int total, int resumed) {
+    this.rotationId = rotationId;
+    this.total = total;
+    this.resumed = resumed;
+  }
+
+  void recordUpdated() {
+    updated.incrementAndGet();
+  }
+
+  void recordUnchanged() {
+    unchanged.incrementAndGet();
+  }
+
+  void recordWithoutWebhook() {
+    withoutWebhook.incrementAndGet();
+  }
+
+  void recordFailure(String repository, String error) {
+    failures.put(repository, error);
+  }
+
+  void finish(State state) {
+    this.finishedAt = System.currentTimeMillis();
+    this.state = state;
+  }
+
+  public String getRotationId() {
+    return rotationId;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public int getTotal() {
+    return total;
+  }
+
+  public int getResumed() {
+    return resumed;
+  }
+
+  /** @return the number of repositories done, including those of a previous run */
+  public int getCompleted() {
+    return resumed + updated.get() + unchanged.get() + withoutWebhook.get() + failures.size();
+  }
+
+  public int getUpdated() {
+    return updated.get();
+  }
+
+  public int getUnchanged() {
+    return unchanged.get();
+  }
+
+  public int getWithoutWebhook() {
+    return withoutWebhook.get();
+  }
+
+  /** @return the error of every failed repository, by {@code PROJECTKEY/slug} */
+  public Map<String, String> getFailures() {
+    return new TreeMap<>(failures);
+  }
+
+  public long getStartedAt() {
+    return startedAt;
+  }
+
+  public long getFinishedAt() {
+    return finishedAt;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.opendevstack.provision.model.jira.Component;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.util.Assert;
+
+/**
+ * Creates the components of a jira project in one batch. The components of the project are read
+ * once, components with the same name are not created again, all others are posted in parallel
+ * with at most {@code jira.components.parallelism} calls in flight.
+ */
+@org.springframework.stereotype.Component
+public class JiraComponentCreator {
+
+  private static final Logger logger = LoggerFactory.getLogger(JiraComponentCreator.class);
+
+  /** What happened to a single component */
+  public enum Outcome {
+    CREATED,
+    EXISTS
+  }
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  @Value("${jira.api.path}")
+  private String jiraApiPath;
+
+  @Value("${jira.uri}")
+  private String jiraUri;
+
+  @Value("${jira.components.parallelism:4}")
+  private int parallelism = 4;
+
+  /**
+   * @param jira the jira adapter used for the calls
+   * @param projectKey the key of the project
+   * @param components the components to create, by name
+   * @return the result of every component, in the order of the given components. Failed
+   *     components hold the error, e.g. a {@link HttpException}.
+   */
+  public Map<String, TaskResult<Outcome>> createComponents(
+      JiraRestService jira, String projectKey, List<Component> components) {
+    Assert.notNull(projectKey, "Parameter 'projectKey' is null!");
+    Assert.notNull(components, "Parameter 'components' is null!");
+
+    Set<String> existing = getExistingComponentNames(jira, projectKey);
+    String path = String.format(JiraRestApi.JIRA_API_COMPONENT_PATTERN, jiraUri, jiraApiPath);
+
+    // a 401 means the project can not be reached at all, so the remaining calls are skipped
+    AtomicBoolean unauthorized = new AtomicBoolean();
+
+    Map<String, Callable<Outcome>> tasks = new LinkedHashMap<>();
+    for (Component component : components) {
+      if (existing.contains(component.getName().toLowerCase())) {
+        logger.debug("Jira component {} already exists in {}", component.getName(), projectKey);
+        tasks.put(component.getName(), () -> Outcome.EXISTS);
+        continue;
+      }
+      tasks.put(
+          component.getName(),
+          () -> {
+            if (unauthorized.get()) {
+              throw new HttpException(
+                  401, "Skipped, jira denied the creation of another component of " + projectKey);
+            }
+            RestClientCall call = jira.httpPost().url(path).body(component).returnType(null);
+            try {
+              jira.getRestClient().execute(call);
+              return Outcome.CREATED;
+            } catch (HttpException e) {
+              if (e.getResponseCode() == 401) {
+                unauthorized.set(true);
+              }
+              throw e;
+            }
+          });
+    }
+
+    Map<String, TaskResult<Outcome>> results = parallelTaskRunner.invokeAll(tasks, parallelism);
+    results.forEach(
+        (name, result) -> {
+          if (!result.isSuccessful()) {
+            logger.error(
+                "Could not create jira component for {} - error {}",
+                name,
+                result.getError().getMessage());
+          }
+        });
+    return results;
+  }
+
+  private Set<String> getExistingComponentNames(JiraRestService jira, String projectKey) {
+    String url =
+        String.format(
+            JiraRestApi.JIRA_API_PROJECT_COMPONENTS_PATTERN, jiraUri, jiraApiPath, projectKey);
+    try {
+      List<Component> components =
+          jira.getRestClient()
+              .execute(
+                  jira.httpGet()
+                      .url(url)
+                      .returnTypeReference(new TypeReference<List<Component>>() {}),
+                  true);
+      if (components == null) {
+        return Set.of();
+      }
+      return components.stream()
+          .map(Component::getName)
+          .filter(name -> name != null)
+          .map(String::toLowerCase)
+          .collect(Collectors.toSet());
+    } catch (IOException e) {
+      // then every component is posted, jira rejects duplicates anyway
+      logger.warn(
+          "Could not read the components of jira project {}: {}", projectKey, e.getMessage());
+      return Set.of();
+    }
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+
+  public void setJiraUri(String jiraUri) {
+    this.jiraUri = jiraUri;
+  }
+
+  public void setJiraApiPath(String jiraApiPath) {
+    this.jiraApiPath = jiraApiPath;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Caches whether groups, users, roles and permission schemes exist in jira, shared by all
+ * precondition checks. Found entries are kept for {@code
+ * jira.directory-cache.positive-ttl-seconds}, missing entries only for {@code
+ * jira.directory-cache.negative-ttl-seconds}, so that a group created after a failed check is
+ * found soon. Failed lookups are not cached.
+ *
+ * <p>The hit ratio is published as micrometer cache metrics {@code cache.gets} etc. with tags
+ * {@code cache=jira.directory.found} and {@code cache=jira.directory.missing}.
+ */
+@Component
+public class JiraDirectoryCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(JiraDirectoryCache.class);
+
+  public static final String TYPE_GROUP = "group";
+  public static final String TYPE_USER = "user";
+  public static final String TYPE_ROLE = "role";
+  public static final String TYPE_PERMISSION_SCHEME = "permission-scheme";
+
+  @Value("${jira.directory-cache.enabled:true}")
+  private boolean enabled = true;
+
+  @Value("${jira.directory-cache.positive-ttl-seconds:600}")
+  private long positiveTtlInSeconds = 600;
+
+  @Value("${jira.directory-cache.negative-ttl-seconds:60}")
+  private long negativeTtlInSeconds = 60;
+
+  @Value("${jira.directory-cache.max-size:10000}")
+  private long maxSize = 10000;
+
+  @Autowired(required = false)
+  private MeterRegistry meterRegistry;
+
+  private Cache<String, Boolean> found;
+  private Cache<String, Boolean> missing;
+
+  @PostConstruct
+  public void init() {
+    found =
+        CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(positiveTtlInSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    missing =
+        CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(negativeTtlInSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, found, "jira.directory.found", Tags.empty());
+      GuavaCacheMetrics.monitor(meterRegistry, missing, "jira.directory.missing", Tags.empty());
+    }
+  }
+
+  /**
+   * @param type the type of the entry, e.g. {@link #TYPE_GROUP}
+   * @param name the name or id of the entry, case insensitive
+   * @param loader asks jira whether the entry exists, called on a cache miss
+   * @return true if the entry exists
+   */
+  public boolean exists(String type, String name, Supplier<Boolean> loader) {
+    Assert.notNull(type, "Parameter 'type' is null!");
+    Assert.notNull(name, "Parameter 'name' is null!");
+    if (!enabled) {
+      return loader.get();
+    }
+
+    String key = key(type, name);
+    if (found.getIfPresent(key) != null) {
+      return true;
+    }
+    if (missing.getIfPresent(key) != null) {
+      return false;
+    }
+
+    boolean exists = loader.get();
+    (exists ? found : missing).put(key, Boolean.TRUE);
+    logger.debug("Cached jira {} '{}' [exists={}]", type, name, exists);
+    return exists;
+  }
+
+  /**
+   * Forgets a single entry, e.g. after it was created or deleted
+   *
+   * @param type the type of the entry
+   * @param name the name or id of the entry
+   */
+  public void invalidate(String type, String name) {
+    String key = key(type, name);
+    found.invalidate(key);
+    missing.invalidate(key);
+  }
+
+  public void invalidateAll() {
+    found.invalidateAll();
+    missing.invalidateAll();
+    logger.info("Invalidated jira directory cache");
+  }
+
+  /** @return the share of lookups answered from the cache, NaN before the first lookup */
+  public double getHitRatio() {
+    long requests = found.stats().requestCount();
+    long hits = found.stats().hitCount() + missing.stats().hitCount();
+    return requests == 0 ? Double.NaN : (double) hits / requests;
+  }
+
+  public long size() {
+    return found.size() + missing.size();
+  }
+
+  private static String key(String type, String name) {
+    return type + ":" + name.toLowerCase();
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setPositiveTtlInSeconds(long positiveTtlInSeconds) {
+    this.positiveTtlInSeconds = positiveTtlInSeconds;
+  }
+
+  public void setNegativeTtlInSeconds(long negativeTtlInSeconds) {
+    this.negativeTtlInSeconds = negativeTtlInSeconds;
+  }
+
+  public void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+  }
+}
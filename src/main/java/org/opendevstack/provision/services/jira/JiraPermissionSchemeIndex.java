@@ -0,0 +1,438 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import org.opendevstack.provision.model.jira.Permission;
+import org.opendevstack.provision.model.jira.PermissionScheme;
+import org.opendevstack.provision.model.jira.PermissionSchemeResponse;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Index from the content of a permission scheme to the id of an existing jira permission scheme
+ * with the same grants, so that projects with the same groups share one scheme instead of getting
+ * a copy each.
+ *
+ * <p>The content hash only covers the grants (permission, holder type and holder parameter), name
+ * and description of a scheme are ignored. The index is filled from the permission schemes of
+ * jira on first use and extended by every scheme created through it. Before a scheme is reused,
+ * it is checked that it still exists in jira. Since schemes are shared, a scheme must only be
+ * deleted through {@link #deleteIfUnused(JiraRestService, String, String, Callable)}.
+ *
+ * <p>The index also remembers the projects it handed a scheme created through it to. Other
+ * projects using such a scheme are then known without asking jira for the scheme of every
+ * project. For schemes that existed before, jira is asked.
+ */
+@Component
+public class JiraPermissionSchemeIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(JiraPermissionSchemeIndex.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Value("${jira.api.path}")
+  private String jiraApiPath;
+
+  @Value("${jira.uri}")
+  private String jiraUri;
+
+  @Value("${jira.permission-scheme-index.enabled:true}")
+  private boolean enabled = true;
+
+  @Value("${jira.permission-scheme-index.usage-parallelism:8}")
+  private int usageParallelism = 8;
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  /** Scheme id by content hash */
+  private final Map<String, String> schemeIds = new ConcurrentHashMap<>();
+
+  /** Keys of the projects a scheme created through the index was handed to, by scheme id */
+  private final Map<String, Set<String>> projectKeysBySchemeId = new ConcurrentHashMap<>();
+
+  /** Serializes the creation and deletion of schemes with the same content */
+  private final Striped<Lock> locks = Striped.lazyWeakLock(64);
+
+  private final AtomicLong reused = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+
+  private volatile boolean loaded;
+
+  /**
+   * Returns an existing scheme with the same grants, or creates the scheme if there is none
+   *
+   * @param jira the jira adapter used to list the existing schemes
+   * @param scheme the scheme, with the groups of the project already set
+   * @param projectKey the key of the project the scheme is for
+   * @param creator creates the scheme in jira and returns it with its id
+   * @return the reused or created scheme
+   * @throws Exception if the creator failed
+   */
+  public PermissionScheme findOrCreate(
+      JiraRestService jira,
+      PermissionScheme scheme,
+      String projectKey,
+      Callable<PermissionScheme> creator)
+      throws Exception {
+    if (!enabled) {
+      return creator.call();
+    }
+    loadIfNeeded(jira);
+
+    String hash = hash(scheme);
+    Lock lock = locks.get(hash);
+    lock.lock();
+    try {
+      String existingId = schemeIds.get(hash);
+      if (existingId != null && !exists(jira, existingId)) {
+        logger.info("Indexed permission scheme {} was deleted in jira", existingId);
+        invalidate(existingId);
+        existingId = null;
+      }
+      if (existingId != null) {
+        reused.incrementAndGet();
+        used(existingId, projectKey);
+        logger.debug(
+            "Reusing permission scheme with the same grants [name={}, permissionSchemeId={}]",
+            scheme.getName(),
+            existingId);
+        PermissionScheme existing = new PermissionScheme();
+        existing.setId(existingId);
+        existing.setName(scheme.getName());
+        return existing;
+      }
+
+      PermissionScheme newScheme = creator.call();
+      created.incrementAndGet();
+      if (newScheme != null && newScheme.getId() != null) {
+        schemeIds.put(hash, newScheme.getId());
+        projectKeysBySchemeId.put(newScheme.getId(), ConcurrentHashMap.newKeySet());
+        used(newScheme.getId(), projectKey);
+      }
+      return newScheme;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Only schemes created through the index are tracked, others may have any number of users */
+  private void used(String schemeId, String projectKey) {
+    if (projectKey != null) {
+      Set<String> projectKeys = projectKeysBySchemeId.get(schemeId);
+      if (projectKeys != null) {
+        projectKeys.add(projectKey.toUpperCase());
+      }
+    }
+  }
+
+  /**
+   * Deletes the permission scheme if no other project uses it. The scheme is not handed out by
+   * {@link #findOrCreate} while this is checked and the scheme is deleted.
+   *
+   * @param jira the jira adapter used for the calls
+   * @param schemeId the id of the scheme
+   * @param projectKey the key of the project that no longer uses the scheme
+   * @param deleter deletes the scheme in jira
+   * @return the keys of the other projects using the scheme, empty if the scheme was deleted
+   * @throws Exception if the users of the scheme could not be read or the deleter failed
+   */
+  public Set<String> deleteIfUnused(
+      JiraRestService jira, String schemeId, String projectKey, Callable<?> deleter)
+      throws Exception {
+    Assert.notNull(schemeId, "Parameter 'schemeId' is null!");
+    String hash =
+        schemeIds.entrySet().stream()
+            .filter(entry -> entry.getValue().equals(schemeId))
+            .map(Map.Entry::getKey)
+            .findFirst()
+            .orElse(schemeId);
+    Lock lock = locks.get(hash);
+    lock.lock();
+    try {
+      Set<String> otherUsers = otherProjectsUsing(jira, schemeId, projectKey);
+      if (!otherUsers.isEmpty()) {
+        Set<String> projectKeys = projectKeysBySchemeId.get(schemeId);
+        if (projectKeys != null && projectKey != null) {
+          projectKeys.remove(projectKey.toUpperCase());
+        }
+        return otherUsers;
+      }
+      deleter.call();
+      invalidate(schemeId);
+      return otherUsers;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean exists(JiraRestService jira, String schemeId) throws IOException {
+    String url =
+        String.format(JiraRestApi.JIRA_API_PERMISSION_SCHEME_PATTERN, jiraUri, jiraApiPath)
+            + "/"
+            + schemeId;
+    try {
+      jira.getRestClient().execute(jira.httpGet().url(url).returnType(String.class), true);
+      return true;
+    } catch (HttpException e) {
+      if (e.getResponseCode() == 404) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Finds the other projects that use the permission scheme. For a scheme created through the
+   * index, these are the projects it was handed to. Otherwise jira is asked: it has no lookup from
+   * a scheme to its projects, so the project list is read and the scheme of every project is
+   * asked.
+   *
+   * @param jira the jira adapter used for the calls
+   * @param schemeId the id of the scheme
+   * @param projectKey the key of the project to leave out, e.g. the one being deleted
+   * @return the keys of the other projects using the scheme
+   * @throws IOException if the project list or the scheme of a project could not be read. The
+   *     scheme must then be treated as used.
+   */
+  public Set<String> otherProjectsUsing(JiraRestService jira, String schemeId, String projectKey)
+      throws IOException {
+    Assert.notNull(schemeId, "Parameter 'schemeId' is null!");
+    Set<String> projectKeys = projectKeysBySchemeId.get(schemeId);
+    if (projectKeys != null) {
+      Set<String> users = new TreeSet<>(projectKeys);
+      if (projectKey != null) {
+        users.remove(projectKey.toUpperCase());
+      }
+      return users;
+    }
+
+    String projectsUrl = String.format(JiraRestApi.JIRA_API_PROJECT_PATTERN, jiraUri, jiraApiPath);
+    Set<String> keys =
+        JiraProjectKeyIndex.parseKeys(
+            jira.getRestClient().execute(jira.httpGet().url(projectsUrl).returnType(String.class)));
+    if (projectKey != null) {
+      keys.remove(projectKey.toUpperCase());
+    }
+
+    Map<String, Callable<Boolean>> reads = new LinkedHashMap<>();
+    for (String key : keys) {
+      String url =
+          String.format(
+              JiraRestApi.JIRA_API_PROJECT_PERMISSION_SCHEME_PATTERN, jiraUri, jiraApiPath, key);
+      reads.put(key, () -> usesScheme(jira, url, schemeId));
+    }
+
+    Set<String> users = new TreeSet<>();
+    for (Map.Entry<String, TaskResult<Boolean>> result :
+        parallelTaskRunner.invokeAll(reads, usageParallelism).entrySet()) {
+      if (!result.getValue().isSuccessful()) {
+        throw new IOException(
+            String.format(
+                "Could not read permission scheme of project %s: %s",
+                result.getKey(), result.getValue().getError().getMessage()));
+      }
+      if (Boolean.TRUE.equals(result.getValue().getValue())) {
+        users.add(result.getKey());
+      }
+    }
+    return users;
+  }
+
+  private static boolean usesScheme(JiraRestService jira, String url, String schemeId)
+      throws IOException {
+    try {
+      RestClientCall call = jira.httpGet().url(url).returnType(PermissionSchemeResponse.class);
+      PermissionSchemeResponse scheme = jira.getRestClient().execute(call, true);
+      return scheme != null
+          && scheme.getId() != null
+          && schemeId.equals(String.valueOf(scheme.getId()));
+    } catch (HttpException e) {
+      // the project was deleted meanwhile
+      if (e.getResponseCode() == 404) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Removes a scheme that does not exist (anymore) in jira from the index
+   *
+   * @param schemeId the id of the scheme
+   */
+  public void invalidate(String schemeId) {
+    schemeIds.values().removeIf(id -> id.equals(schemeId));
+    projectKeysBySchemeId.remove(schemeId);
+  }
+
+  /** Drops the index, it is loaded from jira again on next use */
+  public void invalidateAll() {
+    loaded = false;
+    schemeIds.clear();
+    projectKeysBySchemeId.clear();
+  }
+
+  /**
+   * Adds all permission schemes of jira to the index. If several schemes have the same grants,
+   * the one with the lowest id is kept.
+   *
+   * @param jira the jira adapter used to list the schemes
+   * @return the number of schemes read
+   * @throws IOException if jira could not be asked
+   */
+  public int load(JiraRestService jira) throws IOException {
+    String url =
+        String.format(JiraRestApi.JIRA_API_PERMISSION_SCHEME_PATTERN, jiraUri, jiraApiPath)
+            + "?expand=permissions";
+    RestClientCall call = jira.httpGet().url(url).returnType(String.class);
+    String response = jira.getRestClient().execute(call);
+
+    int count = 0;
+    for (JsonNode scheme : MAPPER.readTree(response).path("permissionSchemes")) {
+      String id = scheme.path("id").asText(null);
+      if (id == null) {
+        continue;
+      }
+      count++;
+      schemeIds.merge(hash(scheme.path("permissions")), id, JiraPermissionSchemeIndex::lowerId);
+    }
+    loaded = true;
+    logger.info(
+        "Loaded {} jira permission schemes with {} different grant sets", count, schemeIds.size());
+    return count;
+  }
+
+  private void loadIfNeeded(JiraRestService jira) {
+    if (loaded) {
+      return;
+    }
+    synchronized (this) {
+      if (loaded) {
+        return;
+      }
+      try {
+        load(jira);
+      } catch (Exception e) {
+        // only the reuse of schemes created before is lost, try again next time
+        logger.warn("Could not load jira permission schemes: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * @param scheme the scheme
+   * @return the hash of the grants of the scheme, independent of their order, name and description
+   */
+  public static String hash(PermissionScheme scheme) {
+    Assert.notNull(scheme, "Parameter 'scheme' is null!");
+    SortedSet<String> grants = new TreeSet<>();
+    if (scheme.getPermissions() != null) {
+      for (Permission permission : scheme.getPermissions()) {
+        String type = permission.getHolder() == null ? null : permission.getHolder().getType();
+        String parameter =
+            permission.getHolder() == null ? null : permission.getHolder().getParameter();
+        grants.add(grant(permission.getPermission(), type, parameter));
+      }
+    }
+    return hash(grants);
+  }
+
+  static String hash(JsonNode permissions) {
+    SortedSet<String> grants = new TreeSet<>();
+    for (JsonNode permission : permissions) {
+      JsonNode holder = permission.path("holder");
+      grants.add(
+          grant(
+              permission.path("permission").asText(null),
+              holder.path("type").asText(null),
+              holder.path("parameter").asText(null)));
+    }
+    return hash(grants);
+  }
+
+  private static String hash(SortedSet<String> grants) {
+    String canonical = String.join("\n", grants);
+    return Hashing.sha256().hashString(canonical, StandardCharsets.UTF_8).toString();
+  }
+
+  /** Canonical form of a grant, group names are case insensitive in jira */
+  private static String grant(String permission, String type, String parameter) {
+    String holder = parameter;
+    if (parameter != null && "group".equalsIgnoreCase(type)) {
+      holder = parameter.toLowerCase();
+    }
+    return permission + "\t" + String.valueOf(type).toLowerCase() + "\t" + holder;
+  }
+
+  private static String lowerId(String first, String second) {
+    try {
+      return Long.parseLong(first) <= Long.parseLong(second) ? first : second;
+    } catch (NumberFormatException e) {
+      return first;
+    }
+  }
+
+  public int size() {
+    return schemeIds.size();
+  }
+
+  /** @return the number of schemes that were reused instead of created */
+  public long getReused() {
+    return reused.get();
+  }
+
+  /** @return the number of schemes created through the index */
+  public long getCreated() {
+    return created.get();
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setJiraUri(String jiraUri) {
+    this.jiraUri = jiraUri;
+  }
+
+  public void setJiraApiPath(String jiraApiPath) {
+    this.jiraApiPath = jiraApiPath;
+  }
+}
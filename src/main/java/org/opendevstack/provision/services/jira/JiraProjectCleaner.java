@@ -0,0 +1,288 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import org.opendevstack.provision.config.ProvisioningExecutorConfig;
+import org.opendevstack.provision.model.jira.Component;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.util.Assert;
+
+/**
+ * Removes jira projects and components during the cleanup of a failed provisioning.
+ *
+ * <p>Components are read once and deleted in parallel with at most {@code
+ * jira.cleanup.parallelism} calls in flight. Deleting a project takes long on big instances, so
+ * the delete is sent in the background and its completion is confirmed by asking for the project
+ * with exponential backoff ({@code jira.cleanup.poll.initial-backoff-millis} up to {@code
+ * jira.cleanup.poll.max-backoff-millis}). If the project still exists after {@code
+ * jira.cleanup.deadline-seconds} the cleanup reports it as left over, while the delete may still
+ * finish in the background.
+ */
+@org.springframework.stereotype.Component
+public class JiraProjectCleaner {
+
+  private static final Logger logger = LoggerFactory.getLogger(JiraProjectCleaner.class);
+
+  /** What happened to a single component */
+  public enum Outcome {
+    DELETED,
+    ABSENT
+  }
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  @Autowired
+  @Qualifier(ProvisioningExecutorConfig.PROVISIONING_TASK_EXECUTOR)
+  private Executor executor;
+
+  @Value("${jira.api.path}")
+  private String jiraApiPath;
+
+  @Value("${jira.uri}")
+  private String jiraUri;
+
+  @Value("${jira.cleanup.parallelism:4}")
+  private int parallelism = 4;
+
+  @Value("${jira.cleanup.deadline-seconds:60}")
+  private long deadlineInSeconds = 60;
+
+  @Value("${jira.cleanup.poll.initial-backoff-millis:250}")
+  private long initialBackoffInMillis = 250;
+
+  @Value("${jira.cleanup.poll.max-backoff-millis:8000}")
+  private long maxBackoffInMillis = 8000;
+
+  /**
+   * @param jira the jira adapter used for the calls
+   * @param projectKey the key of the project
+   * @param names the names of the components to delete
+   * @return the result of every component, in the order of the given names. Failed components
+   *     hold the error, e.g. a {@link HttpException}.
+   * @throws IOException if the components of the project could not be read
+   */
+  public Map<String, TaskResult<Outcome>> deleteComponents(
+      JiraRestService jira, String projectKey, Collection<String> names) throws IOException {
+    Assert.notNull(projectKey, "Parameter 'projectKey' is null!");
+    Assert.notNull(names, "Parameter 'names' is null!");
+
+    Map<String, String> idsByName = getComponentIds(jira, projectKey);
+    Map<String, Callable<Outcome>> tasks = new LinkedHashMap<>();
+    for (String name : names) {
+      String id = idsByName.get(name.toLowerCase());
+      if (id == null) {
+        logger.debug("Jira component {} does not exist in {}", name, projectKey);
+        tasks.put(name, () -> Outcome.ABSENT);
+        continue;
+      }
+      String url =
+          String.format(JiraRestApi.JIRA_API_COMPONENT_PATTERN, jiraUri, jiraApiPath) + "/" + id;
+      tasks.put(
+          name,
+          () -> {
+            try {
+              jira.getRestClient().execute(jira.httpDelete().url(url).returnType(null));
+              return Outcome.DELETED;
+            } catch (HttpException e) {
+              if (e.getResponseCode() == 404) {
+                return Outcome.ABSENT;
+              }
+              throw e;
+            }
+          });
+    }
+
+    Map<String, TaskResult<Outcome>> results = parallelTaskRunner.invokeAll(tasks, parallelism);
+    results.forEach(
+        (name, result) -> {
+          if (!result.isSuccessful()) {
+            logger.error(
+                "Could not delete jira component {} of {} - error {}",
+                name,
+                projectKey,
+                result.getError().getMessage());
+          }
+        });
+    return results;
+  }
+
+  /**
+   * Deletes the project and waits at most {@code jira.cleanup.deadline-seconds} until jira does
+   * not know it any more.
+   *
+   * @param jira the jira adapter used for the calls
+   * @param projectKey the key of the project
+   * @return true if the project is gone, false if it still exists at the deadline or jira denied
+   *     the delete
+   */
+  public boolean deleteProject(JiraRestService jira, String projectKey) {
+    Assert.notNull(projectKey, "Parameter 'projectKey' is null!");
+    String url =
+        String.format(
+            JiraRestApi.JIRA_API_PROJECT_FILTER_PATTERN, jiraUri, jiraApiPath, projectKey);
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(deadlineInSeconds);
+
+    // the call is authenticated in the calling thread, it may carry the credentials of the user
+    RestClientCall call = jira.httpDelete().url(url).returnType(null);
+    CompletableFuture<Void> delete =
+        CompletableFuture.runAsync(
+            () -> {
+              try {
+                jira.getRestClient().execute(call);
+              } catch (IOException e) {
+                throw new DeleteFailedException(e);
+              }
+            },
+            executor);
+
+    long backoff = initialBackoffInMillis;
+    while (true) {
+      long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      try {
+        delete.get(Math.max(0, Math.min(backoff, remaining)), TimeUnit.MILLISECONDS);
+        logger.debug(
+            "Deleted jira project {} in {} ms",
+            projectKey,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+      } catch (ExecutionException e) {
+        Throwable cause =
+            e.getCause() instanceof DeleteFailedException ? e.getCause().getCause() : e;
+        if (cause instanceof HttpException && ((HttpException) cause).getResponseCode() == 404) {
+          return true;
+        }
+        logger.error("Could not delete jira project {}: {}", projectKey, cause.getMessage());
+        // the delete may have failed after jira removed the project, e.g. on a gateway timeout
+        return !exists(jira, url, projectKey);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } catch (TimeoutException e) {
+        // still running, ask jira whether the project is gone already
+      }
+
+      if (!exists(jira, url, projectKey)) {
+        logger.debug("Jira project {} is gone, the delete is still finishing", projectKey);
+        return true;
+      }
+      if (System.nanoTime() >= deadline) {
+        logger.warn(
+            "Jira project {} still exists after {} seconds, the delete continues in the"
+                + " background",
+            projectKey,
+            deadlineInSeconds);
+        return false;
+      }
+      backoff = Math.min(backoff * 2, maxBackoffInMillis);
+    }
+  }
+
+  /** @return false only if jira answered that the project does not exist */
+  private boolean exists(JiraRestService jira, String url, String projectKey) {
+    try {
+      jira.getRestClient().execute(jira.httpGet().url(url), true);
+      return true;
+    } catch (HttpException e) {
+      return e.getResponseCode() != 404;
+    } catch (IOException e) {
+      logger.debug("Could not check jira project {}: {}", projectKey, e.getMessage());
+      return true;
+    }
+  }
+
+  private Map<String, String> getComponentIds(JiraRestService jira, String projectKey)
+      throws IOException {
+    String url =
+        String.format(
+            JiraRestApi.JIRA_API_PROJECT_COMPONENTS_PATTERN, jiraUri, jiraApiPath, projectKey);
+    List<Component> components =
+        jira.getRestClient()
+            .execute(
+                jira.httpGet()
+                    .url(url)
+                    .returnTypeReference(new TypeReference<List<Component>>() {}),
+                true);
+    if (components == null) {
+      return Map.of();
+    }
+    return components.stream()
+        .filter(component -> component.getName() != null && component.getId() != null)
+        .collect(
+            Collectors.toMap(
+                component -> component.getName().toLowerCase(),
+                Component::getId,
+                (first, second) -> first));
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public void setDeadlineInSeconds(long deadlineInSeconds) {
+    this.deadlineInSeconds = deadlineInSeconds;
+  }
+
+  public void setInitialBackoffInMillis(long initialBackoffInMillis) {
+    this.initialBackoffInMillis = initialBackoffInMillis;
+  }
+
+  public void setMaxBackoffInMillis(long maxBackoffInMillis) {
+    this.maxBackoffInMillis = maxBackoffInMillis;
+  }
+
+  public void setJiraUri(String jiraUri) {
+    this.jiraUri = jiraUri;
+  }
+
+  public void setJiraApiPath(String jiraApiPath) {
+    this.jiraApiPath = jiraApiPath;
+  }
+
+  /** Carries the error of the delete through the future */
+  private static class DeleteFailedException extends RuntimeException {
+    private DeleteFailedException(IOException cause) {
+      super(cause);
+    }
+  }
+}
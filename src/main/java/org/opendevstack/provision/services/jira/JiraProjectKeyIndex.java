@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * In memory index of the existing Jira project keys, to answer the key validation of the UI
+ * without asking Jira on every keystroke.
+ *
+ * <p>Keys found in Jira are cached for {@code
+ * jira.project-key-index.refresh-interval-seconds}, keys not found for {@code
+ * jira.project-key-index.negative-ttl-seconds}. Unknown keys are looked up with a single project
+ * call. If Jira is accessed with a technical user, the full key list is
+ * refreshed in the background, otherwise the index is filled by the lookups of the logged in
+ * users.
+ */
+@Component
+public class JiraProjectKeyIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(JiraProjectKeyIndex.class);
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  /**
+   * Jira project keys start with a letter. Anything else cannot be a key and would be taken as a
+   * project id or a different path by jira.
+   */
+  private static final Pattern PROJECT_KEY = Pattern.compile("[A-Z][A-Z0-9_]*");
+
+  @Value("${jira.api.path}")
+  private String jiraApiPath;
+
+  @Value("${jira.uri}")
+  private String jiraUri;
+
+  @Value("${jira.project-key-index.refresh-interval-seconds:300}")
+  private long refreshIntervalInSeconds = 300;
+
+  @Value("${jira.project-key-index.negative-ttl-seconds:30}")
+  private long negativeTtlInSeconds = 30;
+
+  @Value("${jira.project-key-index.max-negative-entries:10000}")
+  private int maxNegativeEntries = 10000;
+
+  /** Existing keys and the time (System.nanoTime) they were last confirmed */
+  private final Map<String, Long> existingKeys = new ConcurrentHashMap<>();
+
+  /** Keys not found and the time (System.nanoTime) they were looked up */
+  private final Map<String, Long> absentKeys = new ConcurrentHashMap<>();
+
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+
+  private volatile long lastRefresh;
+
+  private ScheduledExecutorService refresher;
+
+  /**
+   * @param jira the jira adapter used for the lookup
+   * @param projectKey the key to check
+   * @param allowCachedAbsence whether a recent "not found" may be answered from the cache. Should
+   *     be false before a project is actually created.
+   * @return true if a project with this key exists in jira, false for input that is not a valid
+   *     project key
+   * @throws IOException if jira could not be asked
+   */
+  public boolean exists(JiraRestService jira, String projectKey, boolean allowCachedAbsence)
+      throws IOException {
+    Assert.notNull(projectKey, "Parameter 'projectKey' is null!");
+    String key = projectKey.toUpperCase();
+    if (!PROJECT_KEY.matcher(key).matches()) {
+      logger.debug("'{}' is not a valid jira project key", projectKey);
+      return false;
+    }
+    long now = System.nanoTime();
+
+    Long confirmed = existingKeys.get(key);
+    if (confirmed != null && now - confirmed < TimeUnit.SECONDS.toNanos(refreshIntervalInSeconds)) {
+      cacheHits.incrementAndGet();
+      return true;
+    }
+
+    Long lookedUp = absentKeys.get(key);
+    if (allowCachedAbsence
+        && lookedUp != null
+        && now - lookedUp < TimeUnit.SECONDS.toNanos(negativeTtlInSeconds)) {
+      cacheHits.incrementAndGet();
+      return false;
+    }
+
+    lookups.incrementAndGet();
+    String url =
+        String.format(JiraRestApi.JIRA_API_PROJECT_FILTER_PATTERN, jiraUri, jiraApiPath, key);
+    try {
+      RestClientCall call = jira.httpGet().url(url).returnType(String.class);
+      String project = jira.getRestClient().execute(call, true);
+      // jira also answers with a project whose id or former key matches
+      if (key.equals(parseKey(project))) {
+        added(key);
+        return true;
+      }
+    } catch (HttpException e) {
+      if (e.getResponseCode() != 404) {
+        throw e;
+      }
+    }
+    existingKeys.remove(key);
+    if (absentKeys.size() >= maxNegativeEntries) {
+      absentKeys.clear();
+    }
+    absentKeys.put(key, System.nanoTime());
+    return false;
+  }
+
+  /**
+   * Replaces the index by the current list of project keys of jira
+   *
+   * @param jira the jira adapter used to list the projects
+   * @return all project keys visible to the user of the adapter
+   * @throws IOException if jira could not be asked
+   */
+  public Set<String> refresh(JiraRestService jira) throws IOException {
+    long start = System.nanoTime();
+    String url = String.format(JiraRestApi.JIRA_API_PROJECT_PATTERN, jiraUri, jiraApiPath);
+    RestClientCall call = jira.httpGet().url(url).returnType(String.class);
+    String projects = jira.getRestClient().execute(call);
+
+    Set<String> keys = parseKeys(projects);
+    long now = System.nanoTime();
+    keys.forEach(key -> existingKeys.put(key, now));
+    existingKeys.keySet().retainAll(keys);
+    absentKeys.keySet().removeAll(keys);
+    lastRefresh = now;
+
+    logger.debug(
+        "Refreshed jira project key index with {} keys in {} ms",
+        keys.size(),
+        TimeUnit.NANOSECONDS.toMillis(now - start));
+    return keys;
+  }
+
+  /**
+   * Refreshes the index every {@code jira.project-key-index.refresh-interval-seconds} in the
+   * background. Only works if the adapter does not need the credentials of a logged in user.
+   *
+   * @param jira the jira adapter used to list the projects
+   */
+  public synchronized void startPeriodicRefresh(JiraRestService jira) {
+    if (refresher != null || refreshIntervalInSeconds <= 0) {
+      return;
+    }
+    refresher =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "jira-project-key-index");
+              thread.setDaemon(true);
+              return thread;
+            });
+    refresher.scheduleWithFixedDelay(
+        () -> {
+          try {
+            refresh(jira);
+          } catch (Exception e) {
+            logger.warn("Could not refresh jira project key index: {}", e.getMessage());
+          }
+        },
+        0,
+        refreshIntervalInSeconds,
+        TimeUnit.SECONDS);
+    logger.info(
+        "Refreshing jira project key index every {} seconds in the background",
+        refreshIntervalInSeconds);
+  }
+
+  @PreDestroy
+  public synchronized void stopPeriodicRefresh() {
+    if (refresher != null) {
+      refresher.shutdownNow();
+      refresher = null;
+    }
+  }
+
+  /** @param projectKey the key of a project that was just created */
+  public void added(String projectKey) {
+    String key = projectKey.toUpperCase();
+    existingKeys.put(key, System.nanoTime());
+    absentKeys.remove(key);
+  }
+
+  /** @param projectKey the key of a project that was just deleted */
+  public void removed(String projectKey) {
+    String key = projectKey.toUpperCase();
+    existingKeys.remove(key);
+    absentKeys.remove(key);
+  }
+
+  /** @return the keys currently in the index */
+  public Set<String> keys() {
+    return new HashSet<>(existingKeys.keySet());
+  }
+
+  public int size() {
+    return existingKeys.size();
+  }
+
+  /** @return the number of lookups answered from the index */
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /** @return the number of lookups that had to ask jira */
+  public long getLookups() {
+    return lookups.get();
+  }
+
+  /** @return true if the index was refreshed within the refresh interval */
+  public boolean isFresh() {
+    return lastRefresh != 0
+        && System.nanoTime() - lastRefresh < TimeUnit.SECONDS.toNanos(refreshIntervalInSeconds);
+  }
+
+  /** Reads only the keys of the project list, without materializing the projects */
+  static Set<String> parseKeys(String projects) throws IOException {
+    Set<String> keys = new HashSet<>();
+    if (projects == null || projects.isEmpty()) {
+      return keys;
+    }
+    try (JsonParser parser = JSON_FACTORY.createParser(projects)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw new IOException("Unexpected response of jira project list");
+      }
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          JsonToken value = parser.nextToken();
+          if ("key".equals(field) && value == JsonToken.VALUE_STRING) {
+            keys.add(parser.getText().toUpperCase());
+          } else {
+            parser.skipChildren();
+          }
+        }
+      }
+    }
+    return keys;
+  }
+
+  /** Reads only the key of a single project */
+  static String parseKey(String project) throws IOException {
+    if (project == null || project.isEmpty()) {
+      return null;
+    }
+    try (JsonParser parser = JSON_FACTORY.createParser(project)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Unexpected response of jira project");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("key".equals(field) && value == JsonToken.VALUE_STRING) {
+          return parser.getText().toUpperCase();
+        }
+        parser.skipChildren();
+      }
+    }
+    return null;
+  }
+
+  public void setRefreshIntervalInSeconds(long refreshIntervalInSeconds) {
+    this.refreshIntervalInSeconds = refreshIntervalInSeconds;
+  }
+
+  public void setNegativeTtlInSeconds(long negativeTtlInSeconds) {
+    this.negativeTtlInSeconds = negativeTtlInSeconds;
+  }
+
+  public void setJiraUri(String jiraUri) {
+    this.jiraUri = jiraUri;
+  }
+
+  public void setJiraApiPath(String jiraApiPath) {
+    this.jiraApiPath = jiraApiPath;
+  }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.opendevstack.provision.model.OpenProjectData;
+import org.opendevstack.provision.model.jira.JiraProjectDrift;
+import org.opendevstack.provision.model.jira.JiraProjectSnapshot;
+import org.opendevstack.provision.model.jira.PermissionSchemeResponse;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Local mirror of a compact view of all jira projects (key, name, id, lead and permission scheme
+ * id), so that existence and listing queries do not have to ask jira.
+ *
+ * <p>A sync reads the project list (one call) and only updates what changed. The permission scheme
+ * needs one call per project, so per sync only the {@code
+ * jira.project-mirror.permission-scheme-refresh-per-sync} projects with the oldest (or no)
+ * permission scheme id are asked. The mirror is synced every {@code
+ * jira.project-mirror.sync-interval-seconds} in the background if jira is accessed with a technical
+ * user, and can be synced on demand otherwise.
+ */
+@Component
+public class JiraProjectMirror {
+
+  private static final Logger logger = LoggerFactory.getLogger(JiraProjectMirror.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Value("${jira.api.path}")
+  private String jiraApiPath;
+
+  @Value("${jira.uri}")
+  private String jiraUri;
+
+  @Value("${jira.project-mirror.sync-interval-seconds:300}")
+  private long syncIntervalInSeconds = 300;
+
+  @Value("${jira.project-mirror.max-age-seconds:900}")
+  private long maxAgeInSeconds = 900;
+
+  @Value("${jira.project-mirror.permission-scheme-refresh-per-sync:100}")
+  private int permissionSchemeRefreshPerSync = 100;
+
+  @Value("${jira.project-mirror.parallelism:4}")
+  private int parallelism = 4;
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  /** Snapshots by upper case project key */
+  private final Map<String, JiraProjectSnapshot> projects = new ConcurrentHashMap<>();
+
+  private volatile long lastSync;
+
+  private volatile JiraRestService jira;
+
+  private ScheduledExecutorService syncer;
+
+  /** @param jira the jira adapter used by {@link #sync()} */
+  public void setJiraRestService(JiraRestService jira) {
+    this.jira = jira;
+  }
+
+  /**
+   * Syncs the mirror with the jira adapter registered by {@link
+   * #setJiraRestService(JiraRestService)}
+   *
+   * @return the number of added, changed and removed projects
+   * @throws IOException if jira could not be asked
+   */
+  public int sync() throws IOException {
+    Assert.state(jira != null, "No jira adapter registered to sync the project mirror!");
+    return sync(jira);
+  }
+
+  /**
+   * Reads the project list of jira and updates the mirror, then reads the permission schemes of
+   * the projects never or longest not asked
+   *
+   * @param jira the jira adapter used to list the projects
+   * @return the number of added, changed and removed projects
+   * @throws IOException if jira could not be asked
+   */
+  public synchronized int sync(JiraRestService jira) throws IOException {
+    long start = System.currentTimeMillis();
+    String url =
+        String.format(JiraRestApi.JIRA_API_PROJECT_PATTERN, jiraUri, jiraApiPath) + "?expand=lead";
+    RestClientCall call = jira.httpGet().url(url).returnType(String.class);
+    String response = jira.getRestClient().execute(call);
+
+    int changes = 0;
+    Set<String> seen = new HashSet<>();
+    for (JsonNode project : MAPPER.readTree(response)) {
+      String key = project.path("key").asText(null);
+      if (key == null) {
+        continue;
+      }
+      key = key.toUpperCase();
+      seen.add(key);
+      String id = project.path("id").asText(null);
+      String name = project.path("name").asText(null);
+      String lead = project.path("lead").path("name").asText(null);
+
+      JiraProjectSnapshot existing = projects.get(key);
+      if (existing == null || !Objects.equals(existing.getId(), id)) {
+        projects.put(key, new JiraProjectSnapshot(key, name, id, lead));
+        changes++;
+      } else if (!Objects.equals(existing.getName(), name)
+          || !Objects.equals(existing.getLead(), lead)) {
+        existing.setName(name);
+        existing.setLead(lead);
+        changes++;
+      }
+    }
+
+    int before = projects.size();
+    projects.keySet().retainAll(seen);
+    changes += before - projects.size();
+
+    int schemes = syncPermissionSchemes(jira);
+    lastSync = System.currentTimeMillis();
+
+    logger.debug(
+        "Synced jira project mirror in {} ms [projects={}, changes={}, permissionSchemes={}]",
+        lastSync - start,
+        projects.size(),
+        changes,
+        schemes);
+    return changes;
+  }
+
+  private int syncPermissionSchemes(JiraRestService jira) {
+    List<JiraProjectSnapshot> oldest =
+        projects.values().stream()
+            .sorted(Comparator.comparingLong(JiraProjectSnapshot::getPermissionSchemeSyncedAt))
+            .limit(Math.max(0, permissionSchemeRefreshPerSync))
+            .collect(Collectors.toList());
+
+    Map<JiraProjectSnapshot, Callable<String>> reads = new LinkedHashMap<>();
+    for (JiraProjectSnapshot snapshot : oldest) {
+      String url =
+          String.format(
+              JiraRestApi.JIRA_API_PROJECT_PERMISSION_SCHEME_PATTERN,
+              jiraUri,
+              jiraApiPath,
+              snapshot.getKey());
+      reads.put(
+          snapshot,
+          () -> {
+            RestClientCall call =
+                jira.httpGet().url(url).returnType(PermissionSchemeResponse.class);
+            PermissionSchemeResponse scheme = jira.getRestClient().execute(call, true);
+            return scheme == null || scheme.getId() == null ? null : scheme.getId().toString();
+          });
+    }
+
+    int read = 0;
+    for (Map.Entry<JiraProjectSnapshot, TaskResult<String>> result :
+        parallelTaskRunner.invokeAll(reads, parallelism).entrySet()) {
+      JiraProjectSnapshot snapshot = result.getKey();
+      if (result.getValue().isSuccessful()) {
+        snapshot.setPermissionSchemeId(result.getValue().getValue());
+        snapshot.setPermissionSchemeSyncedAt(System.currentTimeMillis());
+        read++;
+      } else {
+        logger.debug(
+            "Could not read permission scheme of jira project {}: {}",
+            snapshot.getKey(),
+            result.getValue().getError().getMessage());
+      }
+    }
+    return read;
+  }
+
+  /**
+   * Syncs the mirror every {@code jira.project-mirror.sync-interval-seconds} in the background.
+   * Only works if the registered adapter does not need the credentials of a logged in user.
+   */
+  public synchronized void startPeriodicSync() {
+    if (syncer != null || syncIntervalInSeconds <= 0) {
+      return;
+    }
+    syncer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "jira-project-mirror");
+              thread.setDaemon(true);
+              return thread;
+            });
+    syncer.scheduleWithFixedDelay(
+        () -> {
+          try {
+            sync();
+          } catch (Exception e) {
+            logger.warn("Could not sync jira project mirror: {}", e.getMessage());
+          }
+        },
+        0,
+        syncIntervalInSeconds,
+        TimeUnit.SECONDS);
+    logger.info(
+        "Syncing jira project mirror every {} seconds in the background", syncIntervalInSeconds);
+  }
+
+  @PreDestroy
+  public synchronized void stopPeriodicSync() {
+    if (syncer != null) {
+      syncer.shutdownNow();
+      syncer = null;
+    }
+  }
+
+  /**
+   * @param projectKey the key of the project
+   * @return the snapshot of the project, or null if it is not in the mirror
+   */
+  public JiraProjectSnapshot get(String projectKey) {
+    Assert.notNull(projectKey, "Parameter 'projectKey' is null!");
+    return projects.get(projectKey.toUpperCase());
+  }
+
+  /** @return the snapshots of all mirrored projects */
+  public Collection<JiraProjectSnapshot> projects() {
+    return new ArrayList<>(projects.values());
+  }
+
+  /**
+   * The mirror may be empty or partial, so the answer must not be the basis of a destructive
+   * decision - see {@link JiraPermissionSchemeIndex#otherProjectsUsing}.
+   *
+   * @param permissionSchemeId the id of a permission scheme
+   * @return the keys of the projects known to use the scheme
+   */
+  public Set<String> projectsUsingPermissionScheme(String permissionSchemeId) {
+    return projects.values().stream()
+        .filter(snapshot -> Objects.equals(permissionSchemeId, snapshot.getPermissionSchemeId()))
+        .map(JiraProjectSnapshot::getKey)
+        .collect(Collectors.toSet());
+  }
+
+  /** Records a project that was just created, its id is read by the next sync */
+  public void added(String projectKey, String name, String lead) {
+    String key = projectKey.toUpperCase();
+    projects.put(key, new JiraProjectSnapshot(key, name, null, lead));
+  }
+
+  /** @param projectKey the key of a project that was just deleted */
+  public void removed(String projectKey) {
+    projects.remove(projectKey.toUpperCase());
+  }
+
+  /** Records that a project was just assigned to another permission scheme */
+  public void permissionSchemeChanged(String projectKey, String permissionSchemeId) {
+    JiraProjectSnapshot snapshot = projects.get(projectKey.toUpperCase());
+    if (snapshot != null) {
+      snapshot.setPermissionSchemeId(permissionSchemeId);
+      snapshot.setPermissionSchemeSyncedAt(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Compares the stored projects with the mirror
+   *
+   * @param storedProjects the projects stored by the provisioning app
+   * @return the differences, by project key
+   */
+  public List<JiraProjectDrift> drift(Collection<OpenProjectData> storedProjects) {
+    List<JiraProjectDrift> drift = new ArrayList<>();
+    for (OpenProjectData stored : storedProjects) {
+      if (stored.getProjectKey() == null) {
+        continue;
+      }
+      String key = stored.getProjectKey().toUpperCase();
+      JiraProjectSnapshot snapshot = projects.get(key);
+
+      if (snapshot == null) {
+        if (stored.isBugtrackerSpace()) {
+          drift.add(new JiraProjectDrift(key, JiraProjectDrift.Type.MISSING_IN_JIRA, key, null));
+        }
+        continue;
+      }
+      if (!stored.isBugtrackerSpace()) {
+        drift.add(new JiraProjectDrift(key, JiraProjectDrift.Type.UNEXPECTED_IN_JIRA, null, key));
+        continue;
+      }
+      if (stored.getProjectName() != null
+          && !stored.getProjectName().equals(snapshot.getName())) {
+        drift.add(
+            new JiraProjectDrift(
+                key, JiraProjectDrift.Type.NAME, stored.getProjectName(), snapshot.getName()));
+      }
+      String storedScheme =
+          stored.isSpecialPermissionSet() && stored.getSpecialPermissionSchemeId() != null
+              ? stored.getSpecialPermissionSchemeId().toString()
+              : null;
+      if (storedScheme != null
+          && snapshot.getPermissionSchemeSyncedAt() != 0
+          && !storedScheme.equals(snapshot.getPermissionSchemeId())) {
+        drift.add(
+            new JiraProjectDrift(
+                key,
+                JiraProjectDrift.Type.PERMISSION_SCHEME,
+                storedScheme,
+                snapshot.getPermissionSchemeId()));
+      }
+    }
+    return drift;
+  }
+
+  /** @return true if the mirror was synced within {@code jira.project-mirror.max-age-seconds} */
+  public boolean isFresh() {
+    return lastSync != 0
+        && System.currentTimeMillis() - lastSync < TimeUnit.SECONDS.toMillis(maxAgeInSeconds);
+  }
+
+  /** @return the time (epoch millis) of the last sync, 0 if never synced */
+  public long getLastSync() {
+    return lastSync;
+  }
+
+  public int size() {
+    return projects.size();
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
+  }
+
+  public void setPermissionSchemeRefreshPerSync(int permissionSchemeRefreshPerSync) {
+    this.permissionSchemeRefreshPerSync = permissionSchemeRefreshPerSync;
+  }
+
+  public void setJiraUri(String jiraUri) {
+    this.jiraUri = jiraUri;
+  }
+
+  public void setJiraApiPath(String jiraApiPath) {
+    this.jiraApiPath = jiraApiPath;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+/** A jira project property resolved for a project, ready to be written */
+public class JiraProjectProperty {
+
+  private final String name;
+  private final String endpoint;
+  private final String readEndpoint;
+  private final String payload;
+  private final boolean put;
+
+  /**
+   * A property of the jira properties api, read from the url it is written to
+   *
+   * @param name the name of the property, used for logging and metrics
+   * @param endpoint the absolute url of the property
+   * @param payload the json payload to write
+   * @param put true to write with PUT (jira properties api), false to write with POST
+   */
+  public JiraProjectProperty(String name, String endpoint, String payload, boolean put) {
+    this(name, endpoint, endpoint, payload, put);
+  }
+
+  /**
+   * @param name the name of the property, used for logging and metrics
+   * @param endpoint the absolute url the property is written to
+   * @param readEndpoint the absolute url of the property in the jira properties api, null if the
+   *     current value can not be read and the property is always written
+   * @param payload the json payload to write
+   * @param put true to write with PUT (jira properties api), false to write with POST
+   */
+  public JiraProjectProperty(
+      String name, String endpoint, String readEndpoint, String payload, boolean put) {
+    this.name = name;
+    this.endpoint = endpoint;
+    this.readEndpoint = readEndpoint;
+    this.payload = payload;
+    this.put = put;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public String getReadEndpoint() {
+    return readEndpoint;
+  }
+
+  public String getPayload() {
+    return payload;
+  }
+
+  public boolean isPut() {
+    return put;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s [endpoint=%s, payload=%s]", name, endpoint, payload);
+  }
+}
@@ -14,10 +14,27 @@
 
 package org.opendevstack.provision.services.jira;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
 import org.opendevstack.provision.util.rest.RestClientCall;
+import org.opendevstack.provision.util.template.PrecompiledTemplate;
+import org.opendevstack.provision.util.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,23 +42,65 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+/**
+ * Writes jira project properties. A property is only written if jira does not already have the
+ * same value (read before), so that writing the properties of a project again is a no-op. The
+ * latency of every property write is published as timer {@value #METRIC_PROPERTY_WRITE}.
+ */
 @Component
 public class JiraProjectPropertyUpdater {
 
   private static final Logger logger = LoggerFactory.getLogger(JiraProjectPropertyUpdater.class);
 
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  public static final String METRIC_PROPERTY_WRITE = "jira.project.property.write";
+
   public static final Map<String, String> HTTP_HEADERS_CONTENT_TYPE_JSON_AND_ACCEPT_JSON =
       Collections.unmodifiableMap(
           Map.of("Content-Type", "application/json", "Accept", "application/json"));
   public static final String JIRA_PROJECT_KEY = "%PROJECT_KEY%";
   public static final String JIRA_PROJECT_PROPERTY_VALUE = "%PROPERTY_VALUE%";
 
+  /** comma separated keys of the jira project properties set for a project type */
+  public static final String PROJECT_PROPERTY_KEYS_CONFIG_KEY_PREFIX =
+      "jira.project.template.project-property-keys.";
+
+  /** payload template of a property, followed by {@code <property-key>.<project-type>} */
+  public static final String PROJECT_PROPERTY_PAYLOAD_TEMPLATE_CONFIG_KEY_PREFIX =
+      "jira.project.template.project-property-payload-template.";
+
+  /** Matches an endpoint of the jira properties api, the group is the property key */
+  private static final Pattern PROPERTY_ENDPOINT =
+      Pattern.compile("/project/[^/]+/properties/([^/?#]+)$");
+
+  public enum WriteOutcome {
+    WRITTEN,
+    UNCHANGED
+  }
+
   @Value("${jira.uri}")
   private String jiraUri;
 
+  @Value("${jira.api.path}")
+  private String jiraApiPath;
+
+  @Value("${jira.project-properties.parallelism:4}")
+  private int parallelism = 4;
+
   @Autowired private Environment environment;
 
-  public void setPropertyInJiraProject(
+  @Autowired private JiraProjectTypePropertyCalculator jiraProjectTypePropertyCalculator;
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  @Autowired(required = false)
+  private MeterRegistry meterRegistry;
+
+  /** Compiled endpoint and payload templates, by template text */
+  private final Map<String, PrecompiledTemplate> compiledTemplates = new ConcurrentHashMap<>();
+
+  public WriteOutcome setPropertyInJiraProject(
       JiraRestService restService,
       String projectKey,
       String projectType,
@@ -50,6 +109,33 @@ public class JiraProjectPropertyUpdater {
       String jiraTemplateProjectPropertyPayloadTemplatePrefix)
       throws IOException {
 
+    JiraProjectProperty property =
+        resolveProperty(
+            projectKey,
+            projectType,
+            projectPropertyValue,
+            jiraTemplateProjectPropertyEndpointTemplatePrefix,
+            jiraTemplateProjectPropertyPayloadTemplatePrefix);
+
+    return writeProperty(restService, property);
+  }
+
+  /**
+   * Resolves the endpoint and payload templates configured for the project type. If the endpoint
+   * is a resource of the jira properties api, the property is named by its key and its current
+   * value is read from {@link JiraRestApi#JIRA_API_PROJECT_PROPERTY_PATTERN}. Any other endpoint
+   * can not be read, the property is then always written.
+   *
+   * @return the property, written with POST
+   * @throws RuntimeException if no endpoint or payload template is configured
+   */
+  public JiraProjectProperty resolveProperty(
+      String projectKey,
+      String projectType,
+      String projectPropertyValue,
+      String jiraTemplateProjectPropertyEndpointTemplatePrefix,
+      String jiraTemplateProjectPropertyPayloadTemplatePrefix) {
+
     String endpointTemplate =
         environment.getProperty(jiraTemplateProjectPropertyEndpointTemplatePrefix + projectType);
 
@@ -74,36 +160,232 @@ public class JiraProjectPropertyUpdater {
 
     endpointTemplate = jiraUri + endpointTemplate;
 
-    String endpoint =
-        JiraProjectPropertyUpdater.parseTemplate(
-            projectKey, projectPropertyValue, endpointTemplate);
+    Map<String, String> values = templateValues(projectKey, projectPropertyValue);
+
+    String endpoint = compiled(endpointTemplate).render(values);
     logger.debug(
         "Resolved endpoint [projectKey={}, projectType={}, endpoint={}]",
         projectKey,
         projectType,
         endpoint);
 
-    String payload =
-        JiraProjectPropertyUpdater.parseTemplate(projectKey, projectPropertyValue, payloadTemplate);
+    String payload = compiled(payloadTemplate).render(values);
     logger.debug(
         "Resolved endpointPayload [projectKey={}, projectType={}, payload={}]",
         projectKey,
         projectType,
         payload);
 
-    RestClientCall clientCall =
-        restService
-            .httpPost()
-            .url(endpoint)
-            .body(payload)
-            .header(HTTP_HEADERS_CONTENT_TYPE_JSON_AND_ACCEPT_JSON);
-    restService.getRestClient().execute(clientCall);
+    Matcher propertyEndpoint = PROPERTY_ENDPOINT.matcher(endpoint);
+    if (!propertyEndpoint.find()) {
+      return new JiraProjectProperty(
+          jiraTemplateProjectPropertyEndpointTemplatePrefix, endpoint, null, payload, false);
+    }
+    String propertyKey = propertyEndpoint.group(1);
+    String readEndpoint =
+        String.format(
+            JiraRestApi.JIRA_API_PROJECT_PROPERTY_PATTERN,
+            jiraUri,
+            jiraApiPath,
+            projectKey,
+            propertyKey);
+    return new JiraProjectProperty(propertyKey, endpoint, readEndpoint, payload, false);
+  }
+
+  /**
+   * Resolves the properties configured for the project type with {@code
+   * jira.project.template.project-property-keys.<project-type>} and {@code
+   * jira.project.template.project-property-payload-template.<property-key>.<project-type>}. They
+   * are written to the jira properties api.
+   *
+   * @param projectKey the key of the project
+   * @param projectType the type of the project
+   * @return the properties of the project type, empty if none are configured
+   */
+  public List<JiraProjectProperty> resolveConfiguredProperties(
+      String projectKey, String projectType) {
+    List<JiraProjectProperty> properties = new ArrayList<>();
+    String keys =
+        jiraProjectTypePropertyCalculator
+            .readPropertyIfTemplateKeyExistsAndIsEnabledOrReturnDefault(
+                projectType, PROJECT_PROPERTY_KEYS_CONFIG_KEY_PREFIX, "");
+    if (keys == null || keys.trim().isEmpty()) {
+      return properties;
+    }
+
+    for (String key : keys.split(",")) {
+      String propertyKey = key.trim();
+      if (propertyKey.isEmpty()) {
+        continue;
+      }
+      String payloadTemplate =
+          jiraProjectTypePropertyCalculator.readProperty(
+              projectType, PROJECT_PROPERTY_PAYLOAD_TEMPLATE_CONFIG_KEY_PREFIX + propertyKey + ".");
+      if (payloadTemplate == null) {
+        throw new RuntimeException(
+            String.format(
+                "No payload is defined for jira project property %s [projectKey=%s, projectType=%s]",
+                propertyKey, projectKey, projectType));
+      }
+      String endpoint =
+          String.format(
+              JiraRestApi.JIRA_API_PROJECT_PROPERTY_PATTERN,
+              jiraUri,
+              jiraApiPath,
+              projectKey,
+              propertyKey);
+      String payload = compiled(payloadTemplate).render(templateValues(projectKey, ""));
+      properties.add(new JiraProjectProperty(propertyKey, endpoint, payload, true));
+    }
+    return properties;
+  }
+
+  /**
+   * Runs the property writes concurrently, at most {@code jira.project-properties.parallelism} at
+   * the same time
+   *
+   * @param writes the property writes, by property name
+   * @return the outcome of every write, in the order given
+   */
+  public Map<String, TaskResult<WriteOutcome>> writeProperties(
+      Map<String, Callable<WriteOutcome>> writes) {
+    return parallelTaskRunner.invokeAll(writes, parallelism);
+  }
+
+  /**
+   * @param restService the jira adapter
+   * @param properties the properties to write
+   * @return the tasks writing the properties, by property name
+   */
+  public Map<String, Callable<WriteOutcome>> writeTasks(
+      JiraRestService restService, List<JiraProjectProperty> properties) {
+    Map<String, Callable<WriteOutcome>> tasks = new LinkedHashMap<>();
+    properties.forEach(
+        property -> tasks.put(property.getName(), () -> writeProperty(restService, property)));
+    return tasks;
+  }
+
+  /**
+   * Writes the property, unless jira already has the same value
+   *
+   * @param restService the jira adapter
+   * @param property the property
+   * @return whether the property was written
+   * @throws IOException if jira could not be asked
+   */
+  public WriteOutcome writeProperty(JiraRestService restService, JiraProjectProperty property)
+      throws IOException {
+    long start = System.nanoTime();
+    String result = "failed";
+    try {
+      WriteOutcome outcome =
+          Tracing.inSpan(
+              "jira.setProjectProperty",
+              () -> {
+                if (hasValue(restService, property)) {
+                  logger.debug("Jira project property is up to date: {}", property);
+                  return WriteOutcome.UNCHANGED;
+                }
+                RestClientCall clientCall =
+                    (property.isPut() ? restService.httpPut() : restService.httpPost())
+                        .url(property.getEndpoint())
+                        .body(property.getPayload())
+                        .header(HTTP_HEADERS_CONTENT_TYPE_JSON_AND_ACCEPT_JSON);
+                restService.getRestClient().execute(clientCall);
+                return WriteOutcome.WRITTEN;
+              });
+      result = outcome.name().toLowerCase();
+      return outcome;
+    } finally {
+      recordWrite(property, result, System.nanoTime() - start);
+    }
+  }
+
+  /** Reads the current value of the property, a missing or unreadable value counts as different */
+  private boolean hasValue(JiraRestService restService, JiraProjectProperty property) {
+    if (property.getReadEndpoint() == null) {
+      return false;
+    }
+    try {
+      RestClientCall call =
+          restService.httpGet().url(property.getReadEndpoint()).returnType(String.class);
+      String current = restService.getRestClient().execute(call, true);
+      return isSameValue(current, property.getPayload());
+    } catch (HttpException e) {
+      if (e.getResponseCode() != 404) {
+        logger.debug(
+            "Could not read jira project property {}: {}", property.getName(), e.getMessage());
+      }
+      return false;
+    } catch (IOException e) {
+      logger.debug(
+          "Could not read jira project property {}: {}", property.getName(), e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * @param current the response of jira properties api, e.g. {@code {"key":"k","value":{..}}}
+   * @param payload the payload to write
+   * @return true if the value of the response equals the payload
+   */
+  static boolean isSameValue(String current, String payload) {
+    if (current == null || current.isEmpty()) {
+      return false;
+    }
+    JsonNode value;
+    try {
+      value = MAPPER.readTree(current).get("value");
+    } catch (IOException e) {
+      return false;
+    }
+    if (value == null) {
+      return false;
+    }
+    try {
+      return value.equals(MAPPER.readTree(payload));
+    } catch (IOException e) {
+      // not json (e.g. the default webhook proxy payload), compare the text
+      return (value.isTextual() ? value.asText() : value.toString()).equals(payload);
+    }
+  }
+
+  private void recordWrite(JiraProjectProperty property, String result, long nanos) {
+    logger.debug(
+        "Jira project property {} {} in {} ms",
+        property.getName(),
+        result,
+        TimeUnit.NANOSECONDS.toMillis(nanos));
+    if (meterRegistry == null) {
+      return;
+    }
+    Timer.builder(METRIC_PROPERTY_WRITE)
+        .description("Time to write a jira project property")
+        .tag("property", property.getName())
+        .tag("result", result)
+        .register(meterRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
   }
 
   public static String parseTemplate(
       String projectKey, String projectPropertyValue, String template) {
-    String endpoint = template.replace(JIRA_PROJECT_KEY, projectKey);
-    endpoint = endpoint.replace(JIRA_PROJECT_PROPERTY_VALUE, projectPropertyValue);
-    return endpoint;
+    return compile(template).render(templateValues(projectKey, projectPropertyValue));
+  }
+
+  private PrecompiledTemplate compiled(String template) {
+    return compiledTemplates.computeIfAbsent(template, JiraProjectPropertyUpdater::compile);
+  }
+
+  private static PrecompiledTemplate compile(String template) {
+    return PrecompiledTemplate.compile(template, JIRA_PROJECT_KEY, JIRA_PROJECT_PROPERTY_VALUE);
+  }
+
+  private static Map<String, String> templateValues(
+      String projectKey, String projectPropertyValue) {
+    return Map.of(JIRA_PROJECT_KEY, projectKey, JIRA_PROJECT_PROPERTY_VALUE, projectPropertyValue);
+  }
+
+  public void setParallelTaskRunner(ParallelTaskRunner parallelTaskRunner) {
+    this.parallelTaskRunner = parallelTaskRunner;
   }
 }
@@ -8,6 +8,9 @@ public class JiraRestApi {
   public static final String JIRA_API_ROLE = "role";
   public static final String JIRA_API_MYPERMISSIONS = "mypermissions";
   public static final String JIRA_API_PERMISSION_SCHEME = "permissionscheme";
+  public static final String JIRA_API_COMPONENT = "component";
+  public static final String JIRA_API_COMPONENTS = "components";
+  public static final String JIRA_API_PROPERTIES = "properties";
 
   public static final String JIRA_API_BASE_PATTERN = "%s%s/";
 
@@ -18,8 +21,14 @@ public class JiraRestApi {
   public static final String JIRA_API_ROLE_PATTERN = JIRA_API_BASE_PATTERN + JIRA_API_ROLE + "/%s";
   public static final String JIRA_API_PROJECT_PATTERN = JIRA_API_BASE_PATTERN + JIRA_API_PROJECT;
   public static final String JIRA_API_PROJECT_FILTER_PATTERN = JIRA_API_PROJECT_PATTERN + "/%s";
+  public static final String JIRA_API_PROJECT_COMPONENTS_PATTERN =
+      JIRA_API_PROJECT_PATTERN + "/%s/" + JIRA_API_COMPONENTS;
+  public static final String JIRA_API_COMPONENT_PATTERN =
+      JIRA_API_BASE_PATTERN + JIRA_API_COMPONENT;
   public static final String JIRA_API_PROJECT_PERMISSION_SCHEME_PATTERN =
       JIRA_API_PROJECT_PATTERN + "/%s/" + JIRA_API_PERMISSION_SCHEME;
+  public static final String JIRA_API_PROJECT_PROPERTY_PATTERN =
+      JIRA_API_PROJECT_PATTERN + "/%s/" + JIRA_API_PROPERTIES + "/%s";
 
   public static final String JIRA_API_PERMISSION_SCHEME_PATTERN =
       JIRA_API_BASE_PATTERN + JIRA_API_PERMISSION_SCHEME;
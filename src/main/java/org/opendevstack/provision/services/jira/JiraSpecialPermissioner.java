@@ -14,14 +14,24 @@
 package org.opendevstack.provision.services.jira;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import javax.annotation.PostConstruct;
 import org.opendevstack.provision.config.JiraProjectTemplateProperties;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.model.jira.Permission;
 import org.opendevstack.provision.model.jira.PermissionScheme;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.RetryPolicy;
+import org.opendevstack.provision.util.concurrent.TaskResult;
 import org.opendevstack.provision.util.rest.RestClientCall;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,8 +44,9 @@ import org.springframework.stereotype.Component;
 @Component
 public class JiraSpecialPermissioner {
 
-  private static final Logger logger =
-      LoggerFactory.getLogger(WebhookProxyJiraPropertyUpdater.class);
+  private static final Logger logger = LoggerFactory.getLogger(JiraSpecialPermissioner.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
 
   @Autowired private JiraProjectTemplateProperties jiraProjectTemplateProperties;
 
@@ -54,6 +65,26 @@ public class JiraSpecialPermissioner {
   @Value("${jira.reuse-permission-scheme.enabled:true}")
   private boolean reusePermissionScheme;
 
+  @Value("${jira.permission.parallelism:4}")
+  private int parallelism;
+
+  @Value("${jira.permission.retry.max-attempts:3}")
+  private int retryMaxAttempts;
+
+  @Value("${jira.permission.retry.initial-backoff-millis:500}")
+  private long retryInitialBackoffInMillis;
+
+  @Value("${jira.permission.retry.max-backoff-millis:5000}")
+  private long retryMaxBackoffInMillis;
+
+  @Autowired private ParallelTaskRunner parallelTaskRunner;
+
+  @Autowired private JiraPermissionSchemeIndex permissionSchemeIndex;
+
+  @Autowired private JiraProjectMirror projectMirror;
+
+  private List<PermissionTemplate> permissionTemplates = Collections.emptyList();
+
   /**
    * If project type was configured with permission scheme id then use this configuration otherwise
    * use project template type configuration If both are missing create a new default permission
@@ -126,7 +157,35 @@ public class JiraSpecialPermissioner {
   }
 
   /**
-   * Create permission set for jira project
+   * Reads and parses the permission scheme templates ({@code jira.permission.filepattern}) once, so
+   * that the provisioning of a project does not scan the classpath again
+   */
+  @PostConstruct
+  public void loadPermissionTemplates() {
+    PathMatchingResourcePatternResolver pmrl =
+        new PathMatchingResourcePatternResolver(Thread.currentThread().getContextClassLoader());
+    List<PermissionTemplate> templates = new ArrayList<>();
+    try {
+      for (Resource permissionFile : pmrl.getResources(jiraPermissionFilePattern)) {
+        try (InputStream in = permissionFile.getInputStream()) {
+          templates.add(new PermissionTemplate(permissionFile.getFilename(), MAPPER.readTree(in)));
+        }
+      }
+    } catch (IOException e) {
+      logger.error(
+          "Could not read jira permission templates {}: {}",
+          jiraPermissionFilePattern,
+          e.getMessage());
+    }
+    permissionTemplates = Collections.unmodifiableList(templates);
+    logger.debug("Found permissionsets: {}", permissionTemplates.size());
+  }
+
+  /**
+   * Create permission set for jira project. The permission schemes of all templates are created in
+   * parallel, the project is assigned to the scheme of the last template. A scheme is only created
+   * if jira does not have a scheme with the same grants yet, see {@link
+   * JiraPermissionSchemeIndex}.
    *
    * @param project the project
    * @return the number of created permission sets
@@ -134,58 +193,49 @@ public class JiraSpecialPermissioner {
   public void createNewSpecialPermissionsAndUpdateProject(
       JiraRestService jiraRestService, OpenProjectData project) {
 
-    PathMatchingResourcePatternResolver pmrl =
-        new PathMatchingResourcePatternResolver(Thread.currentThread().getContextClassLoader());
     try {
-      Resource[] permissionFiles = pmrl.getResources(jiraPermissionFilePattern);
-
-      logger.debug("Found permissionsets: {}", permissionFiles.length);
-
-      for (Resource permissionFile : permissionFiles) {
-        PermissionScheme singleScheme =
-            new ObjectMapper().readValue(permissionFile.getInputStream(), PermissionScheme.class);
+      String path =
+          String.format(JiraRestApi.JIRA_API_PERMISSION_SCHEME_PATTERN, jiraUri, jiraApiPath);
 
-        String permissionSchemeName = project.getProjectKey() + " PERMISSION SCHEME";
-
-        singleScheme.setName(permissionSchemeName);
-
-        String description = project.getDescription();
-        if (description != null && description.length() > 0) {
-          singleScheme.setDescription(description);
-        } else {
-          singleScheme.setDescription(permissionSchemeName);
-        }
-
-        // replace group with real group
-        for (Permission permission : singleScheme.getPermissions()) {
-          String group = permission.getHolder().getParameter();
-
-          if ("adminGroup".equals(group)) {
-            permission.getHolder().setParameter(project.getProjectAdminGroup());
-          } else if ("userGroup".equals(group)) {
-            permission.getHolder().setParameter(project.getProjectUserGroup());
-          } else if ("readonlyGroup".equals(group)) {
-            permission.getHolder().setParameter(project.getProjectReadonlyGroup());
-          } else if ("keyuserGroup".equals(group)) {
-            permission.getHolder().setParameter(globalKeyuserRoleName);
-          }
-        }
+      Map<String, Callable<PermissionScheme>> creations = new LinkedHashMap<>();
+      for (PermissionTemplate template : permissionTemplates) {
+        PermissionScheme singleScheme = createPermissionScheme(template, project);
         logger.debug(
-            "Update permissionScheme {} location: {}",
-            permissionSchemeName,
-            permissionFile.getFilename());
-
-        String path =
-            String.format(JiraRestApi.JIRA_API_PERMISSION_SCHEME_PATTERN, jiraUri, jiraApiPath);
-        RestClientCall call =
-            jiraRestService
-                .httpPost()
-                .url(path)
-                .body(singleScheme)
-                .returnTypeReference(new TypeReference<PermissionScheme>() {});
+            "Update permissionScheme {} location: {}", singleScheme.getName(), template.filename);
+
+        Callable<PermissionScheme> creation =
+            () ->
+                retryPolicy()
+                    .call(
+                        "jira.createPermissionScheme",
+                        () -> {
+                          RestClientCall call =
+                              jiraRestService
+                                  .httpPost()
+                                  .url(path)
+                                  .body(singleScheme)
+                                  .returnTypeReference(new TypeReference<PermissionScheme>() {});
+                          return jiraRestService.getRestClient().execute(call);
+                        },
+                        // a repeated post would create a second scheme
+                        RetryPolicy.REJECTED);
+        creations.put(
+            template.filename,
+            () ->
+                permissionSchemeIndex.findOrCreate(
+                    jiraRestService, singleScheme, project.getProjectKey(), creation));
+      }
 
-        PermissionScheme newPermissionScheme = jiraRestService.getRestClient().execute(call);
+      PermissionScheme newPermissionScheme = null;
+      for (TaskResult<PermissionScheme> result :
+          parallelTaskRunner.invokeAll(creations, parallelism).values()) {
+        if (!result.isSuccessful()) {
+          throw result.getError();
+        }
+        newPermissionScheme = result.getValue();
+      }
 
+      if (newPermissionScheme != null) {
         updateProjectPermissionSchemeId(
             jiraRestService, project.getProjectKey(), newPermissionScheme.getId());
       }
@@ -200,6 +250,39 @@ public class JiraSpecialPermissioner {
     return;
   }
 
+  private PermissionScheme createPermissionScheme(
+      PermissionTemplate template, OpenProjectData project) throws IOException {
+    // every project gets its own copy of the parsed template
+    PermissionScheme singleScheme = MAPPER.treeToValue(template.scheme, PermissionScheme.class);
+
+    String permissionSchemeName = project.getProjectKey() + " PERMISSION SCHEME";
+
+    singleScheme.setName(permissionSchemeName);
+
+    String description = project.getDescription();
+    if (description != null && description.length() > 0) {
+      singleScheme.setDescription(description);
+    } else {
+      singleScheme.setDescription(permissionSchemeName);
+    }
+
+    // replace group with real group
+    for (Permission permission : singleScheme.getPermissions()) {
+      String group = permission.getHolder().getParameter();
+
+      if ("adminGroup".equals(group)) {
+        permission.getHolder().setParameter(project.getProjectAdminGroup());
+      } else if ("userGroup".equals(group)) {
+        permission.getHolder().setParameter(project.getProjectUserGroup());
+      } else if ("readonlyGroup".equals(group)) {
+        permission.getHolder().setParameter(project.getProjectReadonlyGroup());
+      } else if ("keyuserGroup".equals(group)) {
+        permission.getHolder().setParameter(globalKeyuserRoleName);
+      }
+    }
+    return singleScheme;
+  }
+
   public void updateProjectPermissionSchemeId(
       JiraRestService jiraRestService, String projectKey, String permissionSchemeId)
       throws IOException {
@@ -218,6 +301,7 @@ public class JiraSpecialPermissioner {
     jiraRestService
         .getRestClient()
         .execute(jiraRestService.httpPut().body(scheme).url(url).returnType(String.class));
+    projectMirror.permissionSchemeChanged(projectKey, permissionSchemeId);
   }
 
   private List<Pair> createGroupsToProjectRolesMappings(
@@ -286,9 +370,14 @@ public class JiraSpecialPermissioner {
     return mappings;
   }
 
+  /**
+   * Adds the groups to the project roles, at most {@code jira.permission.parallelism} calls at the
+   * same time. Every call is retried on transient errors.
+   */
   private void assignGroupsToProjectRoles(
       JiraRestService jiraRestService, String projectKey, List<Pair> roleMapping) {
 
+    Map<Pair, Callable<Void>> assignments = new LinkedHashMap<>();
     roleMapping.forEach(
         (pair) -> {
           String url =
@@ -298,26 +387,59 @@ public class JiraSpecialPermissioner {
                   jiraApiPath,
                   projectKey,
                   pair.roleId);
-          try {
-            jiraRestService
-                .getRestClient()
-                .execute(
-                    jiraRestService
-                        .httpPost()
-                        .body(pair.actorGroupPayload)
-                        .url(url)
-                        .returnType(null));
-          } catch (IOException e) {
-            if (e.getMessage().contains("is already a member of the project role")) {
-              logger.warn(
-                  "Ignoring error code as group is already member of project role! [projectKey={}, errorMessage={}]",
-                  projectKey,
-                  e.getMessage());
-            } else {
-              throw new RuntimeException(e);
-            }
-          }
+          assignments.put(
+              pair,
+              () ->
+                  retryPolicy()
+                      .call(
+                          "jira.assignProjectRole",
+                          () -> assignGroupToProjectRole(jiraRestService, projectKey, url, pair)));
         });
+
+    Map<Pair, TaskResult<Void>> results = parallelTaskRunner.invokeAll(assignments, parallelism);
+    for (TaskResult<Void> result : results.values()) {
+      if (!result.isSuccessful()) {
+        Exception e = result.getError();
+        throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+      }
+    }
+  }
+
+  private Void assignGroupToProjectRole(
+      JiraRestService jiraRestService, String projectKey, String url, Pair pair)
+      throws IOException {
+    try {
+      jiraRestService
+          .getRestClient()
+          .execute(
+              jiraRestService.httpPost().body(pair.actorGroupPayload).url(url).returnType(null));
+    } catch (IOException e) {
+      if (e.getMessage() != null
+          && e.getMessage().contains("is already a member of the project role")) {
+        logger.warn(
+            "Ignoring error code as group is already member of project role! [projectKey={}, errorMessage={}]",
+            projectKey,
+            e.getMessage());
+      } else {
+        throw e;
+      }
+    }
+    return null;
+  }
+
+  private RetryPolicy retryPolicy() {
+    return new RetryPolicy(retryMaxAttempts, retryInitialBackoffInMillis, retryMaxBackoffInMillis);
+  }
+
+  /** A permission scheme template, parsed once at startup */
+  private static class PermissionTemplate {
+    private final String filename;
+    private final JsonNode scheme;
+
+    private PermissionTemplate(String filename, JsonNode scheme) {
+      this.filename = filename;
+      this.scheme = scheme;
+    }
   }
 
   public static class Pair {
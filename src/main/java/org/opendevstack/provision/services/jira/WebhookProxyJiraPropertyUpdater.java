@@ -37,7 +37,7 @@ public class WebhookProxyJiraPropertyUpdater {
 
   @Autowired private WebhookProxyUrlFactory webhookProxyUrlFactory;
 
-  public void addWebhookProxyProperty(
+  public JiraProjectPropertyUpdater.WriteOutcome addWebhookProxyProperty(
       JiraRestService restService, String projectKey, String projectType, String webhookSecret)
       throws IOException {
 
@@ -45,7 +45,7 @@ public class WebhookProxyJiraPropertyUpdater {
 
     logger.info("Adding webhook proxy property to jira project [projectKey={}]", projectKey);
 
-    jiraProjectPropertyUpdater.setPropertyInJiraProject(
+    return jiraProjectPropertyUpdater.setPropertyInJiraProject(
         restService,
         projectKey,
         projectType,
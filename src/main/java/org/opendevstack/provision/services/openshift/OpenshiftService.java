@@ -22,6 +22,7 @@ import org.opendevstack.provision.adapter.exception.AdapterException;
 import org.opendevstack.provision.adapter.exception.CreateProjectPreconditionException;
 import org.opendevstack.provision.controller.CheckPreconditionFailure;
 import org.opendevstack.provision.model.OpenProjectData;
+import org.opendevstack.provision.util.concurrent.BatchLookupContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -71,6 +72,17 @@ public class OpenshiftService {
     }
   }
 
+  /**
+   * @return the upper case prefixes of the openshift projects (namespaces), e.g. {@code TESTP} for
+   *     {@code testp-dev}. An ODS project key must not be one of these.
+   */
+  public Set<String> listProjectKeyPrefixes() {
+    return openshiftClient.projects().stream()
+        .filter(name -> name.indexOf('-') > 0)
+        .map(name -> name.substring(0, name.indexOf('-')).toUpperCase())
+        .collect(Collectors.toSet());
+  }
+
   public List<CheckPreconditionFailure> createProjectKeyExistsCheck(String projectKey) {
 
     try {
@@ -78,7 +90,9 @@ public class OpenshiftService {
 
       List<CheckPreconditionFailure> preconditionFailures = new ArrayList<>();
 
-      Set<String> projects = openshiftClient.projects();
+      // within a batch all provisionings share one listing of the openshift projects
+      Set<String> projects =
+          BatchLookupContext.lookup("openshift.projects", "all", openshiftClient::projects);
       List<String> existingProjects =
           projects.stream()
               .filter(s -> s.toLowerCase().startsWith(projectKey.toLowerCase() + "-"))
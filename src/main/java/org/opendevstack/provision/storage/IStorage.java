@@ -30,9 +30,10 @@ public interface IStorage {
   String storeProject(OpenProjectData project) throws IOException;
 
   /**
-   * Get the project history, ordered by date
+   * Get the project history
    *
-   * @return the project history as map
+   * @return the project history as map, by a key unique for every stored project - not by the
+   *     project key
    */
   Map<String, OpenProjectData> listProjectHistory();
 
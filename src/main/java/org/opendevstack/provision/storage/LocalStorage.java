@@ -73,7 +73,8 @@ public class LocalStorage implements IStorage {
    *
    * <p>TODO Fix comparator, because it does not sort in the correct order
    *
-   * @return a desc date sorted list of projects
+   * @return the projects by the name of their file. A timestamp is not unique, several projects
+   *     are stored in the same second by a bulk provisioning.
    */
   @Override
   public Map<String, OpenProjectData> listProjectHistory() {
@@ -86,10 +87,7 @@ public class LocalStorage implements IStorage {
         for (File file : fileList) {
           if (!file.isDirectory() && !file.isHidden() && file.getName().endsWith(".txt")) {
             logger.debug("File {}:", file);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-            DateTimeFormatter targetDt = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
             String project = FileUtils.readFileToString(file);
-            LocalDateTime dt = LocalDateTime.parse(file.getName().substring(0, 14), formatter);
 
             ProjectData temp = null;
 
@@ -115,7 +113,7 @@ public class LocalStorage implements IStorage {
             }
             data.setPhysicalLocation(file.getAbsolutePath());
 
-            history.put(dt.format(targetDt), data);
+            history.put(file.getName(), data);
           }
         }
       }
@@ -2,13 +2,43 @@ package org.opendevstack.provision.util;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
 
 public class GitUrlWrangler {
 
   private static final Logger LOG = LoggerFactory.getLogger(GitUrlWrangler.class);
+
+  private static final Pattern URL_ENCODED = Pattern.compile("[a-zA-Z0-9%+\\-]+?");
+
+  private static final Pattern HTTP_URL = Pattern.compile("(https?://)(.*)");
+
+  /** The technical user this wrangler rewrites to, null if given per call */
+  private final String technicalUser;
+
+  /** The url encoded technical user, computed once */
+  private final String urlEncodedTechnicalUser;
+
+  public GitUrlWrangler() {
+    this.technicalUser = null;
+    this.urlEncodedTechnicalUser = null;
+  }
+
+  /**
+   * Creates a wrangler that always rewrites to the given technical user, so that the user is only
+   * encoded once for all repositories
+   *
+   * @param technicalUser the technical user used for accessing the repos
+   */
+  public GitUrlWrangler(String technicalUser) {
+    this.technicalUser = technicalUser;
+    this.urlEncodedTechnicalUser = technicalUser == null ? null : urlEncode(technicalUser);
+  }
+
   /**
    * Checks, if a string already follows url encoding guidelines. This is tested against the
    * contained characters
@@ -17,7 +47,18 @@ public class GitUrlWrangler {
    * @return true, if string conforms the url encoding rules
    */
   boolean followsUrlEncodingScheme(String toTest) {
-    return Pattern.compile("[a-zA-Z0-9%+\\-]+?").matcher(toTest).matches();
+    return URL_ENCODED.matcher(toTest).matches();
+  }
+
+  private String urlEncode(String value) {
+    return followsUrlEncodingScheme(value)
+        ? value
+        : URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  /** @return the technical user this wrangler rewrites to, null if given per call */
+  public String getTechnicalUser() {
+    return technicalUser;
   }
 
   /**
@@ -35,23 +76,65 @@ public class GitUrlWrangler {
     if (username == null) {
       return cloneURL;
     }
+    return rewrite(username, technicalUser, urlEncode(technicalUser), cloneURL);
+  }
+
+  /**
+   * Returns a http git url containing the technical user of this wrangler, see {@link
+   * #buildGitUrl(String, String, String)}
+   *
+   * @param username the user name to replace, e.g. the user that created the repo or the previous
+   *     technical user
+   * @param cloneURL the clone url
+   * @return a suitable clone url, containing the technical user
+   */
+  public String rewrite(String username, String cloneURL) {
+    if (username == null || cloneURL == null || !cloneURL.startsWith("http")) {
+      return cloneURL;
+    }
+    Assert.state(technicalUser != null, "No technical user given to rewrite to!");
+    return rewrite(username, technicalUser, urlEncodedTechnicalUser, cloneURL);
+  }
+
+  /**
+   * Replaces the user of a http clone url by the technical user of this wrangler, if it is the
+   * given previous user. Other urls are returned unchanged, no user is inserted.
+   *
+   * @param previousUser the user to replace, e.g. the previous technical user
+   * @param cloneURL the clone url
+   * @return the clone url containing the technical user, or the given one
+   */
+  public String replaceUser(String previousUser, String cloneURL) {
+    if (previousUser == null || cloneURL == null || !cloneURL.startsWith("http")) {
+      return cloneURL;
+    }
+    Assert.state(technicalUser != null, "No technical user given to rewrite to!");
+    int hostStart = cloneURL.indexOf("://") + 3;
+    int userEnd = cloneURL.indexOf('@', hostStart);
+    int pathStart = cloneURL.indexOf('/', hostStart);
+    if (hostStart < 3 || userEnd < 0 || (pathStart >= 0 && pathStart < userEnd)) {
+      return cloneURL;
+    }
+    if (!cloneURL.substring(hostStart, userEnd).equals(urlEncode(previousUser))) {
+      return cloneURL;
+    }
+    return cloneURL.substring(0, hostStart) + urlEncodedTechnicalUser + cloneURL.substring(userEnd);
+  }
+
+  private String rewrite(
+      String username, String technicalUser, String urlEncodedTechnicalUser, String cloneURL) {
     String result = cloneURL;
     if (cloneURL.startsWith("http")) {
-      String urlEncodedUsername =
-          followsUrlEncodingScheme(username) ? username : URLEncoder.encode(username, "UTF-8");
-      String urlEncodedTechnicalUser =
-          followsUrlEncodingScheme(technicalUser)
-              ? technicalUser
-              : URLEncoder.encode(technicalUser, "UTF-8");
+      String urlEncodedUsername = urlEncode(username);
       String[] split = cloneURL.split("@");
       if (split.length > 1) {
         result = split[0].replace(urlEncodedUsername, urlEncodedTechnicalUser) + "@" + split[1];
       }
       if (result.equals(cloneURL)) {
         result =
-            Pattern.compile("(https?://)(.*)")
+            HTTP_URL
                 .matcher(cloneURL)
-                .replaceAll("$1" + urlEncodedTechnicalUser + "@$2");
+                .replaceAll("$1" + Matcher.quoteReplacement(urlEncodedTechnicalUser) + "@$2");
       }
     }
     LOG.debug(
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes remote lookups (e.g. group or user existence, full project listings) for the lifetime
+ * of a batch of provisionings. The context is bound to the current thread and handed over to
+ * worker threads by the {@link ContextPropagatingTaskDecorator}, so that all provisionings of one
+ * batch share the same lookups. Concurrent lookups of the same key wait for the first one instead
+ * of calling the remote system twice. Failed lookups are not memoized.
+ *
+ * <p>Without a bound context every lookup is passed through to the loader.
+ */
+public final class BatchLookupContext {
+
+  private static final ThreadLocal<BatchLookupContext> CURRENT = new ThreadLocal<>();
+
+  private final Map<String, CompletableFuture<Object>> lookups = new ConcurrentHashMap<>();
+
+  private final AtomicInteger hits = new AtomicInteger();
+
+  private final AtomicInteger misses = new AtomicInteger();
+
+  /** A lookup that may fail with an {@link IOException} */
+  @FunctionalInterface
+  public interface Loader<T> {
+    T load() throws IOException;
+  }
+
+  public static BatchLookupContext current() {
+    return CURRENT.get();
+  }
+
+  public static boolean isActive() {
+    return CURRENT.get() != null;
+  }
+
+  /**
+   * Binds the given context to the current thread
+   *
+   * @param context the context to bind, or null to unbind
+   */
+  public static void setCurrent(BatchLookupContext context) {
+    if (context == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(context);
+    }
+  }
+
+  /**
+   * Returns the memoized result of the lookup, or runs it in case no batch is active on the
+   * current thread
+   *
+   * @param namespace the kind of lookup, e.g. "jira.group"
+   * @param key the looked up item
+   * @param loader the remote lookup
+   * @return the (memoized) lookup result
+   */
+  public static <T> T lookup(String namespace, String key, Supplier<T> loader) {
+    BatchLookupContext context = CURRENT.get();
+    if (context == null) {
+      return loader.get();
+    }
+    try {
+      return context.memoize(namespace + ":" + key, loader::get);
+    } catch (IOException e) {
+      // cannot happen, the supplier does not throw checked exceptions
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Like {@link #lookup(String, String, Supplier)} for lookups throwing {@link IOException} */
+  public static <T> T lookupChecked(String namespace, String key, Loader<T> loader)
+      throws IOException {
+    BatchLookupContext context = CURRENT.get();
+    if (context == null) {
+      return loader.load();
+    }
+    return context.memoize(namespace + ":" + key, loader);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T memoize(String id, Loader<T> loader) throws IOException {
+    CompletableFuture<Object> created = new CompletableFuture<>();
+    CompletableFuture<Object> existing = lookups.putIfAbsent(id, created);
+
+    if (existing == null) {
+      misses.incrementAndGet();
+      try {
+        T value = loader.load();
+        created.complete(value);
+        return value;
+      } catch (IOException | RuntimeException e) {
+        lookups.remove(id, created);
+        created.completeExceptionally(e);
+        throw e;
+      }
+    }
+
+    hits.incrementAndGet();
+    try {
+      return (T) existing.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import java.util.Map;
+import org.opendevstack.provision.util.tracing.Span;
+import org.opendevstack.provision.util.tracing.Tracing;
+import org.slf4j.MDC;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Hands the thread bound state of the submitting thread over to the worker thread. The adapters
+ * resolve the credentials of the logged in user through the security context and the session
+ * scoped password holder, log into the per project log file through the MDC and record their
+ * steps as children of the current tracing span, so all of these have to be available on the
+ * worker thread as well.
+ */
+public class ContextPropagatingTaskDecorator implements TaskDecorator {
+
+  @Override
+  public Runnable decorate(Runnable runnable) {
+    RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+    SecurityContext securityContext = SecurityContextHolder.getContext();
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    BatchLookupContext batchLookupContext = BatchLookupContext.current();
+    Span span = Tracing.current();
+
+    return () -> {
+      RequestAttributes previousRequestAttributes = RequestContextHolder.getRequestAttributes();
+      SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+      Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+      BatchLookupContext previousBatchLookupContext = BatchLookupContext.current();
+      Span previousSpan = Tracing.current();
+      try {
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        SecurityContextHolder.setContext(securityContext);
+        setMdc(mdc);
+        BatchLookupContext.setCurrent(batchLookupContext);
+        Tracing.setCurrent(span);
+
+        runnable.run();
+      } finally {
+        RequestContextHolder.setRequestAttributes(previousRequestAttributes);
+        SecurityContextHolder.setContext(previousSecurityContext);
+        setMdc(previousMdc);
+        BatchLookupContext.setCurrent(previousBatchLookupContext);
+        Tracing.setCurrent(previousSpan);
+      }
+    };
+  }
+
+  private static void setMdc(Map<String, String> mdc) {
+    if (mdc == null) {
+      MDC.clear();
+    } else {
+      MDC.setContextMap(mdc);
+    }
+  }
+}
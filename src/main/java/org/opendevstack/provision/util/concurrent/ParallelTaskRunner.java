@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import org.opendevstack.provision.config.ProvisioningExecutorConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Runs a set of independent tasks with a bounded number of tasks in flight. Every call gets its
+ * own bound, so nested fan-outs (e.g. a bulk provisioning that creates the repositories of each
+ * project in parallel) can not starve each other. Tasks run on the shared provisioning executor,
+ * which hands the security context, request attributes and MDC over to the worker threads.
+ */
+@Component
+public class ParallelTaskRunner {
+
+  private static final Logger logger = LoggerFactory.getLogger(ParallelTaskRunner.class);
+
+  private final Executor executor;
+
+  private final boolean runRejectedInCaller;
+
+  @Autowired
+  public ParallelTaskRunner(
+      @Qualifier(ProvisioningExecutorConfig.PROVISIONING_TASK_EXECUTOR) Executor executor) {
+    this(executor, true);
+  }
+
+  /**
+   * @param executor the executor the tasks run on
+   * @param runRejectedInCaller whether a worker the executor rejects runs in the submitting
+   *     thread. If false and the executor rejects all workers of a call, its tasks fail with the
+   *     {@link RejectedExecutionException}.
+   */
+  public ParallelTaskRunner(Executor executor, boolean runRejectedInCaller) {
+    this.executor = executor;
+    this.runRejectedInCaller = runRejectedInCaller;
+  }
+
+  /**
+   * Runs all tasks and waits for them to finish.
+   *
+   * @param tasks the tasks to run, by key
+   * @param parallelism the maximum number of tasks in flight
+   * @return the results, in the iteration order of the given tasks
+   */
+  public <K, V> Map<K, TaskResult<V>> invokeAll(Map<K, Callable<V>> tasks, int parallelism) {
+    return submitAll(tasks, parallelism, null).join();
+  }
+
+  /**
+   * Starts all tasks without waiting for them to finish.
+   *
+   * @param tasks the tasks to run, by key
+   * @param parallelism the maximum number of tasks in flight
+   * @param onResult optional listener called with every result as soon as its task finished
+   * @return a future completed with all results, in the iteration order of the given tasks
+   */
+  public <K, V> CompletableFuture<Map<K, TaskResult<V>>> submitAll(
+      Map<K, Callable<V>> tasks, int parallelism, BiConsumer<K, TaskResult<V>> onResult) {
+    Assert.notNull(tasks, "Parameter 'tasks' is null!");
+
+    List<K> keys = new ArrayList<>(tasks.keySet());
+    CompletableFuture<Map<K, TaskResult<V>>> done = new CompletableFuture<>();
+
+    if (keys.isEmpty()) {
+      done.complete(Collections.emptyMap());
+      return done;
+    }
+
+    Batch<K, V> batch = new Batch<>(keys, tasks, onResult, done);
+    int slots = Math.max(1, Math.min(parallelism, keys.size()));
+    int started = 0;
+    RejectedExecutionException rejected = null;
+    for (int i = 0; i < slots; i++) {
+      try {
+        startWorker(batch);
+        started++;
+      } catch (RejectedExecutionException e) {
+        rejected = e;
+      }
+    }
+    if (started == 0) {
+      // nobody would run the tasks
+      rejectAll(batch, rejected);
+    }
+    return done;
+  }
+
+  /**
+   * Starts a worker that runs the tasks of the batch one after the other until none is left. The
+   * worker loops instead of starting the next task from the finished one, so a worker that the
+   * executor runs in the submitting thread (e.g. with a caller runs policy) does not grow the
+   * stack with every task.
+   */
+  private <K, V> void startWorker(Batch<K, V> batch) {
+    Runnable worker = () -> runAll(batch);
+    try {
+      executor.execute(worker);
+    } catch (RejectedExecutionException e) {
+      if (!runRejectedInCaller) {
+        throw e;
+      }
+      logger.debug("Executor rejected worker, running it in the caller thread");
+      worker.run();
+    }
+  }
+
+  private <K, V> void rejectAll(Batch<K, V> batch, RejectedExecutionException rejected) {
+    logger.debug("Executor rejected all workers, {} tasks are not run", batch.keys.size());
+    int index;
+    while ((index = batch.next.getAndIncrement()) < batch.keys.size()) {
+      complete(batch, batch.keys.get(index), TaskResult.failure(rejected, 0));
+    }
+  }
+
+  private <K, V> void runAll(Batch<K, V> batch) {
+    int index;
+    while ((index = batch.next.getAndIncrement()) < batch.keys.size()) {
+      run(batch, batch.keys.get(index));
+    }
+  }
+
+  private <K, V> void run(Batch<K, V> batch, K key) {
+    complete(batch, key, TaskResult.of(batch.tasks.get(key)));
+  }
+
+  private <K, V> void complete(Batch<K, V> batch, K key, TaskResult<V> result) {
+    batch.results.put(key, result);
+
+    if (batch.onResult != null) {
+      try {
+        batch.onResult.accept(key, result);
+      } catch (RuntimeException e) {
+        logger.warn("Result listener failed for '{}'!", key, e);
+      }
+    }
+
+    if (batch.remaining.decrementAndGet() == 0) {
+      Map<K, TaskResult<V>> ordered = new LinkedHashMap<>();
+      batch.keys.forEach(k -> ordered.put(k, batch.results.get(k)));
+      batch.done.complete(ordered);
+    }
+  }
+
+  private static class Batch<K, V> {
+    private final List<K> keys;
+    private final Map<K, Callable<V>> tasks;
+    private final BiConsumer<K, TaskResult<V>> onResult;
+    private final CompletableFuture<Map<K, TaskResult<V>>> done;
+    private final Map<K, TaskResult<V>> results = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger remaining;
+
+    private Batch(
+        List<K> keys,
+        Map<K, Callable<V>> tasks,
+        BiConsumer<K, TaskResult<V>> onResult,
+        CompletableFuture<Map<K, TaskResult<V>>> done) {
+      this.keys = keys;
+      this.tasks = tasks;
+      this.onResult = onResult;
+      this.done = done;
+      this.remaining = new AtomicInteger(keys.size());
+    }
+  }
+}
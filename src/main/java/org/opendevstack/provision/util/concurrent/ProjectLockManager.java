@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PostConstruct;
+import org.opendevstack.provision.util.exception.ProjectLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Serializes modifications of the same project, while modifications of different projects run in
+ * parallel. The in-process lock exists per project key while it is held or waited for, so
+ * different projects never share a lock. With backend {@code file} a lock file
+ * per project is locked in addition, so that several replicas sharing the same (storage) volume
+ * are serialized as well.
+ *
+ * <p>The time spent waiting for a lock is published as timer {@value #METRIC_LOCK_WAIT}.
+ */
+@Component
+public class ProjectLockManager {
+
+  private static final Logger logger = LoggerFactory.getLogger(ProjectLockManager.class);
+
+  public static final String METRIC_LOCK_WAIT = "provision.project.lock.wait";
+
+  public static final String BACKEND_MEMORY = "memory";
+  public static final String BACKEND_FILE = "file";
+
+  private static final long FILE_LOCK_POLL_INTERVAL_IN_MILLIS = 100;
+
+  @Value("${provision.project-lock.backend:" + BACKEND_MEMORY + "}")
+  private String backend;
+
+  @Value("${provision.project-lock.timeout-in-seconds:300}")
+  private long timeoutInSeconds;
+
+  @Value("${provision.project-lock.directory:${project.storage.local:.}/locks}")
+  private String lockDirectory;
+
+  @Autowired(required = false)
+  private MeterRegistry meterRegistry;
+
+  /** Lock by project key, removed when no thread holds or waits for it anymore */
+  private final Map<String, KeyLock> locks = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  public void init() {
+    if (isFileBackend()) {
+      File directory = new File(lockDirectory);
+      if (!directory.exists() && !directory.mkdirs()) {
+        throw new IllegalStateException("Could not create lock directory " + lockDirectory);
+      }
+    }
+
+    logger.info(
+        "Project lock manager initialized [backend={}, timeoutInSeconds={}]",
+        backend,
+        timeoutInSeconds);
+  }
+
+  /**
+   * Acquires the lock of the given project, waiting at most {@code
+   * provision.project-lock.timeout-in-seconds}
+   *
+   * @param projectKey the key of the project
+   * @return the held lock, to be closed to release it
+   * @throws ProjectLockException if the lock could not be acquired in time
+   */
+  public ProjectLock lock(String projectKey) throws ProjectLockException {
+    Assert.notNull(projectKey, "Parameter 'projectKey' is null!");
+
+    String key = projectKey.toUpperCase();
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(timeoutInSeconds);
+
+    KeyLock lock =
+        locks.compute(key, (k, existing) -> (existing == null ? new KeyLock() : existing).use());
+    boolean acquired = false;
+    try {
+      acquired = lock.tryLock(timeoutInSeconds, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (!acquired) {
+      release(key);
+      recordWait(start, "timeout");
+      throw new ProjectLockException(
+          String.format("Project %s is locked by another modification, try again later", key));
+    }
+
+    FileLockHandle fileLock = null;
+    if (isFileBackend()) {
+      try {
+        fileLock = lockFile(key, deadline);
+      } catch (ProjectLockException | RuntimeException e) {
+        lock.unlock();
+        release(key);
+        recordWait(start, "timeout");
+        throw e;
+      }
+    }
+
+    recordWait(start, "acquired");
+    logger.debug(
+        "Acquired lock of project {} after {} ms",
+        key,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    return new ProjectLock(
+        key,
+        fileLock,
+        () -> {
+          lock.unlock();
+          release(key);
+        });
+  }
+
+  private void release(String key) {
+    locks.computeIfPresent(key, (k, lock) -> lock.unuse() ? null : lock);
+  }
+
+  /** @return the number of project keys currently locked or waited for */
+  int size() {
+    return locks.size();
+  }
+
+  private FileLockHandle lockFile(String key, long deadline) throws ProjectLockException {
+    File file = new File(lockDirectory, key + ".lock");
+    FileChannel channel = null;
+    try {
+      channel =
+          FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      while (true) {
+        FileLock fileLock = channel.tryLock();
+        if (fileLock != null) {
+          return new FileLockHandle(channel, fileLock);
+        }
+        if (System.nanoTime() > deadline) {
+          break;
+        }
+        Thread.sleep(FILE_LOCK_POLL_INTERVAL_IN_MILLIS);
+      }
+    } catch (IOException e) {
+      closeQuietly(channel);
+      throw new ProjectLockException("Could not lock file " + file, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    closeQuietly(channel);
+    throw new ProjectLockException(
+        String.format("Project %s is locked by another replica, try again later", key));
+  }
+
+  private void recordWait(long start, String result) {
+    if (meterRegistry == null) {
+      return;
+    }
+    Timer.builder(METRIC_LOCK_WAIT)
+        .description("Time spent waiting for the lock of a project")
+        .tag("backend", backend)
+        .tag("result", result)
+        .register(meterRegistry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private boolean isFileBackend() {
+    return BACKEND_FILE.equalsIgnoreCase(backend);
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.debug("Could not close lock file channel: {}", e.getMessage());
+    }
+  }
+
+  public void setBackend(String backend) {
+    this.backend = backend;
+  }
+
+  public void setTimeoutInSeconds(long timeoutInSeconds) {
+    this.timeoutInSeconds = timeoutInSeconds;
+  }
+
+  public void setLockDirectory(String lockDirectory) {
+    this.lockDirectory = lockDirectory;
+  }
+
+  /** A lock with the number of threads holding or waiting for it, changed only under the map */
+  private static class KeyLock extends ReentrantLock {
+    private int users;
+
+    private KeyLock use() {
+      users++;
+      return this;
+    }
+
+    /** @return true if no thread uses the lock anymore */
+    private boolean unuse() {
+      return --users == 0;
+    }
+  }
+
+  private static class FileLockHandle {
+    private final FileChannel channel;
+    private final FileLock fileLock;
+
+    private FileLockHandle(FileChannel channel, FileLock fileLock) {
+      this.channel = channel;
+      this.fileLock = fileLock;
+    }
+
+    private void release() {
+      try {
+        fileLock.release();
+      } catch (IOException e) {
+        logger.warn("Could not release file lock: {}", e.getMessage());
+      }
+      closeQuietly(channel);
+    }
+  }
+
+  /** A held project lock, released on {@link #close()} */
+  public static class ProjectLock implements AutoCloseable {
+
+    private final String projectKey;
+    private final FileLockHandle fileLock;
+    private final Runnable unlock;
+    private boolean released;
+
+    private ProjectLock(String projectKey, FileLockHandle fileLock, Runnable unlock) {
+      this.projectKey = projectKey;
+      this.fileLock = fileLock;
+      this.unlock = unlock;
+    }
+
+    public String getProjectKey() {
+      return projectKey;
+    }
+
+    @Override
+    public void close() {
+      if (released) {
+        return;
+      }
+      released = true;
+      if (fileLock != null) {
+        fileLock.release();
+      }
+      unlock.run();
+      logger.debug("Released lock of project {}", projectKey);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.tracing.Span;
+import org.opendevstack.provision.util.tracing.Tracing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Repeats a call that failed with a transient error, waiting twice as long before every further
+ * attempt. The call runs in a span of the given name, which records the number of retries as
+ * attribute {@link Tracing#ATTRIBUTE_RETRIES}.
+ */
+public class RetryPolicy {
+
+  private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+  /** I/O errors and the http status codes 408, 429 and 5xx */
+  public static final Predicate<Exception> TRANSIENT = RetryPolicy::isTransient;
+
+  /**
+   * Only the http status codes 429 and 503, that is requests the server rejected without
+   * processing them. For calls that must not be repeated once they reached the server, e.g. a post
+   * creating an entity.
+   */
+  public static final Predicate<Exception> REJECTED =
+      e ->
+          e instanceof HttpException
+              && (((HttpException) e).getResponseCode() == 429
+                  || ((HttpException) e).getResponseCode() == 503);
+
+  private final int maxAttempts;
+  private final long initialBackoffInMillis;
+  private final long maxBackoffInMillis;
+
+  /**
+   * @param maxAttempts the number of attempts including the first one, at least 1
+   * @param initialBackoffInMillis the time to wait before the first retry
+   * @param maxBackoffInMillis the maximum time to wait between two attempts
+   */
+  public RetryPolicy(int maxAttempts, long initialBackoffInMillis, long maxBackoffInMillis) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.initialBackoffInMillis = Math.max(0, initialBackoffInMillis);
+    this.maxBackoffInMillis = Math.max(this.initialBackoffInMillis, maxBackoffInMillis);
+  }
+
+  /**
+   * Calls the task, retrying on {@link #TRANSIENT} errors
+   *
+   * @param name the name of the span of the call, e.g. {@code jira.assignProjectRole}
+   * @param task the task to call
+   * @return the value of the first successful attempt
+   * @throws Exception the error of the last attempt
+   */
+  public <V> V call(String name, Callable<V> task) throws Exception {
+    return call(name, task, TRANSIENT);
+  }
+
+  /**
+   * @param name the name of the span of the call, e.g. {@code jira.assignProjectRole}
+   * @param task the task to call
+   * @param retryOn decides whether an error is worth another attempt
+   * @return the value of the first successful attempt
+   * @throws Exception the error of the last attempt
+   */
+  public <V> V call(String name, Callable<V> task, Predicate<Exception> retryOn)
+      throws Exception {
+    Span span = Tracing.startSpan(name);
+    int attempt = 1;
+    long backoff = initialBackoffInMillis;
+    try {
+      while (true) {
+        try {
+          return task.call();
+        } catch (Exception e) {
+          if (attempt >= maxAttempts || !retryOn.test(e)) {
+            span.setError(e);
+            throw e;
+          }
+          logger.debug(
+              "Attempt {} of {} failed, retrying in {} ms: {}",
+              attempt,
+              name,
+              backoff,
+              e.getMessage());
+          try {
+            Thread.sleep(backoff);
+          } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            span.setError(e);
+            throw e;
+          }
+          attempt++;
+          backoff = Math.min(backoff * 2, maxBackoffInMillis);
+        }
+      }
+    } finally {
+      if (attempt > 1) {
+        span.setAttribute(Tracing.ATTRIBUTE_RETRIES, attempt - 1);
+      }
+      span.close();
+    }
+  }
+
+  public static boolean isTransient(Exception e) {
+    if (e instanceof HttpException) {
+      int code = ((HttpException) e).getResponseCode();
+      return code == 408 || code == 429 || code >= 500;
+    }
+    return e instanceof IOException;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Outcome of a single task executed by the {@link ParallelTaskRunner}. Either holds the value the
+ * task returned or the error it failed with, plus the wall time it took.
+ *
+ * @param <V> type of the task value
+ */
+public class TaskResult<V> {
+
+  private final V value;
+  private final Exception error;
+  private final long durationInMillis;
+
+  private TaskResult(V value, Exception error, long durationInMillis) {
+    this.value = value;
+    this.error = error;
+    this.durationInMillis = durationInMillis;
+  }
+
+  public static <V> TaskResult<V> success(V value, long durationInMillis) {
+    return new TaskResult<>(value, null, durationInMillis);
+  }
+
+  public static <V> TaskResult<V> failure(Exception error, long durationInMillis) {
+    return new TaskResult<>(null, error, durationInMillis);
+  }
+
+  /**
+   * Calls the task and captures its outcome. Never throws.
+   *
+   * @param task the task to call
+   * @return the outcome of the task
+   */
+  public static <V> TaskResult<V> of(Callable<V> task) {
+    long start = System.currentTimeMillis();
+    try {
+      V value = task.call();
+      return success(value, System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      return failure(e, System.currentTimeMillis() - start);
+    }
+  }
+
+  public boolean isSuccessful() {
+    return error == null;
+  }
+
+  public V getValue() {
+    return value;
+  }
+
+  public Exception getError() {
+    return error;
+  }
+
+  public long getDurationInMillis() {
+    return durationInMillis;
+  }
+
+  @Override
+  public String toString() {
+    return isSuccessful()
+        ? "TaskResult{value=" + value + ", durationInMillis=" + durationInMillis + '}'
+        : "TaskResult{error=" + error + ", durationInMillis=" + durationInMillis + '}';
+  }
+}
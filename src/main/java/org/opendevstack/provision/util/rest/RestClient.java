@@ -1,5 +1,6 @@
 package org.opendevstack.provision.util.rest;
 
+import com.google.common.base.Utf8;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
@@ -11,6 +12,8 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 import okio.Buffer;
 import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.tracing.Span;
+import org.opendevstack.provision.util.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -54,6 +57,10 @@ public class RestClient {
       call.prepareRequest();
     }
 
+    Span span =
+        Tracing.startSpan("http " + call.getRequest().method())
+            .setAttribute("http.method", call.getRequest().method())
+            .setAttribute("http.url", call.getUrl());
     try {
       if (call.isPreAuthenticated()) {
         LOG.info("prepare preauthenticated call");
@@ -71,8 +78,11 @@ public class RestClient {
             request.body() != null ? bodyToString(request.body()) : "");
       }
 
+      span.setAttribute(Tracing.ATTRIBUTE_HTTP_REQUEST_LENGTH, contentLength(request.body()));
       try (Response callResponse = this.client.newCall(request).execute()) {
+        span.setAttribute("http.status_code", callResponse.code());
         String responseBody = callResponse.body().string();
+        span.setAttribute(Tracing.ATTRIBUTE_HTTP_RESPONSE_LENGTH, Utf8.encodedLength(responseBody));
         if (callResponse.code() < 200 || callResponse.code() >= 300) {
           throw new HttpException(
               callResponse.code(),
@@ -105,7 +115,10 @@ public class RestClient {
       } else {
         LOG.error("Call failed: ", ex);
       }
+      span.setError(ex);
       throw ex;
+    } finally {
+      span.close();
     }
   }
 
@@ -145,6 +158,14 @@ public class RestClient {
     this.readTimeout = readTimeout;
   }
 
+  private static long contentLength(RequestBody body) {
+    try {
+      return body == null ? 0 : Math.max(0, body.contentLength());
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
   public static String bodyToString(final RequestBody body) {
     try {
       if (null == body) {
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.template;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.util.Assert;
+
+/**
+ * A text template with fixed placeholders, split into literal segments and placeholder references
+ * once, so that rendering is a single pass over the segments instead of one {@link
+ * String#replace(CharSequence, CharSequence)} per placeholder and call.
+ *
+ * <p>Placeholders are plain strings (e.g. {@code SPACE_NAME} or {@code %PROJECT_KEY%}). If
+ * placeholders overlap, the longest one wins. Text that is not a known placeholder is kept as is.
+ */
+public final class PrecompiledTemplate {
+
+  private final String template;
+  private final String[] literals;
+  private final String[] references;
+  private final Set<String> placeholders;
+  private final int literalLength;
+
+  private PrecompiledTemplate(
+      String template, List<String> literals, List<String> references, Set<String> placeholders) {
+    this.template = template;
+    this.literals = literals.toArray(new String[0]);
+    this.references = references.toArray(new String[0]);
+    this.placeholders = Collections.unmodifiableSet(placeholders);
+    this.literalLength = literals.stream().mapToInt(String::length).sum();
+  }
+
+  /**
+   * @param template the template text
+   * @param placeholders the placeholders to be replaced on {@link #render(Map)}
+   * @return the compiled template
+   */
+  public static PrecompiledTemplate compile(String template, String... placeholders) {
+    Assert.notNull(template, "Parameter 'template' is null!");
+
+    String[] byLength = Arrays.stream(placeholders).distinct().toArray(String[]::new);
+    Arrays.sort(byLength, Comparator.comparingInt(String::length).reversed());
+    for (String placeholder : byLength) {
+      Assert.hasLength(placeholder, "Placeholders must not be empty!");
+    }
+
+    List<String> literals = new ArrayList<>();
+    List<String> references = new ArrayList<>();
+    Set<String> used = new LinkedHashSet<>();
+
+    int literalStart = 0;
+    int index = 0;
+    while (index < template.length()) {
+      String match = null;
+      for (String placeholder : byLength) {
+        if (template.startsWith(placeholder, index)) {
+          match = placeholder;
+          break;
+        }
+      }
+      if (match == null) {
+        index++;
+        continue;
+      }
+      literals.add(template.substring(literalStart, index));
+      references.add(match);
+      used.add(match);
+      index += match.length();
+      literalStart = index;
+    }
+    literals.add(template.substring(literalStart));
+
+    return new PrecompiledTemplate(template, literals, references, used);
+  }
+
+  /**
+   * @param values the value of each placeholder used in the template
+   * @return the template with all placeholders replaced
+   * @throws IllegalArgumentException if the value of a used placeholder is missing
+   */
+  public String render(Map<String, String> values) {
+    String[] resolved = new String[references.length];
+    int length = literalLength;
+    for (int i = 0; i < references.length; i++) {
+      String value = values.get(references[i]);
+      if (value == null) {
+        throw new IllegalArgumentException(
+            String.format(
+                "No value for placeholder '%s' of template '%s'", references[i], template));
+      }
+      resolved[i] = value;
+      length += value.length();
+    }
+
+    StringBuilder result = new StringBuilder(length);
+    for (int i = 0; i < resolved.length; i++) {
+      result.append(literals[i]).append(resolved[i]);
+    }
+    return result.append(literals[literals.length - 1]).toString();
+  }
+
+  /** @return the placeholders that actually occur in the template */
+  public Set<String> getPlaceholders() {
+    return placeholders;
+  }
+
+  public String getTemplate() {
+    return template;
+  }
+
+  @Override
+  public String toString() {
+    return template;
+  }
+}
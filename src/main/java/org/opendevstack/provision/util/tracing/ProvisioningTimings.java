@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.tracing;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.opendevstack.provision.model.ProvisioningTiming;
+import org.opendevstack.provision.model.ProvisioningTiming.StepTiming;
+
+/**
+ * Condenses the spans of a provisioning into a {@link ProvisioningTiming}. Spans named {@code
+ * <adapter>.<step>} (e.g. {@code jira.createComponents}) account their time to the adapter, http
+ * calls and retries are accounted to the adapter of their closest enclosing adapter span.
+ */
+final class ProvisioningTimings {
+
+  static final String STEP_OTHER = "other";
+
+  private ProvisioningTimings() {}
+
+  static ProvisioningTiming of(Span root, String operation) {
+    ProvisioningTiming timing =
+        new ProvisioningTiming(
+            operation,
+            TimeUnit.NANOSECONDS.toMillis(root.getStartTimeUnixNano()),
+            root.getDurationInMillis());
+    timing.setTraceId(root.getTraceId());
+
+    List<Span> spans = root.getTrace().getSpans();
+    Map<String, Span> spansById = new HashMap<>();
+    spans.forEach(span -> spansById.put(span.getSpanId(), span));
+
+    for (Span span : spans) {
+      if (span == root || !isDescendant(span, root, spansById)) {
+        continue;
+      }
+
+      String adapter = adapterOf(span);
+      String enclosingAdapter = enclosingAdapterOf(span, root, spansById);
+
+      // only the outermost span of an adapter counts, nested steps are part of its time
+      if (adapter != null && !adapter.equals(enclosingAdapter)) {
+        StepTiming step = timing.step(adapter);
+        step.setWallTimeInMillis(step.getWallTimeInMillis() + span.getDurationInMillis());
+      }
+
+      String accountedTo = adapter != null ? adapter : enclosingAdapter;
+      Map<String, String> attributes = span.getAttributes();
+      boolean httpCall = attributes.containsKey("http.method");
+      int retries = (int) parseLong(attributes.get(Tracing.ATTRIBUTE_RETRIES));
+      if (!httpCall && retries == 0) {
+        continue;
+      }
+
+      StepTiming step = timing.step(accountedTo == null ? STEP_OTHER : accountedTo);
+      if (httpCall) {
+        step.setHttpCalls(step.getHttpCalls() + 1);
+        step.setBytesSent(
+            step.getBytesSent() + parseLong(attributes.get(Tracing.ATTRIBUTE_HTTP_REQUEST_LENGTH)));
+        step.setBytesReceived(
+            step.getBytesReceived()
+                + parseLong(attributes.get(Tracing.ATTRIBUTE_HTTP_RESPONSE_LENGTH)));
+      }
+      step.setRetries(step.getRetries() + retries);
+    }
+    return timing;
+  }
+
+  /** @return the adapter of a span named {@code <adapter>.<step>}, otherwise null */
+  static String adapterOf(Span span) {
+    String name = span.getName();
+    int dot = name.indexOf('.');
+    if (dot <= 0 || name.indexOf(' ') >= 0) {
+      return null;
+    }
+    return name.substring(0, dot);
+  }
+
+  private static String enclosingAdapterOf(Span span, Span root, Map<String, Span> spansById) {
+    Span parent = spansById.get(span.getParentSpanId());
+    while (parent != null && parent != root) {
+      String adapter = adapterOf(parent);
+      if (adapter != null) {
+        return adapter;
+      }
+      parent = spansById.get(parent.getParentSpanId());
+    }
+    return null;
+  }
+
+  private static boolean isDescendant(Span span, Span root, Map<String, Span> spansById) {
+    Span parent = spansById.get(span.getParentSpanId());
+    while (parent != null) {
+      if (parent == root) {
+        return true;
+      }
+      parent = spansById.get(parent.getParentSpanId());
+    }
+    return false;
+  }
+
+  private static long parseLong(String value) {
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.tracing;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.opendevstack.provision.model.ProvisioningTiming;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Starts the trace of a provisioning and keeps the last {@code provision.tracing.history-size}
+ * traces for the waterfall debug endpoint. Finished traces are handed to the {@link
+ * TraceExporter}.
+ */
+@Component
+public class ProvisioningTracer {
+
+  private static final Logger logger = LoggerFactory.getLogger(ProvisioningTracer.class);
+
+  @Value("${provision.tracing.enabled:true}")
+  private boolean enabled = true;
+
+  @Value("${provision.tracing.history-size:20}")
+  private int historySize = 20;
+
+  @Value("${provision.tracing.max-spans-per-trace:2000}")
+  private int maxSpansPerTrace = 2000;
+
+  @Autowired(required = false)
+  private TraceExporter traceExporter;
+
+  private final Deque<Trace> finishedTraces = new LinkedList<>();
+
+  private final Map<String, Trace> runningTraces = new ConcurrentHashMap<>();
+
+  /**
+   * Starts the trace of a provisioning step. If this thread is already part of a trace (e.g. a
+   * project of a bulk provisioning) a child span is started instead.
+   *
+   * @param name the name of the step, e.g. {@code addProject}
+   * @param projectKey the key of the project
+   * @return the root span, to be closed when the step is done
+   */
+  public Span startTrace(String name, String projectKey) {
+    if (!enabled) {
+      return Span.NOOP;
+    }
+    if (Tracing.isActive()) {
+      return Tracing.startSpan(name).setAttribute("project.key", projectKey);
+    }
+
+    Span root = Tracing.startTrace(name, projectKey, maxSpansPerTrace, this::finished);
+    root.setAttribute("project.key", projectKey);
+    runningTraces.put(root.getTraceId(), root.getTrace());
+    return root;
+  }
+
+  private void finished(Trace trace) {
+    runningTraces.remove(trace.getTraceId());
+    synchronized (finishedTraces) {
+      finishedTraces.addFirst(trace);
+      while (finishedTraces.size() > Math.max(0, historySize)) {
+        finishedTraces.removeLast();
+      }
+    }
+    logger.debug(
+        "Trace {} of {} finished after {} ms with {} spans",
+        trace.getTraceId(),
+        trace.getName(),
+        trace.getDurationInMillis(),
+        trace.getSpans().size());
+
+    if (traceExporter != null) {
+      traceExporter.export(trace);
+    }
+  }
+
+  /**
+   * Condenses the spans below the given span into a timing record, to be stored with the project
+   *
+   * @param span the span of the provisioning, as returned by {@link #startTrace(String, String)}
+   * @param operation the provisioning operation, e.g. {@link ProvisioningTiming#OPERATION_CREATE}
+   * @return the timing record, or null if tracing is disabled
+   */
+  public ProvisioningTiming timingOf(Span span, String operation) {
+    if (span == null || span.isNoop()) {
+      return null;
+    }
+    return ProvisioningTimings.of(span, operation);
+  }
+
+  /**
+   * @param limit the maximum number of traces to return
+   * @return the running traces followed by the finished traces, newest first
+   */
+  public List<Trace> getTraces(int limit) {
+    List<Trace> traces = new ArrayList<>(runningTraces.values());
+    traces.sort((t1, t2) -> Long.compare(t2.getStartTimeUnixNano(), t1.getStartTimeUnixNano()));
+    synchronized (finishedTraces) {
+      traces.addAll(finishedTraces);
+    }
+    return traces.size() > limit ? traces.subList(0, Math.max(0, limit)) : traces;
+  }
+
+  public Trace getTrace(String traceId) {
+    Trace running = runningTraces.get(traceId);
+    if (running != null) {
+      return running;
+    }
+    synchronized (finishedTraces) {
+      return finishedTraces.stream()
+          .filter(trace -> trace.getTraceId().equals(traceId))
+          .findFirst()
+          .orElse(null);
+    }
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setHistorySize(int historySize) {
+    this.historySize = historySize;
+  }
+
+  public void setMaxSpansPerTrace(int maxSpansPerTrace) {
+    this.maxSpansPerTrace = maxSpansPerTrace;
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.tracing;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timed step of a provisioning. Spans are created through {@link Tracing#startSpan(String)} and
+ * become the current span of the creating thread until they are closed. The ids follow the
+ * OpenTelemetry format (32 / 16 hex characters), so exported spans can be correlated with other
+ * systems.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Span implements AutoCloseable {
+
+  /** Returned if no trace is active, all operations are no-ops */
+  static final Span NOOP = new Span(null, null, null, "noop", null);
+
+  public static final String STATUS_OK = "OK";
+  public static final String STATUS_ERROR = "ERROR";
+
+  private final Trace trace;
+  private final String spanId;
+  private final String parentSpanId;
+  private final String name;
+  private final String threadName;
+  private final long startTimeUnixNano;
+  private final long startNanos;
+  private final Map<String, String> attributes = new LinkedHashMap<>();
+  private final Span previous;
+
+  private volatile long durationInNanos = -1;
+  private volatile String status;
+  private volatile String statusMessage;
+
+  Span(Trace trace, String spanId, Span parent, String name, Span previous) {
+    this.trace = trace;
+    this.spanId = spanId;
+    this.parentSpanId = parent == null ? null : parent.getSpanId();
+    this.name = name;
+    this.previous = previous;
+    this.threadName = Thread.currentThread().getName();
+    this.startTimeUnixNano = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    this.startNanos = System.nanoTime();
+  }
+
+  public Span setAttribute(String key, Object value) {
+    if (trace != null && key != null && value != null) {
+      synchronized (attributes) {
+        attributes.put(key, String.valueOf(value));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Marks the span as failed
+   *
+   * @param error the cause of the failure
+   * @return this span
+   */
+  public Span setError(Throwable error) {
+    if (trace != null && error != null) {
+      status = STATUS_ERROR;
+      statusMessage = error.getClass().getSimpleName() + ": " + error.getMessage();
+    }
+    return this;
+  }
+
+  /** Ends the span and makes its parent the current span of this thread again */
+  @Override
+  public void close() {
+    if (trace == null || durationInNanos >= 0) {
+      return;
+    }
+    durationInNanos = System.nanoTime() - startNanos;
+    if (status == null) {
+      status = STATUS_OK;
+    }
+    if (Tracing.current() == this) {
+      Tracing.setCurrent(previous);
+    }
+    trace.spanEnded(this);
+  }
+
+  @JsonIgnore
+  public boolean isNoop() {
+    return trace == null;
+  }
+
+  @JsonIgnore
+  Trace getTrace() {
+    return trace;
+  }
+
+  public String getTraceId() {
+    return trace == null ? null : trace.getTraceId();
+  }
+
+  public String getSpanId() {
+    return spanId;
+  }
+
+  public String getParentSpanId() {
+    return parentSpanId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getThreadName() {
+    return threadName;
+  }
+
+  public long getStartTimeUnixNano() {
+    return startTimeUnixNano;
+  }
+
+  @JsonIgnore
+  long getStartNanos() {
+    return startNanos;
+  }
+
+  /** @return the offset of the start of this span from the start of its trace, in millis */
+  public long getOffsetInMillis() {
+    return trace == null ? 0 : TimeUnit.NANOSECONDS.toMillis(startNanos - trace.getStartNanos());
+  }
+
+  public boolean isEnded() {
+    return durationInNanos >= 0;
+  }
+
+  /** @return the duration, or for running spans the time elapsed so far */
+  public long getDurationInMillis() {
+    long duration = durationInNanos >= 0 ? durationInNanos : System.nanoTime() - startNanos;
+    return TimeUnit.NANOSECONDS.toMillis(duration);
+  }
+
+  @JsonIgnore
+  public long getEndTimeUnixNano() {
+    long duration = durationInNanos >= 0 ? durationInNanos : System.nanoTime() - startNanos;
+    return startTimeUnixNano + duration;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public String getStatusMessage() {
+    return statusMessage;
+  }
+
+  public Map<String, String> getAttributes() {
+    synchronized (attributes) {
+      return Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.tracing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/** All spans of one provisioning, e.g. the creation of a project */
+public class Trace {
+
+  private final String traceId;
+  private final String name;
+  private final String projectKey;
+  private final long startTimeUnixNano;
+  private final long startNanos;
+  private final int maxSpans;
+  private final Consumer<Trace> onFinish;
+  private final List<Span> spans = new ArrayList<>();
+
+  private Span root;
+  private int droppedSpans;
+
+  Trace(String traceId, String name, String projectKey, int maxSpans, Consumer<Trace> onFinish) {
+    this.traceId = traceId;
+    this.name = name;
+    this.projectKey = projectKey;
+    this.maxSpans = maxSpans;
+    this.onFinish = onFinish;
+    this.startTimeUnixNano = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    this.startNanos = System.nanoTime();
+  }
+
+  void setRoot(Span root) {
+    this.root = root;
+  }
+
+  synchronized void spanStarted(Span span) {
+    if (spans.size() < maxSpans) {
+      spans.add(span);
+    } else {
+      droppedSpans++;
+    }
+  }
+
+  void spanEnded(Span span) {
+    if (span == root && onFinish != null) {
+      onFinish.accept(this);
+    }
+  }
+
+  public String getTraceId() {
+    return traceId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getProjectKey() {
+    return projectKey;
+  }
+
+  public long getStartTimeUnixNano() {
+    return startTimeUnixNano;
+  }
+
+  long getStartNanos() {
+    return startNanos;
+  }
+
+  public boolean isFinished() {
+    return root != null && root.isEnded();
+  }
+
+  public long getDurationInMillis() {
+    return root == null ? 0 : root.getDurationInMillis();
+  }
+
+  public String getStatus() {
+    return root == null ? null : root.getStatus();
+  }
+
+  public synchronized int getDroppedSpans() {
+    return droppedSpans;
+  }
+
+  /** @return a snapshot of the spans, ordered by start */
+  public synchronized List<Span> getSpans() {
+    List<Span> snapshot = new ArrayList<>(spans);
+    snapshot.sort(Comparator.comparingLong(Span::getStartNanos));
+    return snapshot;
+  }
+}
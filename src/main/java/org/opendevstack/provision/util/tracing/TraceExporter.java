@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exports finished traces in the OTLP/JSON format of OpenTelemetry, either appended as one line per
+ * trace to {@code provision.tracing.export.file} or posted to the OTLP/HTTP collector at {@code
+ * provision.tracing.export.otlp-endpoint} (e.g. {@code http://otel-collector:4318/v1/traces}).
+ * Exports run on a dedicated thread, so a slow collector never delays a provisioning.
+ */
+@Component
+public class TraceExporter {
+
+  private static final Logger logger = LoggerFactory.getLogger(TraceExporter.class);
+
+  private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+  // OTLP status codes and span kinds
+  private static final int STATUS_CODE_OK = 1;
+  private static final int STATUS_CODE_ERROR = 2;
+  private static final int SPAN_KIND_INTERNAL = 1;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Value("${provision.tracing.export.file:}")
+  private String exportFile;
+
+  @Value("${provision.tracing.export.otlp-endpoint:}")
+  private String otlpEndpoint;
+
+  @Value("${provision.tracing.service-name:ods-provisioning-app}")
+  private String serviceName;
+
+  private ExecutorService exportExecutor;
+
+  private OkHttpClient otlpClient;
+
+  @PostConstruct
+  public void init() {
+    if (!isFileExportEnabled() && !isOtlpExportEnabled()) {
+      logger.debug("Export of traces is disabled");
+      return;
+    }
+    if (isOtlpExportEnabled()) {
+      otlpClient =
+          new OkHttpClient.Builder()
+              .connectTimeout(5, TimeUnit.SECONDS)
+              .readTimeout(10, TimeUnit.SECONDS)
+              .build();
+    }
+    exportExecutor =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "trace-exporter");
+              thread.setDaemon(true);
+              return thread;
+            });
+    logger.info("Exporting traces [file={}, otlpEndpoint={}]", exportFile, otlpEndpoint);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (exportExecutor != null) {
+      exportExecutor.shutdown();
+    }
+  }
+
+  public void export(Trace trace) {
+    if (exportExecutor == null) {
+      return;
+    }
+    try {
+      exportExecutor.execute(() -> doExport(trace));
+    } catch (RejectedExecutionException e) {
+      logger.debug("Export of trace {} rejected: {}", trace.getTraceId(), e.getMessage());
+    }
+  }
+
+  private void doExport(Trace trace) {
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(toOtlp(trace));
+    } catch (IOException e) {
+      logger.warn("Could not serialize trace {}: {}", trace.getTraceId(), e.getMessage());
+      return;
+    }
+
+    if (isFileExportEnabled()) {
+      try {
+        File file = new File(exportFile);
+        if (file.getParentFile() != null) {
+          file.getParentFile().mkdirs();
+        }
+        Files.write(
+            file.toPath(),
+            (json + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        logger.warn("Could not export trace {} to {}: {}", trace.getTraceId(), exportFile, e);
+      }
+    }
+
+    if (isOtlpExportEnabled()) {
+      Request request =
+          new Request.Builder().url(otlpEndpoint).post(RequestBody.create(JSON, json)).build();
+      try (Response response = otlpClient.newCall(request).execute()) {
+        if (!response.isSuccessful()) {
+          logger.warn(
+              "Could not export trace {} to {}: {}",
+              trace.getTraceId(),
+              otlpEndpoint,
+              response.code());
+        }
+      } catch (IOException e) {
+        logger.warn(
+            "Could not export trace {} to {}: {}",
+            trace.getTraceId(),
+            otlpEndpoint,
+            e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * @param trace the trace to convert
+   * @return the trace as OTLP/JSON {@code ExportTraceServiceRequest}
+   */
+  ObjectNode toOtlp(Trace trace) {
+    ObjectNode request = objectMapper.createObjectNode();
+    ObjectNode resourceSpans = request.putArray("resourceSpans").addObject();
+    addAttribute(
+        resourceSpans.putObject("resource").putArray("attributes"), "service.name", serviceName);
+
+    ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+    scopeSpans.putObject("scope").put("name", "org.opendevstack.provision");
+    ArrayNode spans = scopeSpans.putArray("spans");
+
+    for (Span span : trace.getSpans()) {
+      ObjectNode node = spans.addObject();
+      node.put("traceId", trace.getTraceId());
+      node.put("spanId", span.getSpanId());
+      if (span.getParentSpanId() != null) {
+        node.put("parentSpanId", span.getParentSpanId());
+      }
+      node.put("name", span.getName());
+      node.put("kind", SPAN_KIND_INTERNAL);
+      node.put("startTimeUnixNano", String.valueOf(span.getStartTimeUnixNano()));
+      node.put("endTimeUnixNano", String.valueOf(span.getEndTimeUnixNano()));
+
+      ArrayNode attributes = node.putArray("attributes");
+      addAttribute(attributes, "thread.name", span.getThreadName());
+      for (Map.Entry<String, String> attribute : span.getAttributes().entrySet()) {
+        addAttribute(attributes, attribute.getKey(), attribute.getValue());
+      }
+
+      ObjectNode status = node.putObject("status");
+      if (Span.STATUS_ERROR.equals(span.getStatus())) {
+        status.put("code", STATUS_CODE_ERROR);
+        status.put("message", span.getStatusMessage());
+      } else {
+        status.put("code", STATUS_CODE_OK);
+      }
+    }
+    return request;
+  }
+
+  private static void addAttribute(ArrayNode attributes, String key, String value) {
+    ObjectNode attribute = attributes.addObject();
+    attribute.put("key", key);
+    attribute.putObject("value").put("stringValue", value);
+  }
+
+  private boolean isFileExportEnabled() {
+    return exportFile != null && !exportFile.trim().isEmpty();
+  }
+
+  private boolean isOtlpExportEnabled() {
+    return otlpEndpoint != null && !otlpEndpoint.trim().isEmpty();
+  }
+}
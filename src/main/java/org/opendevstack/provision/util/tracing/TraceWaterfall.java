@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.tracing;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Renders traces as plain text waterfall, one line per span */
+public final class TraceWaterfall {
+
+  private static final int NAME_WIDTH = 60;
+  private static final int INDENT = 2;
+
+  private TraceWaterfall() {}
+
+  /**
+   * @param traces the traces to render
+   * @param barWidth the width of the timeline in characters
+   * @return the waterfall of all traces
+   */
+  public static String render(List<Trace> traces, int barWidth) {
+    StringBuilder out = new StringBuilder();
+    for (Trace trace : traces) {
+      render(trace, Math.max(10, barWidth), out);
+      out.append('\n');
+    }
+    return out.toString();
+  }
+
+  private static void render(Trace trace, int barWidth, StringBuilder out) {
+    out.append(
+        String.format(
+            "trace %s %s [project=%s] %d ms %s%n",
+            trace.getTraceId(),
+            trace.getName(),
+            trace.getProjectKey(),
+            trace.getDurationInMillis(),
+            trace.isFinished() ? trace.getStatus() : "RUNNING"));
+    if (trace.getDroppedSpans() > 0) {
+      out.append(String.format("  (%d spans dropped)%n", trace.getDroppedSpans()));
+    }
+
+    List<Span> spans = trace.getSpans();
+    double total = Math.max(1, trace.getDurationInMillis());
+    Map<String, Integer> depths = new HashMap<>();
+
+    for (Span span : spans) {
+      Integer parentDepth =
+          span.getParentSpanId() == null ? null : depths.get(span.getParentSpanId());
+      int depth = parentDepth == null ? 0 : parentDepth + 1;
+      depths.put(span.getSpanId(), depth);
+
+      int from =
+          (int) Math.min(barWidth - 1, Math.floor(span.getOffsetInMillis() / total * barWidth));
+      int length =
+          (int)
+              Math.max(
+                  1,
+                  Math.min(
+                      barWidth - from, Math.ceil(span.getDurationInMillis() / total * barWidth)));
+
+      StringBuilder bar = new StringBuilder(barWidth);
+      for (int i = 0; i < barWidth; i++) {
+        bar.append(i >= from && i < from + length ? '=' : ' ');
+      }
+
+      String name = spaces(depth * INDENT) + span.getName();
+      if (name.length() > NAME_WIDTH) {
+        name = name.substring(0, NAME_WIDTH - 3) + "...";
+      }
+
+      out.append(
+          String.format(
+              "  %-" + NAME_WIDTH + "s |%s| %7d ms%s%n",
+              name,
+              bar,
+              span.getDurationInMillis(),
+              Span.STATUS_ERROR.equals(span.getStatus())
+                  ? " ERROR " + span.getStatusMessage()
+                  : ""));
+    }
+  }
+
+  private static String spaces(int count) {
+    StringBuilder spaces = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      spaces.append(' ');
+    }
+    return spaces.toString();
+  }
+}
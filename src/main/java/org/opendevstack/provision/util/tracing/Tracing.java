@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import org.slf4j.MDC;
+
+/**
+ * Thread bound tracing state. A trace is started once per provisioning (see {@link
+ * ProvisioningTracer}), every step below opens a child span of the current span with {@link
+ * #startSpan(String)}. Outside of a trace no spans are recorded, so the instrumented code paths
+ * cost nothing if called e.g. from the quickstarter api.
+ *
+ * <p>The current span is handed over to the provisioning worker threads by the {@link
+ * org.opendevstack.provision.util.concurrent.ContextPropagatingTaskDecorator}.
+ */
+public final class Tracing {
+
+  /** MDC key of the trace id, next to the {@code loggerFileName} of the project */
+  public static final String MDC_TRACE_ID = "traceId";
+
+  /** Attribute of http spans, the size of the request body in bytes */
+  public static final String ATTRIBUTE_HTTP_REQUEST_LENGTH = "http.request_content_length";
+
+  /** Attribute of http spans, the size of the response body in bytes */
+  public static final String ATTRIBUTE_HTTP_RESPONSE_LENGTH = "http.response_content_length";
+
+  /** Attribute of the span of a step that had to be repeated, the number of retries */
+  public static final String ATTRIBUTE_RETRIES = "retries";
+
+  private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+  private Tracing() {}
+
+  public static Span current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Binds the given span to the current thread, or unbinds the current span if {@code null}
+   *
+   * @param span the span to bind
+   */
+  public static void setCurrent(Span span) {
+    if (span == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(span);
+    }
+  }
+
+  public static boolean isActive() {
+    return CURRENT.get() != null;
+  }
+
+  /**
+   * Starts a child span of the current span of this thread
+   *
+   * @param name the name of the span, e.g. {@code jira.createProject}
+   * @return the started span, to be closed when the step is done, or a no-op span if no trace is
+   *     active
+   */
+  public static Span startSpan(String name) {
+    Span parent = CURRENT.get();
+    if (parent == null || parent.isNoop()) {
+      return Span.NOOP;
+    }
+    Trace trace = parent.getTrace();
+    Span span = new Span(trace, newSpanId(), parent, name, parent);
+    trace.spanStarted(span);
+    CURRENT.set(span);
+    return span;
+  }
+
+  /**
+   * Runs the given step in a child span of the current span, which is marked as failed if the step
+   * throws
+   *
+   * @param name the name of the span
+   * @param step the step to run
+   * @return the result of the step
+   * @throws E the exception thrown by the step
+   */
+  public static <T, E extends Exception> T inSpan(String name, Step<T, E> step) throws E {
+    Span span = startSpan(name);
+    try {
+      return step.run();
+    } catch (Exception e) {
+      span.setError(e);
+      throw e;
+    } finally {
+      span.close();
+    }
+  }
+
+  /** A step of a provisioning, run by {@link #inSpan(String, Step)} */
+  @FunctionalInterface
+  public interface Step<T, E extends Exception> {
+    T run() throws E;
+  }
+
+  static Span startTrace(String name, String projectKey, int maxSpans, Consumer<Trace> onFinish) {
+    Span previous = CURRENT.get();
+    String previousTraceId = MDC.get(MDC_TRACE_ID);
+
+    Trace trace =
+        new Trace(
+            newTraceId(),
+            name,
+            projectKey,
+            maxSpans,
+            finished -> {
+              restoreTraceId(previousTraceId);
+              onFinish.accept(finished);
+            });
+    Span root = new Span(trace, newSpanId(), null, name, previous);
+    trace.setRoot(root);
+    trace.spanStarted(root);
+    CURRENT.set(root);
+    MDC.put(MDC_TRACE_ID, trace.getTraceId());
+    return root;
+  }
+
+  private static void restoreTraceId(String previousTraceId) {
+    if (previousTraceId == null) {
+      MDC.remove(MDC_TRACE_ID);
+    } else {
+      MDC.put(MDC_TRACE_ID, previousTraceId);
+    }
+  }
+
+  static String newTraceId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return String.format("%016x%016x", random.nextLong(), random.nextLong());
+  }
+
+  static String newSpanId() {
+    return String.format("%016x", ThreadLocalRandom.current().nextLong());
+  }
+}
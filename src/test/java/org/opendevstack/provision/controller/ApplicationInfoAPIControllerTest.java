@@ -13,11 +13,16 @@
  */
 package org.opendevstack.provision.controller;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.opendevstack.provision.config.AuthSecurityTestConfig.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.hamcrest.CoreMatchers;
@@ -30,6 +35,7 @@ import org.opendevstack.provision.adapter.ISCMAdapter;
 import org.opendevstack.provision.authentication.UserRolesHolder;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.services.StorageAdapter;
+import org.opendevstack.provision.storage.IStorage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -64,6 +70,8 @@ public class ApplicationInfoAPIControllerTest {
 
   @MockBean private ICollaborationAdapter confluenceAdapter;
 
+  @MockBean private IStorage directStorage;
+
   @Value("${idmanager.group.opendevstack-users}")
   private String idmanagerUserGroup;
 
@@ -146,4 +154,48 @@ public class ApplicationInfoAPIControllerTest {
         .andExpect(projectHistory)
         .andReturn();
   }
+
+  @Test
+  public void givenStoredProjects_whenRewriteCloneUrls_thenProjectsAreUpdatedByKey()
+      throws Exception {
+
+    // setup test, the history is keyed by the stored file
+    OpenProjectData first = new OpenProjectData();
+    first.setProjectKey("FIRST");
+    OpenProjectData second = new OpenProjectData();
+    second.setProjectKey("SECOND");
+
+    Map<String, OpenProjectData> historyMap = new HashMap<>();
+    historyMap.put("20200101100000-FIRST.txt", first);
+    historyMap.put("20200102100000-SECOND.txt", second);
+
+    when(directStorage.listProjectHistory()).thenReturn(historyMap);
+    when(directStorage.getProject("FIRST")).thenReturn(first);
+    when(directStorage.getProject("SECOND")).thenReturn(second);
+    when(bitbucketAdapter.rewriteCloneUrls(first, "previous")).thenReturn(true);
+    when(bitbucketAdapter.rewriteCloneUrls(second, "previous")).thenReturn(false);
+    when(directStorage.updateStoredProject(first)).thenReturn(true);
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post(
+                    "/"
+                        + ApplicationInfoAPI.APP_INFO_API_V2
+                        + "/"
+                        + ApplicationInfoAPI.ENDPOINT_BITBUCKET_CLONE_URLS_REWRITE)
+                .param("previousTechnicalUser", "previous")
+                .with(httpBasic(TEST_ADMIN_USERNAME, TEST_VALID_CREDENTIAL))
+                .accept(MediaType.APPLICATION_JSON))
+        .andDo(MockMvcResultHandlers.print())
+        .andExpect(MockMvcResultMatchers.status().isOk())
+        .andExpect(MockMvcResultMatchers.jsonPath("projects", CoreMatchers.is(2)))
+        .andExpect(
+            MockMvcResultMatchers.jsonPath("rewritten", CoreMatchers.is(List.of("FIRST"))))
+        .andReturn();
+
+    verify(bitbucketAdapter).rewriteCloneUrls(eq(first), eq("previous"));
+    verify(directStorage).updateStoredProject(first);
+    verify(directStorage, never()).updateStoredProject(second);
+    verify(directStorage, never()).storeProject(any());
+  }
 }
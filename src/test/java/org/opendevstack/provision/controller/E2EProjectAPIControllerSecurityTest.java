@@ -55,7 +55,8 @@ public class E2EProjectAPIControllerSecurityTest {
           projectAPI + "/templates",
           projectAPI + "/template/KEY",
           projectAPI + "/key/validate?projectKey=KEY",
-          projectAPI + "/key/generate?name=NAME");
+          projectAPI + "/key/generate?name=NAME",
+          projectAPI + "/key/suggest?name=NAME");
   @MockBean private StorageAdapter storageAdapter;
   @Autowired private TestRestTemplate template;
   private HttpHeaders headers = new HttpHeaders();
@@ -32,12 +32,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.verification.VerificationMode;
 import org.opendevstack.provision.adapter.IBugtrackerAdapter;
@@ -46,17 +49,21 @@ import org.opendevstack.provision.adapter.IJobExecutionAdapter;
 import org.opendevstack.provision.adapter.ISCMAdapter;
 import org.opendevstack.provision.adapter.ISCMAdapter.URL_TYPE;
 import org.opendevstack.provision.adapter.IServiceAdapter;
+import org.opendevstack.provision.adapter.IServiceAdapter.LIFECYCLE_STAGE;
 import org.opendevstack.provision.adapter.exception.AdapterException;
 import org.opendevstack.provision.adapter.exception.CreateProjectPreconditionException;
 import org.opendevstack.provision.authentication.TestAuthentication;
+import org.opendevstack.provision.config.ProvisioningExecutorConfig;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.model.ProjectData;
+import org.opendevstack.provision.services.ConfluenceAdapter;
 import org.opendevstack.provision.services.CrowdProjectIdentityMgmtAdapter;
 import org.opendevstack.provision.services.MailAdapter;
 import org.opendevstack.provision.services.StorageAdapter;
 import org.opendevstack.provision.services.openshift.OpenshiftClient;
 import org.opendevstack.provision.storage.IStorage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -68,6 +75,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
@@ -98,6 +106,10 @@ public class ProjectApiControllerTest {
 
   @Autowired private ProjectApiController apiController;
 
+  @Autowired
+  @Qualifier(ProvisioningExecutorConfig.BULK_PROVISIONING_TASK_EXECUTOR)
+  private Executor bulkTaskExecutor;
+
   @Autowired private List<String> projectTemplateKeyNames;
 
   @Autowired private MockMvc mockMvc;
@@ -252,6 +264,110 @@ public class ProjectApiControllerTest {
             });
   }
 
+  @Test
+  public void addProjectsInBulkStreamsOneResultPerProject() throws Exception {
+
+    OpenProjectData first = copyFromProject(data);
+    first.setProjectKey("BULK1");
+    first.setProjectName("Bulk1");
+    OpenProjectData second = copyFromProject(data);
+    second.setProjectKey("BULK2");
+    second.setProjectName("Bulk2");
+    OpenProjectData duplicate = copyFromProject(first);
+
+    when(jiraAdapter.createBugtrackerProjectForODSProject(isNotNull()))
+        .thenAnswer(
+            invocation -> {
+              OpenProjectData project = invocation.getArgument(0);
+              project.setBugtrackerUrl("bugtracker");
+              return project;
+            });
+    when(confluenceAdapter.createCollaborationSpaceForODSProject(isNotNull()))
+        .thenReturn("collspace");
+
+    MvcResult mvcResult =
+        mockMvc
+            .perform(
+                post("/api/v2/project/bulk")
+                    .content(asJsonString(List.of(first, second, duplicate)))
+                    .param("parallelism", "2")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(MockMvcResultMatchers.request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(mvcResult))
+        .andExpect(MockMvcResultMatchers.status().isOk())
+        .andDo(MockMvcResultHandlers.print());
+
+    String[] lines = mvcResult.getResponse().getContentAsString().trim().split("\n");
+    assertEquals(3, lines.length);
+
+    ObjectMapper mapper = new ObjectMapper();
+    Map<Integer, Integer> resultsByStatus = new HashMap<>();
+    for (String line : lines) {
+      JsonNode result = mapper.readTree(line);
+      resultsByStatus.merge(result.get("status").asInt(), 1, Integer::sum);
+    }
+    assertEquals(2, resultsByStatus.get(HttpStatus.OK.value()));
+    assertEquals(1, resultsByStatus.get(HttpStatus.BAD_REQUEST.value()));
+
+    Mockito.verify(jiraAdapter, times(2)).createBugtrackerProjectForODSProject(isNotNull());
+    Mockito.verify(mailAdapter, times(2)).notifyUsersAboutProject(isNotNull());
+  }
+
+  @Test
+  public void addProjectsInBulkAnswersRejectedProjectsIfBulkPoolIsFull() throws Exception {
+
+    apiController.setBulkTaskExecutor(
+        task -> {
+          throw new RejectedExecutionException("queue is full");
+        });
+    try {
+      MvcResult mvcResult =
+          mockMvc
+              .perform(
+                  post("/api/v2/project/bulk")
+                      .content(asJsonString(List.of(copyFromProject(data))))
+                      .contentType(MediaType.APPLICATION_JSON)
+                      .accept(MediaType.APPLICATION_NDJSON))
+              .andExpect(MockMvcResultMatchers.request().asyncStarted())
+              .andReturn();
+
+      mockMvc.perform(asyncDispatch(mvcResult)).andExpect(MockMvcResultMatchers.status().isOk());
+
+      JsonNode result =
+          new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString().trim());
+      assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), result.get("status").asInt());
+    } finally {
+      apiController.setBulkTaskExecutor(bulkTaskExecutor);
+    }
+
+    // the project is neither provisioned in the request thread
+    Mockito.verify(jiraAdapter, never()).createBugtrackerProjectForODSProject(any());
+  }
+
+  @Test
+  public void addProjectsInBulkIsRefusedWithoutTechnicalUser() throws Exception {
+
+    // a mocked adapter class is not configured with a technical user
+    apiController.setConfluenceAdapter(Mockito.mock(ConfluenceAdapter.class));
+    try {
+      mockMvc
+          .perform(
+              post("/api/v2/project/bulk")
+                  .content(asJsonString(List.of(copyFromProject(data))))
+                  .contentType(MediaType.APPLICATION_JSON)
+                  .accept(MediaType.APPLICATION_NDJSON))
+          .andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+    } finally {
+      apiController.setConfluenceAdapter(confluenceAdapter);
+    }
+
+    Mockito.verify(jiraAdapter, never()).createBugtrackerProjectForODSProject(any());
+  }
+
   @Test
   public void whenOnyCheckPreconditionsThenDoNotCreateProject() throws Exception {
 
@@ -592,6 +708,22 @@ public class ProjectApiControllerTest {
         .andDo(MockMvcResultHandlers.print());
   }
 
+  @Test
+  public void suggestKeys() throws Exception {
+    when(jiraAdapter.buildProjectKey(isNotNull(String.class))).thenReturn("PROJ");
+
+    mockMvc
+        .perform(
+            get("/api/v2/project/key/suggest")
+                .param("name", "project")
+                .param("count", "3")
+                .accept(MediaType.APPLICATION_JSON))
+        .andExpect(MockMvcResultMatchers.status().isOk())
+        .andExpect(MockMvcResultMatchers.jsonPath("$.projectKeys.length()").value(3))
+        .andExpect(MockMvcResultMatchers.jsonPath("$.projectKeys[0]").value("PROJ"))
+        .andDo(MockMvcResultHandlers.print());
+  }
+
   @Test
   public void givenGetAllProjects_whenProjectFound_thenOK() throws Exception {
 
@@ -901,6 +1033,145 @@ public class ProjectApiControllerTest {
     Mockito.verify(bitbucketAdapter).createSCMProjectForODSProject(isNotNull());
   }
 
+  @Test
+  public void updateProjectProvisionsComponentsInParallelAndCleansUpAllOnFailure()
+      throws Exception {
+    apiController.setCleanupAllowed(true);
+
+    data.setPlatformRuntime(true);
+    data.setScmvcsUrl("scmspace");
+    data.setQuickstarters(null);
+
+    // existing - store prior
+    when(storage.getProject(anyString())).thenReturn(data);
+
+    OpenProjectData update = new OpenProjectData();
+    update.setProjectKey(data.getProjectKey());
+    update.setQuickstarters(new ArrayList<>());
+    for (String componentId : List.of("component-a", "component-b", "component-c")) {
+      Map<String, String> newQS = new HashMap<>();
+      newQS.put("component_type", "someComponentType");
+      newQS.put("component_id", componentId);
+      update.getQuickstarters().add(newQS);
+    }
+
+    when(bitbucketAdapter.createComponentRepositoriesForODSProject(isNotNull()))
+        .thenAnswer(
+            invocation -> {
+              OpenProjectData component = invocation.getArgument(0);
+              Map<String, Map<URL_TYPE, String>> repos = new HashMap<>();
+              repos.put(
+                  component.getProjectKey().toLowerCase()
+                      + "-"
+                      + component.getQuickstarters().get(0).get("component_id"),
+                  new HashMap<>());
+              return repos;
+            });
+    when(jenkinsPipelineAdapter.provisionComponentsBasedOnQuickstarters(isNotNull()))
+        .thenAnswer(
+            invocation -> {
+              OpenProjectData component = invocation.getArgument(0);
+              if ("component-b".equals(component.getQuickstarters().get(0).get("component_id"))) {
+                throw new IOException("failed in unit test");
+              }
+              return new ArrayList<>();
+            });
+
+    try {
+      mockMvc
+          .perform(
+              put("/api/v2/project")
+                  .content(asJsonString(update))
+                  .contentType(MediaType.APPLICATION_JSON)
+                  .accept(MediaType.APPLICATION_JSON))
+          .andExpect(MockMvcResultMatchers.status().is5xxServerError())
+          .andExpect(
+              MockMvcResultMatchers.content().string(CoreMatchers.containsString("component-b")))
+          .andDo(MockMvcResultHandlers.print());
+    } finally {
+      apiController.setCleanupAllowed(false);
+    }
+
+    // every component ran through the pipeline
+    Mockito.verify(bitbucketAdapter, times(3))
+        .createComponentRepositoriesForODSProject(isNotNull());
+    Mockito.verify(jenkinsPipelineAdapter, times(3))
+        .provisionComponentsBasedOnQuickstarters(isNotNull());
+
+    // and the cleanup sees the repositories of all components, not only of the failed one
+    ArgumentCaptor<OpenProjectData> cleanedUp = ArgumentCaptor.forClass(OpenProjectData.class);
+    Mockito.verify(bitbucketAdapter)
+        .cleanup(eq(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION), cleanedUp.capture());
+    assertEquals(3, cleanedUp.getValue().getRepositories().size());
+  }
+
+  @Test
+  public void updateProjectInParallelHandsReconciledRepositoriesToCleanup() throws Exception {
+    apiController.setCleanupAllowed(true);
+
+    data.setPlatformRuntime(true);
+    data.setScmvcsUrl("scmspace");
+    data.setQuickstarters(null);
+
+    // existing - store prior
+    when(storage.getProject(anyString())).thenReturn(data);
+
+    OpenProjectData update = new OpenProjectData();
+    update.setProjectKey(data.getProjectKey());
+    update.setQuickstarters(new ArrayList<>());
+    for (String componentId : List.of("existing", "failing")) {
+      Map<String, String> newQS = new HashMap<>();
+      newQS.put("component_type", "someComponentType");
+      newQS.put("component_id", componentId);
+      update.getQuickstarters().add(newQS);
+    }
+
+    // the repository of component "existing" was there before and is only reconciled
+    String reconciledRepo = data.getProjectKey().toLowerCase() + "-existing";
+    when(bitbucketAdapter.createComponentRepositoriesForODSProject(isNotNull()))
+        .thenAnswer(
+            invocation -> {
+              OpenProjectData component = invocation.getArgument(0);
+              String repoName =
+                  component.getProjectKey().toLowerCase()
+                      + "-"
+                      + component.getQuickstarters().get(0).get("component_id");
+              if (repoName.equals(reconciledRepo)) {
+                component.getReconciledRepositories().add(repoName);
+              }
+              Map<String, Map<URL_TYPE, String>> repos = new HashMap<>();
+              repos.put(repoName, new HashMap<>());
+              return repos;
+            });
+    when(jenkinsPipelineAdapter.provisionComponentsBasedOnQuickstarters(isNotNull()))
+        .thenAnswer(
+            invocation -> {
+              OpenProjectData component = invocation.getArgument(0);
+              if ("failing".equals(component.getQuickstarters().get(0).get("component_id"))) {
+                throw new IOException("failed in unit test");
+              }
+              return new ArrayList<>();
+            });
+
+    try {
+      mockMvc
+          .perform(
+              put("/api/v2/project")
+                  .content(asJsonString(update))
+                  .contentType(MediaType.APPLICATION_JSON)
+                  .accept(MediaType.APPLICATION_JSON))
+          .andExpect(MockMvcResultMatchers.status().is5xxServerError());
+    } finally {
+      apiController.setCleanupAllowed(false);
+    }
+
+    // the cleanup knows the reconciled repository, so that it is not deleted
+    ArgumentCaptor<OpenProjectData> cleanedUp = ArgumentCaptor.forClass(OpenProjectData.class);
+    Mockito.verify(bitbucketAdapter)
+        .cleanup(eq(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION), cleanedUp.capture());
+    assertEquals(Set.of(reconciledRepo), cleanedUp.getValue().getReconciledRepositories());
+  }
+
   @Test
   public void updateProjectWithValidAndInvalidComponentId() {
 
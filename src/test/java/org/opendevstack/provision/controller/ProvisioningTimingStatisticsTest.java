@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.controller.ProvisioningTimingStatistics.StepStatistics;
+import org.opendevstack.provision.model.OpenProjectData;
+import org.opendevstack.provision.model.ProvisioningTiming;
+
+public class ProvisioningTimingStatisticsTest {
+
+  @Test
+  public void givenTimingRecords_whenAggregated_thenPercentilesPerStepAreReturned() {
+    List<OpenProjectData> projects = new ArrayList<>();
+    for (int i = 1; i <= 20; i++) {
+      OpenProjectData project = new OpenProjectData();
+      project.setProjectKey("TESTP" + i);
+
+      ProvisioningTiming create =
+          new ProvisioningTiming(ProvisioningTiming.OPERATION_CREATE, 1000 + i, i * 1000);
+      create.step("jira").setWallTimeInMillis(i * 100);
+      create.step("jira").setHttpCalls(i);
+      project.addProvisioningTiming(create, 10);
+
+      ProvisioningTiming update =
+          new ProvisioningTiming(ProvisioningTiming.OPERATION_UPDATE, 5000 + i, 1);
+      update.step("bitbucket").setHttpCalls(3);
+      project.addProvisioningTiming(update, 10);
+
+      projects.add(project);
+    }
+    projects.add(new OpenProjectData());
+
+    ProvisioningTimingStatistics statistics =
+        ProvisioningTimingStatistics.of(projects, ProvisioningTiming.OPERATION_CREATE, 0);
+
+    assertEquals(20, statistics.getProvisionings());
+    assertEquals(Arrays.asList("jira", "total"), new ArrayList<>(statistics.getSteps().keySet()));
+
+    StepStatistics total = statistics.getSteps().get(ProvisioningTimingStatistics.STEP_TOTAL);
+    assertEquals(10000, total.getWallTimeInMillis().getP50());
+    assertEquals(19000, total.getWallTimeInMillis().getP95());
+    assertEquals(20000, total.getWallTimeInMillis().getMax());
+
+    StepStatistics jira = statistics.getSteps().get("jira");
+    assertEquals(20, jira.getCount());
+    assertEquals(1000, jira.getWallTimeInMillis().getP50());
+    assertEquals(19, jira.getHttpCalls().getP95());
+
+    // filter by start
+    assertEquals(5, ProvisioningTimingStatistics.of(projects, null, 5016).getProvisionings());
+  }
+
+  @Test
+  public void givenMaxRecords_whenAddProvisioningTiming_thenOldestRecordsAreDropped() {
+    OpenProjectData project = new OpenProjectData();
+    for (int i = 0; i < 5; i++) {
+      project.addProvisioningTiming(new ProvisioningTiming("update", i, 0), 3);
+    }
+    assertEquals(3, project.getProvisioningTimings().size());
+    assertEquals(2, project.getProvisioningTimings().get(0).getStartedAt());
+  }
+}
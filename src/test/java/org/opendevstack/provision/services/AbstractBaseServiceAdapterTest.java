@@ -30,6 +30,12 @@ public abstract class AbstractBaseServiceAdapterTest {
     return mockHelper.mockExecute(call);
   }
 
+  /** @see org.opendevstack.provision.util.rest.RestClientMockHelper */
+  public OngoingStubbing<Object> mockExecuteSuppressErrorLogging(
+      RestClientCallArgumentMatcher call) throws IOException {
+    return mockHelper.mockExecuteSuppressErrorLogging(call);
+  }
+
   /** @see org.opendevstack.provision.util.rest.RestClientMockHelper */
   public void verifyExecute(RestClientCallArgumentMatcher wantedArgument) throws IOException {
     mockHelper.verifyExecute(wantedArgument);
@@ -28,23 +28,27 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.opendevstack.provision.adapter.IODSAuthnzAdapter;
 import org.opendevstack.provision.adapter.ISCMAdapter.URL_TYPE;
+import org.opendevstack.provision.adapter.IServiceAdapter.LIFECYCLE_STAGE;
 import org.opendevstack.provision.adapter.exception.AdapterException;
 import org.opendevstack.provision.adapter.exception.CreateProjectPreconditionException;
 import org.opendevstack.provision.controller.CheckPreconditionFailure;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.model.bitbucket.*;
+import org.opendevstack.provision.services.bitbucket.ReadableRepoGrantIndex;
 import org.opendevstack.provision.util.TestDataFileReader;
 import org.opendevstack.provision.util.ValueCaptor;
+import org.opendevstack.provision.util.concurrent.TaskResult;
 import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClientCall;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -74,6 +78,7 @@ public class BitbucketAdapterTest extends AbstractBaseServiceAdapterTest {
 
   @MockBean private IODSAuthnzAdapter authnzAdapter;
   @Autowired private BitbucketAdapter bitbucketAdapter;
+  @Autowired private ReadableRepoGrantIndex readableRepoGrantIndex;
 
   private static final TestDataFileReader fileReader =
       new TestDataFileReader(TestDataFileReader.TEST_DATA_FILE_DIR);
@@ -241,6 +246,128 @@ public class BitbucketAdapterTest extends AbstractBaseServiceAdapterTest {
     assertEquals(projectData.getProjectUserGroup(), repo.getUserGroup());
   }
 
+  @Test
+  public void createComponentRepositoriesForODSProjectWhenOneRepositoryFails() throws Exception {
+    BitbucketAdapter spyAdapter = Mockito.spy(bitbucketAdapter);
+
+    OpenProjectData projectData = new OpenProjectData();
+    projectData.setProjectKey("testkey");
+    List<Map<String, String>> quickstarters = new ArrayList<>();
+    for (String componentId : new String[] {"be", "fe"}) {
+      Map<String, String> quickstart = new HashMap<>();
+      quickstart.put(OpenProjectData.COMPONENT_ID_KEY, componentId);
+      quickstart.put(OpenProjectData.COMPONENT_TYPE_KEY, "testComponent");
+      quickstarters.add(quickstart);
+    }
+    projectData.setQuickstarters(quickstarters);
+
+    RepositoryData repoData = getReturnRepoData();
+    Mockito.doNothing().when(spyAdapter).createWebHooksForRepository(any(), any(), any());
+    doReturn(repoData)
+        .when(spyAdapter)
+        .callCreateRepoApi(
+            anyString(), anyBoolean(), argThat(repo -> "testkey-be".equals(repo.getName())));
+    doThrow(new HttpException(409, "conflict"))
+        .when(spyAdapter)
+        .callCreateRepoApi(
+            anyString(), anyBoolean(), argThat(repo -> "testkey-fe".equals(repo.getName())));
+
+    IOException error =
+        assertThrows(
+            IOException.class,
+            () -> spyAdapter.createComponentRepositoriesForODSProject(projectData));
+
+    assertTrue(error.getMessage().contains("fe"));
+    // the created repository is kept on the project, so that the cleanup removes it
+    assertEquals(Set.of("testkey-be"), projectData.getRepositories().keySet());
+    verify(spyAdapter, times(1)).createWebHooksForRepository(any(), any(), any());
+  }
+
+  @Test
+  public void createComponentRepositoriesForODSProjectReconcilesExistingRepository()
+      throws Exception {
+    BitbucketAdapter spyAdapter = Mockito.spy(bitbucketAdapter);
+    spyAdapter.setRestClient(restClient);
+
+    String uri = "http://192.168.56.31:7990/rest/api/1.0/projects";
+    doReturn(uri).when(spyAdapter).getAdapterApiUri();
+
+    OpenProjectData projectData = new OpenProjectData();
+    projectData.setProjectKey("testkey");
+    Map<String, String> quickstart = new HashMap<>();
+    quickstart.put(OpenProjectData.COMPONENT_ID_KEY, "be");
+    quickstart.put(OpenProjectData.COMPONENT_TYPE_KEY, "testComponent");
+    projectData.setQuickstarters(List.of(quickstart));
+
+    mockExecuteSuppressErrorLogging(
+            matchesClientCall().method(HttpMethod.GET).url(uri + "/testkey/repos"))
+        .thenReturn(
+            "{\"isLastPage\":true,\"values\":[{\"slug\":\"testkey-be\",\"name\":\"testkey-be\","
+                + "\"links\":{\"clone\":[{\"name\":\"http\",\"href\":\"clone\"}]}}]}");
+    mockExecuteSuppressErrorLogging(
+            matchesClientCall()
+                .method(HttpMethod.GET)
+                .url(uri + "/testkey/repos/testkey-be/permissions/users"))
+        .thenReturn(
+            "{\"isLastPage\":true,\"values\":[{\"user\":{\"name\":\"cd_user\"},"
+                + "\"permission\":\"REPO_WRITE\"}]}");
+    Mockito.doNothing().when(spyAdapter).createWebHooksForRepository(any(), any(), any());
+
+    Map<String, Map<URL_TYPE, String>> result =
+        spyAdapter.createComponentRepositoriesForODSProject(projectData);
+
+    assertEquals(Set.of("testkey-be"), result.keySet());
+    verify(spyAdapter, never()).callCreateRepoApi(any(), anyBoolean(), any());
+    // the repository has no webhooks yet
+    verify(spyAdapter).createWebHooksForRepository(any(), eq(projectData), eq("testComponent"));
+    // only the permission of the admin group is missing
+    verifyExecute(matchesClientCall().method(HttpMethod.PUT), 1);
+  }
+
+  @Test
+  public void givenFailingPipeline_whenCleanup_thenReconciledRepositoryIsNotDeleted()
+      throws Exception {
+    BitbucketAdapter spyAdapter = Mockito.spy(bitbucketAdapter);
+    spyAdapter.setRestClient(restClient);
+
+    String uri = "http://192.168.56.31:7990/rest/api/1.0/projects";
+    doReturn(uri).when(spyAdapter).getAdapterApiUri();
+
+    OpenProjectData projectData = new OpenProjectData();
+    projectData.setProjectKey("testkey");
+    List<Map<String, String>> quickstarters = new ArrayList<>();
+    for (String componentId : new String[] {"be", "fe"}) {
+      Map<String, String> quickstart = new HashMap<>();
+      quickstart.put(OpenProjectData.COMPONENT_ID_KEY, componentId);
+      quickstart.put(OpenProjectData.COMPONENT_TYPE_KEY, "testComponent");
+      quickstarters.add(quickstart);
+    }
+    projectData.setQuickstarters(quickstarters);
+
+    // testkey-be exists already, e.g. created by hand
+    mockExecuteSuppressErrorLogging(
+            matchesClientCall().method(HttpMethod.GET).url(uri + "/testkey/repos"))
+        .thenReturn(
+            "{\"isLastPage\":true,\"values\":[{\"slug\":\"testkey-be\",\"name\":\"testkey-be\","
+                + "\"links\":{\"clone\":[{\"name\":\"http\",\"href\":\"clone\"}]}}]}");
+    Mockito.doNothing().when(spyAdapter).createWebHooksForRepository(any(), any(), any());
+    doThrow(new HttpException(500, "failed in test"))
+        .when(spyAdapter)
+        .callCreateRepoApi(
+            anyString(), anyBoolean(), argThat(repo -> "testkey-fe".equals(repo.getName())));
+
+    assertThrows(
+        IOException.class, () -> spyAdapter.createComponentRepositoriesForODSProject(projectData));
+    assertEquals(Set.of("testkey-be"), projectData.getRepositories().keySet());
+    assertEquals(Set.of("testkey-be"), projectData.getReconciledRepositories());
+
+    spyAdapter.cleanup(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION, projectData);
+
+    verify(restClient, never())
+        .execute(argThat(matchesClientCall().method(HttpMethod.DELETE)), anyBoolean());
+    verify(restClient, never()).execute(argThat(matchesClientCall().method(HttpMethod.DELETE)));
+  }
+
   @Test
   public void testCreateRepositoriesForProjectWhenQuickstartEqNull() throws Exception {
     BitbucketAdapter spyAdapter = Mockito.spy(bitbucketAdapter);
@@ -290,6 +417,9 @@ public class BitbucketAdapterTest extends AbstractBaseServiceAdapterTest {
     data.setDescription("this is a discription");
     data.setSpecialPermissionSet(true);
     data.setProjectAdminUser("someadmin");
+    data.setProjectAdminGroup("testkey-admin");
+    data.setProjectUserGroup("testkey-user");
+    data.setProjectReadonlyGroup("testkey-readonly");
 
     spyAdapter.setRestClient(restClient);
 
@@ -307,28 +437,23 @@ public class BitbucketAdapterTest extends AbstractBaseServiceAdapterTest {
 
     doReturn(uri).when(spyAdapter).getAdapterApiUri();
 
-    InOrder order = inOrder(spyAdapter);
-
     BitbucketProjectData actual = spyAdapter.callCreateProjectApi(data);
 
     verifyExecute(matchesClientCall().method(HttpMethod.POST));
-    // once for each group
-    order
-        .verify(spyAdapter)
+    // once for each group, the grants are set in parallel
+    verify(spyAdapter)
         .setProjectPermissions(
             eq(expected),
             eq("groups"),
-            any(),
+            eq("testkey-readonly"),
             eq(BitbucketAdapter.PROJECT_PERMISSIONS.PROJECT_READ));
-    order
-        .verify(spyAdapter)
+    verify(spyAdapter)
         .setProjectPermissions(
             eq(expected),
             eq("groups"),
-            any(),
+            eq("testkey-user"),
             eq(BitbucketAdapter.PROJECT_PERMISSIONS.PROJECT_WRITE));
-    order
-        .verify(spyAdapter, Mockito.times(2))
+    verify(spyAdapter, Mockito.times(2))
         .setProjectPermissions(
             eq(expected),
             eq("groups"),
@@ -372,25 +497,22 @@ public class BitbucketAdapterTest extends AbstractBaseServiceAdapterTest {
 
     doReturn(uri).when(spyAdapter).getAdapterApiUri();
 
-    InOrder order = inOrder(spyAdapter);
-
     BitbucketProjectData actual = spyAdapter.callCreateProjectApi(data);
 
     verifyExecute(matchesClientCall().method(HttpMethod.POST));
-    // only for the keyuser Group
-    order
-        .verify(spyAdapter)
+    // the opendevstack-users group is the default user group in this profile, so its read
+    // permission is merged into the write permission
+    verify(spyAdapter, never())
         .setProjectPermissions(
             eq(expected),
             eq("groups"),
             any(),
             eq(BitbucketAdapter.PROJECT_PERMISSIONS.PROJECT_READ));
-    order
-        .verify(spyAdapter)
+    verify(spyAdapter)
         .setProjectPermissions(
             eq(expected),
             eq("groups"),
-            any(),
+            eq(TEST_DEFAULT_USER_GROUP),
             eq(BitbucketAdapter.PROJECT_PERMISSIONS.PROJECT_WRITE));
 
     // one for the tech user!
@@ -404,6 +526,97 @@ public class BitbucketAdapterTest extends AbstractBaseServiceAdapterTest {
     assertEquals(expected, actual);
   }
 
+  @Test
+  public void callCreateProjectApiSkipsPresentPermissionsTest() throws Exception {
+    BitbucketAdapter spyAdapter = Mockito.spy(bitbucketAdapter);
+    spyAdapter.setRestClient(restClient);
+
+    String uri = "http://192.168.56.31:7990/rest/api/1.0/projects";
+
+    OpenProjectData data = new OpenProjectData();
+    data.setProjectKey("testkey");
+    data.setProjectName("testproject");
+    data.setSpecialPermissionSet(false);
+
+    BitbucketProjectData expected = new BitbucketProjectData();
+    expected.setKey("testkey");
+    expected.setId("13231");
+
+    mockExecute(matchesClientCall().method(HttpMethod.POST)).thenReturn(expected);
+    mockExecuteSuppressErrorLogging(
+            matchesClientCall().method(HttpMethod.GET).url(uri + "/testkey/permissions/groups"))
+        .thenReturn(
+            "{\"values\":[{\"group\":{\"name\":\""
+                + TEST_DEFAULT_USER_GROUP
+                + "\"},\"permission\":\"PROJECT_WRITE\"}]}");
+    Mockito.doNothing()
+        .when(spyAdapter)
+        .setProjectPermissions(
+            any(), any(), any(), any(BitbucketAdapter.PROJECT_PERMISSIONS.class));
+    doReturn(uri).when(spyAdapter).getAdapterApiUri();
+
+    Map<PermissionGrant, TaskResult<BitbucketAdapter.GrantOutcome>> results =
+        spyAdapter.grantPermissions(expected, spyAdapter.planProjectPermissions(data, expected));
+
+    assertEquals(2, results.size());
+    results.forEach(
+        (grant, result) ->
+            assertEquals(
+                "users".equals(grant.getPrincipalType())
+                    ? BitbucketAdapter.GrantOutcome.GRANTED
+                    : BitbucketAdapter.GrantOutcome.PRESENT,
+                result.getValue()));
+    verify(spyAdapter, never())
+        .setProjectPermissions(
+            any(), eq("groups"), any(), any(BitbucketAdapter.PROJECT_PERMISSIONS.class));
+    verify(spyAdapter)
+        .setProjectPermissions(
+            eq(expected),
+            eq("users"),
+            eq("cd_user"),
+            eq(BitbucketAdapter.PROJECT_PERMISSIONS.PROJECT_WRITE));
+  }
+
+  @Test
+  public void grantPermissionsOnReadableReposUsesIndexTest() throws Exception {
+    BitbucketAdapter spyAdapter = Mockito.spy(bitbucketAdapter);
+    spyAdapter.setRestClient(restClient);
+
+    String uri = "http://192.168.56.31:7990/rest/api/1.0/projects";
+    doReturn(uri).when(spyAdapter).getAdapterApiUri();
+    // empty the index, so that the first grant refreshes it
+    readableRepoGrantIndex.refresh(List.of(), path -> Map.of());
+
+    mockExecuteSuppressErrorLogging(
+            matchesClientCall()
+                .method(HttpMethod.GET)
+                .url(uri + "/opendevstack/repos/ods-jenkins-shared-library/permissions/users"))
+        .thenReturn(
+            "{\"isLastPage\":true,\"values\":[{\"user\":{\"name\":\"testkey-cd\"},"
+                + "\"permission\":\"REPO_WRITE\"}]}");
+
+    List<PermissionGrant> grants =
+        List.of(
+            PermissionGrant.onRepository(
+                "opendevstack", "ods-jenkins-shared-library", "users", "testkey-cd", "REPO_READ"),
+            PermissionGrant.onRepository(
+                "opendevstack", "ods-quickstarters", "users", "testkey-cd", "REPO_READ"));
+
+    Map<PermissionGrant, TaskResult<BitbucketAdapter.GrantOutcome>> first =
+        spyAdapter.grantPermissions(null, grants);
+    Map<PermissionGrant, TaskResult<BitbucketAdapter.GrantOutcome>> second =
+        spyAdapter.grantPermissions(null, grants);
+
+    // write access includes read access
+    assertEquals(BitbucketAdapter.GrantOutcome.PRESENT, first.get(grants.get(0)).getValue());
+    assertEquals(BitbucketAdapter.GrantOutcome.GRANTED, first.get(grants.get(1)).getValue());
+    // the index knows the granted permission, nothing is read or granted again
+    for (TaskResult<BitbucketAdapter.GrantOutcome> result : second.values()) {
+      assertEquals(BitbucketAdapter.GrantOutcome.PRESENT, result.getValue());
+    }
+    verifyExecute(matchesClientCall().method(HttpMethod.PUT), 1);
+  }
+
   @Test
   public void callCreateRepoApiWithoutAdminGroupTest() throws Exception {
     BitbucketAdapter spyAdapter = Mockito.spy(bitbucketAdapter);
@@ -588,12 +801,37 @@ public class BitbucketAdapterTest extends AbstractBaseServiceAdapterTest {
     BitbucketAdapter spyAdapter = Mockito.spy(bitbucketAdapter);
     ValueCaptor<Webhook> bodyCaptor = new ValueCaptor<>();
 
+    // bitbucket returns the created webhook
     mockExecute(matchesClientCall().method(HttpMethod.POST).bodyCaptor(bodyCaptor))
-        .thenReturn(repoData1);
+        .thenAnswer(invocation -> ((RestClientCall) invocation.getArgument(0)).getBody());
 
     spyAdapter.createWebHooksForRepository(repoData1, projectData, "testComponent");
     // Verify that configured webhook events are added to the webhook request
     assertEquals(webhookEvents, bodyCaptor.getValues().get(0).getEvents());
+    // the template of the project is built once and reused for further repositories
+    assertSame(spyAdapter.webhookTemplate(projectData), bodyCaptor.getValues().get(0));
+  }
+
+  @Test
+  public void testCreateWebhooksFailsIfWebhookIsNotAsExpected() throws Exception {
+    OpenProjectData projectData = new OpenProjectData();
+    projectData.setRepositories(new HashMap<>());
+    projectData.setProjectKey("12423qtr");
+
+    RepositoryData repoData1 = new RepositoryData();
+    repoData1.setName("repoData1");
+    repoData1.setSlug("repodata1");
+
+    Webhook unexpected = new Webhook();
+    unexpected.setUrl("https://other");
+    unexpected.setEvents(webhookEvents);
+    mockExecute(matchesClientCall().method(HttpMethod.POST)).thenReturn(unexpected);
+
+    assertThrows(
+        AdapterException.class,
+        () ->
+            bitbucketAdapter.createWebHooksForRepository(
+                repoData1, projectData, "testComponent"));
   }
 
   @Test
@@ -720,6 +958,34 @@ public class BitbucketAdapterTest extends AbstractBaseServiceAdapterTest {
     assertTrue(newResult.get(0).toString().contains(project.getCdUser()));
   }
 
+  @Test
+  public void givenPreviousTechnicalUser_whenRewriteCloneUrls_thenOnlyItsUrlsAreRewritten() {
+    Map<URL_TYPE, String> urls = new HashMap<>();
+    urls.put(URL_TYPE.URL_CLONE_HTTP, "https://old_user@bitbucket/scm/pkey/pkey-be.git");
+    urls.put(URL_TYPE.URL_CLONE_SSH, "ssh://git@bitbucket:7999/pkey/pkey-be.git");
+    urls.put(URL_TYPE.URL_BROWSE_HTTP, "https://bitbucket/projects/PKEY/repos/pkey-be/browse");
+    Map<String, String> quickstarter = new HashMap<>();
+    quickstarter.put(
+        OpenProjectData.COMPONENT_GIT_URL_HTTP_KEY, urls.get(URL_TYPE.URL_CLONE_HTTP));
+
+    OpenProjectData project = new OpenProjectData();
+    project.setProjectKey("PKEY");
+    project.setRepositories(new HashMap<>(Map.of("pkey-be", urls)));
+    project.setQuickstarters(new ArrayList<>(List.of(quickstarter)));
+
+    assertTrue(bitbucketAdapter.rewriteCloneUrls(project, "old_user"));
+
+    String technicalUser = bitbucketAdapter.getTechnicalUser();
+    String rewritten = "https://" + technicalUser + "@bitbucket/scm/pkey/pkey-be.git";
+    assertEquals(rewritten, urls.get(URL_TYPE.URL_CLONE_HTTP));
+    assertEquals("ssh://git@bitbucket:7999/pkey/pkey-be.git", urls.get(URL_TYPE.URL_CLONE_SSH));
+    assertEquals(rewritten, quickstarter.get(OpenProjectData.COMPONENT_GIT_URL_HTTP_KEY));
+
+    // already rewritten, nothing to store
+    assertFalse(bitbucketAdapter.rewriteCloneUrls(project, "old_user"));
+    assertFalse(bitbucketAdapter.rewriteCloneUrls(project, technicalUser));
+  }
+
   @Test
   public void testProjectExistsCheck() throws IOException {
 
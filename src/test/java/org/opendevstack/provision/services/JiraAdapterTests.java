@@ -14,7 +14,6 @@
 
 package org.opendevstack.provision.services;
 
-import static java.util.Arrays.asList;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,7 +25,6 @@ import static org.opendevstack.provision.util.RestClientCallArgumentMatcher.matc
 import com.atlassian.crowd.integration.springsecurity.user.CrowdUserDetails;
 import com.atlassian.crowd.integration.springsecurity.user.CrowdUserDetailsService;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
@@ -40,12 +38,14 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.opendevstack.provision.adapter.IODSAuthnzAdapter;
 import org.opendevstack.provision.adapter.ISCMAdapter.URL_TYPE;
+import org.opendevstack.provision.adapter.IServiceAdapter.LIFECYCLE_STAGE;
 import org.opendevstack.provision.adapter.exception.AdapterException;
 import org.opendevstack.provision.adapter.exception.CreateProjectPreconditionException;
 import org.opendevstack.provision.controller.CheckPreconditionFailure;
 import org.opendevstack.provision.model.OpenProjectData;
 import org.opendevstack.provision.model.bitbucket.Link;
 import org.opendevstack.provision.model.bitbucket.RepositoryData;
+import org.opendevstack.provision.model.jira.Component;
 import org.opendevstack.provision.model.jira.FullJiraProject;
 import org.opendevstack.provision.model.jira.LeanJiraProject;
 import org.opendevstack.provision.model.jira.PermissionScheme;
@@ -211,7 +211,7 @@ public class JiraAdapterTests extends AbstractBaseServiceAdapterTest {
   public void projectKeyExists() throws IOException {
     String existingKey = "TE1";
 
-    List<JsonNode> returnValue = createResult(existingKey);
+    String returnValue = createResult(existingKey);
     mockExecute(
             matchesClientCall()
                 .url(containsString("/rest/api/latest/project"))
@@ -223,11 +223,11 @@ public class JiraAdapterTests extends AbstractBaseServiceAdapterTest {
         jiraAdapter.projectKeyExists(existingKey), "expecting key " + existingKey + " exists");
   }
 
-  public List<JsonNode> createResult(String existingKey) {
+  public String createResult(String existingKey) {
     ObjectNode objectNode = objectMapper.createObjectNode();
     objectNode.set("key", new TextNode(existingKey));
 
-    return asList(objectNode);
+    return objectNode.toString();
   }
 
   @Test
@@ -415,6 +415,45 @@ public class JiraAdapterTests extends AbstractBaseServiceAdapterTest {
     assertEquals(0, created.size());
   }
 
+  @Test
+  public void givenFailedUpdate_whenCleanup_thenOnlyComponentsOfTheRunAreDeleted()
+      throws Exception {
+    OpenProjectData project = getTestProject("testp");
+    project.setBugtrackerUrl("http://jira/browse/TESTP");
+    Map<String, Map<URL_TYPE, String>> repositories = new LinkedHashMap<>();
+    repositories.put("testp-existing", new HashMap<>());
+    repositories.put("testp-new", new HashMap<>());
+    project.setRepositories(repositories);
+
+    // the component of the first repository exists already, e.g. from an earlier run
+    mockExecuteSuppressErrorLogging(
+            matchesClientCall()
+                .method(HttpMethod.GET)
+                .url(containsString("/project/TESTP/components")))
+        .thenReturn(List.of(component("1", "Technology-existing")))
+        .thenReturn(
+            List.of(component("1", "Technology-existing"), component("2", "Technology-new")));
+
+    jiraAdapter.createComponentsForProjectRepositories(project, new ArrayList<>());
+    assertEquals(Set.of("Technology-new"), project.getCreatedBugtrackerComponents());
+
+    jiraAdapter.cleanup(LIFECYCLE_STAGE.QUICKSTARTER_PROVISION, project);
+
+    verifyExecute(
+        matchesClientCall().method(HttpMethod.DELETE).url(containsString("/component/2")),
+        times(1));
+    verifyExecute(
+        matchesClientCall().method(HttpMethod.DELETE).url(containsString("/component/1")),
+        never());
+  }
+
+  private static Component component(String id, String name) {
+    Component component = new Component();
+    component.setId(id);
+    component.setName(name);
+    return component;
+  }
+
   private LeanJiraProject getReturnProject() {
     return new LeanJiraProject(
         URI.create("http://localhost"), "TESTP", null, null, null, null, null, null);
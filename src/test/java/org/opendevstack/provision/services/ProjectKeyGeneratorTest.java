@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.adapter.IBugtrackerAdapter;
+import org.opendevstack.provision.adapter.ISCMAdapter;
+import org.opendevstack.provision.services.openshift.OpenshiftService;
+
+public class ProjectKeyGeneratorTest {
+
+  private IBugtrackerAdapter jiraAdapter;
+
+  private ISCMAdapter bitbucketAdapter;
+
+  private OpenshiftService openshiftService;
+
+  private ProjectKeyGenerator generator;
+
+  @BeforeEach
+  public void setUp() {
+    jiraAdapter = mock(IBugtrackerAdapter.class);
+    bitbucketAdapter = mock(ISCMAdapter.class);
+    openshiftService = mock(OpenshiftService.class);
+    when(jiraAdapter.buildProjectKey(anyString())).thenReturn("MYPTT");
+
+    generator = new ProjectKeyGenerator();
+    generator.setJiraAdapter(jiraAdapter);
+    generator.setBitbucketAdapter(bitbucketAdapter);
+    generator.setOpenshiftService(openshiftService);
+  }
+
+  @Test
+  public void givenKeysUsedInAllSources_whenSuggest_thenOnlyFreeKeysAreProposed()
+      throws Exception {
+    when(jiraAdapter.listProjectKeys()).thenReturn(Set.of("MYPTT", "MYP"));
+    when(bitbucketAdapter.listProjectKeys()).thenReturn(Set.of("MYPR"));
+    when(openshiftService.listProjectKeyPrefixes()).thenReturn(Set.of("MYPRO"));
+    assertTrue(generator.refresh());
+
+    List<String> keys = generator.suggest("my project", 3);
+
+    assertEquals(List.of("MYPROJ", "MYPROJE", "MYPROJEC"), keys);
+    assertTrue(generator.isFresh());
+  }
+
+  @Test
+  public void givenAllNamePrefixesUsed_whenSuggest_thenNumberedKeysAreProposed()
+      throws Exception {
+    when(jiraAdapter.buildProjectKey(anyString())).thenReturn("AB");
+    when(jiraAdapter.listProjectKeys()).thenReturn(Set.of("AB", "AB1"));
+    when(bitbucketAdapter.listProjectKeys()).thenReturn(Set.of());
+    when(openshiftService.listProjectKeyPrefixes()).thenReturn(Set.of());
+    generator.refresh();
+
+    assertEquals(List.of("AB2", "AB3"), generator.suggest("ab", 2));
+  }
+
+  @Test
+  public void givenTakenKey_whenSuggest_thenKeyIsSkippedUntilNextRefresh() throws Exception {
+    when(jiraAdapter.listProjectKeys()).thenReturn(Set.of());
+    when(bitbucketAdapter.listProjectKeys()).thenReturn(Set.of());
+    when(openshiftService.listProjectKeyPrefixes()).thenReturn(Set.of());
+
+    generator.taken("myptt");
+    assertEquals("MYP", generator.suggest("my project", 1).get(0));
+
+    generator.refresh();
+    assertEquals("MYPTT", generator.suggest("my project", 1).get(0));
+  }
+
+  @Test
+  public void givenFailingSource_whenRefresh_thenOtherSourcesAreStillLoaded() throws Exception {
+    when(jiraAdapter.listProjectKeys()).thenThrow(new IOException("jira down"));
+    when(bitbucketAdapter.listProjectKeys()).thenReturn(Set.of("MYPTT"));
+    when(openshiftService.listProjectKeyPrefixes()).thenReturn(Set.of());
+
+    assertFalse(generator.refresh());
+    assertFalse(generator.isFree("myptt"));
+    assertFalse(generator.isFresh());
+  }
+
+  @Test
+  public void givenNameStartingWithDigit_whenSuggest_thenKeysAreValid() {
+    when(jiraAdapter.buildProjectKey(anyString())).thenReturn("1ST");
+
+    for (String key : generator.suggest("1st project!", 5)) {
+      assertTrue(key.matches("[A-Z][A-Z0-9_]{1,9}"), key);
+    }
+    verifyNoInteractions(bitbucketAdapter, openshiftService);
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.model.bitbucket.BitbucketProjectSnapshot;
+import org.opendevstack.provision.model.bitbucket.BitbucketRepositorySnapshot;
+import org.opendevstack.provision.services.RestService;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+
+public class BitbucketInventoryTest {
+
+  private static final String PROJECTS_URL = "http://bitbucket/rest/api/1.0/projects";
+
+  private static final String PROJECTS =
+      "{\"values\":[{\"id\":1,\"key\":\"ABC\",\"name\":\"Abc\",\"public\":false},"
+          + "{\"id\":2,\"key\":\"DEF\",\"name\":\"Def project\",\"public\":true}],"
+          + "\"isLastPage\":true}";
+
+  private static final String REPOS =
+      "{\"values\":[{\"slug\":\"abc-be\",\"name\":\"abc-be\",\"links\":{\"clone\":["
+          + "{\"href\":\"https://bitbucket/scm/abc/abc-be.git\",\"name\":\"http\"},"
+          + "{\"href\":\"ssh://git@bitbucket:7999/abc/abc-be.git\",\"name\":\"ssh\"}]}}],"
+          + "\"isLastPage\":true}";
+
+  private static final String GROUPS =
+      "{\"values\":[{\"group\":{\"name\":\"ABC-admins\"},\"permission\":\"PROJECT_ADMIN\"}],"
+          + "\"isLastPage\":true}";
+
+  private static final String USERS =
+      "{\"values\":[{\"user\":{\"name\":\"cd_user\"},\"permission\":\"PROJECT_WRITE\"}],"
+          + "\"isLastPage\":true}";
+
+  private static final String EMPTY = "{\"values\":[],\"isLastPage\":true}";
+
+  private RestService bitbucket;
+
+  private RestClient restClient;
+
+  private BitbucketInventory inventory;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    bitbucket = mock(RestService.class);
+    restClient = mock(RestClient.class);
+    when(bitbucket.getRestClient()).thenReturn(restClient);
+    when(bitbucket.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+    when(restClient.execute(any(RestClientCall.class))).thenReturn(PROJECTS);
+    when(restClient.execute(any(RestClientCall.class), eq(true))).thenReturn(EMPTY);
+    mockDetails("ABC/repos", REPOS);
+    mockDetails("ABC/permissions/groups", GROUPS);
+    mockDetails("ABC/permissions/users", USERS);
+
+    inventory = new BitbucketInventory();
+    inventory.setBitbucketUri("http://bitbucket");
+    inventory.setBitbucketApiPath("/rest/api/1.0");
+    inventory.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    inventory.setRestService(bitbucket);
+  }
+
+  @Test
+  public void givenProjectList_whenSync_thenInventoryContainsProjectsAndRepositories()
+      throws IOException {
+    assertFalse(inventory.isFresh());
+
+    assertEquals(2, inventory.sync());
+
+    assertTrue(inventory.isFresh());
+    assertEquals(2, inventory.size());
+    BitbucketProjectSnapshot abc = inventory.get("abc");
+    assertEquals("1", abc.getId());
+    assertEquals("PROJECT_ADMIN", abc.getGroupPermissions().get("abc-admins"));
+    assertEquals(1, abc.getUserPermissionCount());
+    assertNotEquals(0, abc.getDetailsSyncedAt());
+
+    BitbucketRepositorySnapshot repository = abc.getRepositories().get(0);
+    assertEquals("abc-be", repository.getSlug());
+    assertEquals("https://bitbucket/scm/abc/abc-be.git", repository.getHttpCloneUrl());
+    assertEquals("ssh://git@bitbucket:7999/abc/abc-be.git", repository.getSshCloneUrl());
+    assertTrue(inventory.get("DEF").isPublicAccess());
+  }
+
+  @Test
+  public void givenChangedProjectList_whenSyncAgain_thenOnlyChangesAreApplied()
+      throws IOException {
+    inventory.sync();
+
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenReturn(
+            "{\"values\":[{\"id\":1,\"key\":\"ABC\",\"name\":\"Abc renamed\"}],"
+                + "\"isLastPage\":true}");
+
+    // one renamed, one removed
+    assertEquals(2, inventory.sync());
+    assertEquals("Abc renamed", inventory.get("ABC").getName());
+    assertEquals(1, inventory.get("ABC").getRepositories().size());
+    assertNull(inventory.get("DEF"));
+  }
+
+  @Test
+  public void givenDetailsRefreshLimit_whenSync_thenOldestDetailsAreReadFirst()
+      throws IOException {
+    inventory.setDetailsRefreshPerSync(1);
+    inventory.sync();
+    inventory.sync();
+    clearInvocations(restClient);
+
+    inventory.repositoriesChanged("DEF");
+    inventory.sync();
+
+    verify(restClient)
+        .execute(argThat((RestClientCall call) -> hasUrl(call, "DEF/repos")), eq(true));
+    verify(restClient, never())
+        .execute(argThat((RestClientCall call) -> hasUrl(call, "ABC/repos")), eq(true));
+  }
+
+  @Test
+  public void givenFilter_whenFind_thenKeyAndNameAreMatchedIgnoringCase() throws IOException {
+    inventory.syncProjects(bitbucket);
+
+    assertEquals(List.of("DEF"), keys(inventory.find("PROJECT")));
+    assertEquals(List.of("ABC"), keys(inventory.find("ab")));
+    assertEquals(2, inventory.find(null).size());
+    assertEquals(0, inventory.get("ABC").getDetailsSyncedAt());
+
+    inventory.added("new", "New");
+    inventory.removed("abc");
+    assertEquals(List.of("DEF", "NEW"), keys(inventory.find("")));
+  }
+
+  private void mockDetails(String path, String response) throws IOException {
+    when(restClient.execute(argThat((RestClientCall call) -> hasUrl(call, path)), eq(true)))
+        .thenReturn(response);
+  }
+
+  private static boolean hasUrl(RestClientCall call, String path) {
+    return call != null && (PROJECTS_URL + "/" + path).equals(call.getUrl());
+  }
+
+  private static List<String> keys(List<BitbucketProjectSnapshot> projects) {
+    return projects.stream()
+        .map(BitbucketProjectSnapshot::getKey)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+}
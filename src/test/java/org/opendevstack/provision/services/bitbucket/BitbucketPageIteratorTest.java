@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.services.RestService;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+
+public class BitbucketPageIteratorTest {
+
+  private static final String URL = "http://bitbucket/rest/api/1.0/admin/groups";
+
+  private RestService service;
+
+  private RestClient restClient;
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    service = mock(RestService.class);
+    restClient = mock(RestClient.class);
+    when(service.getRestClient()).thenReturn(restClient);
+    when(service.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+    executor = Executors.newSingleThreadExecutor();
+
+    mockPage("0", "{\"values\":[\"a\",\"b\"],\"isLastPage\":false,\"nextPageStart\":2}");
+    mockPage("2", "{\"values\":[\"c\"],\"isLastPage\":true}");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void givenSeveralPages_whenIterate_thenAllValuesAreRead() throws IOException {
+    List<String> values = new ArrayList<>();
+
+    BitbucketPageIterator iterator = BitbucketPageIterator.of(service, URL).limit(2);
+    iterator.forEachValue(value -> values.add(value.asText()));
+
+    assertEquals(List.of("a", "b", "c"), values);
+    assertEquals(2, iterator.getPagesRead());
+  }
+
+  @Test
+  public void givenMatchOnFirstPage_whenAnyMatch_thenNextPageIsNotRequested() throws IOException {
+    BitbucketPageIterator iterator = BitbucketPageIterator.of(service, URL).filter("b").limit(2);
+
+    assertTrue(iterator.anyMatch(value -> "b".equals(value.asText())));
+
+    assertEquals(1, iterator.getPagesRead());
+    verify(restClient, times(1)).execute(any(RestClientCall.class));
+    verify(restClient).execute(argThat((RestClientCall call) -> hasQuery(call, "filter", "b")));
+  }
+
+  @Test
+  public void givenPrefetchExecutor_whenIterate_thenAllValuesAreRead() throws IOException {
+    List<String> values = new ArrayList<>();
+
+    BitbucketPageIterator.of(service, URL)
+        .limit(2)
+        .prefetch(executor)
+        .forEachValue(value -> values.add(value.asText()));
+
+    assertEquals(List.of("a", "b", "c"), values);
+    verify(restClient, times(2)).execute(any(RestClientCall.class));
+  }
+
+  @Test
+  public void givenMissingResponse_whenEmptyIfMissing_thenNoValues() throws IOException {
+    when(restClient.execute(any(RestClientCall.class))).thenReturn(null);
+    when(restClient.execute(any(RestClientCall.class), eq(true))).thenReturn(null);
+
+    BitbucketPageIterator iterator =
+        BitbucketPageIterator.of(service, URL).suppressErrorLogging().emptyIfMissing();
+
+    assertFalse(iterator.hasNext());
+    assertThrows(
+        IllegalArgumentException.class, () -> BitbucketPageIterator.of(service, URL).hasNext());
+  }
+
+  private void mockPage(String start, String response) throws IOException {
+    when(restClient.execute(argThat((RestClientCall call) -> hasQuery(call, "start", start))))
+        .thenReturn(response);
+  }
+
+  private static boolean hasQuery(RestClientCall call, String name, String value) {
+    return call != null && value.equals(call.getQueryParams().get(name));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.services.RestService;
+import org.opendevstack.provision.services.bitbucket.BitbucketProjectCleaner.Outcome;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.springframework.http.HttpMethod;
+
+public class BitbucketProjectCleanerTest {
+
+  private static final String PROJECT_URL = "http://bitbucket/rest/api/1.0/projects/TESTP";
+
+  private RestService bitbucket;
+
+  private RestClient restClient;
+
+  private BitbucketProjectCleaner cleaner;
+
+  @BeforeEach
+  public void setUp() {
+    bitbucket = mock(RestService.class);
+    restClient = mock(RestClient.class);
+    when(bitbucket.getRestClient()).thenReturn(restClient);
+    when(bitbucket.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+    when(bitbucket.httpDelete()).thenAnswer(invocation -> RestClientCall.delete());
+
+    cleaner = new BitbucketProjectCleaner();
+    cleaner.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    cleaner.setInitialBackoffInMillis(5);
+    cleaner.setMaxBackoffInMillis(20);
+  }
+
+  @Test
+  public void givenRepositories_whenDeleteRepositories_thenDeletesAreConfirmedByPolling()
+      throws Exception {
+    when(restClient.execute(argThat(call -> isDelete(call, "/repos/testp-gone"))))
+        .thenThrow(new HttpException(404, "not found"));
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn("{}")
+        .thenThrow(new HttpException(404, "not found"));
+
+    Map<String, TaskResult<Outcome>> results =
+        cleaner.deleteRepositories(bitbucket, PROJECT_URL, List.of("testp-be", "testp-gone"));
+
+    assertEquals(Outcome.DELETED, results.get("testp-be").getValue());
+    assertEquals(Outcome.ABSENT, results.get("testp-gone").getValue());
+    verify(restClient, times(2)).execute(any(RestClientCall.class), anyBoolean());
+  }
+
+  @Test
+  public void givenRepositoryStillExisting_whenDeadlinePassed_thenRepositoryIsLeftOver()
+      throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean())).thenReturn("{}");
+    when(restClient.execute(argThat(call -> isDelete(call, "/repos/testp-denied"))))
+        .thenThrow(new HttpException(403, "forbidden"));
+    cleaner.setDeadlineInSeconds(0);
+
+    Map<String, TaskResult<Outcome>> results =
+        cleaner.deleteRepositories(bitbucket, PROJECT_URL, List.of("testp-big", "testp-denied"));
+
+    assertFalse(results.get("testp-big").isSuccessful());
+    assertTrue(results.get("testp-big").getError().getMessage().contains("still exists"));
+    assertFalse(results.get("testp-denied").isSuccessful());
+  }
+
+  @Test
+  public void givenProject_whenDeleteProject_thenMissingProjectCountsAsDeleted() throws Exception {
+    assertTrue(cleaner.deleteProject(bitbucket, PROJECT_URL));
+
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenThrow(new HttpException(404, "not found"));
+    assertTrue(cleaner.deleteProject(bitbucket, PROJECT_URL));
+  }
+
+  @Test
+  public void givenProjectWithRepositories_whenDeleteProject_thenReturnsFalse() throws Exception {
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenThrow(new HttpException(409, "project has repositories"));
+
+    assertFalse(cleaner.deleteProject(bitbucket, PROJECT_URL));
+  }
+
+  private static boolean isDelete(RestClientCall call, String path) {
+    return call != null && call.getMethod() == HttpMethod.DELETE && call.getUrl().endsWith(path);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.model.bitbucket.Webhook;
+import org.opendevstack.provision.services.RestService;
+import org.opendevstack.provision.services.bitbucket.BitbucketWebhookManager.Outcome;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.springframework.http.HttpMethod;
+
+public class BitbucketWebhookManagerTest {
+
+  private static final String PROJECT_URL = "http://bitbucket/rest/api/1.0/projects/TESTP";
+
+  private static final String REPOSITORY_URL = PROJECT_URL + "/repos/testp-be";
+
+  private static final String HOOK_URL = "https://webhook-proxy-testp?trigger_secret=secret";
+
+  private RestService bitbucket;
+
+  private RestClient restClient;
+
+  private BitbucketWebhookManager manager;
+
+  private Webhook template;
+
+  @BeforeEach
+  public void setUp() {
+    bitbucket = mock(RestService.class);
+    restClient = mock(RestClient.class);
+    when(bitbucket.getRestClient()).thenReturn(restClient);
+    when(bitbucket.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+    when(bitbucket.httpPost()).thenAnswer(invocation -> RestClientCall.post());
+    when(bitbucket.httpPut()).thenAnswer(invocation -> RestClientCall.put());
+
+    manager = new BitbucketWebhookManager();
+    manager.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    manager.setRetryInitialBackoffInMillis(1);
+
+    template = new Webhook();
+    template.setName("Jenkins");
+    template.setActive(true);
+    template.setUrl(HOOK_URL);
+    template.setEvents(List.of("repo:refs_changed", "pr:merged"));
+  }
+
+  @Test
+  public void givenNewRepository_whenCreate_thenWebhookIsPostedAndVerified() throws Exception {
+    when(restClient.execute(argThat(call -> isCall(call, HttpMethod.POST, "/webhooks"))))
+        .thenAnswer(invocation -> ((RestClientCall) invocation.getArgument(0)).getBody());
+
+    assertEquals(Outcome.CREATED, manager.create(bitbucket, REPOSITORY_URL, template));
+
+    // a new repository has no webhooks, they are not read
+    verify(restClient, never()).execute(any(RestClientCall.class), anyBoolean());
+  }
+
+  @Test
+  public void givenFailedCreate_whenRetried_thenExistingWebhookIsNotCreatedTwice()
+      throws Exception {
+    when(restClient.execute(argThat(call -> isCall(call, HttpMethod.POST, "/webhooks"))))
+        .thenThrow(new HttpException(504, "gateway timeout"));
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn(webhooks(7, HOOK_URL, "repo:refs_changed\",\"pr:merged"));
+
+    assertEquals(Outcome.PRESENT, manager.create(bitbucket, REPOSITORY_URL, template));
+
+    verify(restClient, times(1)).execute(argThat(call -> call.getMethod() == HttpMethod.POST));
+  }
+
+  @Test
+  public void givenOutdatedWebhooks_whenEnsureAll_thenTheyAreUpdated() throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn(
+            webhooks(7, "https://webhook-proxy-testp?trigger_secret=old", "repo:refs_changed"));
+    when(restClient.execute(argThat(call -> isCall(call, HttpMethod.PUT, "/webhooks/7"))))
+        .thenAnswer(invocation -> ((RestClientCall) invocation.getArgument(0)).getBody());
+
+    Map<String, TaskResult<Outcome>> results =
+        manager.ensureAll(bitbucket, PROJECT_URL, List.of("testp-be", "testp-fe"), template);
+
+    assertEquals(Outcome.UPDATED, results.get("testp-be").getValue());
+    assertEquals(Outcome.UPDATED, results.get("testp-fe").getValue());
+    verify(restClient, never()).execute(argThat(call -> call.getMethod() == HttpMethod.POST));
+  }
+
+  @Test
+  public void givenOwnJenkinsWebhookOfTeam_whenEnsure_thenItIsLeftAlone() throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn(webhooks(7, "https://jenkins.team.example.com/hook", "repo:refs_changed"));
+    when(restClient.execute(argThat(call -> isCall(call, HttpMethod.POST, "/webhooks"))))
+        .thenAnswer(invocation -> ((RestClientCall) invocation.getArgument(0)).getBody());
+
+    assertNull(manager.update(bitbucket, REPOSITORY_URL, template));
+    assertEquals(Outcome.CREATED, manager.ensure(bitbucket, REPOSITORY_URL, template));
+
+    verify(restClient, never()).execute(argThat(call -> call.getMethod() == HttpMethod.PUT));
+  }
+
+  @Test
+  public void givenWebhookNotAsExpected_whenCreate_thenFailsAfterRetries() throws Exception {
+    Webhook other = new Webhook();
+    other.setUrl("https://other");
+    other.setEvents(template.getEvents());
+    when(restClient.execute(argThat(call -> isCall(call, HttpMethod.POST, "/webhooks"))))
+        .thenReturn(other);
+    manager.setRetryMaxAttempts(2);
+
+    assertThrows(Exception.class, () -> manager.create(bitbucket, REPOSITORY_URL, template));
+
+    verify(restClient, times(2)).execute(argThat(call -> call.getMethod() == HttpMethod.POST));
+  }
+
+  private static String webhooks(int id, String url, String events) {
+    return String.format(
+        "{\"isLastPage\":true,\"values\":[{\"id\":%d,\"name\":\"Jenkins\",\"url\":\"%s\","
+            + "\"active\":true,\"events\":[\"%s\"]}]}",
+        id, url, events);
+  }
+
+  private static boolean isCall(RestClientCall call, HttpMethod method, String path) {
+    return call != null && call.getMethod() == method && call.getUrl().endsWith(path);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.bitbucket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opendevstack.provision.model.OpenProjectData;
+import org.opendevstack.provision.model.bitbucket.Webhook;
+import org.opendevstack.provision.services.BitbucketAdapter;
+import org.opendevstack.provision.services.bitbucket.BitbucketWebhookManager.Outcome;
+import org.opendevstack.provision.services.bitbucket.WebhookRotationStatus.State;
+import org.opendevstack.provision.storage.IStorage;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+
+public class BitbucketWebhookRotationTest {
+
+  @TempDir Path storageDirectory;
+
+  private BitbucketAdapter bitbucketAdapter;
+
+  private BitbucketWebhookManager webhookManager;
+
+  private BitbucketWebhookRotation rotation;
+
+  @BeforeEach
+  public void setUp() {
+    bitbucketAdapter = mock(BitbucketAdapter.class);
+    webhookManager = mock(BitbucketWebhookManager.class);
+    IStorage storage = mock(IStorage.class);
+
+    Map<String, OpenProjectData> projects = new LinkedHashMap<>();
+    projects.put("TESTP", project("TESTP", "testp-be", "testp-fe"));
+    projects.put("OTHER", project("OTHER", "other-be"));
+    when(storage.listProjectHistory()).thenReturn(projects);
+    when(storage.getStoragePath()).thenReturn(storageDirectory.toString());
+
+    Webhook template = new Webhook();
+    template.setUrl("https://webhook-proxy?trigger_secret=rotated");
+    template.setEvents(List.of("repo:refs_changed"));
+    when(bitbucketAdapter.webhookTemplate(any())).thenReturn(template);
+    when(bitbucketAdapter.getAdapterApiUri()).thenReturn("http://bitbucket/projects");
+
+    rotation = new BitbucketWebhookRotation();
+    rotation.setBitbucketAdapter(bitbucketAdapter);
+    rotation.setWebhookManager(webhookManager);
+    rotation.setStorage(storage);
+    rotation.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    rotation.setRepositoriesPerSecond(1000);
+  }
+
+  @Test
+  public void givenProjects_whenRotate_thenAllRepositoriesAreUpdated() throws Exception {
+    when(webhookManager.update(eq(bitbucketAdapter), endsWith("/testp-be"), any()))
+        .thenReturn(Outcome.UPDATED);
+    when(webhookManager.update(eq(bitbucketAdapter), endsWith("/testp-fe"), any()))
+        .thenReturn(Outcome.PRESENT);
+
+    WebhookRotationStatus status = rotation.start(null, false);
+
+    assertEquals(State.DONE, status.getState());
+    assertEquals(3, status.getTotal());
+    assertEquals(3, status.getCompleted());
+    assertEquals(1, status.getUpdated());
+    assertEquals(1, status.getUnchanged());
+    assertEquals(1, status.getWithoutWebhook());
+    assertFalse(progressFile().exists());
+  }
+
+  @Test
+  public void givenFailedRepository_whenStartedAgain_thenOnlyItIsUpdated() throws Exception {
+    when(webhookManager.update(any(), any(), any())).thenReturn(Outcome.UPDATED);
+    when(webhookManager.update(eq(bitbucketAdapter), endsWith("/other-be"), any()))
+        .thenThrow(new IOException("bitbucket unavailable"))
+        .thenReturn(Outcome.UPDATED);
+
+    WebhookRotationStatus failed = rotation.start(null, false);
+
+    assertEquals(State.FAILED, failed.getState());
+    assertEquals(Map.of("OTHER/other-be", "bitbucket unavailable"), failed.getFailures());
+    assertTrue(progressFile().exists());
+
+    WebhookRotationStatus resumed = rotation.start(null, false);
+
+    assertEquals(State.DONE, resumed.getState());
+    assertEquals(2, resumed.getResumed());
+    assertEquals(1, resumed.getUpdated());
+    verify(webhookManager, times(4)).update(any(), any(), any());
+  }
+
+  @Test
+  public void givenOwnPool_whenStart_thenNoRepositoryIsUpdatedInTheCallingThread()
+      throws Exception {
+    rotation.setParallelTaskRunner(null);
+    rotation.setMaxParallelism(2);
+    CountDownLatch release = new CountDownLatch(1);
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    when(webhookManager.update(any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              threads.add(Thread.currentThread());
+              release.await(10, TimeUnit.SECONDS);
+              return Outcome.UPDATED;
+            });
+
+    try {
+      WebhookRotationStatus status = rotation.start(null, false);
+
+      assertEquals(State.RUNNING, status.getState());
+      release.countDown();
+      for (int i = 0; i < 100 && status.getState() == State.RUNNING; i++) {
+        Thread.sleep(50);
+      }
+      assertEquals(State.DONE, status.getState());
+      assertFalse(threads.contains(Thread.currentThread()));
+      assertTrue(threads.size() <= 2);
+    } finally {
+      rotation.stop();
+    }
+  }
+
+  private File progressFile() {
+    return new File(storageDirectory.toFile(), BitbucketWebhookRotation.PROGRESS_FILE);
+  }
+
+  private static OpenProjectData project(String projectKey, String... slugs) {
+    OpenProjectData project = new OpenProjectData();
+    project.setProjectKey(projectKey);
+    project.setRepositories(new HashMap<>());
+    for (String slug : slugs) {
+      project.getRepositories().put(slug, new HashMap<>());
+    }
+    return project;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.model.jira.Component;
+import org.opendevstack.provision.services.jira.JiraComponentCreator.Outcome;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+
+public class JiraComponentCreatorTest {
+
+  private JiraRestService jira;
+
+  private RestClient restClient;
+
+  private JiraComponentCreator creator;
+
+  @BeforeEach
+  public void setUp() {
+    jira = mock(JiraRestService.class);
+    restClient = mock(RestClient.class);
+    when(jira.getRestClient()).thenReturn(restClient);
+    when(jira.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+    when(jira.httpPost()).thenAnswer(invocation -> RestClientCall.post());
+
+    creator = new JiraComponentCreator();
+    creator.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    creator.setJiraUri("http://jira");
+    creator.setJiraApiPath("/rest/api/latest");
+  }
+
+  @Test
+  public void givenExistingComponent_whenCreateComponents_thenOnlyMissingOnesArePosted()
+      throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn(List.of(component("technology-be")));
+
+    Map<String, TaskResult<Outcome>> results =
+        creator.createComponents(
+            jira, "TESTP", List.of(component("Technology-be"), component("Technology-fe")));
+
+    assertEquals(Outcome.EXISTS, results.get("Technology-be").getValue());
+    assertEquals(Outcome.CREATED, results.get("Technology-fe").getValue());
+    verify(restClient, times(1)).execute(any(RestClientCall.class));
+  }
+
+  @Test
+  public void givenUnauthorized_whenCreateComponents_thenRemainingComponentsAreSkipped()
+      throws Exception {
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenThrow(new HttpException(401, "unauthorized"));
+
+    Map<String, TaskResult<Outcome>> results =
+        creator.createComponents(
+            jira,
+            "TESTP",
+            List.of(component("Technology-a"), component("Technology-b"), component("c")));
+
+    assertEquals(3, results.size());
+    results.values().forEach(result -> assertFalse(result.isSuccessful()));
+    verify(restClient, times(1)).execute(any(RestClientCall.class));
+  }
+
+  private static Component component(String name) {
+    Component component = new Component();
+    component.setName(name);
+    component.setProject("TESTP");
+    return component;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.adapter.exception.AdapterException;
+
+public class JiraDirectoryCacheTest {
+
+  private JiraDirectoryCache cache;
+
+  private AtomicInteger calls;
+
+  @BeforeEach
+  public void setUp() {
+    cache = new JiraDirectoryCache();
+    cache.init();
+    calls = new AtomicInteger();
+  }
+
+  @Test
+  public void givenExistingGroup_whenCheckedRepeatedly_thenJiraIsAskedOnce() {
+    for (int i = 0; i < 5; i++) {
+      assertTrue(cache.exists(JiraDirectoryCache.TYPE_GROUP, "Keyusers", answer(true)));
+    }
+
+    assertEquals(1, calls.get());
+    assertEquals(0.8, cache.getHitRatio(), 0.001);
+  }
+
+  @Test
+  public void givenMissingUser_whenInvalidated_thenJiraIsAskedAgain() {
+    assertFalse(cache.exists(JiraDirectoryCache.TYPE_USER, "clemens", answer(false)));
+    assertFalse(cache.exists(JiraDirectoryCache.TYPE_USER, "CLEMENS", answer(false)));
+    assertEquals(1, calls.get());
+
+    cache.invalidate(JiraDirectoryCache.TYPE_USER, "clemens");
+    assertTrue(cache.exists(JiraDirectoryCache.TYPE_USER, "clemens", answer(true)));
+    assertEquals(2, calls.get());
+
+    // same name, other type
+    assertTrue(cache.exists(JiraDirectoryCache.TYPE_GROUP, "clemens", answer(true)));
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void givenFailingLookup_whenExists_thenFailureIsNotCached() {
+    assertThrows(
+        AdapterException.class,
+        () ->
+            cache.exists(
+                JiraDirectoryCache.TYPE_ROLE,
+                "10100",
+                () -> {
+                  throw new AdapterException(new RuntimeException("jira down"));
+                }));
+
+    assertTrue(cache.exists(JiraDirectoryCache.TYPE_ROLE, "10100", answer(true)));
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void givenDisabledCache_whenExists_thenJiraIsAlwaysAsked() {
+    cache.setEnabled(false);
+
+    cache.exists(JiraDirectoryCache.TYPE_PERMISSION_SCHEME, "10000", answer(true));
+    cache.exists(JiraDirectoryCache.TYPE_PERMISSION_SCHEME, "10000", answer(true));
+
+    assertEquals(2, calls.get());
+  }
+
+  private Supplier<Boolean> answer(boolean exists) {
+    return () -> {
+      calls.incrementAndGet();
+      return exists;
+    };
+  }
+}
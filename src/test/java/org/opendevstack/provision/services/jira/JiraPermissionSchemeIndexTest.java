@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.model.jira.Holder;
+import org.opendevstack.provision.model.jira.Permission;
+import org.opendevstack.provision.model.jira.PermissionScheme;
+import org.opendevstack.provision.model.jira.PermissionSchemeResponse;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+
+public class JiraPermissionSchemeIndexTest {
+
+  private static final String SCHEMES =
+      "{\"permissionSchemes\":["
+          + "{\"id\":10200,\"name\":\"B PERMISSION SCHEME\",\"permissions\":["
+          + "{\"id\":1,\"holder\":{\"type\":\"group\",\"parameter\":\"b-users\"},"
+          + "\"permission\":\"BROWSE_PROJECTS\"}]},"
+          + "{\"id\":10100,\"name\":\"A PERMISSION SCHEME\",\"permissions\":["
+          + "{\"id\":2,\"holder\":{\"type\":\"group\",\"parameter\":\"A-Admins\"},"
+          + "\"permission\":\"ADMINISTER_PROJECTS\"},"
+          + "{\"id\":3,\"holder\":{\"type\":\"group\",\"parameter\":\"a-users\"},"
+          + "\"permission\":\"BROWSE_PROJECTS\"}]}]}";
+
+  private JiraRestService jira;
+
+  private RestClient restClient;
+
+  private JiraPermissionSchemeIndex index;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    jira = mock(JiraRestService.class);
+    restClient = mock(RestClient.class);
+    when(jira.getRestClient()).thenReturn(restClient);
+    when(jira.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+    when(restClient.execute(any(RestClientCall.class))).thenReturn(SCHEMES);
+
+    index = new JiraPermissionSchemeIndex();
+    index.setJiraUri("http://jira");
+    index.setJiraApiPath("/rest/api/latest");
+  }
+
+  @Test
+  public void givenSameGrantsInOtherOrder_whenHash_thenHashIsEqual() {
+    PermissionScheme first =
+        scheme(
+            "A", permission("ADMINISTER_PROJECTS", "a-admins"), permission("BROWSE_PROJECTS", "x"));
+    PermissionScheme second =
+        scheme(
+            "B", permission("BROWSE_PROJECTS", "x"), permission("ADMINISTER_PROJECTS", "A-ADMINS"));
+    second.setDescription("other description");
+
+    assertEquals(JiraPermissionSchemeIndex.hash(first), JiraPermissionSchemeIndex.hash(second));
+    assertNotEquals(
+        JiraPermissionSchemeIndex.hash(first),
+        JiraPermissionSchemeIndex.hash(scheme("A", permission("ADMINISTER_PROJECTS", "x"))));
+  }
+
+  @Test
+  public void givenExistingSchemeWithSameGrants_whenFindOrCreate_thenSchemeIsReused()
+      throws Exception {
+    AtomicInteger creations = new AtomicInteger();
+    PermissionScheme scheme =
+        scheme(
+            "NEWP PERMISSION SCHEME",
+            permission("BROWSE_PROJECTS", "a-users"),
+            permission("ADMINISTER_PROJECTS", "a-admins"));
+
+    PermissionScheme result =
+        index.findOrCreate(
+            jira,
+            scheme,
+            "NEWP",
+            () -> {
+              creations.incrementAndGet();
+              return null;
+            });
+
+    assertEquals("10100", result.getId());
+    assertEquals(0, creations.get());
+    assertEquals(2, index.size());
+    assertEquals(1, index.getReused());
+  }
+
+  @Test
+  public void givenNewGrants_whenFindOrCreateTwice_thenSchemeIsCreatedOnce() throws Exception {
+    AtomicInteger creations = new AtomicInteger();
+    PermissionScheme scheme = scheme("NEWP", permission("BROWSE_PROJECTS", "newp-users"));
+
+    for (int i = 0; i < 2; i++) {
+      PermissionScheme result =
+          index.findOrCreate(
+              jira,
+              scheme,
+              "NEWP",
+              () -> {
+                creations.incrementAndGet();
+                PermissionScheme created = new PermissionScheme();
+                created.setId("10300");
+                return created;
+              });
+      assertEquals("10300", result.getId());
+    }
+
+    assertEquals(1, creations.get());
+    assertEquals(1, index.getCreated());
+  }
+
+  @Test
+  public void givenIndexedSchemeDeletedInJira_whenFindOrCreate_thenSchemeIsCreated()
+      throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenThrow(new HttpException(404, "not found"));
+    PermissionScheme scheme = scheme("B", permission("BROWSE_PROJECTS", "b-users"));
+
+    PermissionScheme result =
+        index.findOrCreate(
+            jira,
+            scheme,
+            "NEWP",
+            () -> {
+              PermissionScheme created = new PermissionScheme();
+              created.setId("10400");
+              return created;
+            });
+
+    assertEquals("10400", result.getId());
+  }
+
+  @Test
+  public void givenDisabledIndex_whenFindOrCreate_thenJiraIsNotAsked() throws Exception {
+    index.setEnabled(false);
+    PermissionScheme created = new PermissionScheme();
+
+    assertSame(
+        created,
+        index.findOrCreate(
+            jira, scheme("B", permission("BROWSE_PROJECTS", "b-users")), "B", () -> created));
+    verifyNoInteractions(restClient);
+  }
+
+  @Test
+  public void givenSchemeOfOtherProject_whenOtherProjectsUsing_thenJiraIsAskedPerProject()
+      throws Exception {
+    index.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenReturn("[{\"key\":\"A\"},{\"key\":\"B\"},{\"key\":\"C\"},{\"key\":\"D\"}]");
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenAnswer(
+            invocation -> {
+              String url = invocation.<RestClientCall>getArgument(0).getUrl();
+              if (url.contains("/project/D/")) {
+                throw new HttpException(404, "not found");
+              }
+              PermissionSchemeResponse response = new PermissionSchemeResponse();
+              response.setId(url.contains("/project/B/") ? 10100 : 10200);
+              return response;
+            });
+
+    assertEquals(Set.of("B"), index.otherProjectsUsing(jira, "10100", "a"));
+  }
+
+  @Test
+  public void givenUnreadableProject_whenOtherProjectsUsing_thenIOExceptionIsThrown()
+      throws Exception {
+    index.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    when(restClient.execute(any(RestClientCall.class))).thenReturn("[{\"key\":\"B\"}]");
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenThrow(new HttpException(500, "failure"));
+
+    assertThrows(IOException.class, () -> index.otherProjectsUsing(jira, "10100", "A"));
+  }
+
+  @Test
+  public void givenSchemeCreatedThroughIndex_whenOtherProjectsUsing_thenProjectsAreNotListed()
+      throws Exception {
+    PermissionScheme scheme = scheme("NEWP", permission("BROWSE_PROJECTS", "shared-users"));
+    for (String projectKey : List.of("newp", "other")) {
+      index.findOrCreate(
+          jira,
+          scheme,
+          projectKey,
+          () -> {
+            PermissionScheme created = new PermissionScheme();
+            created.setId("10300");
+            return created;
+          });
+    }
+
+    assertEquals(Set.of("OTHER"), index.otherProjectsUsing(jira, "10300", "NEWP"));
+    // only the permission schemes were listed, no project
+    verify(restClient, times(1)).execute(any(RestClientCall.class));
+  }
+
+  @Test
+  public void givenSchemeUsedByOtherProject_whenDeleteIfUnused_thenSchemeIsKept()
+      throws Exception {
+    AtomicInteger deletions = new AtomicInteger();
+    PermissionScheme scheme = scheme("NEWP", permission("BROWSE_PROJECTS", "shared-users"));
+    for (String projectKey : List.of("NEWP", "OTHER")) {
+      index.findOrCreate(
+          jira,
+          scheme,
+          projectKey,
+          () -> {
+            PermissionScheme created = new PermissionScheme();
+            created.setId("10300");
+            return created;
+          });
+    }
+
+    assertEquals(
+        Set.of("OTHER"), index.deleteIfUnused(jira, "10300", "NEWP", deletions::incrementAndGet));
+    assertEquals(0, deletions.get());
+
+    // the last user deletes the scheme, it is no longer handed out
+    assertTrue(index.deleteIfUnused(jira, "10300", "OTHER", deletions::incrementAndGet).isEmpty());
+    assertEquals(1, deletions.get());
+    assertEquals(2, index.size());
+  }
+
+  private static PermissionScheme scheme(String name, Permission... permissions) {
+    PermissionScheme scheme = new PermissionScheme();
+    scheme.setName(name);
+    scheme.setDescription(name);
+    scheme.setPermissions(List.of(permissions));
+    return scheme;
+  }
+
+  private static Permission permission(String permission, String group) {
+    Holder holder = new Holder();
+    holder.setType("group");
+    holder.setParameter(group);
+    Permission result = new Permission();
+    result.setHolder(holder);
+    result.setPermission(permission);
+    return result;
+  }
+}
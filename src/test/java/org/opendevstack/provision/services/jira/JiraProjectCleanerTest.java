@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.model.jira.Component;
+import org.opendevstack.provision.services.jira.JiraProjectCleaner.Outcome;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.concurrent.TaskResult;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+import org.springframework.http.HttpMethod;
+
+public class JiraProjectCleanerTest {
+
+  private JiraRestService jira;
+
+  private RestClient restClient;
+
+  private ExecutorService executor;
+
+  private JiraProjectCleaner cleaner;
+
+  @BeforeEach
+  public void setUp() {
+    jira = mock(JiraRestService.class);
+    restClient = mock(RestClient.class);
+    when(jira.getRestClient()).thenReturn(restClient);
+    when(jira.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+    when(jira.httpDelete()).thenAnswer(invocation -> RestClientCall.delete());
+
+    executor = Executors.newCachedThreadPool();
+    cleaner = new JiraProjectCleaner();
+    cleaner.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    cleaner.setExecutor(executor);
+    cleaner.setJiraUri("http://jira");
+    cleaner.setJiraApiPath("/rest/api/latest");
+    cleaner.setInitialBackoffInMillis(5);
+    cleaner.setMaxBackoffInMillis(20);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void givenComponents_whenDeleteComponents_thenOnlyExistingOnesAreDeleted()
+      throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn(List.of(component("10", "technology-be"), component("11", "Technology-fe")));
+    when(restClient.execute(argThat(call -> call != null && call.getUrl().endsWith("/11"))))
+        .thenThrow(new HttpException(403, "forbidden"));
+
+    Map<String, TaskResult<Outcome>> results =
+        cleaner.deleteComponents(
+            jira, "TESTP", List.of("Technology-be", "Technology-fe", "Technology-gone"));
+
+    assertEquals(Outcome.DELETED, results.get("Technology-be").getValue());
+    assertFalse(results.get("Technology-fe").isSuccessful());
+    assertEquals(Outcome.ABSENT, results.get("Technology-gone").getValue());
+    verify(restClient, times(2)).execute(argThat(call -> call.getMethod() == HttpMethod.DELETE));
+  }
+
+  @Test
+  public void givenSlowDelete_whenProjectIsGone_thenDeleteProjectReturnsBeforeTheDelete()
+      throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenAnswer(
+            invocation -> {
+              release.await();
+              return null;
+            });
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn("{}")
+        .thenThrow(new HttpException(404, "not found"));
+
+    try {
+      assertTrue(cleaner.deleteProject(jira, "TESTP"));
+    } finally {
+      release.countDown();
+    }
+    verify(restClient, times(2)).execute(any(RestClientCall.class), anyBoolean());
+  }
+
+  @Test
+  public void givenProjectStillExisting_whenDeadlinePassed_thenDeleteProjectReturnsFalse()
+      throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenAnswer(
+            invocation -> {
+              release.await();
+              return null;
+            });
+    when(restClient.execute(any(RestClientCall.class), anyBoolean())).thenReturn("{}");
+    cleaner.setDeadlineInSeconds(0);
+
+    try {
+      assertFalse(cleaner.deleteProject(jira, "TESTP"));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void givenDeniedDelete_whenDeleteProject_thenReturnsFalse() throws Exception {
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenThrow(new HttpException(403, "forbidden"));
+    when(restClient.execute(any(RestClientCall.class), anyBoolean())).thenReturn("{}");
+
+    assertFalse(cleaner.deleteProject(jira, "TESTP"));
+  }
+
+  private static Component component(String id, String name) {
+    Component component = new Component();
+    component.setId(id);
+    component.setName(name);
+    return component;
+  }
+}
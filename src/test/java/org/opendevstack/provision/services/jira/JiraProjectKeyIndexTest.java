@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.util.exception.HttpException;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+
+public class JiraProjectKeyIndexTest {
+
+  private JiraRestService jira;
+
+  private RestClient restClient;
+
+  private JiraProjectKeyIndex index;
+
+  @BeforeEach
+  public void setUp() {
+    jira = mock(JiraRestService.class);
+    restClient = mock(RestClient.class);
+    when(jira.getRestClient()).thenReturn(restClient);
+    when(jira.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+
+    index = new JiraProjectKeyIndex();
+    index.setJiraUri("http://jira");
+    index.setJiraApiPath("/rest/api/latest");
+  }
+
+  @Test
+  public void givenExistingKey_whenExistsTwice_thenJiraIsAskedOnce() throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn("{\"id\":\"10000\",\"key\":\"TESTP\"}");
+
+    assertTrue(index.exists(jira, "testp", true));
+    assertTrue(index.exists(jira, "TESTP", false));
+
+    verify(restClient, times(1)).execute(any(RestClientCall.class), anyBoolean());
+    assertEquals(1, index.getLookups());
+    assertEquals(1, index.getCacheHits());
+  }
+
+  @Test
+  public void givenUnknownKey_whenExists_thenAbsenceIsCachedOnlyIfAllowed() throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenThrow(new HttpException(404, "not found"));
+
+    assertFalse(index.exists(jira, "NEWP", true));
+    assertFalse(index.exists(jira, "NEWP", true));
+    verify(restClient, times(1)).execute(any(RestClientCall.class), anyBoolean());
+
+    // before a creation jira is always asked again
+    assertFalse(index.exists(jira, "NEWP", false));
+    verify(restClient, times(2)).execute(any(RestClientCall.class), anyBoolean());
+  }
+
+  @Test
+  public void givenNoProjectKey_whenExists_thenJiraIsNotAsked() throws Exception {
+    assertFalse(index.exists(jira, "my project", true));
+    assertFalse(index.exists(jira, "TESTP/../x", true));
+    assertFalse(index.exists(jira, "10000", true));
+    assertFalse(index.exists(jira, "", true));
+
+    verify(restClient, never()).execute(any(RestClientCall.class), anyBoolean());
+  }
+
+  @Test
+  public void givenProjectWithOtherKey_whenExists_thenKeyDoesNotExist() throws Exception {
+    // jira resolves a former key of a renamed project to the project
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn("{\"id\":\"10000\",\"key\":\"NEWKEY\"}");
+
+    assertFalse(index.exists(jira, "OLDKEY", true));
+    assertTrue(index.keys().isEmpty());
+  }
+
+  @Test
+  public void givenServerError_whenExists_thenExceptionIsThrown() throws Exception {
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenThrow(new HttpException(500, "server error"));
+
+    assertThrows(HttpException.class, () -> index.exists(jira, "TESTP", true));
+  }
+
+  @Test
+  public void givenProjectList_whenRefresh_thenIndexIsReplaced() throws Exception {
+    index.added("GONE");
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenReturn(
+            "[{\"expand\":\"description\",\"key\":\"abc\",\"name\":\"ABC\","
+                + "\"avatarUrls\":{\"16x16\":\"x\"},\"projectCategory\":{\"key\":\"no\"}},"
+                + "{\"id\":\"2\",\"key\":\"DEF\",\"archived\":false}]");
+
+    Set<String> keys = index.refresh(jira);
+
+    assertEquals(Set.of("ABC", "DEF"), keys);
+    assertEquals(2, index.size());
+    assertTrue(index.isFresh());
+    assertTrue(index.exists(jira, "def", false));
+    verify(restClient, never()).execute(any(RestClientCall.class), anyBoolean());
+  }
+
+  @Test
+  public void givenEmptyResponse_whenParseKeys_thenNoKeys() throws Exception {
+    assertTrue(JiraProjectKeyIndex.parseKeys("").isEmpty());
+    assertTrue(JiraProjectKeyIndex.parseKeys("[]").isEmpty());
+  }
+}
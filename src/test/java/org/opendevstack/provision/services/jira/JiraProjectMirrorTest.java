@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.services.jira;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.model.OpenProjectData;
+import org.opendevstack.provision.model.jira.JiraProjectDrift;
+import org.opendevstack.provision.model.jira.PermissionSchemeResponse;
+import org.opendevstack.provision.util.concurrent.ParallelTaskRunner;
+import org.opendevstack.provision.util.rest.RestClient;
+import org.opendevstack.provision.util.rest.RestClientCall;
+
+public class JiraProjectMirrorTest {
+
+  private static final String PROJECTS =
+      "[{\"id\":\"10000\",\"key\":\"ABC\",\"name\":\"Abc\",\"lead\":{\"name\":\"jdoe\"}},"
+          + "{\"id\":\"10001\",\"key\":\"DEF\",\"name\":\"Def\",\"lead\":{\"name\":\"jane\"}}]";
+
+  private JiraRestService jira;
+
+  private RestClient restClient;
+
+  private JiraProjectMirror mirror;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    jira = mock(JiraRestService.class);
+    restClient = mock(RestClient.class);
+    when(jira.getRestClient()).thenReturn(restClient);
+    when(jira.httpGet()).thenAnswer(invocation -> RestClientCall.get());
+    when(restClient.execute(any(RestClientCall.class))).thenReturn(PROJECTS);
+    when(restClient.execute(any(RestClientCall.class), anyBoolean()))
+        .thenReturn(permissionScheme(10100));
+
+    mirror = new JiraProjectMirror();
+    mirror.setJiraUri("http://jira");
+    mirror.setJiraApiPath("/rest/api/latest");
+    mirror.setParallelTaskRunner(new ParallelTaskRunner(Runnable::run));
+    mirror.setJiraRestService(jira);
+  }
+
+  @Test
+  public void givenProjectList_whenSync_thenMirrorContainsProjects() throws Exception {
+    assertFalse(mirror.isFresh());
+
+    assertEquals(2, mirror.sync());
+
+    assertTrue(mirror.isFresh());
+    assertEquals(2, mirror.size());
+    assertEquals("jdoe", mirror.get("abc").getLead());
+    assertEquals("10001", mirror.get("DEF").getId());
+    assertEquals("10100", mirror.get("DEF").getPermissionSchemeId());
+    assertEquals(Set.of("ABC", "DEF"), mirror.projectsUsingPermissionScheme("10100"));
+  }
+
+  @Test
+  public void givenChangedProjectList_whenSyncAgain_thenOnlyChangesAreApplied() throws Exception {
+    mirror.sync();
+
+    when(restClient.execute(any(RestClientCall.class)))
+        .thenReturn(
+            "[{\"id\":\"10000\",\"key\":\"ABC\",\"name\":\"Abc renamed\","
+                + "\"lead\":{\"name\":\"jdoe\"}}]");
+
+    // one renamed, one removed
+    assertEquals(2, mirror.sync());
+    assertEquals("Abc renamed", mirror.get("ABC").getName());
+    assertNull(mirror.get("DEF"));
+  }
+
+  @Test
+  public void givenRefreshLimit_whenSync_thenOnlyOldestPermissionSchemesAreRead()
+      throws Exception {
+    mirror.setPermissionSchemeRefreshPerSync(1);
+
+    mirror.sync();
+    verify(restClient, times(1)).execute(any(RestClientCall.class), anyBoolean());
+    long withScheme =
+        mirror.projects().stream().filter(p -> p.getPermissionSchemeId() != null).count();
+    assertEquals(1, withScheme);
+
+    mirror.sync();
+    verify(restClient, times(2)).execute(any(RestClientCall.class), anyBoolean());
+    assertEquals(2, mirror.projectsUsingPermissionScheme("10100").size());
+  }
+
+  @Test
+  public void givenStoredProjects_whenDrift_thenDifferencesAreReported() throws Exception {
+    mirror.sync();
+
+    OpenProjectData same = project("ABC", "Abc", true);
+    OpenProjectData otherScheme = project("DEF", "Def", true);
+    otherScheme.setSpecialPermissionSet(true);
+    otherScheme.setSpecialPermissionSchemeId(99);
+    OpenProjectData missing = project("GHI", "Ghi", true);
+    OpenProjectData withoutJira = project("JKL", "Jkl", false);
+
+    Map<String, JiraProjectDrift.Type> drift =
+        mirror.drift(List.of(same, otherScheme, missing, withoutJira)).stream()
+            .collect(Collectors.toMap(JiraProjectDrift::getProjectKey, JiraProjectDrift::getType));
+
+    assertEquals(
+        Map.of(
+            "DEF", JiraProjectDrift.Type.PERMISSION_SCHEME,
+            "GHI", JiraProjectDrift.Type.MISSING_IN_JIRA),
+        drift);
+  }
+
+  private static OpenProjectData project(String key, String name, boolean bugtrackerSpace) {
+    OpenProjectData project = new OpenProjectData();
+    project.setProjectKey(key);
+    project.setProjectName(name);
+    project.setBugtrackerSpace(bugtrackerSpace);
+    return project;
+  }
+
+  private static PermissionSchemeResponse permissionScheme(int id) {
+    PermissionSchemeResponse scheme = new PermissionSchemeResponse();
+    scheme.setId(id);
+    return scheme;
+  }
+}
@@ -26,6 +26,9 @@ public class JiraProjectPropertyUpdaterTest {
   @Value("${jira.uri}")
   private String jiraUri;
 
+  @Value("${jira.api.path}")
+  private String jiraApiPath;
+
   @Autowired private JiraProjectPropertyUpdater projectPropertyUpdater;
 
   @Test
@@ -71,6 +74,7 @@ public class JiraProjectPropertyUpdaterTest {
     JiraRestService jiraRestService = mock(JiraRestService.class);
     RestClient jiraClient = mock(RestClient.class);
     RestClientCall restClientCall = mock(RestClientCall.class);
+    RestClientCall getCall = mockGetCall(jiraRestService);
     when(jiraRestService.httpPost()).thenReturn(restClientCall);
     when(restClientCall.url(anyString())).thenReturn(restClientCall);
     when(restClientCall.body(anyString())).thenReturn(restClientCall);
@@ -101,6 +105,82 @@ public class JiraProjectPropertyUpdaterTest {
     verify(restClientCall, times(1))
         .header(eq(JiraProjectPropertyUpdater.HTTP_HEADERS_CONTENT_TYPE_JSON_AND_ACCEPT_JSON));
     verify(jiraClient, times(1)).execute(restClientCall);
+    verify(jiraClient, times(1)).execute(getCall, true);
+  }
+
+  @Test
+  public void givenSetPropertyInJiraProject_whenValueIsUnchanged_thenPropertyIsNotWritten()
+      throws IOException {
+
+    JiraRestService jiraRestService = mock(JiraRestService.class);
+    RestClient jiraClient = mock(RestClient.class);
+    when(jiraRestService.getRestClient()).thenReturn(jiraClient);
+    RestClientCall getCall = mockGetCall(jiraRestService);
+    when(jiraClient.execute(getCall, true))
+        .thenReturn("{\"key\":\"WEBHOOK_PROXY.URL\",\"value\":{\"url\":\"VALUE\"}}");
+
+    JiraProjectProperty property =
+        new JiraProjectProperty("url", jiraUri + "/property", "{\"url\": \"VALUE\"}", true);
+
+    assertEquals(
+        JiraProjectPropertyUpdater.WriteOutcome.UNCHANGED,
+        projectPropertyUpdater.writeProperty(jiraRestService, property));
+    verify(jiraRestService, never()).httpPut();
+  }
+
+  @Test
+  public void givenPropertiesApiEndpoint_whenResolveProperty_thenPropertyKeyIsReadFromJiraApi() {
+    JiraProjectProperty property =
+        projectPropertyUpdater.resolveProperty(
+            "PROJECTKEY",
+            PROJECT_TEMPLATE_NAME,
+            "VALUE",
+            UTEST_JIRA_PROPERTY_EXAMPLE_ENDPOINT,
+            UTEST_JIRA_PROPERTY_EXAMPLE_PAYLOAD);
+
+    assertEquals("WEBHOOK_PROXY.URL", property.getName());
+    assertEquals(
+        jiraUri + jiraApiPath + "/project/PROJECTKEY/properties/WEBHOOK_PROXY.URL",
+        property.getReadEndpoint());
+  }
+
+  @Test
+  public void givenOtherEndpoint_whenWriteProperty_thenPropertyIsWrittenWithoutRead()
+      throws IOException {
+
+    JiraRestService jiraRestService = mock(JiraRestService.class);
+    RestClient jiraClient = mock(RestClient.class);
+    when(jiraRestService.getRestClient()).thenReturn(jiraClient);
+    when(jiraRestService.httpPost()).thenAnswer(invocation -> RestClientCall.post());
+
+    JiraProjectProperty property =
+        new JiraProjectProperty("plugin", jiraUri + "/plugin", null, "{}", false);
+
+    assertEquals(
+        JiraProjectPropertyUpdater.WriteOutcome.WRITTEN,
+        projectPropertyUpdater.writeProperty(jiraRestService, property));
+    verify(jiraRestService, never()).httpGet();
+    verify(jiraClient, times(1)).execute(any(RestClientCall.class));
+  }
+
+  @Test
+  public void givenCurrentValue_whenIsSameValue_thenJsonAndTextAreCompared() {
+    String current = "{\"key\":\"k\",\"value\":{\"a\":1,\"b\":\"x\"}}";
+
+    assertTrue(JiraProjectPropertyUpdater.isSameValue(current, "{\"b\":\"x\", \"a\":1}"));
+    assertFalse(JiraProjectPropertyUpdater.isSameValue(current, "{\"a\":2,\"b\":\"x\"}"));
+    assertFalse(JiraProjectPropertyUpdater.isSameValue(null, "{}"));
+    assertTrue(
+        JiraProjectPropertyUpdater.isSameValue(
+            "{\"key\":\"k\",\"value\":\"not json\"}", "not json"));
+  }
+
+  private static RestClientCall mockGetCall(JiraRestService jiraRestService) {
+    RestClientCall getCall = mock(RestClientCall.class);
+    when(jiraRestService.httpGet()).thenReturn(getCall);
+    when(getCall.url(anyString())).thenReturn(getCall);
+    when(getCall.returnType(any())).thenReturn(getCall);
+    return getCall;
   }
 
   @Test
@@ -20,10 +20,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.opendevstack.provision.adapter.ISCMAdapter.URL_TYPE;
 import org.opendevstack.provision.model.AboutChangesData;
 import org.opendevstack.provision.model.OpenProjectData;
@@ -139,6 +141,26 @@ public class LocalStorageTest {
     assertEquals("Test", history.values().iterator().next().getProjectName());
   }
 
+  @Test
+  public void listProjectHistoryWithProjectsStoredInTheSameSecond(@TempDir Path storage)
+      throws Exception {
+    localStorage.setLocalStoragePath(storage.toString());
+    for (String key : new String[] {"BULK1", "BULK2"}) {
+      OpenProjectData project = new OpenProjectData();
+      project.setProjectKey(key);
+      project.setProjectName(key.toLowerCase());
+      localStorage.writeFile(
+          project, localStorage.getLocalStoragePath() + "20200101100000-" + key + ".txt");
+    }
+
+    Map<String, OpenProjectData> history = localStorage.listProjectHistory();
+
+    assertEquals(2, history.size());
+    assertNotNull(localStorage.getProject("BULK1"));
+    assertNotNull(localStorage.getProject("BULK2"));
+    assertNotNull(localStorage.getProjectByName("bulk1"));
+  }
+
   @Test
   public void writeAboutChangesData() throws Exception {
     AboutChangesData data = new AboutChangesData();
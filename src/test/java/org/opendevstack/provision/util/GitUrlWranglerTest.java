@@ -65,6 +65,33 @@ public class GitUrlWranglerTest {
     assertEquals(cloneUrl, result);
   }
 
+  @Test
+  public void precomputedTechnicalUserIsUsedForEveryRewrite() {
+    GitUrlWrangler wrangler = new GitUrlWrangler("cd user");
+    String href = "https://opendevstack.developer@bitbucket.opendevstack.org";
+    assertEquals(
+        "https://cd+user@bitbucket.opendevstack.org",
+        wrangler.rewrite("opendevstack.developer", href));
+    assertEquals(
+        "https://cd+user@bitbucket.opendevstack.org",
+        wrangler.rewrite("sla", "https://bitbucket.opendevstack.org"));
+    String sshUrl = "ssh://git@bitbucket.opendevstack.org";
+    assertEquals(sshUrl, wrangler.rewrite("sla", sshUrl));
+  }
+
+  @Test
+  public void replacesOnlyThePreviousUser() {
+    GitUrlWrangler wrangler = new GitUrlWrangler("new_user");
+    String href = "https://old_user@bitbucket.opendevstack.org/scm/old_user/repo.git";
+    assertEquals(
+        "https://new_user@bitbucket.opendevstack.org/scm/old_user/repo.git",
+        wrangler.replaceUser("old_user", href));
+    String otherUser = "https://cd_user@bitbucket.opendevstack.org";
+    assertEquals(otherUser, wrangler.replaceUser("old_user", otherUser));
+    String noUser = "https://bitbucket.opendevstack.org/scm/p/old_user@repo.git";
+    assertEquals(noUser, wrangler.replaceUser("old_user", noUser));
+  }
+
   @Test
   public void urlEncodedStringsAreDetected() {
     assertTrue(urlWrangler.followsUrlEncodingScheme("opendevstack+developer"));
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ParallelTaskRunnerTest {
+
+  private ExecutorService executor;
+
+  private ParallelTaskRunner runner;
+
+  @BeforeEach
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+    runner = new ParallelTaskRunner(executor);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void givenTasks_whenInvokeAll_thenParallelismIsBoundedAndResultsKeepOrder() {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    Map<String, Callable<String>> tasks = new LinkedHashMap<>();
+    for (int i = 0; i < 10; i++) {
+      String key = "task" + i;
+      tasks.put(
+          key,
+          () -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return key.toUpperCase();
+          });
+    }
+
+    Map<String, TaskResult<String>> results = runner.invokeAll(tasks, 3);
+
+    assertTrue(maxInFlight.get() <= 3);
+    assertEquals(new ArrayList<>(tasks.keySet()), new ArrayList<>(results.keySet()));
+    results.forEach(
+        (key, result) -> {
+          assertTrue(result.isSuccessful());
+          assertEquals(key.toUpperCase(), result.getValue());
+        });
+  }
+
+  @Test
+  public void givenRejectingExecutor_whenInvokeAll_thenTasksFailInsteadOfRunningInCaller() {
+    ParallelTaskRunner rejecting =
+        new ParallelTaskRunner(
+            task -> {
+              throw new RejectedExecutionException("queue is full");
+            },
+            false);
+    AtomicInteger calls = new AtomicInteger();
+    Map<String, Callable<Integer>> tasks = new LinkedHashMap<>();
+    tasks.put("first", calls::incrementAndGet);
+    tasks.put("second", calls::incrementAndGet);
+
+    Map<String, TaskResult<Integer>> results = rejecting.invokeAll(tasks, 2);
+
+    assertEquals(0, calls.get());
+    results.forEach(
+        (key, result) -> assertTrue(result.getError() instanceof RejectedExecutionException));
+    assertEquals(List.of("first", "second"), new ArrayList<>(results.keySet()));
+  }
+
+  @Test
+  public void givenFailingTask_whenInvokeAll_thenOtherTasksStillRun() {
+    Map<String, Callable<String>> tasks = new LinkedHashMap<>();
+    tasks.put("ok", () -> "ok");
+    tasks.put(
+        "failing",
+        () -> {
+          throw new IOException("failed in test");
+        });
+
+    Map<String, TaskResult<String>> results = runner.invokeAll(tasks, 1);
+
+    assertTrue(results.get("ok").isSuccessful());
+    assertFalse(results.get("failing").isSuccessful());
+    assertEquals("failed in test", results.get("failing").getError().getMessage());
+  }
+
+  @Test
+  public void givenListener_whenSubmitAll_thenListenerIsCalledForEveryTask() {
+    List<String> seen = new ArrayList<>();
+
+    Map<Integer, Callable<Integer>> tasks = new LinkedHashMap<>();
+    for (int i = 0; i < 5; i++) {
+      int value = i;
+      tasks.put(i, () -> value * value);
+    }
+
+    runner
+        .submitAll(
+            tasks,
+            2,
+            (key, result) -> {
+              synchronized (seen) {
+                seen.add(key + "=" + result.getValue());
+              }
+            })
+        .join();
+
+    assertEquals(5, seen.size());
+    assertTrue(seen.contains("4=16"));
+  }
+
+  @Test
+  public void givenCallerRunningExecutor_whenInvokeAll_thenStackDoesNotGrowPerTask() {
+    ParallelTaskRunner callerRuns = new ParallelTaskRunner(Runnable::run);
+    List<Integer> depths = new ArrayList<>();
+
+    Map<Integer, Callable<Integer>> tasks = new LinkedHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      tasks.put(
+          i,
+          () -> {
+            depths.add(Thread.currentThread().getStackTrace().length);
+            return 0;
+          });
+    }
+
+    Map<Integer, TaskResult<Integer>> results = callerRuns.invokeAll(tasks, 2);
+
+    assertEquals(1000, results.size());
+    assertEquals(depths.get(0), depths.get(depths.size() - 1));
+  }
+
+  @Test
+  public void givenBatchLookupContext_whenLookupRepeated_thenLoaderIsCalledOnce() {
+    AtomicInteger calls = new AtomicInteger();
+    BatchLookupContext context = new BatchLookupContext();
+
+    BatchLookupContext.setCurrent(context);
+    try {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(
+            BatchLookupContext.lookup(
+                "test.group",
+                "group",
+                () -> {
+                  calls.incrementAndGet();
+                  return true;
+                }));
+      }
+    } finally {
+      BatchLookupContext.setCurrent(null);
+    }
+
+    assertEquals(1, calls.get());
+    assertEquals(3, context.getHits());
+    assertFalse(BatchLookupContext.isActive());
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opendevstack.provision.util.concurrent.ProjectLockManager.ProjectLock;
+import org.opendevstack.provision.util.exception.ProjectLockException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ProjectLockManagerTest {
+
+  @TempDir File lockDirectory;
+
+  private ProjectLockManager lockManager;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  @BeforeEach
+  public void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    lockManager = new ProjectLockManager();
+    lockManager.setBackend(ProjectLockManager.BACKEND_MEMORY);
+    lockManager.setTimeoutInSeconds(1);
+    lockManager.setLockDirectory(lockDirectory.getAbsolutePath());
+    ReflectionTestUtils.setField(lockManager, "meterRegistry", meterRegistry);
+  }
+
+  @Test
+  public void givenLockedProject_whenLockFromOtherThread_thenTimeout() throws Exception {
+    lockManager.init();
+
+    try (ProjectLock lock = lockManager.lock("testp")) {
+      assertEquals("TESTP", lock.getProjectKey());
+
+      CompletableFuture<Throwable> other = CompletableFuture.supplyAsync(() -> tryLock("TESTP"));
+      assertTrue(other.get() instanceof ProjectLockException);
+    }
+
+    assertNull(CompletableFuture.supplyAsync(() -> tryLock("TESTP")).get());
+    assertEquals(
+        1,
+        meterRegistry
+            .get(ProjectLockManager.METRIC_LOCK_WAIT)
+            .tag("result", "timeout")
+            .timer()
+            .count());
+    assertEquals(
+        2,
+        meterRegistry
+            .get(ProjectLockManager.METRIC_LOCK_WAIT)
+            .tag("result", "acquired")
+            .timer()
+            .count());
+  }
+
+  @Test
+  public void givenLockedProject_whenLockOtherProject_thenAcquired() throws Exception {
+    lockManager.init();
+
+    try (ProjectLock lock = lockManager.lock("TESTP")) {
+      assertNull(CompletableFuture.supplyAsync(() -> tryLock("OTHER")).get());
+    }
+  }
+
+  @Test
+  public void givenManyLockedProjects_whenLockOtherProjects_thenAllAreAcquired() throws Exception {
+    lockManager.init();
+    List<ProjectLock> held = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      held.add(lockManager.lock("HELD" + i));
+    }
+
+    // no other project shares a lock with the held ones
+    for (int i = 0; i < 100; i++) {
+      String projectKey = "OTHER" + i;
+      assertNull(CompletableFuture.supplyAsync(() -> tryLock(projectKey)).get());
+    }
+    assertEquals(100, lockManager.size());
+
+    held.forEach(ProjectLock::close);
+    assertEquals(0, lockManager.size());
+  }
+
+  @Test
+  public void givenFileBackend_whenLock_thenLockFileIsUsed() throws Exception {
+    lockManager.setBackend(ProjectLockManager.BACKEND_FILE);
+    lockManager.init();
+
+    try (ProjectLock lock = lockManager.lock("TESTP")) {
+      assertTrue(new File(lockDirectory, "TESTP.lock").exists());
+      assertTrue(CompletableFuture.supplyAsync(() -> tryLock("TESTP")).get() != null);
+    }
+
+    // closing twice must not fail
+    ProjectLock lock = lockManager.lock("TESTP");
+    lock.close();
+    lock.close();
+  }
+
+  private Throwable tryLock(String projectKey) {
+    try (ProjectLock lock = lockManager.lock(projectKey)) {
+      return null;
+    } catch (ProjectLockException e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.concurrent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.util.exception.HttpException;
+
+public class RetryPolicyTest {
+
+  private final RetryPolicy retryPolicy = new RetryPolicy(3, 1, 10);
+
+  @Test
+  public void givenTransientError_whenCall_thenCallIsRetried() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+
+    String value =
+        retryPolicy.call(
+            "test.call",
+            () -> {
+              if (attempts.incrementAndGet() < 3) {
+                throw new HttpException(503, "unavailable");
+              }
+              return "done";
+            });
+
+    assertEquals("done", value);
+    assertEquals(3, attempts.get());
+  }
+
+  @Test
+  public void givenClientError_whenCall_thenCallIsNotRetried() {
+    AtomicInteger attempts = new AtomicInteger();
+
+    HttpException e =
+        assertThrows(
+            HttpException.class,
+            () ->
+                retryPolicy.call(
+                    "test.call",
+                    () -> {
+                      attempts.incrementAndGet();
+                      throw new HttpException(400, "bad request");
+                    }));
+
+    assertEquals(400, e.getResponseCode());
+    assertEquals(1, attempts.get());
+  }
+
+  @Test
+  public void givenPersistentError_whenCall_thenLastErrorIsThrownAfterMaxAttempts() {
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(
+        IOException.class,
+        () ->
+            retryPolicy.call(
+                "test.call",
+                () -> {
+                  throw new IOException("attempt " + attempts.incrementAndGet());
+                }));
+
+    assertEquals(3, attempts.get());
+  }
+
+  @Test
+  public void givenRejectedOnly_whenServerError_thenCallIsNotRetried() {
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(
+        HttpException.class,
+        () ->
+            retryPolicy.call(
+                "test.call",
+                () -> {
+                  attempts.incrementAndGet();
+                  throw new HttpException(500, "maybe created");
+                },
+                RetryPolicy.REJECTED));
+
+    assertEquals(1, attempts.get());
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.template;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class PrecompiledTemplateTest {
+
+  private static final String PERMISSIONSET =
+      "[[\"EDITSPACE\",\"REMOVEPAGE\",\"VIEWSPACE\"], \"SPACE_GROUP\",\"SPACE_NAME\"]";
+
+  @Test
+  public void givenTemplate_whenRender_thenPlaceholdersAreReplaced() {
+    PrecompiledTemplate template =
+        PrecompiledTemplate.compile(PERMISSIONSET, "SPACE_NAME", "SPACE_GROUP");
+
+    String rendered = template.render(Map.of("SPACE_NAME", "KEY", "SPACE_GROUP", "key-admins"));
+
+    assertEquals(
+        "[[\"EDITSPACE\",\"REMOVEPAGE\",\"VIEWSPACE\"], \"key-admins\",\"KEY\"]", rendered);
+    assertEquals(Set.of("SPACE_NAME", "SPACE_GROUP"), template.getPlaceholders());
+  }
+
+  @Test
+  public void givenOverlappingPlaceholders_whenRender_thenLongestPlaceholderWins() {
+    PrecompiledTemplate template =
+        PrecompiledTemplate.compile("%KEY%/%KEY_NAME%/%KEY%", "%KEY%", "%KEY_NAME%");
+
+    assertEquals("a/b/a", template.render(Map.of("%KEY%", "a", "%KEY_NAME%", "b")));
+  }
+
+  @Test
+  public void givenValueContainingPlaceholder_whenRender_thenValueIsNotReplacedAgain() {
+    PrecompiledTemplate template = PrecompiledTemplate.compile("%A%-%B%", "%A%", "%B%");
+
+    assertEquals("%B%-b", template.render(Map.of("%A%", "%B%", "%B%", "b")));
+  }
+
+  @Test
+  public void givenTemplateWithoutPlaceholders_whenRender_thenTemplateIsReturned() {
+    PrecompiledTemplate template = PrecompiledTemplate.compile("no placeholders", "%A%");
+
+    assertEquals("no placeholders", template.render(Map.of()));
+    assertTrue(template.getPlaceholders().isEmpty());
+  }
+
+  @Test
+  public void givenMissingValue_whenRender_thenIllegalArgumentException() {
+    PrecompiledTemplate template = PrecompiledTemplate.compile("%A%-%B%", "%A%", "%B%");
+
+    assertThrows(IllegalArgumentException.class, () -> template.render(Map.of("%A%", "a")));
+  }
+}
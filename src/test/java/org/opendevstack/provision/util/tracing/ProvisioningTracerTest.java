@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.opendevstack.provision.util.tracing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendevstack.provision.model.ProvisioningTiming;
+import org.opendevstack.provision.model.ProvisioningTiming.StepTiming;
+import org.opendevstack.provision.util.concurrent.ContextPropagatingTaskDecorator;
+import org.slf4j.MDC;
+
+public class ProvisioningTracerTest {
+
+  private ProvisioningTracer tracer;
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setUp() {
+    tracer = new ProvisioningTracer();
+    tracer.setHistorySize(2);
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+    Tracing.setCurrent(null);
+  }
+
+  @Test
+  public void givenTrace_whenStepsRun_thenSpansAreRecordedAsChildren() throws Exception {
+    Span root = tracer.startTrace("addProject", "TESTP");
+    String traceId = root.getTraceId();
+    assertEquals(traceId, MDC.get(Tracing.MDC_TRACE_ID));
+
+    Tracing.inSpan("jira.createBugtrackerProject", () -> "done");
+    assertThrows(
+        IOException.class,
+        () ->
+            Tracing.inSpan(
+                "createDeliveryChain",
+                () -> {
+                  throw new IOException("failed in test");
+                }));
+
+    // spans started on a provisioning worker thread become children as well
+    Runnable task =
+        new ContextPropagatingTaskDecorator()
+            .decorate(
+                () -> {
+                  try (Span span = Tracing.startSpan("http GET")) {
+                    span.setAttribute("http.status_code", 200);
+                  }
+                });
+    CompletableFuture.runAsync(task, executor).get();
+
+    assertSame(root, Tracing.current());
+    root.close();
+
+    assertNull(Tracing.current());
+    assertNull(MDC.get(Tracing.MDC_TRACE_ID));
+
+    Trace trace = tracer.getTrace(traceId);
+    assertTrue(trace.isFinished());
+    List<Span> spans = trace.getSpans();
+    assertEquals(4, spans.size());
+    for (Span span : spans.subList(1, spans.size())) {
+      assertEquals(root.getSpanId(), span.getParentSpanId());
+    }
+    assertEquals(Span.STATUS_ERROR, spans.get(2).getStatus());
+    assertEquals("200", spans.get(3).getAttributes().get("http.status_code"));
+
+    String waterfall = TraceWaterfall.render(tracer.getTraces(10), 40);
+    assertTrue(waterfall.contains("trace " + traceId + " addProject [project=TESTP]"));
+    assertTrue(waterfall.contains("  jira.createBugtrackerProject"));
+    assertTrue(waterfall.contains("ERROR IOException: failed in test"));
+  }
+
+  @Test
+  public void givenActiveTrace_whenStartTrace_thenChildSpanIsStarted() {
+    try (Span root = tracer.startTrace("updateProject", "TESTP")) {
+      try (Span cleanup = tracer.startTrace("cleanup", "TESTP")) {
+        assertEquals(root.getTraceId(), cleanup.getTraceId());
+        assertEquals(root.getSpanId(), cleanup.getParentSpanId());
+      }
+    }
+    assertEquals(1, tracer.getTraces(10).size());
+  }
+
+  @Test
+  public void givenNoTrace_whenStartSpan_thenNothingIsRecorded() throws Exception {
+    try (Span span = Tracing.startSpan("http GET")) {
+      assertTrue(span.isNoop());
+      assertNull(Tracing.current());
+    }
+    assertEquals("done", Tracing.inSpan("step", () -> "done"));
+    assertTrue(tracer.getTraces(10).isEmpty());
+  }
+
+  @Test
+  public void givenHistorySize_whenMoreTracesFinish_thenOldestAreDropped() {
+    for (int i = 0; i < 3; i++) {
+      tracer.startTrace("addProject", "TESTP" + i).close();
+    }
+
+    List<Trace> traces = tracer.getTraces(10);
+    assertEquals(2, traces.size());
+    assertEquals("TESTP2", traces.get(0).getProjectKey());
+    assertEquals(1, tracer.getTraces(1).size());
+  }
+
+  @Test
+  public void givenTrace_whenConvertedToOtlp_thenSpansAreExported() {
+    Span root = tracer.startTrace("addProject", "TESTP");
+    Tracing.startSpan("child").close();
+    root.close();
+
+    JsonNode request = new TraceExporter().toOtlp(tracer.getTrace(root.getTraceId()));
+    JsonNode spans = request.at("/resourceSpans/0/scopeSpans/0/spans");
+    assertEquals(2, spans.size());
+    assertEquals(32, spans.get(0).get("traceId").asText().length());
+    assertEquals(root.getSpanId(), spans.get(1).get("parentSpanId").asText());
+    assertEquals("child", spans.get(1).get("name").asText());
+  }
+
+  @Test
+  public void givenTrace_whenTimingOf_thenTimeAndHttpCallsAreAccountedToAdapters()
+      throws Exception {
+    Span root = tracer.startTrace("addProject", "TESTP");
+
+    try (Span jira = Tracing.startSpan("jira.createBugtrackerProject")) {
+      httpCall(100, 2000);
+      try (Span nested = Tracing.startSpan("jira.createPermissionScheme")) {
+        nested.setAttribute(Tracing.ATTRIBUTE_RETRIES, 2);
+        httpCall(50, 10);
+      }
+    }
+    try (Span component = Tracing.startSpan("component be-app")) {
+      try (Span bitbucket = Tracing.startSpan("bitbucket.createComponentRepositories")) {
+        httpCall(10, 10);
+      }
+    }
+    httpCall(1, 1);
+
+    ProvisioningTiming timing = tracer.timingOf(root, ProvisioningTiming.OPERATION_CREATE);
+    root.close();
+
+    assertEquals(ProvisioningTiming.OPERATION_CREATE, timing.getOperation());
+    assertEquals(root.getTraceId(), timing.getTraceId());
+
+    StepTiming jira = timing.getSteps().get("jira");
+    assertEquals(2, jira.getHttpCalls());
+    assertEquals(2, jira.getRetries());
+    assertEquals(150, jira.getBytesSent());
+    assertEquals(2010, jira.getBytesReceived());
+
+    assertEquals(1, timing.getSteps().get("bitbucket").getHttpCalls());
+    assertEquals(1, timing.getSteps().get(ProvisioningTimings.STEP_OTHER).getHttpCalls());
+    assertEquals(3, timing.getSteps().size());
+
+    tracer.setEnabled(false);
+    assertNull(tracer.timingOf(tracer.startTrace("addProject", "TESTP"), "create"));
+  }
+
+  private static void httpCall(long bytesSent, long bytesReceived) {
+    try (Span span = Tracing.startSpan("http POST")) {
+      span.setAttribute("http.method", "POST")
+          .setAttribute(Tracing.ATTRIBUTE_HTTP_REQUEST_LENGTH, bytesSent)
+          .setAttribute(Tracing.ATTRIBUTE_HTTP_RESPONSE_LENGTH, bytesReceived);
+    }
+  }
+}